@@ -0,0 +1,345 @@
+package net.roseboy.classfinal;
+
+import net.roseboy.classfinal.config.BatchConfig;
+import net.roseboy.classfinal.config.ClassFinalConfig;
+import net.roseboy.classfinal.util.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 批量加密：在一个JVM中加密多个jar/war
+ * <p>
+ * 所有任务共用一个压缩/加密线程池和依赖jar包列表缓存，同时执行的任务数由 parallel 限制，
+ * 同时执行的任务预估内存之和不超过内存预算；失败的任务按 retries 重试，最后输出每个任务的结果和总吞吐量。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class BatchEncryptor {
+    //单个任务的基础内存预估(MB)
+    private static final long BASE_MEMORY = 64;
+    //单个任务每MB输入的内存预估倍数
+    private static final long MEMORY_PER_MB = 3;
+
+    private final BatchConfig config;
+
+    /**
+     * 构造方法
+     *
+     * @param config 批量配置
+     */
+    public BatchEncryptor(BatchConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * 执行所有任务
+     *
+     * @return 批量结果
+     */
+    public BatchResult run() {
+        long start = System.currentTimeMillis();
+        HeapMonitor.start();
+        File cacheFile = StrUtils.isEmpty(config.getClasspathCache()) ? null
+                : new File(EncryptDaemon.resolve(config.getClasspathCache()));
+        ClassPathIndex.Cache cache = ClassPathIndex.Cache.load(cacheFile);
+        ForkJoinPool workerPool = ParallelUtils.newPool(config.getThreads());
+        int budget = (int) Math.min(config.getMemory(), Integer.MAX_VALUE);
+        //公平的信号量，大任务不会一直被小任务插队
+        Semaphore memory = new Semaphore(budget, true);
+        ExecutorService jobPool = Executors.newFixedThreadPool(config.getParallel());
+
+        //密码文件可能读后删除，在并发执行前按顺序读取，多个任务使用同一文件时只读一次
+        Map<String, String> passwordFiles = new HashMap<>();
+        List<JobResult> results = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (BatchConfig.Job job : config.getJobs()) {
+                JobResult result = new JobResult(job.getName(), job.getConfig().getInput().getFile());
+                results.add(result);
+                String password;
+                try {
+                    password = resolvePassword(job.getConfig(), passwordFiles);
+                } catch (Exception e) {
+                    result.error = e.getMessage();
+                    continue;
+                }
+                futures.add(jobPool.submit(EncryptDaemon.inherit(
+                        () -> runJob(job, password, result, workerPool, cache, memory, budget))));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            jobPool.shutdownNow();
+            ParallelUtils.shutdown(workerPool);
+            cache.save(cacheFile);
+        }
+        return new BatchResult(results, System.currentTimeMillis() - start, HeapMonitor.getPeakUsed());
+    }
+
+    /**
+     * 执行一个任务，失败时重试
+     */
+    private void runJob(BatchConfig.Job job, String password, JobResult result, ForkJoinPool workerPool,
+                        ClassPathIndex.Cache cache, Semaphore memory, int budget) {
+        ClassFinalConfig cfg = job.getConfig();
+        File input = new File(EncryptDaemon.resolve(cfg.getInput().getFile()));
+        result.size = input.length();
+        String output = cfg.getOutput() == null ? null : EncryptDaemon.resolve(cfg.getOutput().getFile());
+        if (!StrUtils.isEmpty(output) && new File(output).exists() && !cfg.getOutput().isOverwrite()) {
+            result.error = "输出文件已存在: " + output;
+            return;
+        }
+
+        int permits = (int) Math.min(budget, BASE_MEMORY + MEMORY_PER_MB * (result.size >> 20));
+        try {
+            memory.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.error = "已取消";
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            while (result.attempts <= config.getRetries()) {
+                result.attempts++;
+                try {
+                    JarEncryptor encryptor = createEncryptor(cfg, password);
+                    encryptor.setThreads(config.getThreads());
+                    encryptor.setSharedPool(workerPool);
+                    encryptor.setIndexCache(cache);
+                    String path = encryptor.doEncryptJar();
+                    if (!StrUtils.isEmpty(output)) {
+                        File target = new File(output);
+                        File parent = target.getAbsoluteFile().getParentFile();
+                        if (parent != null && !parent.exists()) {
+                            parent.mkdirs();
+                        }
+                        Files.move(new File(path).toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                        path = target.getAbsolutePath();
+                    }
+                    result.output = path;
+                    result.classCount = encryptor.getEncryptFileCount() == null ? 0 : encryptor.getEncryptFileCount();
+                    result.success = true;
+                    result.error = null;
+                    return;
+                } catch (Exception e) {
+                    result.error = e.getMessage() == null ? e.toString() : e.getMessage();
+                    Log.warn("任务 " + job.getName() + " 第" + result.attempts + "次执行失败: " + result.error);
+                    Log.debug(e);
+                }
+            }
+        } finally {
+            result.time = System.currentTimeMillis() - start;
+            memory.release(permits);
+        }
+    }
+
+    /**
+     * 按任务配置创建加密器
+     *
+     * @param cfg      任务配置
+     * @param password 密码
+     * @return 加密器
+     */
+    private static JarEncryptor createEncryptor(ClassFinalConfig cfg, String password) {
+        ClassFinalConfig.InputConfig input = cfg.getInput();
+        List<String> includeJarList = toList(input.getLibjars());
+        includeJarList.add("-");
+
+        JarEncryptor encryptor = new JarEncryptor(EncryptDaemon.resolve(input.getFile()),
+                password.trim().toCharArray());
+        String code = cfg.getEncryption().getMachineCode();
+        encryptor.setCode(StrUtils.isEmpty(code) ? null : code.trim().toCharArray());
+        if ("public-key".equals(cfg.getEncryption().getMode())) {
+            encryptor.setPublicKey(EncryptUtils.readKey(
+                    new File(EncryptDaemon.resolve(cfg.getEncryption().getPublicKeyFile()))));
+        }
+        encryptor.setPackages(toList(input.getPackages()));
+        encryptor.setIncludeJars(includeJarList);
+        encryptor.setExcludeClass(toList(input.getExclude()));
+        List<String> classPath = toList(input.getClasspath());
+        classPath.replaceAll(EncryptDaemon::resolve);
+        encryptor.setClassPath(classPath);
+        encryptor.setCfgfiles(new ArrayList<>());
+        if (cfg.getAdvanced() != null) {
+            encryptor.setCompressionPolicy(CompressionPolicy.parse(cfg.getAdvanced().getCompression()));
+            encryptor.setMemoryLimit(cfg.getAdvanced().getHeapLimit() * 1024 * 1024);
+            String report = EncryptDaemon.resolve(cfg.getAdvanced().getReport());
+            encryptor.setReportFile(StrUtils.isEmpty(report) ? null : new File(report));
+            String trace = EncryptDaemon.resolve(cfg.getAdvanced().getTrace());
+            encryptor.setTraceFile(StrUtils.isEmpty(trace) ? null : new File(trace));
+            encryptor.setCipherSuite(CipherSuite.parse(cfg.getAdvanced().getCipher(), Const.ENCRYPT_TYPE));
+            if (cfg.getAdvanced().isReproducible()) {
+                encryptor.setOutputTimestamp(ArchiveUtils.parseTimestamp(cfg.getAdvanced().getOutputTimestamp()));
+            }
+        }
+        return encryptor;
+    }
+
+    /**
+     * 读取任务的密码
+     */
+    private static String resolvePassword(ClassFinalConfig cfg, Map<String, String> passwordFiles) throws Exception {
+        ClassFinalConfig.EncryptionConfig encryption = cfg.getEncryption();
+        if ("nopassword".equals(encryption.getMode())) {
+            return Const.NO_PASSWORD_MARKER;
+        }
+        //公钥模式使用生成的内容密钥
+        if ("public-key".equals(encryption.getMode())) {
+            return "";
+        }
+        String file = EncryptDaemon.resolve(encryption.getPasswordFile());
+        if (!StrUtils.isEmpty(file)) {
+            String password = passwordFiles.get(file);
+            if (password == null) {
+                password = PasswordUtil.readPasswordFromFile(file, encryption.isDeletePasswordFile());
+                passwordFiles.put(file, password);
+            }
+            return password;
+        }
+        if (StrUtils.isEmpty(encryption.getPassword())) {
+            throw new IllegalArgumentException("密码不能为空");
+        }
+        return encryption.getPassword();
+    }
+
+    private static List<String> toList(String[] values) {
+        return values == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(values));
+    }
+
+    /**
+     * 单个任务的结果
+     */
+    public static class JobResult {
+        private final String name;
+        private final String file;
+        private boolean success = false;
+        private int attempts = 0;
+        private int classCount = 0;
+        private long size = 0;
+        private long time = 0;
+        private String output;
+        private String error;
+
+        JobResult(String name, String file) {
+            this.name = name;
+            this.file = file;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public int getClassCount() {
+            return classCount;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public String getOutput() {
+            return output;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * 批量加密的结果
+     */
+    public static class BatchResult {
+        private final List<JobResult> jobs;
+        private final long time;
+        private final long peakHeapUsed;
+
+        BatchResult(List<JobResult> jobs, long time, long peakHeapUsed) {
+            this.jobs = jobs;
+            this.time = time;
+            this.peakHeapUsed = peakHeapUsed;
+        }
+
+        public List<JobResult> getJobs() {
+            return jobs;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public long getPeakHeapUsed() {
+            return peakHeapUsed;
+        }
+
+        /**
+         * 失败的任务数量
+         *
+         * @return 数量
+         */
+        public int getFailedCount() {
+            int n = 0;
+            for (JobResult job : jobs) {
+                n += job.success ? 0 : 1;
+            }
+            return n;
+        }
+
+        /**
+         * 输出每个任务的结果和总吞吐量
+         */
+        public void print() {
+            long bytes = 0;
+            int classes = 0;
+            Log.println("批量加密结果:");
+            Log.println("-------------------------");
+            for (JobResult job : jobs) {
+                if (job.success) {
+                    bytes += job.size;
+                    classes += job.classCount;
+                    Log.println(String.format("[成功] %s: %d 个类, %s, %.1f s, 执行%d次 ==> %s", job.name,
+                            job.classCount, HeapMonitor.format(job.size), job.time / 1000d, job.attempts, job.output));
+                } else {
+                    Log.println(String.format("[失败] %s: %s, 执行%d次, %s", job.name, job.file, job.attempts, job.error));
+                }
+            }
+            Log.println("-------------------------");
+            double seconds = Math.max(time, 1) / 1000d;
+            Log.println(String.format("任务: %d 成功, %d 失败, 耗时 %.1f s", jobs.size() - getFailedCount(),
+                    getFailedCount(), seconds));
+            Log.println(String.format("吞吐量: %.1f MB/s, %.0f 类/s, %.2f 任务/s", bytes / 1048576d / seconds,
+                    classes / seconds, (jobs.size() - getFailedCount()) / seconds));
+            Log.println("堆内存峰值: " + HeapMonitor.format(peakHeapUsed));
+        }
+    }
+}
@@ -34,8 +34,8 @@ public class Const {
     //lib下的jar解压的目录名后缀
     public static final String LIB_JAR_DIR = "__temp__";
 
-    //默认加密方式
-    public static final int ENCRYPT_TYPE = 1;
+    //默认加密方式：AES/GCM，见 CipherSuite
+    public static final int ENCRYPT_TYPE = 3;
 
     //密码标记
     public static final String CONFIG_PASS = "org.springframework.config.Pass";
@@ -43,12 +43,19 @@ public class Const {
     public static final String CONFIG_CODE = "org.springframework.config.Code";
     //加密密码的hash
     public static final String CONFIG_PASSHASH = "org.springframework.config.PassHash";
+    //压缩class的字典
+    public static final String CONFIG_DICT = "org.springframework.config.Dict";
+    //公钥模式下用RSA公钥加密的内容密钥
+    public static final String CONFIG_ENVELOPE = "org.springframework.config.Envelope";
+    //绑定机器码时每台机器加密一份的内容密钥
+    public static final String CONFIG_KEYS = "org.springframework.config.Keys";
 
     //本项目需要打包的代码
     public static final String[] CLASSFINAL_FILES = {"CoreAgent.class", "InputForm.class", "InputForm$1.class",
             "JarDecryptor.class", "AgentTransformer.class", "Const.class", "CmdLineOption.class",
-            "EncryptUtils.class", "IoUtils.class", "JarUtils.class", "Log.class", "StrUtils.class",
-            "SysUtils.class"};
+            "EncryptUtils.class", "EncryptUtils$SeededRandom.class", "IoUtils.class", "JarUtils.class", "Log.class", "Log$LogLevel.class", "StrUtils.class",
+            "SysUtils.class", "PayloadCompressor.class", "MachineKeyTable.class",
+            "CipherSuite.class"};
 
     //调试模式
     public static boolean DEBUG = false;
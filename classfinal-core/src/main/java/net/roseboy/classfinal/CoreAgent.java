@@ -28,6 +28,8 @@ public class CoreAgent {
         options.addOption("nopwd", false, "无密码启动");
         options.addOption("debug", false, "调试模式");
         options.addOption("del", true, "读取密码后删除密码");
+        options.addOption("key", true, "RSA私钥文件(公钥模式)");
+        options.addOption("keyname", true, "环境变量私钥参数名(公钥模式)");
 
         char[] pwd;
 
@@ -43,6 +45,11 @@ public class CoreAgent {
             Const.DEBUG = options.hasOption("debug");
         }
 
+        //公钥模式，用私钥解开内容密钥，之后和密码一样使用
+        if (StrUtils.isEmpty(pwd)) {
+            pwd = openEnvelope(options);
+        }
+
         //参数标识 无密码启动
         if (options.hasOption("nopwd")) {
             // 使用内部标识
@@ -119,6 +126,39 @@ public class CoreAgent {
         }
     }
 
+    /**
+     * 公钥模式，读取私钥解开jar中的内容密钥，只在启动时执行一次
+     *
+     * @param options 参数开关
+     * @return 内容密钥，不是公钥模式或没有私钥时为null
+     */
+    public static char[] openEnvelope(CmdLineOption options) {
+        File jar = new File(JarUtils.getRootPath(null));
+        if (JarDecryptor.readEncryptedFile(jar, Const.CONFIG_ENVELOPE) == null) {
+            return null;
+        }
+        String keyFile = options.getOptionValue("key");
+        String keyName = options.getOptionValue("keyname");
+        try {
+            String key = null;
+            if (StrUtils.isNotEmpty(keyFile)) {
+                key = EncryptUtils.readKey(new File(keyFile));
+            } else if (StrUtils.isNotEmpty(keyName)) {
+                key = System.getenv(keyName);
+            }
+            if (StrUtils.isEmpty(key)) {
+                Log.println("\nWARN: 公钥模式需要私钥: -key 私钥文件 或 -keyname 环境变量名\n");
+                return null;
+            }
+            return JarDecryptor.openEnvelope(jar, key);
+        } catch (IllegalArgumentException e) {
+            Log.debug(e.getMessage());
+            Log.println("\nERROR: Startup failed, invalid private key.\n");
+            System.exit(0);
+            return null;
+        }
+    }
+
     /**
      * 从文件读取密码
      *
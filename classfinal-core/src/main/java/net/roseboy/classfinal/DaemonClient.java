@@ -0,0 +1,158 @@
+package net.roseboy.classfinal;
+
+import net.roseboy.classfinal.util.StrUtils;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * 加密服务的客户端，把命令行参数、工作目录和环境变量转发给 EncryptDaemon，输出原样写回
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class DaemonClient {
+    //参数值是文件路径的选项，服务的工作目录和客户端不同，转为绝对路径
+    private static final Set<String> PATH_OPTIONS = new HashSet<>(Arrays.asList(
+            "file", "config", "batch", "init-config", "verify", "password-file", "cpcache", "report", "trace",
+            "diff", "apply", "patch", "out", "decrypt", "pubkey", "key", "code-file"));
+    //参数值是多个路径的选项
+    private static final Set<String> PATHS_OPTIONS = new HashSet<>(Arrays.asList("classpath", "rekey"));
+
+    /**
+     * 发送命令并等待结束
+     *
+     * @param stateFile 服务的状态文件
+     * @param command   命令
+     * @param args      参数
+     * @param out       标准输出
+     * @param err       错误输出
+     * @return 退出码
+     * @throws IOException 服务未启动或连接断开
+     */
+    public static int run(File stateFile, String command, String[] args, OutputStream out, OutputStream err)
+            throws IOException {
+        return run(stateFile, command, args, new File("").getAbsoluteFile(), System.getenv(), out, err);
+    }
+
+    /**
+     * 发送命令并等待结束
+     *
+     * @param stateFile 服务的状态文件
+     * @param command   命令
+     * @param args      参数
+     * @param dir       任务的工作目录，配置文件和环境变量中的相对路径相对于此目录
+     * @param env       任务的环境变量
+     * @param out       标准输出
+     * @param err       错误输出
+     * @return 退出码
+     * @throws IOException 服务未启动或连接断开
+     */
+    public static int run(File stateFile, String command, String[] args, File dir, Map<String, String> env,
+                          OutputStream out, OutputStream err) throws IOException {
+        if (!stateFile.exists()) {
+            throw new IOException("加密服务未启动: " + stateFile.getAbsolutePath());
+        }
+        Properties state = new Properties();
+        try (InputStream in = new FileInputStream(stateFile)) {
+            state.load(in);
+        }
+        int port = Integer.parseInt(state.getProperty("port", "0"));
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            dos.writeUTF(state.getProperty("token", ""));
+            dos.writeUTF(command);
+            dos.writeInt(args.length);
+            for (String arg : args) {
+                dos.writeUTF(arg);
+            }
+            if (EncryptDaemon.CMD_RUN.equals(command)) {
+                EncryptDaemon.writeString(dos, dir.getAbsolutePath());
+                dos.writeInt(env.size());
+                for (Map.Entry<String, String> e : env.entrySet()) {
+                    EncryptDaemon.writeString(dos, e.getKey());
+                    EncryptDaemon.writeString(dos, e.getValue());
+                }
+            }
+            dos.flush();
+
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            byte[] buf = new byte[8192];
+            while (true) {
+                int type = dis.readByte();
+                int len = dis.readInt();
+                if (type == EncryptDaemon.FRAME_EXIT) {
+                    return len;
+                }
+                OutputStream target = type == EncryptDaemon.FRAME_ERR ? err : out;
+                while (len > 0) {
+                    int n = dis.read(buf, 0, Math.min(buf.length, len));
+                    if (n < 0) {
+                        throw new EOFException();
+                    }
+                    target.write(buf, 0, n);
+                    len -= n;
+                }
+                target.flush();
+            }
+        } catch (EOFException e) {
+            throw new IOException("加密服务断开连接");
+        }
+    }
+
+    /**
+     * 把文件路径参数转为绝对路径
+     *
+     * @param args 参数
+     * @return 新的参数
+     */
+    public static String[] absolutize(String[] args) {
+        String[] result = args.clone();
+        for (int i = 0; i < result.length; i++) {
+            String arg = result[i];
+            if (!arg.startsWith("-")) {
+                continue;
+            }
+            String name = arg.replaceFirst("^-+", "");
+            int eq = name.indexOf('=');
+            String value;
+            if (eq > 0) {
+                value = name.substring(eq + 1);
+                name = name.substring(0, eq);
+            } else if (i + 1 < result.length && (PATH_OPTIONS.contains(name) || PATHS_OPTIONS.contains(name))) {
+                value = result[++i];
+            } else {
+                continue;
+            }
+            String abs;
+            if (PATH_OPTIONS.contains(name)) {
+                abs = absolute(value);
+            } else if (PATHS_OPTIONS.contains(name)) {
+                List<String> paths = StrUtils.toList(value);
+                paths.replaceAll(DaemonClient::absolute);
+                abs = String.join(",", paths);
+            } else {
+                continue;
+            }
+            if (eq > 0) {
+                result[i] = arg.substring(0, arg.indexOf('=') + 1) + abs;
+            } else {
+                result[i] = abs;
+            }
+        }
+        return result;
+    }
+
+    private static String absolute(String path) {
+        return StrUtils.isEmpty(path) ? path : new File(path).getAbsolutePath();
+    }
+}
@@ -0,0 +1,625 @@
+package net.roseboy.classfinal;
+
+import net.roseboy.classfinal.util.*;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 常驻的加密服务
+ * <p>
+ * 在一个JVM中持续接收加密任务，保留JIT编译结果、依赖jar包索引缓存和压缩/加密线程池，
+ * 省去每次构建启动JVM和重新读取classpath的时间。只监听本机回环地址，
+ * 端口和随机令牌写在只有当前用户可读的状态文件中，客户端读取后连接。
+ * 任务的输出按线程转发给对应的客户端，提交给线程池的子任务用 inherit 包装后同样转发；
+ * 任务使用客户端的工作目录和环境变量（见 resolve 和 getenv）。
+ * 同时执行的任务数不超过 parallel，预估内存之和不超过内存预算。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class EncryptDaemon implements Closeable {
+    //命令
+    public static final String CMD_RUN = "run";
+    public static final String CMD_STATUS = "status";
+    public static final String CMD_STOP = "stop";
+    //返回的数据帧类型
+    static final int FRAME_EXIT = 0;
+    static final int FRAME_OUT = 1;
+    static final int FRAME_ERR = 2;
+
+    //单个任务的基础内存预估(MB)
+    private static final long BASE_MEMORY = 64;
+    //单个任务每MB输入的内存预估倍数
+    private static final long MEMORY_PER_MB = 3;
+    //检查空闲的间隔
+    private static final int ACCEPT_TIMEOUT = 60 * 1000;
+    //客户端发送的单个字符串的最大长度
+    private static final int MAX_STRING = 1024 * 1024;
+    //客户端发送的环境变量的最大数量
+    private static final int MAX_ENV = 4096;
+
+    //当前线程执行的任务，不在服务中执行时为null
+    private static final ThreadLocal<Job> JOB = new ThreadLocal<>();
+
+    /**
+     * 执行一个任务，如命令行的 Main.run
+     */
+    public interface JobRunner {
+        /**
+         * 执行
+         *
+         * @param args 命令行参数
+         * @return 退出码
+         * @throws Exception Exception
+         */
+        int run(String[] args) throws Exception;
+    }
+
+    /**
+     * 任务占用的资源，结束时释放
+     */
+    public interface Lease extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final JobRunner runner;
+    //监听端口，0为随机端口
+    private int port = 0;
+    //共用的压缩/加密线程数
+    private int threads = Runtime.getRuntime().availableProcessors();
+    //同时执行的任务数
+    private int parallel = Runtime.getRuntime().availableProcessors();
+    //内存预算(MB)
+    private long memory = Runtime.getRuntime().maxMemory() / 1024 / 1024 * 3 / 4;
+    //空闲多久后退出(分钟)，0为不退出
+    private long idleMinutes = 180;
+    //状态文件
+    private File stateFile = defaultStateFile();
+    //依赖jar包索引的缓存文件，可为null
+    private File cacheFile = null;
+
+    private ServerSocket server;
+    private String token;
+    private ForkJoinPool workerPool;
+    private ClassPathIndex.Cache indexCache;
+    private Semaphore memoryPermits;
+    private Semaphore slots;
+    private ExecutorService connections;
+    private PrintStream stdout;
+    private PrintStream stderr;
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final long startTime = System.currentTimeMillis();
+    private volatile long lastActive = System.currentTimeMillis();
+    private volatile boolean stopped = false;
+
+    /**
+     * 构造方法
+     *
+     * @param runner 任务的执行方法
+     */
+    public EncryptDaemon(JobRunner runner) {
+        this.runner = runner;
+    }
+
+    /**
+     * 默认的状态文件 ~/.classfinal/daemon.properties
+     *
+     * @return 文件
+     */
+    public static File defaultStateFile() {
+        return new File(System.getProperty("user.home"), ".classfinal" + File.separator + "daemon.properties");
+    }
+
+    /**
+     * 开始监听，写入状态文件
+     *
+     * @throws IOException IOException
+     */
+    public void start() throws IOException {
+        this.server = new ServerSocket(this.port, 50, InetAddress.getLoopbackAddress());
+        this.server.setSoTimeout(ACCEPT_TIMEOUT);
+        byte[] random = new byte[24];
+        new SecureRandom().nextBytes(random);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : random) {
+            hex.append(String.format("%02x", b));
+        }
+        this.token = hex.toString();
+        writeState();
+
+        HeapMonitor.start();
+        this.workerPool = ParallelUtils.newPool(this.threads);
+        this.indexCache = ClassPathIndex.Cache.load(this.cacheFile);
+        this.memoryPermits = new Semaphore((int) Math.min(this.memory, Integer.MAX_VALUE), true);
+        this.slots = new Semaphore(this.parallel, true);
+        this.connections = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "classfinal-daemon");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        //任务的输出按线程转发给客户端，其他输出仍然写到控制台
+        this.stdout = System.out;
+        this.stderr = System.err;
+        System.setOut(new PrintStream(new RoutingOutputStream(false, this.stdout), true));
+        System.setErr(new PrintStream(new RoutingOutputStream(true, this.stderr), true));
+    }
+
+    /**
+     * 接收连接，直到stop或空闲超时
+     */
+    public void serve() {
+        while (!this.stopped) {
+            try {
+                Socket socket = this.server.accept();
+                this.connections.submit(() -> handle(socket));
+            } catch (SocketTimeoutException e) {
+                long idle = System.currentTimeMillis() - this.lastActive;
+                if (this.idleMinutes > 0 && this.running.get() == 0 && idle > this.idleMinutes * 60 * 1000) {
+                    this.stdout.println("空闲超过 " + this.idleMinutes + " 分钟，加密服务退出");
+                    break;
+                }
+            } catch (IOException e) {
+                if (!this.stopped) {
+                    this.stderr.println("加密服务接收连接失败: " + e.getMessage());
+                }
+                break;
+            }
+        }
+        close();
+    }
+
+    /**
+     * 处理一个客户端连接
+     */
+    private void handle(Socket socket) {
+        try (Socket s = socket) {
+            s.setSoTimeout(30 * 1000);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            String clientToken = in.readUTF();
+            String command = in.readUTF();
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = in.readUTF();
+            }
+            File dir = null;
+            Map<String, String> env = new HashMap<>();
+            if (CMD_RUN.equals(command)) {
+                dir = new File(readString(in));
+                int n = in.readInt();
+                if (n < 0 || n > MAX_ENV) {
+                    throw new IOException("环境变量数量无效: " + n);
+                }
+                for (int i = 0; i < n; i++) {
+                    env.put(readString(in), readString(in));
+                }
+            }
+            s.setSoTimeout(0);
+
+            if (!MessageDigest.isEqual(this.token.getBytes(StandardCharsets.UTF_8),
+                    clientToken.getBytes(StandardCharsets.UTF_8))) {
+                reply(out, FRAME_ERR, "令牌无效\n");
+                exit(out, 2);
+                return;
+            }
+            if (CMD_STATUS.equals(command)) {
+                reply(out, FRAME_OUT, status());
+                exit(out, 0);
+            } else if (CMD_STOP.equals(command)) {
+                reply(out, FRAME_OUT, "加密服务已停止\n");
+                exit(out, 0);
+                stop();
+            } else if (CMD_RUN.equals(command)) {
+                exit(out, runJob(args, dir, env, out));
+            } else {
+                reply(out, FRAME_ERR, "未知命令: " + command + "\n");
+                exit(out, 2);
+            }
+        } catch (IOException e) {
+            //客户端断开
+        }
+    }
+
+    /**
+     * 在当前线程执行任务，输出转发给客户端
+     */
+    private int runJob(String[] args, File dir, Map<String, String> env, DataOutputStream out) {
+        Job job = new Job(this, new FrameOutputStream(out, FRAME_OUT), new FrameOutputStream(out, FRAME_ERR),
+                dir, env);
+        PrintStream err = new PrintStream(job.err, true);
+        try {
+            this.slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+        this.running.incrementAndGet();
+        JOB.set(job);
+        try {
+            return this.runner.run(args);
+        } catch (Throwable e) {
+            err.println("ERROR: " + (e.getMessage() == null ? e.toString() : e.getMessage()));
+            return 1;
+        } finally {
+            System.out.flush();
+            System.err.flush();
+            JOB.remove();
+            Log.setThreadLogLevel(null);
+            this.running.decrementAndGet();
+            this.completed.incrementAndGet();
+            this.lastActive = System.currentTimeMillis();
+            this.slots.release();
+        }
+    }
+
+    private String status() {
+        return "port: " + this.server.getLocalPort() + "\n"
+                + "uptime: " + (System.currentTimeMillis() - this.startTime) / 1000 + " s\n"
+                + "running: " + this.running.get() + "\n"
+                + "completed: " + this.completed.get() + "\n"
+                + "classpath cache: " + this.indexCache.size() + " jars\n"
+                + "memory: " + this.memoryPermits.availablePermits() + "/" + this.memory + " MB available\n"
+                + "heap peak: " + HeapMonitor.format(HeapMonitor.getPeakUsed()) + "\n";
+    }
+
+    /**
+     * 当前线程在服务中执行时，加密器使用服务的线程池和索引缓存，并按输入大小占用内存预算
+     *
+     * @param encryptor 加密器
+     * @param input     要加密的jar/war
+     * @return 占用的资源，加密结束后关闭
+     * @throws InterruptedException 等待内存预算时被中断
+     */
+    public static Lease lease(JarEncryptor encryptor, File input) throws InterruptedException {
+        Job job = JOB.get();
+        if (job == null) {
+            return () -> {
+            };
+        }
+        EncryptDaemon daemon = job.daemon;
+        encryptor.setSharedPool(daemon.workerPool);
+        encryptor.setIndexCache(daemon.indexCache);
+        int budget = (int) Math.min(daemon.memory, Integer.MAX_VALUE);
+        int permits = (int) Math.min(budget, BASE_MEMORY + MEMORY_PER_MB * (input.length() >> 20));
+        daemon.memoryPermits.acquire(permits);
+        return () -> daemon.memoryPermits.release(permits);
+    }
+
+    /**
+     * 当前线程是否在服务中执行任务
+     *
+     * @return true|false
+     */
+    public static boolean isJob() {
+        return JOB.get() != null;
+    }
+
+    /**
+     * 读取环境变量，在服务中执行时读取提交任务的客户端的环境变量
+     *
+     * @param name 名称
+     * @return 值，不存在时为null
+     */
+    public static String getenv(String name) {
+        Job job = JOB.get();
+        return job == null ? System.getenv(name) : job.env.get(name);
+    }
+
+    /**
+     * 把相对路径转为绝对路径，在服务中执行时相对于提交任务的客户端的工作目录
+     *
+     * @param path 路径
+     * @return 服务中执行时为绝对路径，否则原样返回
+     */
+    public static String resolve(String path) {
+        Job job = JOB.get();
+        if (job == null || StrUtils.isEmpty(path) || new File(path).isAbsolute()) {
+            return path;
+        }
+        return new File(job.dir, path).getAbsolutePath();
+    }
+
+    /**
+     * 包装提交给线程池的子任务，在子任务的线程中沿用当前任务的输出、工作目录、环境变量和日志级别
+     *
+     * @param task 子任务
+     * @return 包装后的子任务，不在服务中执行且没有设置线程的日志级别时原样返回
+     */
+    public static Runnable inherit(Runnable task) {
+        Job job = JOB.get();
+        Log.LogLevel level = Log.getThreadLogLevel();
+        if (job == null && level == null) {
+            return task;
+        }
+        return () -> {
+            Job previous = JOB.get();
+            Log.LogLevel previousLevel = Log.getThreadLogLevel();
+            set(job, level);
+            try {
+                task.run();
+            } finally {
+                set(previous, previousLevel);
+            }
+        };
+    }
+
+    /**
+     * 包装提交给线程池的子任务，在子任务的线程中沿用当前任务的输出、工作目录、环境变量和日志级别
+     *
+     * @param task 子任务
+     * @param <T>  返回值类型
+     * @return 包装后的子任务，不在服务中执行且没有设置线程的日志级别时原样返回
+     */
+    public static <T> Callable<T> inherit(Callable<T> task) {
+        Job job = JOB.get();
+        Log.LogLevel level = Log.getThreadLogLevel();
+        if (job == null && level == null) {
+            return task;
+        }
+        return () -> {
+            //线程池的线程可能在等待时执行其他任务的子任务，结束后还原
+            Job previous = JOB.get();
+            Log.LogLevel previousLevel = Log.getThreadLogLevel();
+            set(job, level);
+            try {
+                return task.call();
+            } finally {
+                set(previous, previousLevel);
+            }
+        };
+    }
+
+    private static void set(Job job, Log.LogLevel level) {
+        if (job == null) {
+            JOB.remove();
+        } else {
+            JOB.set(job);
+        }
+        Log.setThreadLogLevel(level);
+    }
+
+    /**
+     * 停止接收连接，正在执行的任务继续完成
+     */
+    public void stop() {
+        this.stopped = true;
+        IoUtils.close(this.server);
+    }
+
+    /**
+     * 释放线程池，保存索引缓存，删除状态文件
+     */
+    @Override
+    public void close() {
+        stop();
+        if (this.connections == null) {
+            return;
+        }
+        this.connections.shutdown();
+        try {
+            this.connections.awaitTermination(1, TimeUnit.HOURS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ParallelUtils.shutdown(this.workerPool);
+        this.indexCache.save(this.cacheFile);
+        this.stateFile.delete();
+        System.setOut(this.stdout);
+        System.setErr(this.stderr);
+        this.connections = null;
+    }
+
+    /**
+     * 写入端口和令牌，只有当前用户可读写
+     */
+    private void writeState() throws IOException {
+        File parent = this.stateFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        this.stateFile.delete();
+        this.stateFile.createNewFile();
+        this.stateFile.setReadable(false, false);
+        this.stateFile.setWritable(false, false);
+        this.stateFile.setReadable(true, true);
+        this.stateFile.setWritable(true, true);
+        Properties state = new Properties();
+        state.setProperty("port", String.valueOf(this.server.getLocalPort()));
+        state.setProperty("token", this.token);
+        state.setProperty("pid", ManagementFactory.getRuntimeMXBean().getName());
+        try (OutputStream out = new FileOutputStream(this.stateFile)) {
+            state.store(out, "classfinal daemon");
+        }
+    }
+
+    /**
+     * 写入长度不受 writeUTF 64KB 限制的字符串
+     *
+     * @param out 输出
+     * @param str 字符串
+     * @throws IOException IOException
+     */
+    static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0 || len > MAX_STRING) {
+            throw new IOException("字符串长度无效: " + len);
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void reply(DataOutputStream out, int type, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(type);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void exit(DataOutputStream out, int code) throws IOException {
+        out.writeByte(FRAME_EXIT);
+        out.writeInt(code);
+        out.flush();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setParallel(int parallel) {
+        this.parallel = parallel;
+    }
+
+    public void setMemory(long memory) {
+        this.memory = memory;
+    }
+
+    public void setIdleMinutes(long idleMinutes) {
+        this.idleMinutes = idleMinutes;
+    }
+
+    public void setStateFile(File stateFile) {
+        this.stateFile = stateFile;
+    }
+
+    public void setCacheFile(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * 一个任务的上下文
+     */
+    private static class Job {
+        private final EncryptDaemon daemon;
+        private final OutputStream out;
+        private final OutputStream err;
+        //客户端的工作目录
+        private final File dir;
+        //客户端的环境变量
+        private final Map<String, String> env;
+
+        Job(EncryptDaemon daemon, OutputStream out, OutputStream err, File dir, Map<String, String> env) {
+            this.daemon = daemon;
+            this.out = out;
+            this.err = err;
+            this.dir = dir;
+            this.env = env;
+        }
+    }
+
+    /**
+     * 按线程选择输出：任务线程写给对应的客户端，其他线程写到原来的控制台
+     */
+    private static class RoutingOutputStream extends OutputStream {
+        private final boolean err;
+        private final OutputStream console;
+
+        RoutingOutputStream(boolean err, OutputStream console) {
+            this.err = err;
+            this.console = console;
+        }
+
+        private OutputStream current() {
+            Job job = JOB.get();
+            if (job == null) {
+                return console;
+            }
+            return err ? job.err : job.out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            current().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            current().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            current().flush();
+        }
+    }
+
+    /**
+     * 把输出按帧写给客户端，客户端断开后丢弃输出，任务继续执行
+     */
+    private static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final int type;
+        private volatile boolean broken = false;
+
+        FrameOutputStream(DataOutputStream out, int type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (broken || len == 0) {
+                return;
+            }
+            synchronized (out) {
+                try {
+                    out.writeByte(type);
+                    out.writeInt(len);
+                    out.write(b, off, len);
+                } catch (IOException e) {
+                    broken = true;
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (broken) {
+                return;
+            }
+            synchronized (out) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    broken = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,649 @@
+package net.roseboy.classfinal;
+
+import net.roseboy.classfinal.util.HeapMonitor;
+import net.roseboy.classfinal.util.IoUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 加密过程的耗时和资源报告
+ * <p>
+ * 记录每个阶段的耗时、读写字节数、处理和跳过的类（含原因）、堆内存峰值和最慢的类，
+ * 可写出为JSON报告和Chrome trace-event文件（chrome://tracing 或 https://ui.perfetto.dev 打开）。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class EncryptReport {
+    //跳过原因：不在加密的包中（只计数）
+    public static final String SKIP_NOT_IN_PACKAGES = "not-in-packages";
+    //跳过原因：被排除
+    public static final String SKIP_EXCLUDED = "excluded";
+    //跳过原因：清空方法体失败（已加密，方法体保留）
+    public static final String SKIP_STUB_FAILED = "stub-failed";
+    //跳过原因：不是可以安全清空的类，方法体保留（只计数）
+    public static final String SKIP_STUB_KEPT = "stub-kept";
+    //跳过原因：框架的类未找到，配置文件读取时不能解密
+    public static final String SKIP_INJECT_FAILED = "inject-failed";
+    //跳过原因：与已加密的同名类内容相同，只加密一次（只计数）
+    public static final String SKIP_DUPLICATE = "duplicate";
+
+    //报告中最慢的类的数量
+    private static final int SLOWEST_CLASSES = 20;
+    //报告中列出的跳过的类的上限
+    private static final int MAX_SKIPPED = 1000;
+
+    private final long startNanos = System.nanoTime();
+    private final long startTime = System.currentTimeMillis();
+    //是否记录每个类的trace事件
+    private final boolean traceClasses;
+    private final List<Phase> phases = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, ClassStat> classes = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> skippedCount = new ConcurrentHashMap<>();
+    private final Queue<String[]> skipped = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger skippedListed = new AtomicInteger();
+    private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+    private final Queue<FileStat> minified = new ConcurrentLinkedQueue<>();
+    private final Map<String, PackageStat> stripped = new ConcurrentHashMap<>();
+
+    private String input;
+    private String output;
+    private int threads;
+    private boolean success;
+    private String error;
+    private long bytesRead;
+    private long bytesWritten;
+    private long peakHeapUsed;
+    private long totalNanos;
+
+    /**
+     * 构造方法
+     *
+     * @param input         要加密的jar/war
+     * @param threads       线程数
+     * @param traceClasses  是否记录每个类的trace事件
+     */
+    public EncryptReport(String input, int threads, boolean traceClasses) {
+        this.input = input;
+        this.threads = threads;
+        this.traceClasses = traceClasses;
+    }
+
+    /**
+     * 开始一个阶段，用 try-with-resources 结束
+     *
+     * @param name 阶段名
+     * @return 阶段
+     */
+    public Phase phase(String name) {
+        Phase phase = new Phase(name);
+        phases.add(phase);
+        return phase;
+    }
+
+    /**
+     * 记录一个类某个步骤的耗时
+     *
+     * @param className  类名
+     * @param step       步骤（encrypt/stub/stub-kept）
+     * @param start      开始时间 System.nanoTime()
+     * @param bytes      处理的字节数
+     */
+    public void classTime(String className, String step, long start, long bytes) {
+        long duration = System.nanoTime() - start;
+        ClassStat stat = classes.computeIfAbsent(className, ClassStat::new);
+        synchronized (stat) {
+            if (step.startsWith("stub")) {
+                stat.stubNanos += duration;
+                stat.stubbed |= "stub".equals(step);
+            } else {
+                stat.encryptNanos += duration;
+            }
+            stat.bytes = Math.max(stat.bytes, bytes);
+        }
+        if (traceClasses) {
+            events.add(new Event(className, step, start, duration));
+        }
+    }
+
+    /**
+     * 记录跳过的类，只计数
+     *
+     * @param reason 原因
+     */
+    public void skip(String reason) {
+        skippedCount.computeIfAbsent(reason, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    /**
+     * 记录跳过的类，计数并列出
+     *
+     * @param className 类名
+     * @param reason    原因
+     * @param detail    详细信息，可为null
+     */
+    public void skip(String className, String reason, String detail) {
+        skip(reason);
+        if (skippedListed.incrementAndGet() <= MAX_SKIPPED) {
+            skipped.add(new String[]{className, reason, detail});
+        }
+    }
+
+    /**
+     * 记录压缩的资源文件
+     *
+     * @param name   entry 名称
+     * @param before 压缩前的大小
+     * @param after  压缩后的大小
+     */
+    public void minified(String name, long before, long after) {
+        minified.add(new FileStat(name, before, after));
+    }
+
+    /**
+     * 压缩的资源文件，按名称排序
+     *
+     * @return 文件列表
+     */
+    public List<FileStat> getMinified() {
+        List<FileStat> list = new ArrayList<>(minified);
+        list.sort(Comparator.comparing(FileStat::getName));
+        return list;
+    }
+
+    /**
+     * 记录去掉调试信息前后的大小，按包汇总
+     *
+     * @param type      stub 或 payload
+     * @param className 类名
+     * @param before    去掉前的大小
+     * @param after     去掉后的大小
+     */
+    public void stripped(String type, String className, long before, long after) {
+        int dot = className.lastIndexOf('.');
+        String pkg = dot < 0 ? "" : className.substring(0, dot);
+        PackageStat stat = stripped.computeIfAbsent(type + " " + pkg, k -> new PackageStat(type, pkg));
+        stat.classes.incrementAndGet();
+        stat.before.addAndGet(before);
+        stat.after.addAndGet(after);
+    }
+
+    /**
+     * 去掉调试信息的统计，按类型和包名排序
+     *
+     * @return 每个包一条
+     */
+    public List<PackageStat> getStripped() {
+        List<PackageStat> list = new ArrayList<>(stripped.values());
+        list.sort(Comparator.comparing(PackageStat::getType).thenComparing(PackageStat::getName));
+        return list;
+    }
+
+    /**
+     * 加密结束
+     *
+     * @param output      输出文件，失败时为null
+     * @param error       异常，成功时为null
+     * @param peakHeap    堆内存峰值
+     */
+    public void finish(String output, Throwable error, long peakHeap) {
+        this.totalNanos = System.nanoTime() - startNanos;
+        this.output = output;
+        this.success = error == null;
+        this.error = error == null ? null : (error.getMessage() == null ? error.toString() : error.getMessage());
+        this.peakHeapUsed = peakHeap;
+        this.bytesRead = new File(input).length();
+        this.bytesWritten = output == null ? 0 : new File(output).length();
+    }
+
+    public List<Phase> getPhases() {
+        synchronized (phases) {
+            return new ArrayList<>(phases);
+        }
+    }
+
+    /**
+     * 查找阶段
+     *
+     * @param name 阶段名
+     * @return 阶段，没有时为null
+     */
+    public Phase getPhase(String name) {
+        for (Phase phase : getPhases()) {
+            if (phase.name.equals(name)) {
+                return phase;
+            }
+        }
+        return null;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public long getTotalMillis() {
+        return totalNanos / 1000000;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getPeakHeapUsed() {
+        return peakHeapUsed;
+    }
+
+    /**
+     * 某个原因跳过的类的数量
+     *
+     * @param reason 原因
+     * @return 数量
+     */
+    public int getSkippedCount(String reason) {
+        AtomicInteger n = skippedCount.get(reason);
+        return n == null ? 0 : n.get();
+    }
+
+    /**
+     * 耗时最长的类，按加密和清空方法体的总耗时倒序
+     *
+     * @return 类名列表
+     */
+    public List<String> getSlowestClasses() {
+        List<String> names = new ArrayList<>();
+        for (ClassStat stat : slowest()) {
+            names.add(stat.name);
+        }
+        return names;
+    }
+
+    private List<ClassStat> slowest() {
+        PriorityQueue<ClassStat> top = new PriorityQueue<>(Comparator.comparingLong(ClassStat::total));
+        for (ClassStat stat : classes.values()) {
+            top.add(stat);
+            if (top.size() > SLOWEST_CLASSES) {
+                top.poll();
+            }
+        }
+        List<ClassStat> list = new ArrayList<>(top);
+        list.sort(Comparator.comparingLong(ClassStat::total).reversed());
+        return list;
+    }
+
+    private int stubbedCount() {
+        int n = 0;
+        for (ClassStat stat : classes.values()) {
+            n += stat.stubbed ? 1 : 0;
+        }
+        return n;
+    }
+
+    /**
+     * 每个阶段的耗时摘要，用于日志输出
+     *
+     * @return 每行一个阶段
+     */
+    public List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        double total = Math.max(totalNanos, 1);
+        for (Phase phase : getPhases()) {
+            lines.add(String.format("%-8s %8.3f s %5.1f%%%s", phase.name, phase.duration / 1e9,
+                    phase.duration * 100 / total, phase.items.get() > 0 ? "  " + phase.items.get() + " 个文件" : ""));
+        }
+        Map<String, long[]> strippedTotal = new TreeMap<>();
+        for (PackageStat stat : getStripped()) {
+            long[] sum = strippedTotal.computeIfAbsent(stat.type, k -> new long[3]);
+            sum[0] += stat.classes.get();
+            sum[1] += stat.before.get();
+            sum[2] += stat.after.get();
+        }
+        strippedTotal.forEach((type, sum) -> lines.add(String.format("%-8s 去掉调试信息 %d 个类 %s -> %s", type,
+                sum[0], HeapMonitor.format(sum[1]), HeapMonitor.format(sum[2]))));
+        lines.add(String.format("%-8s %8.3f s, 堆内存峰值 %s", "total", totalNanos / 1e9,
+                HeapMonitor.format(peakHeapUsed)));
+        return lines;
+    }
+
+    /**
+     * 写出JSON报告
+     *
+     * @param file 文件
+     */
+    public void writeJson(File file) {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("{\n");
+        sb.append("  \"input\": ").append(json(input)).append(",\n");
+        sb.append("  \"output\": ").append(json(output)).append(",\n");
+        sb.append("  \"success\": ").append(success).append(",\n");
+        sb.append("  \"error\": ").append(json(error)).append(",\n");
+        sb.append("  \"startTime\": ").append(json(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ")
+                .format(new Date(startTime)))).append(",\n");
+        sb.append("  \"threads\": ").append(threads).append(",\n");
+        sb.append("  \"totalMillis\": ").append(millis(totalNanos)).append(",\n");
+        sb.append("  \"bytesRead\": ").append(bytesRead).append(",\n");
+        sb.append("  \"bytesWritten\": ").append(bytesWritten).append(",\n");
+        sb.append("  \"peakHeapBytes\": ").append(peakHeapUsed).append(",\n");
+
+        sb.append("  \"phases\": [");
+        List<Phase> list = getPhases();
+        for (int i = 0; i < list.size(); i++) {
+            Phase phase = list.get(i);
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("    {\"name\": ").append(json(phase.name))
+                    .append(", \"startMillis\": ").append(millis(phase.start - startNanos))
+                    .append(", \"millis\": ").append(millis(phase.duration))
+                    .append(", \"files\": ").append(phase.items.get())
+                    .append(", \"bytesRead\": ").append(phase.bytesRead.get())
+                    .append(", \"bytesWritten\": ").append(phase.bytesWritten.get()).append("}");
+        }
+        sb.append(list.isEmpty() ? "],\n" : "\n  ],\n");
+
+        sb.append("  \"classes\": {\"encrypted\": ").append(classes.size())
+                .append(", \"stubbed\": ").append(stubbedCount()).append(", \"skipped\": {");
+        int i = 0;
+        for (Map.Entry<String, AtomicInteger> entry : new TreeMap<>(skippedCount).entrySet()) {
+            sb.append(i++ == 0 ? "" : ", ").append(json(entry.getKey())).append(": ").append(entry.getValue().get());
+        }
+        sb.append("}},\n");
+
+        sb.append("  \"skipped\": [");
+        i = 0;
+        for (String[] skip : skipped) {
+            sb.append(i++ == 0 ? "\n" : ",\n");
+            sb.append("    {\"class\": ").append(json(skip[0])).append(", \"reason\": ").append(json(skip[1]))
+                    .append(", \"detail\": ").append(json(skip[2])).append("}");
+        }
+        sb.append(i == 0 ? "],\n" : "\n  ],\n");
+
+        sb.append("  \"slowestClasses\": [");
+        i = 0;
+        for (ClassStat stat : slowest()) {
+            sb.append(i++ == 0 ? "\n" : ",\n");
+            sb.append("    {\"class\": ").append(json(stat.name))
+                    .append(", \"encryptMillis\": ").append(millis(stat.encryptNanos))
+                    .append(", \"stubMillis\": ").append(millis(stat.stubNanos))
+                    .append(", \"bytes\": ").append(stat.bytes).append("}");
+        }
+        sb.append(i == 0 ? "],\n" : "\n  ],\n");
+
+        sb.append("  \"minified\": [");
+        i = 0;
+        for (FileStat stat : getMinified()) {
+            sb.append(i++ == 0 ? "\n" : ",\n");
+            sb.append("    {\"file\": ").append(json(stat.name))
+                    .append(", \"before\": ").append(stat.before)
+                    .append(", \"after\": ").append(stat.after).append("}");
+        }
+        sb.append(i == 0 ? "],\n" : "\n  ],\n");
+
+        sb.append("  \"debugInfo\": [");
+        i = 0;
+        for (PackageStat stat : getStripped()) {
+            sb.append(i++ == 0 ? "\n" : ",\n");
+            sb.append("    {\"type\": ").append(json(stat.type))
+                    .append(", \"package\": ").append(json(stat.name))
+                    .append(", \"classes\": ").append(stat.classes.get())
+                    .append(", \"before\": ").append(stat.before.get())
+                    .append(", \"after\": ").append(stat.after.get()).append("}");
+        }
+        sb.append(i == 0 ? "]\n" : "\n  ]\n");
+        sb.append("}\n");
+        write(file, sb);
+    }
+
+    /**
+     * 写出Chrome trace-event文件
+     *
+     * @param file 文件
+     */
+    public void writeTrace(File file) {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("{\"displayTimeUnit\": \"ms\", \"traceEvents\": [\n");
+        sb.append("{\"name\": \"process_name\", \"ph\": \"M\", \"pid\": 1, \"args\": {\"name\": ")
+                .append(json("classfinal " + new File(input).getName())).append("}}");
+        Set<Long> threadIds = new HashSet<>();
+        for (Phase phase : getPhases()) {
+            threadName(sb, threadIds, phase.tid, phase.threadName);
+            event(sb, phase.name, "phase", phase.tid, phase.start, phase.duration,
+                    "{\"files\": " + phase.items.get() + ", \"bytesRead\": " + phase.bytesRead.get()
+                            + ", \"bytesWritten\": " + phase.bytesWritten.get() + "}");
+        }
+        for (Event event : events) {
+            threadName(sb, threadIds, event.tid, event.threadName);
+            event(sb, event.name, event.category, event.tid, event.start, event.duration, null);
+        }
+        sb.append("\n]}\n");
+        write(file, sb);
+    }
+
+    private void threadName(StringBuilder sb, Set<Long> threadIds, long tid, String name) {
+        if (threadIds.add(tid)) {
+            sb.append(",\n{\"name\": \"thread_name\", \"ph\": \"M\", \"pid\": 1, \"tid\": ").append(tid)
+                    .append(", \"args\": {\"name\": ").append(json(name)).append("}}");
+        }
+    }
+
+    private void event(StringBuilder sb, String name, String category, long tid, long start, long duration,
+                       String args) {
+        sb.append(",\n{\"name\": ").append(json(name)).append(", \"cat\": ").append(json(category))
+                .append(", \"ph\": \"X\", \"pid\": 1, \"tid\": ").append(tid)
+                .append(", \"ts\": ").append((start - startNanos) / 1000)
+                .append(", \"dur\": ").append(Math.max(duration / 1000, 1));
+        if (args != null) {
+            sb.append(", \"args\": ").append(args);
+        }
+        sb.append("}");
+    }
+
+    private static void write(File file, StringBuilder sb) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        IoUtils.writeFile(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static String json(String s) {
+        if (s == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * 加密的一个阶段
+     */
+    public class Phase implements AutoCloseable {
+        private final String name;
+        private final long start = System.nanoTime();
+        private final long tid = Thread.currentThread().getId();
+        private final String threadName = Thread.currentThread().getName();
+        private final AtomicLong bytesRead = new AtomicLong();
+        private final AtomicLong bytesWritten = new AtomicLong();
+        private final AtomicInteger items = new AtomicInteger();
+        private long duration;
+
+        Phase(String name) {
+            this.name = name;
+        }
+
+        /**
+         * 增加读取的字节数
+         *
+         * @param bytes 字节数
+         */
+        public void read(long bytes) {
+            bytesRead.addAndGet(bytes);
+        }
+
+        /**
+         * 增加写入的字节数
+         *
+         * @param bytes 字节数
+         */
+        public void written(long bytes) {
+            bytesWritten.addAndGet(bytes);
+        }
+
+        /**
+         * 增加处理的文件数
+         *
+         * @param n 数量
+         */
+        public void items(int n) {
+            items.addAndGet(n);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getMillis() {
+            return duration / 1000000;
+        }
+
+        public long getBytesRead() {
+            return bytesRead.get();
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten.get();
+        }
+
+        public int getFiles() {
+            return items.get();
+        }
+
+        @Override
+        public void close() {
+            duration = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * 一个类的耗时
+     */
+    private static class ClassStat {
+        private final String name;
+        private long encryptNanos;
+        private long stubNanos;
+        private long bytes;
+        private boolean stubbed;
+
+        ClassStat(String name) {
+            this.name = name;
+        }
+
+        long total() {
+            return encryptNanos + stubNanos;
+        }
+    }
+
+    /**
+     * trace中的一个类事件
+     */
+    private static class Event {
+        private final String name;
+        private final String category;
+        private final long start;
+        private final long duration;
+        private final long tid = Thread.currentThread().getId();
+        private final String threadName = Thread.currentThread().getName();
+
+        Event(String name, String category, long start, long duration) {
+            this.name = name;
+            this.category = category;
+            this.start = start;
+            this.duration = duration;
+        }
+    }
+
+    /**
+     * 一个压缩的资源文件
+     */
+    public static class FileStat {
+        private final String name;
+        private final long before;
+        private final long after;
+
+        FileStat(String name, long before, long after) {
+            this.name = name;
+            this.before = before;
+            this.after = after;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getBefore() {
+            return before;
+        }
+
+        public long getAfter() {
+            return after;
+        }
+    }
+
+    /**
+     * 一个包去掉调试信息前后的大小
+     */
+    public static class PackageStat {
+        private final String type;
+        private final String name;
+        private final AtomicInteger classes = new AtomicInteger();
+        private final AtomicLong before = new AtomicLong();
+        private final AtomicLong after = new AtomicLong();
+
+        PackageStat(String type, String name) {
+            this.type = type;
+            this.name = name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getClasses() {
+            return classes.get();
+        }
+
+        public long getBefore() {
+            return before.get();
+        }
+
+        public long getAfter() {
+            return after.get();
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package net.roseboy.classfinal;
+
+import net.roseboy.classfinal.util.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 监视构建输出，变化后增量更新加密后的jar
+ * <p>
+ * 记录输入jar中每个entry的crc，变化时只重新加密、清空变化的类，其他entry从上次的输出中原样复制压缩数据。
+ * 也可以监视 classes 目录，编译后直接更新对应的类，不需要重新打包。
+ * 依赖的jar、MANIFEST.MF、需要加密的配置文件和 classfinal 自身的类变化时完整重新加密。
+ * 增量更新沿用首次加密的密码（包括无密码模式生成的密码）。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class EncryptWatcher implements Closeable {
+    //jar中class文件所在的目录
+    private static final String[] CLASSES_PREFIX = {"BOOT-INF/classes/", "WEB-INF/classes/"};
+    //加密后的class存放的目录
+    private static final String ENCRYPT_PREFIX = "META-INF/" + Const.FILE_NAME + "/";
+    //加密时写入的classfinal代码所在的目录
+    private static final String AGENT_PREFIX = CoreAgent.class.getPackage().getName().replace('.', '/') + "/";
+
+    private final JarEncryptor encryptor;
+    private final File input;
+    //监视的classes目录，可为null
+    private File classesDir = null;
+    //最后一次变化后等待多久再更新(毫秒)，避免文件写到一半
+    private long quietPeriod = 500;
+
+    //加密后的jar
+    private File output;
+    //输入jar的entry名称 -> crc
+    private Map<String, Long> snapshot = new HashMap<>();
+    //输入jar中class文件所在的目录
+    private String classesPrefix = "";
+    private WatchService watchService;
+    private final Map<WatchKey, Path> watchDirs = new HashMap<>();
+    private volatile boolean closed = false;
+
+    /**
+     * 构造方法
+     *
+     * @param encryptor 配置好的加密器
+     */
+    public EncryptWatcher(JarEncryptor encryptor) {
+        this.encryptor = encryptor;
+        this.input = new File(encryptor.getJarPath()).getAbsoluteFile();
+    }
+
+    /**
+     * 完整加密，并记录输入jar的内容
+     *
+     * @return 加密后的jar路径
+     */
+    public String build() {
+        Map<String, Long> crcs = crcs(this.input);
+        String result = this.encryptor.doEncryptJar();
+        this.output = new File(result);
+        this.snapshot = crcs;
+        this.classesPrefix = "";
+        for (String prefix : CLASSES_PREFIX) {
+            if (crcs.keySet().stream().anyMatch(name -> name.startsWith(prefix))) {
+                this.classesPrefix = prefix;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 比较输入jar和上次的记录，增量更新变化的entry，不能增量更新时完整加密
+     *
+     * @return 增量更新的entry数量，完整加密时返回-1
+     */
+    public int update() {
+        Map<String, Long> crcs = crcs(this.input);
+        Map<String, byte[]> changed = new LinkedHashMap<>();
+        Set<String> removed = new HashSet<>(this.snapshot.keySet());
+        removed.removeAll(crcs.keySet());
+        try (ZipFile zip = new ZipFile(this.input)) {
+            for (Map.Entry<String, Long> entry : crcs.entrySet()) {
+                if (entry.getValue().equals(this.snapshot.get(entry.getKey()))) {
+                    continue;
+                }
+                if (!isIncremental(entry.getKey())) {
+                    return rebuild(entry.getKey());
+                }
+                changed.put(entry.getKey(), IoUtils.toBytes(zip.getInputStream(zip.getEntry(entry.getKey()))));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("读取文件失败: " + this.input, e);
+        }
+        for (String name : removed) {
+            if (!isIncremental(name)) {
+                return rebuild(name);
+            }
+        }
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return 0;
+        }
+        apply(changed, removed);
+        this.snapshot = crcs;
+        return changed.size() + removed.size();
+    }
+
+    /**
+     * 把classes目录中变化的class更新到加密后的jar中，不修改输入jar
+     *
+     * @param files 变化的class文件，不存在的视为删除
+     * @return 更新的entry数量
+     */
+    public int updateClasses(Collection<File> files) {
+        Map<String, byte[]> changed = new LinkedHashMap<>();
+        Set<String> removed = new HashSet<>();
+        Path root = this.classesDir.toPath().toAbsolutePath();
+        for (File file : files) {
+            String name = this.classesPrefix
+                    + root.relativize(file.toPath().toAbsolutePath()).toString().replace(File.separatorChar, '/');
+            if (!name.endsWith(".class") || !isIncremental(name)) {
+                continue;
+            }
+            if (file.isFile()) {
+                changed.put(name, IoUtils.readFileToByte(file));
+            } else {
+                removed.add(name);
+            }
+        }
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return 0;
+        }
+        apply(changed, removed);
+        return changed.size() + removed.size();
+    }
+
+    /**
+     * 阻塞监视输入jar和classes目录，直到close
+     *
+     * @throws IOException IOException
+     */
+    public void watch() throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        register(this.input.getParentFile().toPath(), false);
+        if (this.classesDir != null) {
+            register(this.classesDir.toPath().toAbsolutePath(), true);
+        }
+        Log.println("正在监视: " + this.input + (this.classesDir == null ? "" : ", " + this.classesDir));
+        try {
+            while (!this.closed) {
+                boolean jarChanged = false;
+                Set<File> classFiles = new LinkedHashSet<>();
+                //等待第一个变化，之后直到一段时间内没有新的变化
+                WatchKey key = this.watchService.take();
+                while (key != null) {
+                    Path dir = this.watchDirs.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (dir == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            continue;
+                        }
+                        Path path = dir.resolve((Path) event.context());
+                        if (path.toFile().getAbsoluteFile().equals(this.input)) {
+                            jarChanged = true;
+                        } else if (this.classesDir != null && path.startsWith(this.classesDir.toPath().toAbsolutePath())) {
+                            if (Files.isDirectory(path)) {
+                                //新建的目录，注册之前已经写入的文件也要更新
+                                register(path, true);
+                                List<File> created = new ArrayList<>();
+                                IoUtils.listFile(created, path.toFile(), ".class");
+                                classFiles.addAll(created);
+                            } else {
+                                classFiles.add(path.toFile());
+                            }
+                        }
+                    }
+                    if (!key.reset()) {
+                        this.watchDirs.remove(key);
+                    }
+                    key = this.watchService.poll(this.quietPeriod, TimeUnit.MILLISECONDS);
+                }
+                onChange(jarChanged, classFiles);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            //close
+        }
+    }
+
+    /**
+     * 处理一次变化，失败时继续监视
+     */
+    private void onChange(boolean jarChanged, Set<File> classFiles) {
+        long start = System.currentTimeMillis();
+        try {
+            int count;
+            if (jarChanged) {
+                if (!this.input.exists()) {
+                    return;
+                }
+                count = update();
+            } else if (!classFiles.isEmpty()) {
+                count = updateClasses(classFiles);
+            } else {
+                return;
+            }
+            if (count == 0) {
+                return;
+            }
+            String mode = count < 0 ? "完整加密" : "增量更新 " + count + " 个文件";
+            Log.println(mode + "，耗时 " + (System.currentTimeMillis() - start) + " ms ==>" + this.output);
+        } catch (Exception e) {
+            Log.println("ERROR: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 完整加密
+     */
+    private int rebuild(String reason) {
+        Log.info("需要完整加密: " + reason);
+        build();
+        return -1;
+    }
+
+    /**
+     * 这个entry变化后能否增量更新
+     */
+    private boolean isIncremental(String name) {
+        if (name.endsWith("/")) {
+            return true;
+        }
+        if (name.toLowerCase().endsWith(".jar") || "META-INF/MANIFEST.MF".equalsIgnoreCase(name)
+                || name.startsWith(ENCRYPT_PREFIX) || name.startsWith(AGENT_PREFIX)) {
+            return false;
+        }
+        return !this.encryptor.isConfigFile(name.substring(name.lastIndexOf('/') + 1));
+    }
+
+    /**
+     * 加密变化的类，和上次输出中未变化的entry一起写入新的jar
+     *
+     * @param changed 变化或新增的entry
+     * @param removed 删除的entry
+     */
+    private void apply(Map<String, byte[]> changed, Set<String> removed) {
+        if (this.output == null || !this.output.exists()) {
+            build();
+            return;
+        }
+        //需要替换或删除的entry，值为null表示删除
+        Map<String, byte[]> updates = new LinkedHashMap<>();
+        removed.forEach(name -> {
+            updates.put(name, null);
+            String className = className(name);
+            if (className != null) {
+                updates.put(ENCRYPT_PREFIX + className, null);
+            }
+        });
+        changed.forEach((name, bytes) -> {
+            String className = className(name);
+            if (className == null || !this.encryptor.isEncryptClass(className)) {
+                updates.put(name, minify(name, bytes));
+                return;
+            }
+            updates.put(ENCRYPT_PREFIX + className,
+                    this.encryptor.encryptBytes(this.encryptor.compressPayload(
+                            this.encryptor.stripPayload(bytes, className)), className));
+            byte[] stub = bytes;
+            try {
+                stub = ClassUtils.rewriteAllMethods(bytes);
+                if (stub != bytes) {
+                    stub = this.encryptor.stripStub(stub, className);
+                }
+            } catch (Exception e) {
+                Log.debug("ERROR:[" + className + "]" + e.getMessage());
+            }
+            updates.put(name, stub);
+            Log.debug("加密：" + className);
+        });
+
+        CompressionPolicy policy = this.encryptor.getCompressionPolicy();
+        long time = System.currentTimeMillis();
+        File temp = new File(this.output.getAbsolutePath() + ".tmp");
+        try (ZipIndex previous = ZipIndex.read(this.output)) {
+            try (JarWriter writer = new JarWriter(temp, null)) {
+                if (this.encryptor.getMemoryLimit() > 0) {
+                    writer.setMemoryLimit(this.encryptor.getMemoryLimit());
+                }
+                if (this.encryptor.getOutputTimestamp() >= 0) {
+                    writer.setFixedTime(this.encryptor.getOutputTimestamp());
+                }
+                //上次的entry按原顺序写入，新增的放在最后
+                for (ZipIndex.Entry entry : previous.getEntries()) {
+                    if (!updates.containsKey(entry.getName())) {
+                        writer.addRaw(previous, entry);
+                        continue;
+                    }
+                    byte[] bytes = updates.remove(entry.getName());
+                    if (bytes != null) {
+                        addBytes(writer, policy, entry.getName(), bytes, time);
+                    }
+                }
+                for (Map.Entry<String, byte[]> entry : updates.entrySet()) {
+                    if (entry.getValue() != null) {
+                        addBytes(writer, policy, entry.getKey(), entry.getValue(), time);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw new RuntimeException("打包失败: " + this.output.getAbsolutePath(), e);
+        }
+        try {
+            Files.move(temp.toPath(), this.output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("打包失败: " + this.output.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * 和完整加密一样压缩模板和静态资源
+     */
+    private byte[] minify(String name, byte[] bytes) {
+        ResourceMinifier minifier = this.encryptor.getResourceMinifier();
+        if (minifier == null || !minifier.accept(name)) {
+            return bytes;
+        }
+        byte[] minified = minifier.minify(name, bytes);
+        return minified == null ? bytes : minified;
+    }
+
+    private static void addBytes(JarWriter writer, CompressionPolicy policy, String name, byte[] bytes, long time)
+            throws IOException {
+        int level = policy.getLevel(name);
+        if (level == CompressionPolicy.STORED) {
+            writer.addBytes(name, bytes, ZipEntry.STORED, 0, time);
+        } else {
+            writer.addBytes(name, bytes, ZipEntry.DEFLATED, level, time);
+        }
+    }
+
+    /**
+     * entry对应的类名，不是class文件时返回null
+     */
+    private static String className(String name) {
+        if (!name.endsWith(".class")) {
+            return null;
+        }
+        for (String prefix : CLASSES_PREFIX) {
+            if (name.startsWith(prefix)) {
+                name = name.substring(prefix.length());
+                break;
+            }
+        }
+        return name.substring(0, name.length() - 6).replace('/', '.');
+    }
+
+    /**
+     * 读取jar中所有文件的crc
+     */
+    private static Map<String, Long> crcs(File jar) {
+        Map<String, Long> crcs = new LinkedHashMap<>();
+        try (ZipFile zip = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    crcs.put(entry.getName(), entry.getCrc());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("读取文件失败: " + jar, e);
+        }
+        return crcs;
+    }
+
+    /**
+     * 监视目录，recursive时包括所有子目录
+     */
+    private void register(Path dir, boolean recursive) throws IOException {
+        if (!recursive) {
+            this.watchDirs.put(dir.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY), dir);
+            return;
+        }
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                watchDirs.put(d.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * 停止监视
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        IoUtils.close(this.watchService);
+    }
+
+    public File getOutput() {
+        return output;
+    }
+
+    public void setClassesDir(File classesDir) {
+        this.classesDir = classesDir;
+    }
+
+    public void setQuietPeriod(long quietPeriod) {
+        this.quietPeriod = quietPeriod;
+    }
+}
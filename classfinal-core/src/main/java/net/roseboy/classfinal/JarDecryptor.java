@@ -3,9 +3,13 @@ package net.roseboy.classfinal;
 
 import net.roseboy.classfinal.util.*;
 
+import javax.crypto.Cipher;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * java class解密
@@ -19,6 +23,10 @@ public class JarDecryptor {
     private char[] code;
     //加密后文件存放位置
     private static final String ENCRYPT_PATH = "META-INF/" + Const.FILE_NAME + "/";
+    //项目路径 -> 解密后的压缩字典
+    private final Map<String, byte[]> dictionaries = new ConcurrentHashMap<>();
+    //项目路径 -> 从密钥表中解开的内容密钥，没有绑定机器码时为空数组
+    private final Map<String, char[]> machineKeys = new ConcurrentHashMap<>();
 
     /**
      * 单例
@@ -33,7 +41,16 @@ public class JarDecryptor {
      * 构造
      */
     public JarDecryptor() {
-        this.code = SysUtils.makeMarchinCode();
+        this(SysUtils.makeMarchinCode());
+    }
+
+    /**
+     * 构造
+     *
+     * @param code 本机的机器码
+     */
+    JarDecryptor(char[] code) {
+        this.code = code;
     }
 
     /**
@@ -52,7 +69,7 @@ public class JarDecryptor {
             return null;
         }
 
-        //读取机器码，有机器码，先用机器码解密
+        //读取机器码，有机器码时校验
         byte[] codeBytes = readEncryptedFile(workDir, Const.CONFIG_CODE);
         if (codeBytes != null) {
             //本机器码和打包的机器码不匹配
@@ -60,10 +77,6 @@ public class JarDecryptor {
                 Log.println("该项目不可在此机器上运行!\n");
                 System.exit(-1);
             }
-
-            //用机器码解密
-            char[] pass = StrUtils.merger(fileName.toCharArray(), code);
-            bytes = EncryptUtils.de(bytes, pass, Const.ENCRYPT_TYPE);
         }
 
         //无密码启动,读取隐藏的密码
@@ -71,10 +84,23 @@ public class JarDecryptor {
             Const.NO_PASSWORD_MARKER.equals(new String(password))) {
             password = readPassFromJar(workDir);
         }
+        char[] pwd = password;
+
+        //绑定机器码的密钥表，每个项目只解开一次
+        char[] machineKey = machineKeys.computeIfAbsent(projectPath, path -> readMachineKey(workDir));
+        if (machineKey.length > 0) {
+            password = StrUtils.merger(password, machineKey);
+        }
 
-        //密码解密
-        char[] pass = StrUtils.merger(password, fileName.toCharArray());
-        bytes = EncryptUtils.de(bytes, pass, Const.ENCRYPT_TYPE);
+        //旧版本先用机器码解密，再用密码解密
+        bytes = decrypt(bytes, fileName, password, codeBytes == null ? null : this.code);
+
+        //加密前用字典压缩过，解压
+        if (PayloadCompressor.isCompressed(bytes)) {
+            byte[] dictionary = dictionaries.computeIfAbsent(projectPath,
+                    path -> doDecrypt(path, Const.CONFIG_DICT, pwd));
+            bytes = PayloadCompressor.decompress(bytes, dictionary);
+        }
 
         long t2 = System.currentTimeMillis();
         Log.debug("解密: " + fileName + " (" + (t2 - t1) + " ms)");
@@ -83,6 +109,41 @@ public class JarDecryptor {
 
     }
 
+    /**
+     * 用本机的机器码从密钥表中解开内容密钥，本机不在表中时退出
+     *
+     * @param workDir jar路径
+     * @return 内容密钥，没有绑定机器码时为空数组
+     */
+    private char[] readMachineKey(File workDir) {
+        byte[] table = readEncryptedFile(workDir, Const.CONFIG_KEYS);
+        if (table == null) {
+            return new char[0];
+        }
+        char[] machineKey = MachineKeyTable.unwrap(table, this.code);
+        if (machineKey == null) {
+            Log.println("该项目不可在此机器上运行!\n");
+            System.exit(-1);
+        }
+        return machineKey;
+    }
+
+    /**
+     * 解密一个文件，有机器码时先用机器码解密，再用密码解密
+     *
+     * @param bytes    加密后的字节
+     * @param fileName 类名或文件名
+     * @param password 密码，绑定机器码时后面加上密钥表中的内容密钥
+     * @param code     旧版本绑定的机器码，为null时没有绑定机器或使用密钥表
+     * @return 解密后的字节，压缩过的类需要再解压
+     */
+    public static byte[] decrypt(byte[] bytes, String fileName, char[] password, char[] code) {
+        if (code != null) {
+            bytes = EncryptUtils.de(bytes, StrUtils.merger(fileName.toCharArray(), code), Const.ENCRYPT_TYPE);
+        }
+        return EncryptUtils.de(bytes, StrUtils.merger(password, fileName.toCharArray()), Const.ENCRYPT_TYPE);
+    }
+
     /**
      * 在jar文件或目录中读取文件字节
      *
@@ -120,6 +181,25 @@ public class JarDecryptor {
         return null;
     }
 
+    /**
+     * 公钥模式，用私钥解开随jar发布的内容密钥，作为解密用的密码
+     *
+     * @param workDir    jar路径
+     * @param privateKey RSA私钥（base64或PEM）
+     * @return 内容密钥，不是公钥模式时为null
+     */
+    public static char[] openEnvelope(File workDir, String privateKey) {
+        byte[] envelope = readEncryptedFile(workDir, Const.CONFIG_ENVELOPE);
+        if (envelope == null) {
+            return null;
+        }
+        try {
+            return StrUtils.toChars(EncryptUtils.rsa(envelope, EncryptUtils.privateKey(privateKey), Cipher.DECRYPT_MODE));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("私钥和加密时的公钥不匹配", e);
+        }
+    }
+
     /**
      * 解密配置文件，spring读取文件时调用
      *
@@ -1,11 +1,19 @@
 package net.roseboy.classfinal;
 
-import javassist.ClassPool;
-import javassist.NotFoundException;
 import net.roseboy.classfinal.util.*;
 
+import javax.crypto.Cipher;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 /**
  * java class加密
@@ -29,6 +37,10 @@ public class JarEncryptor {
         aopMap.put("jfinal.line", "62");
     }
 
+    //读取配置文件时注入解密功能的框架
+    //static final String[] CONFIG_FRAMES = {"spring", "jfinal"};
+    static final String[] CONFIG_FRAMES = {"spring"};
+
     //要加密的jar或war
     private String jarPath = null;
     //要加密的包，多个用逗号隔开
@@ -43,8 +55,48 @@ public class JarEncryptor {
     private List<String> cfgfiles = null;
     //密码
     private char[] password = null;
-    //机器码
+    //调用方传入的密码，重复执行时从这个密码开始
+    private char[] inputPassword = null;
+    //机器码，多台机器用逗号分隔
     private char[] code = null;
+    //并行线程数
+    private int threads = 1;
+    //javassist每批处理的类数量，处理完一批丢弃ClassPool中的缓存
+    private int batchSize = ClassPoolScope.DEFAULT_BATCH_SIZE;
+    //打包时的压缩策略
+    private CompressionPolicy compressionPolicy = new CompressionPolicy();
+    //classpath索引的缓存文件，为null时不缓存
+    private File classPathCache = null;
+    //打包时内存中待写入数据的上限(字节)，0为默认值
+    private long memoryLimit = 0;
+    //调用方共用的jar包列表缓存（批量加密）
+    private ClassPathIndex.Cache indexCache = null;
+    //调用方共用的线程池（批量加密）
+    private ForkJoinPool sharedPool = null;
+    //JSON报告文件，为null时不写出
+    private File reportFile = null;
+    //Chrome trace-event文件，为null时不写出
+    private File traceFile = null;
+    //可重现构建：所有entry的固定修改时间(毫秒)，小于0时不启用
+    private long outputTimestamp = -1;
+    //模板和静态资源压缩，为null时不压缩
+    private ResourceMinifier resourceMinifier = null;
+    //清空方法体后的class去掉的调试信息
+    private DebugInfoStripper stubDebugInfo = DebugInfoStripper.parse(null);
+    //加密前的class去掉的调试信息
+    private DebugInfoStripper payloadDebugInfo = DebugInfoStripper.parse(null);
+    //加密前用从jar中生成的字典压缩class
+    private boolean compressPayload = false;
+    //加密class使用的算法，见 CipherSuite
+    private int cipherSuite = Const.ENCRYPT_TYPE;
+    //压缩class的预置字典，为null时不压缩
+    private byte[] payloadDictionary = null;
+    //RSA公钥，设置后为公钥模式：随机生成内容密钥加密，只保存用公钥加密后的内容密钥
+    private String publicKey = null;
+    //公钥加密后的内容密钥
+    private byte[] envelope = null;
+    //绑定机器码时的内容密钥，和密码一起加密类，用每个机器码加密后放在密钥表中
+    private char[] machineKey = null;
 
     //jar还是war
     private String jarOrWar = null;
@@ -56,8 +108,23 @@ public class JarEncryptor {
     private File targetClassesDir = null;
     //加密的文件数量
     private Integer encryptFileCount = null;
+    //预编译的匹配规则
+    private PatternMatcher packageMatcher = PatternMatcher.compile(null);
+    private PatternMatcher includeJarMatcher = PatternMatcher.compile(null);
+    private PatternMatcher excludeClassMatcher = PatternMatcher.compile(null);
+    private PatternMatcher cfgfileMatcher = PatternMatcher.compile(null);
     //存储解析出来的类名和路径
-    private Map<String, String> resolveClassName = new HashMap<>();
+    private Map<String, String> resolveClassName = new ConcurrentHashMap<>();
+    //并行处理的线程池，单线程时为null
+    private ForkJoinPool workerPool = null;
+    //本次加密的ClassPool
+    private ClassPoolScope classPoolScope = null;
+    //本次加密的堆内存峰值
+    private long peakHeapUsed = 0;
+    //本次加密的耗时和资源报告
+    private EncryptReport report = null;
+    //内容与已加密的同名类相同的class文件 -> 第一次出现的文件，只加密、清空一次
+    private Map<File, File> duplicateClasses = new HashMap<>();
 
     /**
      * 构造方法
@@ -69,6 +136,8 @@ public class JarEncryptor {
         super();
         this.jarPath = jarPath;
         this.password = password;
+        this.inputPassword = password;
+        this.report = new EncryptReport(jarPath, 1, false);
     }
 
     /**
@@ -83,8 +152,16 @@ public class JarEncryptor {
         if (!new File(jarPath).exists()) {
             throw new RuntimeException("文件不存在:" + jarPath);
         }
+        //无密码模式会替换为生成的密码，重复执行时重新生成
+        this.password = this.inputPassword;
+        this.duplicateClasses = new HashMap<>();
+        this.payloadDictionary = null;
+        this.envelope = null;
+        this.machineKey = null;
         // 允许空密码（无密码模式）
-        if (password != null && password.length > 0) {
+        if (StrUtils.isNotEmpty(this.publicKey)) {
+            Log.debug("加密模式：公钥");
+        } else if (password != null && password.length > 0) {
             String pwd = new String(password);
             if (Const.NO_PASSWORD_MARKER.equals(pwd)) {
                 Log.debug("加密模式：无密码");
@@ -92,7 +169,7 @@ public class JarEncryptor {
         } else {
             Log.debug("加密模式：无密码");
         }
-        Log.debug("机器绑定：" + (StrUtils.isEmpty(this.code) ? "否" : "是"));
+        Log.debug("机器绑定：" + (StrUtils.isEmpty(this.code) ? "否" : MachineKeyTable.parse(this.code).size() + " 台"));
 
         this.jarOrWar = jarPath.substring(jarPath.lastIndexOf(".") + 1);
         Log.debug("加密类型：" + jarOrWar);
@@ -104,58 +181,198 @@ public class JarEncryptor {
                 + File.separator + "classes");
         Log.debug("临时目录：" + targetDir);
 
-        //[1]释放所有文件
-        List<String> allFile = JarUtils.unJar(jarPath, this.targetDir.getAbsolutePath());
-        allFile.forEach(s -> Log.debug("释放：" + s));
-        //[1.1]内部jar只释放需要加密的jar
-        List<String> libJarFiles = new ArrayList<>();
+        //批量加密时线程池、jar包列表缓存和堆内存统计由调用方管理
+        boolean shared = this.sharedPool != null;
+        if (!shared) {
+            HeapMonitor.start();
+        }
+        ClassPathIndex.Cache cache = this.indexCache;
+        if (cache == null && this.classPathCache != null) {
+            cache = ClassPathIndex.Cache.load(this.classPathCache);
+        }
+        this.workerPool = shared ? this.sharedPool : ParallelUtils.newPool(this.threads);
+        this.classPoolScope = new ClassPoolScope(cache);
+        this.report = new EncryptReport(jarPath, this.threads, this.traceFile != null);
+        String result = null;
+        Throwable failure = null;
+        try {
+            //[1]释放所有文件
+            List<String> allFile;
+            try (EncryptReport.Phase phase = this.report.phase("unJar")) {
+                allFile = ArchiveUtils.unJar(jarPath, this.targetDir.getAbsolutePath());
+                allFile.forEach(s -> Log.debug("释放：" + s));
+                phase.read(new File(jarPath).length());
+                phase.written(IoUtils.length(allFile));
+                phase.items(allFile.size());
+            }
+            result = encryptAllFile(allFile);
+            return result;
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            if (!shared) {
+                ParallelUtils.shutdown(this.workerPool);
+            }
+            this.workerPool = null;
+            IoUtils.close(this.classPoolScope);
+            this.classPoolScope = null;
+            if (this.indexCache == null && cache != null) {
+                cache.save(this.classPathCache);
+            }
+            //失败时删除临时目录，重新执行时从头开始
+            if (result == null) {
+                IoUtils.delete(this.targetDir);
+            }
+            ArchiveUtils.release(this.targetDir.getAbsolutePath());
+            this.peakHeapUsed = HeapMonitor.getPeakUsed();
+            if (!shared) {
+                Log.debug("堆内存峰值：" + HeapMonitor.format(this.peakHeapUsed));
+            }
+            this.report.finish(result, failure, this.peakHeapUsed);
+            writeReport();
+        }
+    }
+
+    /**
+     * 并行压缩模板和静态资源，结果直接写回释放出的文件
+     *
+     * @param files 释放出的文件
+     * @param phase 统计
+     */
+    private void minifyResources(List<String> files, EncryptReport.Phase phase) {
+        String root = this.targetDir.getAbsolutePath() + File.separator;
+        List<String> resources = new ArrayList<>();
+        files.forEach(path -> {
+            if (path.startsWith(root) && this.resourceMinifier.accept(entryName(root, path))) {
+                resources.add(path);
+            }
+        });
+        AtomicLong before = new AtomicLong();
+        AtomicLong after = new AtomicLong();
+        ParallelUtils.forEach(this.workerPool, resources, path -> {
+            File file = new File(path);
+            String name = entryName(root, path);
+            byte[] bytes = IoUtils.readFileToByte(file);
+            phase.read(bytes.length);
+            byte[] minified = this.resourceMinifier.minify(name, bytes);
+            if (minified == null) {
+                return;
+            }
+            IoUtils.writeFile(file, minified);
+            phase.written(minified.length);
+            phase.items(1);
+            before.addAndGet(bytes.length);
+            after.addAndGet(minified.length);
+            this.report.minified(name, bytes.length, minified.length);
+            Log.debug("压缩：" + name + " " + bytes.length + " -> " + minified.length);
+        });
+        if (before.get() > 0) {
+            Log.info("压缩资源：" + this.report.getMinified().size() + " 个文件，" + HeapMonitor.format(before.get())
+                    + " -> " + HeapMonitor.format(after.get()));
+        }
+    }
+
+    private static String entryName(String root, String path) {
+        return path.substring(root.length()).replace(File.separatorChar, '/');
+    }
+
+    /**
+     * 写出报告文件，写出失败不影响加密结果
+     */
+    private void writeReport() {
+        try {
+            if (this.reportFile != null) {
+                this.report.writeJson(this.reportFile);
+                Log.debug("报告：" + this.reportFile.getAbsolutePath());
+            }
+            if (this.traceFile != null) {
+                this.report.writeTrace(this.traceFile);
+                Log.debug("trace：" + this.traceFile.getAbsolutePath());
+            }
+        } catch (Exception e) {
+            Log.warn("写出报告失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 释放文件之后的加密过程
+     *
+     * @param allFile 释放出的所有文件
+     * @return 解密后生成的文件的绝对路径
+     */
+    private String encryptAllFile(List<String> allFile) {
+        //[1.1]内部jar只释放需要加密的jar，多个jar并行释放
+        List<String> libJars = new ArrayList<>();
         allFile.forEach(path -> {
             if (!path.toLowerCase().endsWith(".jar")) {
                 return;
             }
             String name = path.substring(path.lastIndexOf(File.separator) + 1);
-            if (StrUtils.isMatchs(this.includeJars, name, false)) {
+            if (this.includeJarMatcher.matches(name)) {
+                libJars.add(path);
+            }
+        });
+        Map<String, List<String>> libJarEntries = new ConcurrentHashMap<>();
+        List<String> libJarFiles = new ArrayList<>();
+        try (EncryptReport.Phase phase = this.report.phase("unJarLib")) {
+            ParallelUtils.forEach(this.workerPool, libJars, path -> {
                 String targetPath = path.substring(0, path.length() - 4) + Const.LIB_JAR_DIR;
-                List<String> files = JarUtils.unJar(path, targetPath);
+                List<String> files = ArchiveUtils.unJar(path, targetPath);
+                libJarEntries.put(path, files);
+                phase.read(new File(path).length());
+                phase.written(IoUtils.length(files));
+                phase.items(files.size());
+            });
+            //按原顺序合并，保证结果稳定
+            libJars.forEach(path -> {
+                List<String> files = libJarEntries.get(path);
                 files.forEach(s -> Log.debug("释放：" + s));
                 libJarFiles.add(path);
                 libJarFiles.addAll(files);
+            });
+            allFile.addAll(libJarFiles);
+        }
+
+        //[1.2]压缩模板和静态资源，内部jar中的文件不处理
+        if (this.resourceMinifier != null) {
+            try (EncryptReport.Phase phase = this.report.phase("minify")) {
+                minifyResources(allFile.subList(0, allFile.size() - libJarFiles.size()), phase);
             }
-        });
-        allFile.addAll(libJarFiles);
-
-        //压缩静态文件
-//        allFile.forEach(s -> {
-//            if (!s.endsWith(".ftl")) {
-//                return;
-//            }
-//            File file = new File(s);
-//            String code = IoUtils.readTxtFile(file);
-//            code = HtmlUtils.removeComments(code);
-//            code = HtmlUtils.removeBlankLine(code);
-//            IoUtils.writeTxtFile(file, code);
-//        });
+        }
 
         //[2]提取所有需要加密的class文件
-        List<File> classFiles = filterClasses(allFile);
+        List<File> classFiles;
+        try (EncryptReport.Phase phase = this.report.phase("filter")) {
+            classFiles = filterClasses(allFile);
+            phase.items(classFiles.size());
+        }
 
         //[3]将本项目的代码添加至jar中
-        addClassFinalAgent();
+        try (EncryptReport.Phase phase = this.report.phase("agent")) {
+            addClassFinalAgent(phase);
+        }
 
         //[4]将正常的class加密，压缩另存
-        List<String> encryptClass = encryptClass(classFiles);
-        this.encryptFileCount = encryptClass.size();
+        try (EncryptReport.Phase phase = this.report.phase("encrypt")) {
+            List<String> encryptClass = encryptClass(classFiles, phase);
+            this.encryptFileCount = encryptClass.size();
+        }
 
         //[5]清空方法体（新策略：直接字节码替换，不使用Javassist的StackMapTable重建）
-        clearClassMethod(classFiles);
+        try (EncryptReport.Phase phase = this.report.phase("stub")) {
+            clearClassMethod(classFiles, phase);
+        }
 
         //[6]加密配置文件
-        encryptConfigFile();
+        try (EncryptReport.Phase phase = this.report.phase("config")) {
+            encryptConfigFile(phase);
+        }
 
         //[7]打包回去
-        String result = packageJar(libJarFiles);
-
-        return result;
+        try (EncryptReport.Phase phase = this.report.phase("package")) {
+            return packageJar(libJarFiles, phase);
+        }
     }
 
 
@@ -174,8 +391,11 @@ public class JarEncryptor {
             //解析出类全名
             String className = resolveClassName(file, true);
             //判断包名相同和是否排除的类
-            if (StrUtils.isMatchs(this.packages, className, false)
-                    && !StrUtils.isMatchs(this.excludeClass, className, false)) {
+            if (!this.packageMatcher.matches(className)) {
+                this.report.skip(EncryptReport.SKIP_NOT_IN_PACKAGES);
+            } else if (this.excludeClassMatcher.matches(className)) {
+                this.report.skip(className, EncryptReport.SKIP_EXCLUDED, null);
+            } else {
                 classFiles.add(new File(file));
                 Log.debug("待加密: " + file);
             }
@@ -187,9 +407,10 @@ public class JarEncryptor {
      * 加密class文件，放在META-INF/classes里
      *
      * @param classFiles jar/war 下需要加密的class文件
+     * @param phase      当前阶段，统计读写的字节数
      * @return 已经加密的类名
      */
-    private List<String> encryptClass(List<File> classFiles) {
+    private List<String> encryptClass(List<File> classFiles, EncryptReport.Phase phase) {
         List<String> encryptClasses = new ArrayList<>();
 
         //加密后存储的位置
@@ -198,137 +419,278 @@ public class JarEncryptor {
             metaDir.mkdirs();
         }
 
-        //无密码模式,自动生成一个密码
+        //公钥模式,生成内容密钥作为密码,用公钥加密后保存；可重现构建时内容密钥和公钥加密的填充都由输入内容和参数计算
+        if (StrUtils.isNotEmpty(this.publicKey) && this.envelope == null) {
+            byte[] digest = this.outputTimestamp >= 0 ? inputDigest() : null;
+            char[] contentKey = digest != null ? EncryptUtils.deriveChar(digest, 32) : EncryptUtils.secureChar(32);
+            try {
+                this.envelope = EncryptUtils.rsa(StrUtils.toBytes(contentKey), EncryptUtils.publicKey(this.publicKey),
+                        Cipher.ENCRYPT_MODE, digest == null ? null : EncryptUtils.sha256(
+                                IoUtils.merger(Const.CONFIG_ENVELOPE.getBytes(StandardCharsets.UTF_8), digest)));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalArgumentException("公钥加密失败: " + e.getMessage(), e);
+            }
+            this.password = contentKey;
+            IoUtils.writeFile(new File(metaDir, Const.CONFIG_ENVELOPE), this.envelope);
+        }
+
+        //无密码模式,自动生成一个密码；可重现构建时由输入内容和参数计算
         if (this.password.length == 1 && this.password[0] == '#') {
-            char[] randChars = EncryptUtils.randChar(32);
+            char[] randChars = this.outputTimestamp >= 0 ? EncryptUtils.deriveChar(inputDigest(), 32)
+                    : EncryptUtils.randChar(32);
             this.password = EncryptUtils.md5(randChars);
             File configPass = new File(metaDir, Const.CONFIG_PASS);
             IoUtils.writeFile(configPass, StrUtils.toBytes(randChars));
         }
 
-        //有机器码
-        if (StrUtils.isNotEmpty(this.code)) {
-            File configCode = new File(metaDir, Const.CONFIG_CODE);
-            IoUtils.writeFile(configCode, StrUtils.toBytes(EncryptUtils.md5(this.code)));
+        //有机器码,生成内容密钥,每个机器码加密一份放在密钥表中；可重现构建时由输入内容和参数计算
+        List<char[]> codes = MachineKeyTable.parse(this.code);
+        if (!codes.isEmpty() && this.machineKey == null) {
+            this.machineKey = this.outputTimestamp >= 0 ? EncryptUtils.deriveChar(EncryptUtils.sha256(
+                    IoUtils.merger(Const.CONFIG_KEYS.getBytes(StandardCharsets.UTF_8), inputDigest())), 32)
+                    : EncryptUtils.secureChar(32);
+            IoUtils.writeFile(new File(metaDir, Const.CONFIG_KEYS), MachineKeyTable.wrap(this.machineKey, codes));
+        }
+
+        //生成压缩字典，加密后和类放在一起
+        if (this.compressPayload && this.payloadDictionary == null) {
+            this.payloadDictionary = trainDictionary(classFiles);
+            IoUtils.writeFile(new File(metaDir, Const.CONFIG_DICT),
+                    encryptBytes(this.payloadDictionary, Const.CONFIG_DICT));
         }
 
-        //加密另存 - 跳过包含Lambda的类以避免StackMapTable重建问题
+        //加密另存
         ProgressBar progress = new ProgressBar("加密类文件", classFiles.size());
-        int skippedLambdaCount = 0;
-        
+        //类名 -> 已加密的内容摘要和文件
+        Map<String, byte[]> digests = new HashMap<>();
+        Map<String, File> firstFiles = new HashMap<>();
+        //压缩前后的大小
+        long plainSize = 0;
+        long compressedSize = 0;
+
         for (File classFile : classFiles) {
             String className = classFile.getName();
             if (className.endsWith(".class")) {
                 className = resolveClassName(classFile.getAbsolutePath(), true);
             }
             
+            long start = System.nanoTime();
             byte[] bytes = IoUtils.readFileToByte(classFile);
-            
-            // 检测是否包含Lambda表达式
-            if (ByteCodeAnalyzer.containsLambda(bytes)) {
-                Log.debug("跳过包含Lambda的类: " + className);
-                skippedLambdaCount++;
+            long size = bytes.length;
+
+            //加密后按类名存放，多个lib jar中的同一个类内容相同时只加密一次
+            byte[] digest = EncryptUtils.sha256(bytes);
+            byte[] previous = digests.put(className, digest);
+            if (previous != null && Arrays.equals(previous, digest)) {
+                this.duplicateClasses.put(classFile, firstFiles.get(className));
+                this.report.skip(EncryptReport.SKIP_DUPLICATE);
+                phase.read(size);
                 progress.increment();
                 progress.display();
-                continue; // 不加密该类
+                continue;
+            } else if (previous != null) {
+                Log.warn("同名的类内容不同，运行时只能解密最后一个: " + classFile.getAbsolutePath());
             }
-            
-            // 加密类文件
-            char[] pass = StrUtils.merger(this.password, className.toCharArray());
-            bytes = EncryptUtils.en(bytes, pass, Const.ENCRYPT_TYPE);
-            
-            //有机器码，再用机器码加密一遍
-            if (StrUtils.isNotEmpty(this.code)) {
-                pass = StrUtils.merger(className.toCharArray(), this.code);
-                bytes = EncryptUtils.en(bytes, pass, Const.ENCRYPT_TYPE);
+            firstFiles.put(className, classFile);
+
+            if (classFile.getName().endsWith(".class")) {
+                bytes = stripPayload(bytes, className);
+                plainSize += bytes.length;
+                bytes = compressPayload(bytes);
+                compressedSize += bytes.length;
             }
+            bytes = encryptBytes(bytes, className);
             
             File targetFile = new File(metaDir, className);
             IoUtils.writeFile(targetFile, bytes);
             encryptClasses.add(className);
+            phase.read(size);
+            phase.written(bytes.length);
+            phase.items(1);
+            this.report.classTime(className, "encrypt", start, size);
             
             progress.increment();
             progress.display();
             
             Log.debug("加密：" + className);
         }
-        
-        // 输出统计信息
-        if (skippedLambdaCount > 0) {
-            Log.println("\n跳过了 " + skippedLambdaCount + " 个包含Lambda表达式的类（避免StackMapTable问题）");
+
+        if (this.payloadDictionary != null && plainSize > 0) {
+            Log.info("压缩类：" + HeapMonitor.format(plainSize) + " -> " + HeapMonitor.format(compressedSize)
+                    + "，字典 " + HeapMonitor.format(this.payloadDictionary.length));
         }
 
         //加密密码hash存储，用来验证密码是否正确
-        char[] pchar = EncryptUtils.md5(StrUtils.merger(this.password, EncryptUtils.SALT));
-        pchar = EncryptUtils.md5(StrUtils.merger(EncryptUtils.SALT, pchar));
-        IoUtils.writeFile(new File(metaDir, Const.CONFIG_PASSHASH), StrUtils.toBytes(pchar));
+        IoUtils.writeFile(new File(metaDir, Const.CONFIG_PASSHASH), StrUtils.toBytes(passHash(this.password)));
 
         return encryptClasses;
     }
 
     /**
-     * 清空class文件的方法体，并保留参数信息
+     * 密码的hash，存放在加密后的jar中，启动时用来验证密码是否正确
      *
-     * @param classFiles jar/war 下需要加密的class文件
+     * @param password 密码
+     * @return hash
      */
-    private void clearClassMethod(List<File> classFiles) {
-        //初始化javassist
-        ClassPool pool = ClassPool.getDefault();
-        //[1]把所有涉及到的类加入到ClassPool的classpath
-        //[1.1]lib目录所有的jar加入classpath
-        ClassUtils.loadClassPath(pool, this.targetLibDir);
-        Log.debug("ClassPath: " + this.targetLibDir.getAbsolutePath());
-
-        //[1.2]外部依赖的lib加入classpath
-        ClassUtils.loadClassPath(pool, this.classPath);
-        this.classPath.forEach(classPath -> Log.debug("ClassPath: " + classPath));
-
-        //[1.3]要修改的class所在的目录（-INF/classes 和 libjar）加入classpath
-        List<String> classPaths = new ArrayList<>();
-        classFiles.forEach(classFile -> {
-            String classPath = resolveClassName(classFile.getAbsolutePath(), false);
-            if (classPaths.contains(classPath)) {
-                return;
-            }
-            try {
-                pool.insertClassPath(classPath);
-            } catch (NotFoundException e) {
-                //Ignore
+    static char[] passHash(char[] password) {
+        char[] pchar = EncryptUtils.md5(StrUtils.merger(password, EncryptUtils.SALT));
+        return EncryptUtils.md5(StrUtils.merger(EncryptUtils.SALT, pchar));
+    }
+
+    /**
+     * 用本次加密的密码加密一个类，有机器码时密码后加上内容密钥，和机器数量无关只加密一遍
+     *
+     * @param bytes     class或配置文件的内容
+     * @param className 类名或文件名
+     * @return 加密后的字节
+     */
+    byte[] encryptBytes(byte[] bytes, String className) {
+        char[] pass = this.machineKey == null ? StrUtils.merger(this.password, className.toCharArray())
+                : StrUtils.merger(this.password, this.machineKey, className.toCharArray());
+        return EncryptUtils.en(bytes, pass, this.cipherSuite);
+    }
+
+    /**
+     * 用jar中的类生成压缩字典
+     *
+     * @param classFiles 需要加密的文件
+     * @return 字典
+     */
+    private byte[] trainDictionary(List<File> classFiles) {
+        long start = System.nanoTime();
+        DictionaryTrainer trainer = new DictionaryTrainer();
+        for (File classFile : classFiles) {
+            if (classFile.getName().endsWith(".class")) {
+                trainer.add(IoUtils.readFileToByte(classFile));
             }
-            classPaths.add(classPath);
-            Log.debug("ClassPath: " + classPath);
+        }
+        byte[] dictionary = trainer.build(DictionaryTrainer.MAX_SIZE);
+        Log.debug("压缩字典: " + trainer.getClasses() + " 个类, " + dictionary.length + " 字节, "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        return dictionary;
+    }
 
-        });
+    /**
+     * 按配置用字典压缩加密前的class
+     *
+     * @param bytes class字节码
+     * @return 压缩后的字节，没有字典或没有变小时原样返回
+     */
+    byte[] compressPayload(byte[] bytes) {
+        if (this.payloadDictionary == null) {
+            return bytes;
+        }
+        return PayloadCompressor.compress(bytes, this.payloadDictionary);
+    }
 
-        //[2]修改class方法体，并保存文件（跳过Lambda类）
-        classFiles.forEach(classFile -> {
-            //解析出类全名
+    /**
+     * 按配置去掉加密前class中的调试信息
+     *
+     * @param bytes     class字节码
+     * @param className 类名
+     * @return 去掉后的字节码
+     */
+    byte[] stripPayload(byte[] bytes, String className) {
+        return stripDebugInfo(this.payloadDebugInfo, "payload", bytes, className);
+    }
+
+    /**
+     * 按配置去掉清空方法体后的class中的调试信息
+     *
+     * @param bytes     class字节码
+     * @param className 类名
+     * @return 去掉后的字节码
+     */
+    byte[] stripStub(byte[] bytes, String className) {
+        return stripDebugInfo(this.stubDebugInfo, "stub", bytes, className);
+    }
+
+    private byte[] stripDebugInfo(DebugInfoStripper stripper, String type, byte[] bytes, String className) {
+        if (stripper.isEmpty()) {
+            return bytes;
+        }
+        try {
+            byte[] result = stripper.strip(bytes);
+            this.report.stripped(type, className, bytes.length, result.length);
+            return result;
+        } catch (RuntimeException e) {
+            Log.debug("ERROR:[" + className + "]" + e.getMessage());
+            return bytes;
+        }
+    }
+
+    /**
+     * 类是否需要加密：在加密的包中且没有被排除
+     *
+     * @param className 类名
+     * @return true|false
+     */
+    boolean isEncryptClass(String className) {
+        return this.packageMatcher.matches(className) && !this.excludeClassMatcher.matches(className);
+    }
+
+    /**
+     * 文件是否是需要加密的配置文件
+     *
+     * @param fileName 文件名
+     * @return true|false
+     */
+    boolean isConfigFile(String fileName) {
+        return this.cfgfileMatcher.matches(fileName);
+    }
+
+    /**
+     * 清空class文件的方法体，并保留参数信息
+     * 直接改写字节码，不需要加载classpath，包含Lambda的类也能处理
+     *
+     * @param classFiles jar/war 下需要加密的class文件
+     * @param phase      当前阶段，统计读写的字节数
+     */
+    private void clearClassMethod(List<File> classFiles, EncryptReport.Phase phase) {
+        List<File> uniqueFiles = new ArrayList<>(classFiles);
+        uniqueFiles.removeAll(this.duplicateClasses.keySet());
+        ParallelUtils.forEach(this.workerPool, uniqueFiles, classFile -> {
             String className = resolveClassName(classFile.getAbsolutePath(), true);
-            
-            // 检测是否包含Lambda，跳过清空方法体
-            byte[] classBytes = IoUtils.readFileToByte(classFile);
-            if (ByteCodeAnalyzer.containsLambda(classBytes)) {
-                Log.debug("跳过清空Lambda类方法体: " + className);
-                return; // 不清空该类的方法体
-            }
-            
+            long start = System.nanoTime();
+            byte[] src = null;
             byte[] bts = null;
             try {
                 Log.debug("清除方法体: " + className);
-                bts = ClassUtils.rewriteAllMethods(pool, className);
+                src = IoUtils.readFileToByte(classFile);
+                bts = ClassUtils.rewriteAllMethods(src);
             } catch (Exception e) {
-                Log.debug("ERROR:" + e.getMessage());
+                Log.debug("ERROR:[" + className + "]" + e.getMessage());
+                this.report.skip(className, EncryptReport.SKIP_STUB_FAILED, e.getMessage());
             }
-            if (bts != null) {
-                IoUtils.writeFile(classFile, bts);
+            long size = src == null ? 0 : src.length;
+            phase.read(size);
+            if (bts == null || bts == src) {
+                //失败或不能安全清空的类，原样保留
+                if (bts != null) {
+                    this.report.skip(EncryptReport.SKIP_STUB_KEPT);
+                }
+                this.report.classTime(className, "stub-kept", start, size);
+                return;
             }
+            bts = stripStub(bts, className);
+            IoUtils.writeFile(classFile, bts);
+            phase.written(bts.length);
+            phase.items(1);
+            this.report.classTime(className, "stub", start, size);
+        });
+        //内容相同的类直接复制清空后的结果
+        this.duplicateClasses.forEach((duplicate, first) -> {
+            IoUtils.copyFile(first, duplicate);
+            phase.written(duplicate.length());
         });
     }
 
     /**
      * 向jar文件中添加classfinal的代码
+     *
+     * @param phase 统计阶段，记录添加的文件数和字节数
      */
-    public void addClassFinalAgent() {
+    public void addClassFinalAgent(EncryptReport.Phase phase) {
         List<String> thisJarPaths = new ArrayList<>();
         thisJarPaths.add(this.getClass().getProtectionDomain().getCodeSource().getLocation().getPath());
         //paths.add(ClassPool.class.getProtectionDomain().getCodeSource().getLocation().getPath());
@@ -338,11 +700,18 @@ public class JarEncryptor {
             File thisJarFile = new File(thisJar);
             if ("jar".endsWith(this.jarOrWar) && thisJar.endsWith(".jar")) {
                 List<String> includeFiles = Arrays.asList(Const.CLASSFINAL_FILES);
-                JarUtils.unJar(thisJar, this.targetDir.getAbsolutePath(), includeFiles);
+                for (String path : ArchiveUtils.unJar(thisJar, this.targetDir.getAbsolutePath(), includeFiles)) {
+                    File file = new File(path);
+                    if (file.isFile()) {
+                        phase.items(1);
+                        phase.written(file.length());
+                    }
+                }
             } else if ("war".endsWith(this.jarOrWar) && thisJar.endsWith(".jar")) {
                 File targetClassFinalJar = new File(this.targetLibDir, thisJarFile.getName());
-                byte[] bytes = IoUtils.readFileToByte(thisJarFile);
-                IoUtils.writeFile(targetClassFinalJar, bytes);
+                IoUtils.copyFile(thisJarFile, targetClassFinalJar);
+                phase.items(1);
+                phase.written(targetClassFinalJar.length());
             }
             //本项目开发环境中未打包
             else if (thisJar.endsWith("/classes/")) {
@@ -355,8 +724,9 @@ public class JarEncryptor {
                     if (file.isDirectory()) {
                         targetFile.mkdirs();
                     } else if (StrUtils.containsArray(file.getAbsolutePath(), Const.CLASSFINAL_FILES)) {
-                        byte[] bytes = IoUtils.readFileToByte(file);
-                        IoUtils.writeFile(targetFile, bytes);
+                        IoUtils.copyFile(file, targetFile);
+                        phase.items(1);
+                        phase.written(targetFile.length());
                     }
                 });
             }
@@ -376,42 +746,44 @@ public class JarEncryptor {
 
     /**
      * 加密classes下的配置文件
+     *
+     * @param phase 当前阶段，统计读写的字节数
      */
-    private void encryptConfigFile() {
+    private void encryptConfigFile(EncryptReport.Phase phase) {
         if (this.cfgfiles == null || this.cfgfiles.size() == 0) {
             return;
         }
 
-        //支持的框架
-        //String[] supportFrame = {"spring", "jfinal"};
-        String[] supportFrame = {"spring"};
         //需要注入解密功能的class
-        List<File> aopClass = new ArrayList<>(supportFrame.length);
+        List<File> aopClass = new ArrayList<>(CONFIG_FRAMES.length);
 
         // [1].读取配置文件时解密
-        Arrays.asList(supportFrame).forEach(name -> {
-            String javaCode = aopMap.get(name + ".code");
+        //框架的类从lib、外部依赖和本项目的jar中查找
+        String thisJar = this.getClass().getProtectionDomain().getCodeSource().getLocation().getPath();
+        this.classPoolScope.insertClassPath(this.targetLibDir);
+        this.classPoolScope.insertClassPath(this.classPath);
+        this.classPoolScope.insertClassPath(new File(thisJar));
+        Arrays.asList(CONFIG_FRAMES).forEach(name -> {
             String clazz = aopMap.get(name + ".class");
-            Integer line = Integer.parseInt(aopMap.get(name + ".line"));
-            javaCode = javaCode.replace("${passchar}", StrUtils.toCharArrayCode(this.password));
             byte[] bytes = null;
             try {
-                String thisJar = this.getClass().getProtectionDomain().getCodeSource().getLocation().getPath();
                 //获取 框架 读取 配置文件的类,将密码注入该类
-                bytes = ClassUtils.insertCode(clazz, javaCode, line, this.targetLibDir, new File(thisJar));
+                bytes = injectConfigReader(this.classPoolScope, name, this.password);
+                this.classPoolScope.releaseIfFull(this.batchSize);
             } catch (Exception e) {
                 e.printStackTrace();
                 Log.debug(e.getClass().getName() + ":" + e.getMessage());
+                this.report.skip(clazz, EncryptReport.SKIP_INJECT_FAILED, e.getClass().getName() + ":" + e.getMessage());
             }
             if (bytes != null) {
-                File cls = new File(this.targetDir, clazz.split("#")[0] + ".class");
+                File cls = new File(this.targetDir, configReaderClass(name) + ".class");
                 IoUtils.writeFile(cls, bytes);
                 aopClass.add(cls);
             }
         });
 
         //加密读取配置文件的类
-        this.encryptClass(aopClass);
+        this.encryptClass(aopClass, phase);
         aopClass.forEach(cls -> cls.delete());
 
 
@@ -422,48 +794,122 @@ public class JarEncryptor {
             return;
         }
         for (File file : files) {
-            if (file.isFile() && StrUtils.isMatchs(this.cfgfiles, file.getName(), false)) {
+            if (file.isFile() && this.cfgfileMatcher.matches(file.getName())) {
                 configFiles.add(file);
             }
         }
         //加密
-        this.encryptClass(configFiles);
+        this.encryptClass(configFiles, phase);
         //清空
         configFiles.forEach(file -> IoUtils.writeTxtFile(file, ""));
     }
 
+    /**
+     * 给框架读取配置文件的类注入解密功能，密码写在注入的代码中
+     *
+     * @param scope    ClassPool，能找到框架的类和本项目的类
+     * @param frame    框架，见 {@link #CONFIG_FRAMES}
+     * @param password 加密配置文件的密码
+     * @return 注入后的字节码
+     * @throws Exception 找不到类或注入失败
+     */
+    static byte[] injectConfigReader(ClassPoolScope scope, String frame, char[] password) throws Exception {
+        String javaCode = aopMap.get(frame + ".code").replace("${passchar}", StrUtils.toCharArrayCode(password));
+        int line = Integer.parseInt(aopMap.get(frame + ".line"));
+        return ClassUtils.insertCode(scope, aopMap.get(frame + ".class"), javaCode, line);
+    }
+
+    /**
+     * 框架读取配置文件的类名
+     *
+     * @param frame 框架，见 {@link #CONFIG_FRAMES}
+     * @return 类全名
+     */
+    static String configReaderClass(String frame) {
+        return aopMap.get(frame + ".class").split("#")[0];
+    }
+
     /**
      * 压缩成jar
      *
+     * @param phase       当前阶段，统计写入的字节数
      * @return 打包后的jar绝对路径
      */
-    private String packageJar(List<String> libJarFiles) {
-        //[1]先打包lib下的jar
+    private String packageJar(List<String> libJarFiles, EncryptReport.Phase phase) {
+        //[1]先打包lib下的jar，多个jar并行打包
+        List<String> libJars = new ArrayList<>();
         libJarFiles.forEach(targetJar -> {
             if (!targetJar.endsWith(".jar")) {
                 return;
             }
-
             String srcJarDir = targetJar.substring(0, targetJar.length() - 4) + Const.LIB_JAR_DIR;
-            if (!new File(srcJarDir).exists()) {
-                return;
+            if (new File(srcJarDir).exists()) {
+                libJars.add(targetJar);
             }
-            JarUtils.doJar(srcJarDir, targetJar);
+        });
+        //并行打包的所有jar共用一个内存额度，上限是整个任务的
+        MemoryBudget budget = new MemoryBudget(this.memoryLimit);
+        ParallelUtils.forEach(this.workerPool, libJars, targetJar -> {
+            String srcJarDir = targetJar.substring(0, targetJar.length() - 4) + Const.LIB_JAR_DIR;
+            ArchiveUtils.doJar(srcJarDir, targetJar, this.workerPool, this.compressionPolicy, budget,
+                    this.outputTimestamp);
             IoUtils.delete(new File(srcJarDir));
+            phase.written(new File(targetJar).length());
+            phase.items(1);
             Log.debug("打包: " + targetJar);
         });
 
         //删除META-INF下的maven
         IoUtils.delete(new File(this.targetDir, "META-INF/maven"));
 
+        //更新Spring Boot的分层索引，加密后的类和重新打包的jar放到单独的层，其他层不变
+        String root = this.targetDir.getAbsolutePath() + File.separator;
+        List<String> rebuiltJars = libJars.stream()
+                .map(path -> path.substring(root.length()).replace(File.separatorChar, '/'))
+                .collect(Collectors.toList());
+        if (SpringBootIndex.update(this.targetDir, this.targetLibDir.getParentFile().getName(), rebuiltJars)) {
+            Log.debug("更新: " + SpringBootIndex.LAYERS_IDX);
+        }
+
         //[2]再打包jar
         String targetJar = jarPath.replace("." + jarOrWar, "-encrypted." + jarOrWar);
-        String result = JarUtils.doJar(this.targetDir.getAbsolutePath(), targetJar);
+        String result = ArchiveUtils.doJar(this.targetDir.getAbsolutePath(), targetJar, this.workerPool,
+                this.compressionPolicy, budget, this.outputTimestamp);
         IoUtils.delete(this.targetDir);
+        phase.written(new File(result).length());
+        phase.items(1);
         Log.debug("打包: " + targetJar);
         return result;
     }
 
+    /**
+     * 输入jar的内容和加密参数的摘要，可重现构建时作为生成密码的种子
+     *
+     * @return SHA-256摘要
+     */
+    private byte[] inputDigest() {
+        try (InputStream in = new FileInputStream(this.jarPath)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                md.update(buffer, 0, n);
+            }
+            for (List<String> list : Arrays.asList(this.packages, this.excludeClass, this.includeJars, this.cfgfiles)) {
+                md.update(String.valueOf(list).getBytes(StandardCharsets.UTF_8));
+            }
+            if (this.code != null) {
+                md.update(StrUtils.toBytes(this.code));
+            }
+            if (this.publicKey != null) {
+                md.update(this.publicKey.getBytes(StandardCharsets.UTF_8));
+            }
+            return md.digest();
+        } catch (Exception e) {
+            throw new RuntimeException("读取文件失败: " + this.jarPath, e);
+        }
+    }
+
     /**
      * 根据class的绝对路径解析出class名称或class包所在的路径
      *
@@ -505,20 +951,76 @@ public class JarEncryptor {
     }
 
 
+    /**
+     * 本次加密过程中的堆内存峰值
+     *
+     * @return 字节数
+     */
+    public long getPeakHeapUsed() {
+        return peakHeapUsed;
+    }
+
+    public EncryptReport getReport() {
+        return report;
+    }
+
+    public String getJarPath() {
+        return jarPath;
+    }
+
+    public ResourceMinifier getResourceMinifier() {
+        return resourceMinifier;
+    }
+
+    public DebugInfoStripper getStubDebugInfo() {
+        return stubDebugInfo;
+    }
+
+    public DebugInfoStripper getPayloadDebugInfo() {
+        return payloadDebugInfo;
+    }
+
+    public boolean isCompressPayload() {
+        return compressPayload;
+    }
+
+    public int getCipherSuite() {
+        return cipherSuite;
+    }
+
+    public String getPublicKey() {
+        return publicKey;
+    }
+
+    public CompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    public long getOutputTimestamp() {
+        return outputTimestamp;
+    }
+
     public Integer getEncryptFileCount() {
         return encryptFileCount;
     }
 
     public void setPackages(List<String> packages) {
         this.packages = packages;
+        this.packageMatcher = PatternMatcher.compile(packages);
     }
 
     public void setIncludeJars(List<String> includeJars) {
         this.includeJars = includeJars;
+        this.includeJarMatcher = PatternMatcher.compile(includeJars);
     }
 
     public void setExcludeClass(List<String> excludeClass) {
         this.excludeClass = excludeClass;
+        this.excludeClassMatcher = PatternMatcher.compile(excludeClass);
     }
 
     public void setClassPath(List<String> classPath) {
@@ -527,10 +1029,85 @@ public class JarEncryptor {
 
     public void setCfgfiles(List<String> cfgfiles) {
         this.cfgfiles = cfgfiles;
+        this.cfgfileMatcher = PatternMatcher.compile(cfgfiles);
     }
 
     public void setCode(char[] code) {
         this.code = code;
     }
 
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setResourceMinifier(ResourceMinifier resourceMinifier) {
+        this.resourceMinifier = resourceMinifier;
+    }
+
+    public void setStubDebugInfo(DebugInfoStripper stubDebugInfo) {
+        this.stubDebugInfo = stubDebugInfo;
+    }
+
+    public void setPayloadDebugInfo(DebugInfoStripper payloadDebugInfo) {
+        this.payloadDebugInfo = payloadDebugInfo;
+    }
+
+    public void setCompressPayload(boolean compressPayload) {
+        this.compressPayload = compressPayload;
+    }
+
+    public void setCipherSuite(int cipherSuite) {
+        this.cipherSuite = cipherSuite;
+    }
+
+    public void setPublicKey(String publicKey) {
+        this.publicKey = publicKey;
+    }
+
+    public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+    }
+
+    public void setClassPathCache(File classPathCache) {
+        this.classPathCache = classPathCache;
+    }
+
+    public void setMemoryLimit(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    public void setIndexCache(ClassPathIndex.Cache indexCache) {
+        this.indexCache = indexCache;
+    }
+
+    /**
+     * 启用可重现构建：所有entry使用固定的修改时间，无密码模式的密码由输入计算，相同的输入得到相同的输出
+     *
+     * @param outputTimestamp 修改时间(毫秒)，小于0时不启用
+     */
+    public void setOutputTimestamp(long outputTimestamp) {
+        this.outputTimestamp = outputTimestamp;
+    }
+
+    public void setReportFile(File reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    public void setTraceFile(File traceFile) {
+        this.traceFile = traceFile;
+    }
+
+    /**
+     * 使用调用方的线程池，加密结束后不关闭，也不统计堆内存峰值
+     *
+     * @param sharedPool 线程池
+     */
+    public void setSharedPool(ForkJoinPool sharedPool) {
+        this.sharedPool = sharedPool;
+    }
+
 }
@@ -0,0 +1,284 @@
+package net.roseboy.classfinal;
+
+import net.roseboy.classfinal.util.HeapMonitor;
+import net.roseboy.classfinal.util.JarUtils;
+import net.roseboy.classfinal.util.JarWriter;
+import net.roseboy.classfinal.util.ZipIndex;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+/**
+ * 两个加密后的jar之间的增量补丁
+ * <p>
+ * 按entry比较压缩后的原始数据：没有变化的entry只记录名称和修改时间，变化和新增的entry原样复制压缩数据到补丁中，
+ * 加密后的类（META-INF/.classes）、清空后的类和资源文件都按entry处理，补丁大小只和变化的内容有关。
+ * 应用补丁时按新jar的entry顺序从旧jar和补丁中复制原始数据重新组装，并用新jar的sha256校验。
+ * <p>
+ * 只能用于 JarEncryptor 输出的jar（重新组装时使用相同的写入方式）；lib下的内部jar作为一个entry整体比较。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class JarPatch {
+    //补丁中的索引文件
+    public static final String INDEX_NAME = ".classfinal-patch";
+    //补丁格式版本
+    private static final String HEADER = "classfinal-patch 1";
+    //从旧jar复制
+    private static final char OP_COPY = '=';
+    //从补丁复制
+    private static final char OP_ADD = '+';
+
+    /**
+     * 比较两个加密后的jar，生成补丁
+     *
+     * @param oldJar 旧版本
+     * @param newJar 新版本
+     * @param patch  输出的补丁文件
+     * @return 统计
+     * @throws IOException IOException
+     */
+    public static Result diff(File oldJar, File newJar, File patch) throws IOException {
+        Result result = new Result();
+        StringBuilder index = new StringBuilder();
+        index.append(HEADER).append('\n');
+        index.append("name ").append(newJar.getName()).append('\n');
+        index.append("base ").append(sha256(oldJar)).append('\n');
+        index.append("target ").append(sha256(newJar)).append('\n');
+
+        File temp = new File(patch.getAbsolutePath() + ".tmp");
+        try (ZipIndex oldIndex = ZipIndex.read(oldJar); ZipIndex newIndex = ZipIndex.read(newJar)) {
+            List<ZipIndex.Entry> changed = new ArrayList<>();
+            for (ZipIndex.Entry entry : newIndex.getEntries()) {
+                String name = entry.getName();
+                if (INDEX_NAME.equals(name) || name.indexOf('\n') >= 0) {
+                    throw new IllegalArgumentException("不支持的entry名称: " + name);
+                }
+                ZipIndex.Entry old = oldIndex.getEntry(name);
+                boolean same = old != null && sameRaw(oldIndex, old, newIndex, entry);
+                index.append(same ? OP_COPY : OP_ADD).append(' ')
+                        .append(String.format("%08x", entry.getDosTime())).append(' ').append(name).append('\n');
+                if (same) {
+                    result.copied++;
+                } else {
+                    changed.add(entry);
+                    result.changed++;
+                    result.changedBytes += entry.getCompressedSize();
+                }
+            }
+            for (ZipIndex.Entry entry : oldIndex.getEntries()) {
+                if (newIndex.getEntry(entry.getName()) == null) {
+                    result.removed++;
+                }
+            }
+
+            try (JarWriter writer = new JarWriter(temp, null)) {
+                writer.addBytes(INDEX_NAME, index.toString().getBytes(StandardCharsets.UTF_8), ZipEntry.DEFLATED,
+                        9, System.currentTimeMillis());
+                for (ZipIndex.Entry entry : changed) {
+                    writer.addRaw(newIndex, entry);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), patch.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        result.patchSize = patch.length();
+        result.targetSize = newJar.length();
+        return result;
+    }
+
+    /**
+     * 在旧jar上应用补丁，生成新jar并校验
+     *
+     * @param oldJar 旧版本
+     * @param patch  补丁文件
+     * @param target 输出的新jar，为null时使用补丁中记录的文件名，与旧jar放在同一个目录
+     * @return 新jar
+     * @throws IOException IOException
+     */
+    public static File apply(File oldJar, File patch, File target) throws IOException {
+        try (ZipIndex patchIndex = ZipIndex.read(patch)) {
+            byte[] indexBytes = patchIndex.getEntry(INDEX_NAME) == null ? null
+                    : JarUtils.getFileFromJar(patch, INDEX_NAME);
+            if (indexBytes == null) {
+                throw new IllegalArgumentException("不是有效的补丁文件: " + patch);
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new ByteArrayInputStream(indexBytes), StandardCharsets.UTF_8));
+            if (!HEADER.equals(reader.readLine())) {
+                throw new IllegalArgumentException("不支持的补丁版本: " + patch);
+            }
+            String name = value(reader.readLine(), "name");
+            String base = value(reader.readLine(), "base");
+            String expected = value(reader.readLine(), "target");
+            if (!base.equals(sha256(oldJar))) {
+                throw new IllegalArgumentException("补丁与当前版本不匹配: " + oldJar);
+            }
+            if (target == null) {
+                target = new File(oldJar.getAbsoluteFile().getParentFile(), name);
+            }
+
+            File temp = new File(target.getAbsolutePath() + ".tmp");
+            try (ZipIndex oldIndex = ZipIndex.read(oldJar)) {
+                try (JarWriter writer = new JarWriter(temp, null)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.length() < 12) {
+                            continue;
+                        }
+                        int dosTime = (int) Long.parseLong(line.substring(2, 10), 16);
+                        String entryName = line.substring(11);
+                        ZipIndex source = line.charAt(0) == OP_COPY ? oldIndex : patchIndex;
+                        ZipIndex.Entry entry = source.getEntry(entryName);
+                        if (entry == null) {
+                            throw new IllegalArgumentException("补丁中缺少entry: " + entryName);
+                        }
+                        writer.addRaw(source, entry, dosTime);
+                    }
+                }
+                if (!expected.equals(sha256(temp))) {
+                    throw new IllegalStateException("应用补丁后校验失败: " + target);
+                }
+            } catch (IOException | RuntimeException e) {
+                temp.delete();
+                throw e;
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return target;
+        }
+    }
+
+    private static String value(String line, String key) {
+        if (line == null || !line.startsWith(key + " ")) {
+            throw new IllegalArgumentException("补丁文件格式有误，缺少 " + key);
+        }
+        return line.substring(key.length() + 1);
+    }
+
+    /**
+     * 两个entry压缩后的原始数据是否完全相同
+     */
+    private static boolean sameRaw(ZipIndex a, ZipIndex.Entry ea, ZipIndex b, ZipIndex.Entry eb) throws IOException {
+        if (ea.getMethod() != eb.getMethod() || ea.getCrc() != eb.getCrc() || ea.getSize() != eb.getSize()
+                || ea.getCompressedSize() != eb.getCompressedSize()) {
+            return false;
+        }
+        return MessageDigest.isEqual(rawDigest(a, ea), rawDigest(b, eb));
+    }
+
+    private static byte[] rawDigest(ZipIndex zip, ZipIndex.Entry entry) throws IOException {
+        MessageDigest md = newDigest();
+        zip.transferRaw(entry, new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                int n = src.remaining();
+                md.update(src);
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        return md.digest();
+    }
+
+    /**
+     * 文件的sha256
+     *
+     * @param file 文件
+     * @return 十六进制字符串
+     * @throws IOException IOException
+     */
+    public static String sha256(File file) throws IOException {
+        MessageDigest md = newDigest();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                md.update(buffer, 0, n);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 补丁统计
+     */
+    public static class Result {
+        //原样保留的entry数量
+        private int copied;
+        //变化和新增的entry数量
+        private int changed;
+        //删除的entry数量
+        private int removed;
+        //变化的entry压缩后的大小
+        private long changedBytes;
+        private long patchSize;
+        private long targetSize;
+
+        public int getCopied() {
+            return copied;
+        }
+
+        public int getChanged() {
+            return changed;
+        }
+
+        public int getRemoved() {
+            return removed;
+        }
+
+        public long getChangedBytes() {
+            return changedBytes;
+        }
+
+        public long getPatchSize() {
+            return patchSize;
+        }
+
+        public long getTargetSize() {
+            return targetSize;
+        }
+
+        /**
+         * 一行统计信息
+         *
+         * @return 文本
+         */
+        public String summary() {
+            return String.format("未变化 %d，变化/新增 %d，删除 %d，补丁 %s / 新版本 %s (%.1f%%)", copied, changed, removed,
+                    HeapMonitor.format(patchSize), HeapMonitor.format(targetSize),
+                    targetSize == 0 ? 0.0 : patchSize * 100.0 / targetSize);
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package net.roseboy.classfinal;
+
+import net.roseboy.classfinal.util.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 更换已加密jar的密码和机器码
+ * <p>
+ * 不重新执行加密流程（释放、清空方法体、打包），只把 META-INF/.classes 中的数据用旧的密码/机器码解密后
+ * 再用新的加密，并更新密码hash、无密码模式的密码和机器码密钥表；其他entry原样复制压缩数据，顺序和修改时间不变。
+ * 只增加机器时内容密钥不变，只重写密钥表；去掉机器时重新生成内容密钥。旧版本逐个类用机器码加密的jar改为密钥表。
+ * 加密了配置文件时，读取配置文件的框架类中写着密码，更换密码时从lib下的jar中取原来的类重新注入。
+ * 重新加密在线程池中并行执行，按原顺序流式写出，内存占用和jar大小无关。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class JarRekey {
+    //加密后文件存放位置
+    private static final String ENCRYPT_PATH = "META-INF/" + Const.FILE_NAME + "/";
+    //不是用密码加密的文件
+    private static final String PASS_ENTRY = ENCRYPT_PATH + Const.CONFIG_PASS;
+    private static final String CODE_ENTRY = ENCRYPT_PATH + Const.CONFIG_CODE;
+    private static final String KEYS_ENTRY = ENCRYPT_PATH + Const.CONFIG_KEYS;
+    private static final String PASSHASH_ENTRY = ENCRYPT_PATH + Const.CONFIG_PASSHASH;
+    private static final String ENVELOPE_ENTRY = ENCRYPT_PATH + Const.CONFIG_ENVELOPE;
+
+    /**
+     * 密码和机器码
+     */
+    public static class Key {
+        //密码，#为无密码模式
+        private final char[] password;
+        //机器码，多台机器用逗号分隔，为空时不绑定
+        private final char[] code;
+
+        /**
+         * 构造
+         *
+         * @param password 密码，#为无密码模式
+         * @param code     机器码，多台机器用逗号分隔，为空时不绑定
+         */
+        public Key(char[] password, char[] code) {
+            this.password = password;
+            this.code = code;
+        }
+    }
+
+    /**
+     * 更换密码和机器码
+     *
+     * @param jar    已加密的jar/war
+     * @param target 输出文件，可以和jar相同（写完后替换）
+     * @param oldKey 加密时的密码和机器码，无密码模式的密码从jar中读取，公钥模式为私钥解开的内容密钥
+     * @param newKey 新的密码和机器码，字段为null时不变，机器码为空时取消绑定
+     * @param pool   线程池，为null时单线程执行
+     * @return 统计
+     * @throws IOException IOException
+     */
+    public static Result rekey(File jar, File target, Key oldKey, Key newKey, ForkJoinPool pool) throws IOException {
+        long start = System.currentTimeMillis();
+        Result result = new Result();
+        File temp = new File(target.getAbsolutePath() + ".tmp");
+        try (ZipIndex index = ZipIndex.read(jar); ZipFile zip = new ZipFile(jar)) {
+            //校验旧的密码和机器码
+            byte[] hiddenPass = read(zip, PASS_ENTRY);
+            byte[] oldTable = read(zip, KEYS_ENTRY);
+            char[] oldPassword = readPassword(zip, oldKey.password);
+            char[] oldCode = readCode(zip, oldKey.code);
+            char[] oldMachineKey = readMachineKey(zip, oldKey.code);
+            Set<String> oldHashes = oldTable != null ? MachineKeyTable.hashes(oldTable)
+                    : oldCode != null ? Collections.singleton(new String(EncryptUtils.md5(oldCode))) : Collections.emptySet();
+
+            //新的密码和机器码
+            //无密码模式重新生成隐藏的密码
+            char[] randChars = newKey.password != null && isNoPassword(newKey.password) ? EncryptUtils.randChar(32) : null;
+            char[] newPassword = randChars != null ? EncryptUtils.md5(randChars)
+                    : newKey.password != null ? newKey.password : oldPassword;
+            result.passwordChanged = !Arrays.equals(oldPassword, newPassword);
+
+            //机器码不变时保留密钥表，否则重新生成；只增加机器时内容密钥不变
+            boolean keepTable = newKey.code == null && oldTable != null;
+            byte[] newTable = null;
+            char[] newMachineKey = keepTable ? oldMachineKey : null;
+            Set<String> newHashes = oldHashes;
+            if (!keepTable) {
+                List<char[]> newCodes = newKey.code != null ? MachineKeyTable.parse(newKey.code)
+                        : oldCode != null ? Collections.singletonList(oldCode) : Collections.emptyList();
+                newHashes = new LinkedHashSet<>();
+                for (char[] newCode : newCodes) {
+                    newHashes.add(new String(EncryptUtils.md5(newCode)));
+                }
+                if (!newCodes.isEmpty()) {
+                    newMachineKey = oldMachineKey != null && newHashes.containsAll(oldHashes) ? oldMachineKey
+                            : EncryptUtils.secureChar(32);
+                    newTable = MachineKeyTable.wrap(newMachineKey, newCodes);
+                }
+            }
+            result.codeChanged = !oldHashes.equals(newHashes);
+
+            //类用密码加上内容密钥加密，旧版本再用机器码加密一遍
+            char[] fromPassword = oldMachineKey == null ? oldPassword : StrUtils.merger(oldPassword, oldMachineKey);
+            char[] toPassword = newMachineKey == null ? newPassword : StrUtils.merger(newPassword, newMachineKey);
+            boolean reencrypt = oldCode != null || !Arrays.equals(fromPassword, toPassword);
+            char[] hashPassword = newPassword;
+            byte[] toTable = newTable;
+            //读取配置文件的类中写着密码，更换密码时重新注入
+            Map<String, byte[]> configReaders = result.passwordChanged ? injectConfigReaders(zip, index, newPassword)
+                    : Collections.emptyMap();
+            AtomicLong bytes = new AtomicLong();
+            try (JarWriter writer = new JarWriter(temp, pool)) {
+                for (ZipIndex.Entry entry : index.getEntries()) {
+                    String name = entry.getName();
+                    if (PASS_ENTRY.equals(name)) {
+                        //更换为指定密码时删除
+                        if (newKey.password == null) {
+                            writer.addRaw(index, entry);
+                        } else if (randChars != null) {
+                            writer.addBytes(name, entry, () -> StrUtils.toBytes(randChars));
+                        }
+                        continue;
+                    }
+                    if (ENVELOPE_ENTRY.equals(name)) {
+                        //公钥模式更换密码后不再使用公钥加密的内容密钥
+                        if (!result.passwordChanged) {
+                            writer.addRaw(index, entry);
+                        }
+                        continue;
+                    }
+                    if (CODE_ENTRY.equals(name)) {
+                        //旧版本的机器码改为密钥表
+                        continue;
+                    }
+                    if (KEYS_ENTRY.equals(name)) {
+                        //取消绑定时删除
+                        if (keepTable) {
+                            writer.addRaw(index, entry);
+                        } else if (toTable != null) {
+                            writer.addBytes(name, entry, () -> toTable);
+                        }
+                        continue;
+                    }
+                    if (PASSHASH_ENTRY.equals(name)) {
+                        writer.addBytes(name, entry, () -> StrUtils.toBytes(JarEncryptor.passHash(hashPassword)));
+                        //原来没有的放在密码hash之后
+                        if (randChars != null && hiddenPass == null) {
+                            writer.addBytes(PASS_ENTRY, entry, () -> StrUtils.toBytes(randChars));
+                        }
+                        if (toTable != null && oldTable == null) {
+                            writer.addBytes(KEYS_ENTRY, entry, () -> toTable);
+                        }
+                        continue;
+                    }
+                    //只更换了机器码密钥表时加密的数据不变
+                    if (!name.startsWith(ENCRYPT_PATH) || entry.isDirectory() || !reencrypt) {
+                        writer.addRaw(index, entry);
+                        continue;
+                    }
+                    String fileName = name.substring(ENCRYPT_PATH.length());
+                    byte[] configReader = configReaders.get(fileName);
+                    writer.addBytes(name, entry, () -> {
+                        byte[] data = read(zip, name);
+                        bytes.addAndGet(data.length);
+                        //保持原来的加密算法
+                        int suite = CipherSuite.of(data);
+                        data = configReader != null ? configReader : JarDecryptor.decrypt(data, fileName, fromPassword, oldCode);
+                        return EncryptUtils.en(data, StrUtils.merger(toPassword, fileName.toCharArray()), suite);
+                    });
+                    result.entries++;
+                }
+            }
+            result.bytes = bytes.get();
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        result.size = target.length();
+        result.time = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    /**
+     * 用新密码重新注入读取配置文件的框架类，原来的类从jar内lib下的jar中查找
+     *
+     * @param zip      已加密的jar
+     * @param index    已加密的jar的索引
+     * @param password 新密码
+     * @return 类名-&gt;注入后的字节码，没有加密配置文件时为空
+     * @throws IOException IOException
+     */
+    static Map<String, byte[]> injectConfigReaders(ZipFile zip, ZipIndex index, char[] password) throws IOException {
+        Map<String, byte[]> classes = new HashMap<>();
+        for (String frame : JarEncryptor.CONFIG_FRAMES) {
+            String className = JarEncryptor.configReaderClass(frame);
+            if (zip.getEntry(ENCRYPT_PATH + className) == null) {
+                continue;
+            }
+            File lib = extractLibJar(zip, index, className.replace('.', '/') + ".class", frame);
+            if (lib == null) {
+                throw new IllegalStateException("jar中没有找到 " + className + "，无法更换加密配置文件的密码，请重新加密");
+            }
+            File self = new File(JarRekey.class.getProtectionDomain().getCodeSource().getLocation().getPath());
+            try (ClassPoolScope scope = new ClassPoolScope()) {
+                scope.insertClassPath(lib);
+                scope.insertClassPath(self);
+                scope.insertClassDir(self);
+                classes.put(className, JarEncryptor.injectConfigReader(scope, frame, password));
+            } catch (Exception e) {
+                throw new IllegalStateException("重新注入 " + className + " 失败，请重新加密: " + e.getMessage(), e);
+            } finally {
+                lib.delete();
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * 找出包含某个类的lib下的jar，复制到临时文件
+     *
+     * @param zip   已加密的jar
+     * @param index 已加密的jar的索引
+     * @param entry 类的entry名称
+     * @param hint  名称中包含这个字符串的jar先查找，如 spring
+     * @return 临时文件，没有找到时为null
+     * @throws IOException IOException
+     */
+    private static File extractLibJar(ZipFile zip, ZipIndex index, String entry, String hint) throws IOException {
+        List<ZipEntry> jars = new ArrayList<>();
+        for (ZipIndex.Entry e : index.getEntries()) {
+            if (e.getName().endsWith(".jar") && !e.isDirectory()) {
+                jars.add(zip.getEntry(e.getName()));
+            }
+        }
+        jars.sort((a, b) -> Boolean.compare(!a.getName().contains(hint), !b.getName().contains(hint)));
+        for (ZipEntry jar : jars) {
+            if (!containsEntry(zip, jar, entry)) {
+                continue;
+            }
+            File temp = File.createTempFile("classfinal-lib", ".jar");
+            try (InputStream in = zip.getInputStream(jar)) {
+                Files.copy(in, temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return temp;
+        }
+        return null;
+    }
+
+    /**
+     * lib下的jar中是否有某个entry，流式读取，不复制到磁盘
+     */
+    static boolean containsEntry(ZipFile zip, ZipEntry jar, String name) throws IOException {
+        try (ZipInputStream in = new ZipInputStream(zip.getInputStream(jar))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (name.equals(entry.getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 校验加密时的密码，无密码模式从jar中读取隐藏的密码
+     *
+     * @param zip      已加密的jar
+     * @param password 密码，为空或#时按无密码模式读取
+     * @return 加密使用的密码
+     */
+    static char[] readPassword(ZipFile zip, char[] password) {
+        byte[] passHash = read(zip, PASSHASH_ENTRY);
+        if (passHash == null) {
+            throw new IllegalArgumentException("不是加密后的jar: " + zip.getName());
+        }
+        if (StrUtils.isEmpty(password) || isNoPassword(password)) {
+            byte[] hiddenPass = read(zip, PASS_ENTRY);
+            if (hiddenPass == null) {
+                throw new IllegalArgumentException("jar不是无密码模式，请提供原密码");
+            }
+            password = EncryptUtils.md5(StrUtils.toChars(hiddenPass));
+        }
+        if (!StrUtils.equal(StrUtils.toChars(passHash), JarEncryptor.passHash(password))) {
+            throw new IllegalArgumentException("原密码错误");
+        }
+        return password;
+    }
+
+    /**
+     * 校验旧版本加密时绑定的机器码（逐个类用机器码加密）
+     *
+     * @param zip  已加密的jar
+     * @param code 机器码
+     * @return 加密使用的机器码，没有绑定或使用密钥表时为null
+     */
+    static char[] readCode(ZipFile zip, char[] code) {
+        byte[] codeHash = read(zip, CODE_ENTRY);
+        if (codeHash == null) {
+            return null;
+        }
+        for (char[] c : MachineKeyTable.parse(code)) {
+            if (StrUtils.equal(EncryptUtils.md5(c), StrUtils.toChars(codeHash))) {
+                return c;
+            }
+        }
+        throw new IllegalArgumentException("原机器码错误");
+    }
+
+    /**
+     * 用任意一台绑定机器的机器码从密钥表中解开内容密钥
+     *
+     * @param zip  已加密的jar
+     * @param code 机器码，多个时使用第一个在表中的
+     * @return 内容密钥，没有密钥表时为null
+     */
+    static char[] readMachineKey(ZipFile zip, char[] code) {
+        byte[] table = read(zip, KEYS_ENTRY);
+        if (table == null) {
+            return null;
+        }
+        for (char[] c : MachineKeyTable.parse(code)) {
+            char[] machineKey = MachineKeyTable.unwrap(table, c);
+            if (machineKey != null) {
+                return machineKey;
+            }
+        }
+        throw new IllegalArgumentException("原机器码错误");
+    }
+
+    /**
+     * 是否是无密码模式，和加密时一样用 # 表示
+     */
+    private static boolean isNoPassword(char[] password) {
+        String pwd = new String(password);
+        return "#".equals(pwd) || Const.NO_PASSWORD_MARKER.equals(pwd);
+    }
+
+    static byte[] read(ZipFile zip, String name) {
+        ZipEntry entry = zip.getEntry(name);
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            return IoUtils.toBytes(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 统计
+     */
+    public static class Result {
+        //重新加密的文件数
+        int entries;
+        //重新加密的字节数
+        long bytes;
+        //输出文件大小
+        long size;
+        //耗时(ms)
+        long time;
+        boolean passwordChanged;
+        boolean codeChanged;
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public boolean isPasswordChanged() {
+            return passwordChanged;
+        }
+
+        public boolean isCodeChanged() {
+            return codeChanged;
+        }
+
+        public String summary() {
+            return "重新加密 " + entries + " 个文件 (" + HeapMonitor.format(bytes) + ")，"
+                    + (passwordChanged ? "密码已更换" : "密码不变") + "，"
+                    + (codeChanged ? "机器码已更换" : "机器码不变") + "，耗时 " + time + " ms";
+        }
+    }
+}
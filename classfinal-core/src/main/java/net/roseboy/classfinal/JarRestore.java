@@ -0,0 +1,349 @@
+package net.roseboy.classfinal;
+
+import net.roseboy.classfinal.util.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
+
+/**
+ * 用密码把已加密的jar还原成未加密的jar（授权的审计、排查问题时使用）
+ * <p>
+ * 和运行时一样用 {@link JarDecryptor#decrypt} 解密 META-INF/.classes 中的数据，替换清空方法体后的类和清空的配置文件，
+ * lib 下的jar中的类同样替换；删除 META-INF/.classes、加入的 classfinal 代码（war 中为 lib 下的 classfinal jar）
+ * 和 MANIFEST.MF 中的 Premain-Class，去掉 layers.idx 中加密时增加的层和 classpath.idx 中加入的jar，其他entry原样复制压缩数据。解密在线程池中并行执行，按原顺序流式写出。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class JarRestore {
+    //加密后文件存放位置
+    private static final String ENCRYPT_PATH = "META-INF/" + Const.FILE_NAME + "/";
+    //加入的classfinal代码所在的包
+    private static final String AGENT_PATH = CoreAgent.class.getPackage().getName().replace('.', '/') + "/";
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+    //加密时加入MANIFEST.MF的行
+    private static final String PREMAIN = "Premain-Class: " + CoreAgent.class.getName() + "\r\n";
+    //war中加入lib的classfinal jar包含的类
+    private static final String AGENT_CLASS = CoreAgent.class.getName().replace('.', '/') + ".class";
+    //jar/war中类和配置文件所在的目录
+    private static final String[] CLASSES_DIRS = {"BOOT-INF/classes/", "WEB-INF/classes/"};
+    private static final String[] LIB_DIRS = {"BOOT-INF/lib/", "WEB-INF/lib/"};
+    //-cfgfiles 注入了解密代码的框架的类，lib 中的原类没有改动
+    private static final Set<String> CONFIG_READERS = Arrays.stream(JarEncryptor.CONFIG_FRAMES)
+            .map(JarEncryptor::configReaderClass).collect(Collectors.toSet());
+
+    //解密需要的信息，线程池中共享
+    private final ZipFile zip;
+    private final char[] password;
+    private final char[] code;
+    private final Set<String> payloads = new HashSet<>();
+    private byte[] dictionary;
+    private final AtomicInteger classes = new AtomicInteger();
+    private final AtomicInteger files = new AtomicInteger();
+    private final AtomicInteger libJars = new AtomicInteger();
+
+    private JarRestore(ZipFile zip, char[] password, char[] code) {
+        this.zip = zip;
+        this.password = password;
+        this.code = code;
+    }
+
+    /**
+     * 还原已加密的jar
+     *
+     * @param jar      已加密的jar/war
+     * @param target   输出文件
+     * @param password 加密时的密码，无密码模式可以为空，公钥模式为私钥解开的内容密钥
+     * @param code     加密时绑定的任意一台机器的机器码，没有绑定时为空
+     * @param pool     线程池，为null时单线程执行
+     * @return 统计
+     * @throws IOException IOException
+     */
+    public static Result restore(File jar, File target, char[] password, char[] code, ForkJoinPool pool)
+            throws IOException {
+        long start = System.currentTimeMillis();
+        Result result = new Result();
+        File temp = new File(target.getAbsolutePath() + ".tmp");
+        try (ZipIndex index = ZipIndex.read(jar); ZipFile zip = new ZipFile(jar)) {
+            //绑定机器码时密码后加上密钥表中的内容密钥
+            char[] pass = JarRekey.readPassword(zip, password);
+            char[] machineKey = JarRekey.readMachineKey(zip, code);
+            JarRestore restore = new JarRestore(zip, machineKey == null ? pass : StrUtils.merger(pass, machineKey),
+                    JarRekey.readCode(zip, code));
+            for (ZipIndex.Entry entry : index.getEntries()) {
+                String name = entry.getName();
+                if (name.startsWith(ENCRYPT_PATH) && !entry.isDirectory()) {
+                    restore.payloads.add(name.substring(ENCRYPT_PATH.length()));
+                }
+            }
+            //war中加入lib的classfinal jar
+            Set<String> agentJars = new HashSet<>();
+            for (ZipIndex.Entry entry : index.getEntries()) {
+                String name = entry.getName();
+                if (name.startsWith("WEB-INF/lib/") && isLibJar(name)
+                        && JarRekey.containsEntry(zip, zip.getEntry(name), AGENT_CLASS)) {
+                    agentJars.add(name);
+                }
+            }
+            restore.payloads.removeAll(Arrays.asList(Const.CONFIG_PASS, Const.CONFIG_CODE, Const.CONFIG_PASSHASH,
+                    Const.CONFIG_ENVELOPE, Const.CONFIG_KEYS));
+            if (restore.payloads.remove(Const.CONFIG_DICT)) {
+                restore.dictionary = restore.decrypt(Const.CONFIG_DICT);
+            }
+
+            try (JarWriter writer = new JarWriter(temp, pool)) {
+                for (ZipIndex.Entry entry : index.getEntries()) {
+                    String name = entry.getName();
+                    if (name.startsWith(ENCRYPT_PATH) || isAgent(name) || isAgentDir(index, entry)
+                            || agentJars.contains(name)) {
+                        continue;
+                    }
+                    String payload = restore.payloadOf(entry);
+                    if (payload != null) {
+                        AtomicInteger counter = name.endsWith(".class") ? restore.classes : restore.files;
+                        writer.addBytes(name, entry, () -> {
+                            counter.incrementAndGet();
+                            return restore.decryptEntry(payload);
+                        });
+                    } else if (MANIFEST.equals(name)) {
+                        writer.addBytes(name, entry, () -> new String(JarRekey.read(zip, name), StandardCharsets.UTF_8)
+                                .replace(PREMAIN, "").getBytes(StandardCharsets.UTF_8));
+                    } else if (name.endsWith("-INF/" + SpringBootIndex.LAYERS_IDX)) {
+                        writer.addBytes(name, entry, () -> SpringBootIndex.restoreLayers(
+                                new String(JarRekey.read(zip, name), StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8));
+                    } else if (name.endsWith("-INF/" + SpringBootIndex.CLASSPATH_IDX) && !agentJars.isEmpty()) {
+                        writer.addBytes(name, entry, () -> SpringBootIndex.restoreClassPath(
+                                new String(JarRekey.read(zip, name), StandardCharsets.UTF_8), agentJars)
+                                .getBytes(StandardCharsets.UTF_8));
+                    } else if (isLibJar(name)) {
+                        writer.addTempFile(name, entry, () -> restore.restoreLib(name, target));
+                    } else {
+                        writer.addRaw(index, entry);
+                    }
+                }
+            }
+            result.classes = restore.classes.get();
+            result.files = restore.files.get();
+            result.libJars = restore.libJars.get();
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        result.size = target.length();
+        result.time = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    /**
+     * 还原lib下的jar，只替换和加密前不同的类（清空方法体后的类），没有时原样返回。
+     * -cfgfiles 注入解密代码的类加密的是注入后的字节码，lib 中保留的就是原类，不替换。
+     * jar流式复制到临时文件后处理，不整体读入内存
+     *
+     * @param name   entry名称
+     * @param target 输出文件，临时文件放在同一目录
+     * @return 还原后的jar，临时文件，由调用方删除
+     */
+    private File restoreLib(String name, File target) {
+        File dir = target.getAbsoluteFile().getParentFile();
+        File in = null;
+        File out = null;
+        try {
+            in = File.createTempFile("classfinal", ".jar", dir);
+            try (InputStream is = this.zip.getInputStream(this.zip.getEntry(name))) {
+                Files.copy(is, in.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (ZipIndex index = ZipIndex.read(in)) {
+                //外层已经在线程池中并行，jar内部按顺序处理
+                Map<String, byte[]> stubs = new HashMap<>();
+                for (ZipIndex.Entry entry : index.getEntries()) {
+                    String payload = entry.isDirectory() ? null : classPayloadOf(entry.getName());
+                    if (payload == null || CONFIG_READERS.contains(payload)) {
+                        continue;
+                    }
+                    //没有加密的jar中同名的类
+                    byte[] plain = decryptEntry(payload);
+                    if (IoUtils.crc32(plain) != entry.getCrc()) {
+                        stubs.put(entry.getName(), plain);
+                    }
+                }
+                if (stubs.isEmpty()) {
+                    File result = in;
+                    in = null;
+                    return result;
+                }
+                out = File.createTempFile("classfinal", ".jar", dir);
+                try (JarWriter writer = new JarWriter(out, null)) {
+                    for (ZipIndex.Entry entry : index.getEntries()) {
+                        byte[] plain = stubs.get(entry.getName());
+                        if (plain != null) {
+                            writer.addBytes(entry.getName(), entry, () -> plain);
+                        } else {
+                            writer.addRaw(index, entry);
+                        }
+                    }
+                }
+                this.classes.addAndGet(stubs.size());
+            }
+            this.libJars.incrementAndGet();
+            File result = out;
+            out = null;
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (in != null) {
+                in.delete();
+            }
+            if (out != null) {
+                out.delete();
+            }
+        }
+    }
+
+    /**
+     * 解密一个entry，压缩过的类再解压
+     *
+     * @param payload 加密后的文件名
+     * @return 解密后的字节
+     */
+    private byte[] decryptEntry(String payload) {
+        byte[] bytes = decrypt(payload);
+        if (PayloadCompressor.isCompressed(bytes)) {
+            bytes = PayloadCompressor.decompress(bytes, this.dictionary);
+        }
+        return bytes;
+    }
+
+    private byte[] decrypt(String payload) {
+        return JarDecryptor.decrypt(JarRekey.read(this.zip, ENCRYPT_PATH + payload), payload, this.password, this.code);
+    }
+
+    /**
+     * 外层jar的entry对应的加密文件：清空方法体后的类和清空的配置文件
+     *
+     * @param entry entry
+     * @return 加密后的文件名，不需要还原时为null
+     */
+    private String payloadOf(ZipIndex.Entry entry) {
+        String name = entry.getName();
+        if (entry.isDirectory()) {
+            return null;
+        }
+        for (String dir : CLASSES_DIRS) {
+            if (!name.startsWith(dir)) {
+                continue;
+            }
+            String path = name.substring(dir.length());
+            //classes下的配置文件按文件名加密
+            if (entry.getSize() == 0 && path.indexOf('/') < 0 && this.payloads.contains(path)) {
+                return path;
+            }
+            return classPayloadOf(path);
+        }
+        return classPayloadOf(name);
+    }
+
+    /**
+     * 类对应的加密文件
+     *
+     * @param path 类相对于classes目录或jar根目录的路径
+     * @return 加密后的文件名，不是加密的类时为null
+     */
+    private String classPayloadOf(String path) {
+        if (!path.endsWith(".class")) {
+            return null;
+        }
+        String className = path.substring(0, path.length() - 6).replace('/', '.');
+        return this.payloads.contains(className) ? className : null;
+    }
+
+    /**
+     * 是否是加密时加入的classfinal代码，在jar根目录或classes目录下（war）
+     */
+    private static boolean isAgent(String name) {
+        String path = classPath(name);
+        return path.startsWith(AGENT_PATH)
+                && Arrays.asList(Const.CLASSFINAL_FILES).contains(path.substring(path.lastIndexOf('/') + 1));
+    }
+
+    /**
+     * 是否是只包含classfinal代码的目录
+     */
+    private static boolean isAgentDir(ZipIndex index, ZipIndex.Entry dir) {
+        String name = dir.getName();
+        String path = classPath(name);
+        if (!dir.isDirectory() || path.isEmpty() || !(path.startsWith(AGENT_PATH) || AGENT_PATH.startsWith(path))) {
+            return false;
+        }
+        return index.getEntries().stream().noneMatch(entry -> !entry.isDirectory()
+                && entry.getName().startsWith(name) && !isAgent(entry.getName()));
+    }
+
+    /**
+     * 相对于classes目录的路径，不在classes目录下时原样返回
+     */
+    private static String classPath(String name) {
+        for (String dir : CLASSES_DIRS) {
+            if (name.startsWith(dir)) {
+                return name.substring(dir.length());
+            }
+        }
+        return name;
+    }
+
+    private static boolean isLibJar(String name) {
+        return name.endsWith(".jar") && Arrays.stream(LIB_DIRS).anyMatch(name::startsWith);
+    }
+
+    /**
+     * 统计
+     */
+    public static class Result {
+        //还原的类
+        int classes;
+        //还原的配置文件
+        int files;
+        //重新打包的lib jar
+        int libJars;
+        //输出文件大小
+        long size;
+        //耗时(ms)
+        long time;
+
+        public int getClasses() {
+            return classes;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        public int getLibJars() {
+            return libJars;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public String summary() {
+            return "还原 " + classes + " 个类、" + files + " 个配置文件（lib jar " + libJars + " 个），大小 "
+                    + HeapMonitor.format(size) + "，耗时 " + time + " ms";
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package net.roseboy.classfinal.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量加密配置（--batch jobs.yml）
+ *
+ * 每个任务的配置结构与单个配置文件相同，未配置的项使用 defaults 中的值
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class BatchConfig {
+
+    /** 同时执行的任务数 */
+    private int parallel = 1;
+
+    /** 所有任务共用的压缩/加密线程数 */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** 内存预算（MB），同时执行的任务预估内存之和不超过该值 */
+    private long memory = Runtime.getRuntime().maxMemory() / 1024 / 1024 * 3 / 4;
+
+    /** 任务失败后的重试次数 */
+    private int retries = 0;
+
+    /** 依赖jar包索引的缓存文件路径 */
+    private String classpathCache;
+
+    /** 任务列表，按配置文件中的顺序 */
+    private List<Job> jobs = new ArrayList<>();
+
+    public static class Job {
+        /** 任务名 */
+        private String name;
+
+        /** 任务配置 */
+        private ClassFinalConfig config;
+
+        public Job(String name, ClassFinalConfig config) {
+            this.name = name;
+            this.config = config;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ClassFinalConfig getConfig() {
+            return config;
+        }
+    }
+
+    // Getters and Setters
+    public int getParallel() {
+        return parallel;
+    }
+
+    public void setParallel(int parallel) {
+        this.parallel = parallel;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public long getMemory() {
+        return memory;
+    }
+
+    public void setMemory(long memory) {
+        this.memory = memory;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    public String getClasspathCache() {
+        return classpathCache;
+    }
+
+    public void setClasspathCache(String classpathCache) {
+        this.classpathCache = classpathCache;
+    }
+
+    public List<Job> getJobs() {
+        return jobs;
+    }
+
+    public void setJobs(List<Job> jobs) {
+        this.jobs = jobs;
+    }
+
+    /**
+     * 验证配置的有效性
+     *
+     * @throws IllegalArgumentException 配置无效时抛出
+     */
+    public void validate() {
+        if (jobs == null || jobs.isEmpty()) {
+            throw new IllegalArgumentException("jobs is required");
+        }
+        if (parallel < 1 || threads < 1 || memory < 1 || retries < 0) {
+            throw new IllegalArgumentException("batch.parallel/threads/memory must be positive, batch.retries must not be negative");
+        }
+        for (Job job : jobs) {
+            try {
+                job.getConfig().validate();
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("jobs." + job.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+}
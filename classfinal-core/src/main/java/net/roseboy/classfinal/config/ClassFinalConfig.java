@@ -14,6 +14,7 @@ public class ClassFinalConfig {
     private EncryptionConfig encryption;
     private OutputConfig output;
     private AdvancedConfig advanced;
+    private MinifyConfig minify;
     
     public static class InputConfig {
         /** 要加密的文件路径 */
@@ -28,6 +29,9 @@ public class ClassFinalConfig {
         /** lib 目录下要加密的 jar 列表 */
         private String[] libjars;
         
+        /** 外部依赖 jar 目录列表 */
+        private String[] classpath;
+        
         // Getters and Setters
         public String getFile() {
             return file;
@@ -60,6 +64,14 @@ public class ClassFinalConfig {
         public void setLibjars(String[] libjars) {
             this.libjars = libjars;
         }
+        
+        public String[] getClasspath() {
+            return classpath;
+        }
+        
+        public void setClasspath(String[] classpath) {
+            this.classpath = classpath;
+        }
     }
     
     public static class EncryptionConfig {
@@ -69,12 +81,15 @@ public class ClassFinalConfig {
         /** 密码文件路径 */
         private String passwordFile;
         
-        /** 加密模式: password | nopassword | machine-binding */
+        /** 加密模式: password | nopassword | machine-binding | public-key */
         private String mode = "password";
         
-        /** 机器码（用于机器绑定模式） */
+        /** 机器码（用于机器绑定模式，多台机器用逗号分隔） */
         private String machineCode;
         
+        /** RSA公钥文件（用于公钥模式，加密时不需要密码和私钥） */
+        private String publicKeyFile;
+        
         /** 密码文件读取后是否自动删除 */
         private boolean deletePasswordFile = false;
         
@@ -111,6 +126,14 @@ public class ClassFinalConfig {
             this.machineCode = machineCode;
         }
         
+        public String getPublicKeyFile() {
+            return publicKeyFile;
+        }
+        
+        public void setPublicKeyFile(String publicKeyFile) {
+            this.publicKeyFile = publicKeyFile;
+        }
+        
         public boolean isDeletePasswordFile() {
             return deletePasswordFile;
         }
@@ -155,6 +178,39 @@ public class ClassFinalConfig {
         /** 并行加密线程数 */
         private int threads = 1;
         
+        /** 压缩策略，如 default=6,class=9,png=0 */
+        private String compression;
+        
+        /** 依赖jar包索引的缓存文件路径 */
+        private String classpathCache;
+        
+        /** 打包时内存中待写入数据的上限(MB)，0为最大堆内存的1/4 */
+        private long heapLimit = 0;
+        
+        /** 耗时和资源报告(JSON)的输出路径 */
+        private String report;
+        
+        /** Chrome trace-event文件的输出路径 */
+        private String trace;
+        
+        /** 可重现构建：相同的输入得到完全相同的输出 */
+        private boolean reproducible = false;
+        
+        /** 可重现构建的entry修改时间(纪元秒数或ISO-8601)，为空时使用SOURCE_DATE_EPOCH或固定时间 */
+        private String outputTimestamp;
+        
+        /** 清空方法体后的类去掉的调试信息，如 lines,source */
+        private String stripStub;
+        
+        /** 加密前的类去掉的调试信息，如 lines,vars,source */
+        private String stripPayload;
+        
+        /** 加密前用从jar中生成的字典压缩类 */
+        private boolean compressPayload = false;
+        
+        /** 加密算法：gcm、ctr、ecb */
+        private String cipher;
+        
         /** 是否启用增量加密 */
         private boolean incremental = false;
         
@@ -186,6 +242,94 @@ public class ClassFinalConfig {
             this.threads = threads;
         }
         
+        public String getCompression() {
+            return compression;
+        }
+        
+        public void setCompression(String compression) {
+            this.compression = compression;
+        }
+        
+        public String getClasspathCache() {
+            return classpathCache;
+        }
+        
+        public void setClasspathCache(String classpathCache) {
+            this.classpathCache = classpathCache;
+        }
+        
+        public long getHeapLimit() {
+            return heapLimit;
+        }
+        
+        public void setHeapLimit(long heapLimit) {
+            this.heapLimit = heapLimit;
+        }
+        
+        public String getReport() {
+            return report;
+        }
+        
+        public void setReport(String report) {
+            this.report = report;
+        }
+        
+        public String getTrace() {
+            return trace;
+        }
+        
+        public void setTrace(String trace) {
+            this.trace = trace;
+        }
+        
+        public boolean isReproducible() {
+            return reproducible;
+        }
+        
+        public void setReproducible(boolean reproducible) {
+            this.reproducible = reproducible;
+        }
+        
+        public String getOutputTimestamp() {
+            return outputTimestamp;
+        }
+        
+        public void setOutputTimestamp(String outputTimestamp) {
+            this.outputTimestamp = outputTimestamp;
+        }
+        
+        public String getStripStub() {
+            return stripStub;
+        }
+        
+        public void setStripStub(String stripStub) {
+            this.stripStub = stripStub;
+        }
+        
+        public String getStripPayload() {
+            return stripPayload;
+        }
+        
+        public void setStripPayload(String stripPayload) {
+            this.stripPayload = stripPayload;
+        }
+        
+        public boolean isCompressPayload() {
+            return compressPayload;
+        }
+        
+        public void setCompressPayload(boolean compressPayload) {
+            this.compressPayload = compressPayload;
+        }
+        
+        public String getCipher() {
+            return cipher;
+        }
+        
+        public void setCipher(String cipher) {
+            this.cipher = cipher;
+        }
+        
         public boolean isIncremental() {
             return incremental;
         }
@@ -203,6 +347,41 @@ public class ClassFinalConfig {
         }
     }
     
+    public static class MinifyConfig {
+        /** 是否压缩模板和静态资源 */
+        private boolean enabled = false;
+        
+        /** 压缩的文件，按entry路径匹配，为空时为 html/htm/ftl/css/js 等 */
+        private String[] include;
+        
+        /** 不压缩的文件，为空时为 .min.js/.min.css */
+        private String[] exclude;
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public String[] getInclude() {
+            return include;
+        }
+        
+        public void setInclude(String[] include) {
+            this.include = include;
+        }
+        
+        public String[] getExclude() {
+            return exclude;
+        }
+        
+        public void setExclude(String[] exclude) {
+            this.exclude = exclude;
+        }
+    }
+    
     // Main Getters and Setters
     public InputConfig getInput() {
         return input;
@@ -236,6 +415,14 @@ public class ClassFinalConfig {
         this.advanced = advanced;
     }
     
+    public MinifyConfig getMinify() {
+        return minify;
+    }
+    
+    public void setMinify(MinifyConfig minify) {
+        this.minify = minify;
+    }
+    
     /**
      * 验证配置有效性
      * 
@@ -257,9 +444,10 @@ public class ClassFinalConfig {
         // 验证加密模式
         if (!"password".equals(encryption.getMode()) 
             && !"nopassword".equals(encryption.getMode())
-            && !"machine-binding".equals(encryption.getMode())) {
+            && !"machine-binding".equals(encryption.getMode())
+            && !"public-key".equals(encryption.getMode())) {
             throw new IllegalArgumentException(
-                "encryption.mode must be one of: password, nopassword, machine-binding");
+                "encryption.mode must be one of: password, nopassword, machine-binding, public-key");
         }
         
         // 密码模式验证
@@ -277,5 +465,13 @@ public class ClassFinalConfig {
                     "encryption.machineCode is required for machine-binding mode");
             }
         }
+        
+        // 公钥模式验证
+        if ("public-key".equals(encryption.getMode())) {
+            if (encryption.getPublicKeyFile() == null || encryption.getPublicKeyFile().isEmpty()) {
+                throw new IllegalArgumentException(
+                    "encryption.publicKeyFile is required for public-key mode");
+            }
+        }
     }
 }
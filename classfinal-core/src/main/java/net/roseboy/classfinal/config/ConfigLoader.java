@@ -1,10 +1,14 @@
 package net.roseboy.classfinal.config;
 
+import net.roseboy.classfinal.EncryptDaemon;
+
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.regex.Matcher;
@@ -51,6 +55,85 @@ public class ConfigLoader {
         }
     }
     
+    /**
+     * 加载批量加密配置（仅支持 YAML）
+     * 
+     * <pre>
+     * batch:
+     *   parallel: 2        # 同时执行的任务数
+     *   threads: 8         # 共用的线程数
+     *   memory: 2048       # 内存预算(MB)
+     *   retries: 1         # 失败重试次数
+     * defaults:            # 所有任务的默认配置，结构同单个配置文件
+     *   encryption:
+     *     password: ${CLASSFINAL_PASSWORD}
+     * jobs:
+     *   app1:              # 任务名
+     *     input:
+     *       file: app1.jar
+     *       packages:
+     *         - com.example
+     * </pre>
+     * 
+     * @param batchPath 批量配置文件路径
+     * @return 批量配置
+     * @throws IOException 读取文件失败
+     */
+    public static BatchConfig loadBatch(String batchPath) throws IOException {
+        File batchFile = new File(batchPath);
+        if (!batchFile.exists()) {
+            throw new FileNotFoundException("配置文件不存在: " + batchPath);
+        }
+        if (!batchPath.endsWith(".yml") && !batchPath.endsWith(".yaml")) {
+            throw new IllegalArgumentException("批量配置文件仅支持 .yml, .yaml");
+        }
+        String content = new String(Files.readAllBytes(Paths.get(batchPath)), StandardCharsets.UTF_8);
+        Map<String, String> map = parseYamlMap(replaceEnvVariables(content));
+        
+        BatchConfig batch = new BatchConfig();
+        if (map.containsKey("batch.parallel")) {
+            batch.setParallel(Integer.parseInt(map.get("batch.parallel")));
+        }
+        if (map.containsKey("batch.threads")) {
+            batch.setThreads(Integer.parseInt(map.get("batch.threads")));
+        }
+        if (map.containsKey("batch.memory")) {
+            batch.setMemory(Long.parseLong(map.get("batch.memory")));
+        }
+        if (map.containsKey("batch.retries")) {
+            batch.setRetries(Integer.parseInt(map.get("batch.retries")));
+        }
+        batch.setClasspathCache(map.get("batch.classpathCache"));
+        
+        // 默认配置
+        Map<String, String> defaults = new LinkedHashMap<>();
+        // 任务名 -> 任务配置，按出现顺序
+        Map<String, Map<String, String>> jobMaps = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith("defaults.")) {
+                defaults.put(key.substring("defaults.".length()), entry.getValue());
+            } else if (key.startsWith("jobs.")) {
+                int dot = key.indexOf('.', "jobs.".length());
+                if (dot > 0) {
+                    String name = key.substring("jobs.".length(), dot);
+                    jobMaps.computeIfAbsent(name, k -> new LinkedHashMap<>()).put(key.substring(dot + 1), entry.getValue());
+                }
+            }
+        }
+        
+        List<BatchConfig.Job> jobs = new ArrayList<>();
+        for (Map.Entry<String, Map<String, String>> job : jobMaps.entrySet()) {
+            Map<String, String> merged = new LinkedHashMap<>(defaults);
+            merged.putAll(job.getValue());
+            ClassFinalConfig config = new ClassFinalConfig();
+            buildConfigFromMap(config, merged);
+            jobs.add(new BatchConfig.Job(job.getKey(), config));
+        }
+        batch.setJobs(jobs);
+        return batch;
+    }
+    
     /**
      * 替换配置内容中的环境变量占位符
      * 
@@ -63,7 +146,7 @@ public class ConfigLoader {
         
         while (matcher.find()) {
             String varName = matcher.group(1);
-            String varValue = System.getenv(varName);
+            String varValue = EncryptDaemon.getenv(varName);
             
             if (varValue == null) {
                 // 环境变量不存在，保持原样
@@ -88,7 +171,18 @@ public class ConfigLoader {
      */
     private static ClassFinalConfig parseYaml(String content) {
         ClassFinalConfig config = new ClassFinalConfig();
-        Map<String, String> flatMap = new HashMap<>();
+        buildConfigFromMap(config, parseYamlMap(content));
+        return config;
+    }
+    
+    /**
+     * 把 YAML 解析成扁平化的 Map，key 为 section.key，列表为 section.key[]，按出现顺序
+     * 
+     * @param content YAML 内容
+     * @return 扁平化的 Map
+     */
+    private static Map<String, String> parseYamlMap(String content) {
+        Map<String, String> flatMap = new LinkedHashMap<>();
         
         String[] lines = content.split("\n");
         Stack<String> sectionStack = new Stack<>();
@@ -156,10 +250,7 @@ public class ConfigLoader {
             }
         }
         
-        // 构建配置对象
-        buildConfigFromMap(config, flatMap);
-        
-        return config;
+        return flatMap;
     }
     
     /**
@@ -218,7 +309,7 @@ public class ConfigLoader {
         
         while (matcher.find()) {
             String envVar = matcher.group(1);
-            String envValue = System.getenv(envVar);
+            String envValue = EncryptDaemon.getenv(envVar);
             // 如果环境变量不存在，保持原占位符
             matcher.appendReplacement(result, 
                 envValue != null ? Matcher.quoteReplacement(envValue) : Matcher.quoteReplacement(matcher.group(0)));
@@ -263,6 +354,11 @@ public class ConfigLoader {
             input.setLibjars(libjars.split(","));
         }
         
+        String classpath = map.get("input.classpath[]");
+        if (classpath != null) {
+            input.setClasspath(classpath.split(","));
+        }
+        
         config.setInput(input);
         
         // Encryption 配置
@@ -270,7 +366,9 @@ public class ConfigLoader {
         encryption.setPassword(map.get("encryption.password"));
         encryption.setPasswordFile(map.get("encryption.passwordFile"));
         encryption.setMode(map.getOrDefault("encryption.mode", "password"));
-        encryption.setMachineCode(map.get("encryption.machineCode"));
+        // 多台机器可以用逗号分隔或列表
+        encryption.setMachineCode(map.getOrDefault("encryption.machineCode", map.get("encryption.machineCode[]")));
+        encryption.setPublicKeyFile(map.get("encryption.publicKeyFile"));
         
         String deletePasswordFile = map.get("encryption.deletePasswordFile");
         if (deletePasswordFile != null) {
@@ -304,6 +402,29 @@ public class ConfigLoader {
             advanced.setThreads(Integer.parseInt(threads));
         }
         
+        advanced.setCompression(map.get("advanced.compression"));
+        advanced.setClasspathCache(map.get("advanced.classpathCache"));
+        
+        String heapLimit = map.get("advanced.heapLimit");
+        if (heapLimit != null) {
+            advanced.setHeapLimit(Long.parseLong(heapLimit));
+        }
+        advanced.setReport(map.get("advanced.report"));
+        advanced.setTrace(map.get("advanced.trace"));
+        
+        String reproducible = map.get("advanced.reproducible");
+        if (reproducible != null) {
+            advanced.setReproducible(Boolean.parseBoolean(reproducible));
+        }
+        advanced.setOutputTimestamp(map.get("advanced.outputTimestamp"));
+        advanced.setStripStub(map.get("advanced.stripStub"));
+        advanced.setStripPayload(map.get("advanced.stripPayload"));
+        String compressPayload = map.get("advanced.compressPayload");
+        if (compressPayload != null) {
+            advanced.setCompressPayload(Boolean.parseBoolean(compressPayload));
+        }
+        advanced.setCipher(map.get("advanced.cipher"));
+        
         String incremental = map.get("advanced.incremental");
         if (incremental != null) {
             advanced.setIncremental(Boolean.parseBoolean(incremental));
@@ -312,6 +433,25 @@ public class ConfigLoader {
         advanced.setCacheFile(map.get("advanced.cacheFile"));
         
         config.setAdvanced(advanced);
+        
+        // Minify 配置
+        ClassFinalConfig.MinifyConfig minify = new ClassFinalConfig.MinifyConfig();
+        String minifyEnabled = map.get("minify.enabled");
+        if (minifyEnabled != null) {
+            minify.setEnabled(Boolean.parseBoolean(minifyEnabled));
+        }
+        
+        String minifyInclude = map.get("minify.include[]");
+        if (minifyInclude != null) {
+            minify.setInclude(minifyInclude.split(","));
+        }
+        
+        String minifyExclude = map.get("minify.exclude[]");
+        if (minifyExclude != null) {
+            minify.setExclude(minifyExclude.split(","));
+        }
+        
+        config.setMinify(minify);
     }
     
     /**
@@ -333,14 +473,43 @@ public class ConfigLoader {
                 "    - lib-a.jar\n\n" +
                 "encryption:\n" +
                 "  password: ${CLASSFINAL_PASSWORD}\n" +
-                "  mode: password\n\n" +
+                "  mode: password\n" +
+                "  # 公钥模式：构建服务器只需要公钥，运行时用私钥解开内容密钥\n" +
+                "  # mode: public-key\n" +
+                "  # publicKeyFile: public.pem\n\n" +
                 "output:\n" +
                 "  file: app-encrypted.jar\n" +
                 "  overwrite: false\n\n" +
                 "advanced:\n" +
                 "  logLevel: INFO\n" +
                 "  skipConfirmation: false\n" +
-                "  threads: 1\n";
+                "  threads: 1\n" +
+                "  # 压缩策略：扩展名=级别(0不压缩,1-9)，未修改的文件直接复制原压缩数据\n" +
+                "  # compression: default=6,class=9\n" +
+                "  # 依赖jar包的包名索引缓存，jar未变化时下次直接使用\n" +
+                "  # classpathCache: .classfinal/classpath.idx\n" +
+                "  # 打包时内存中待写入数据的上限(MB)，默认为最大堆内存的1/4\n" +
+                "  # heapLimit: 128\n" +
+                "  # 各阶段耗时和资源报告(JSON)、Chrome trace-event文件\n" +
+                "  # report: classfinal-report.json\n" +
+                "  # trace: classfinal-trace.json\n" +
+                "  # 可重现构建：固定entry时间，相同的输入得到完全相同的输出\n" +
+                "  # reproducible: true\n" +
+                "  # outputTimestamp: 2024-01-01T00:00:00Z\n" +
+                "  # 去掉的调试信息：lines(行号),vars(局部变量),source(源文件名),all\n" +
+                "  # stripStub: lines,source\n" +
+                "  # stripPayload: lines,vars,source\n" +
+                "  # 加密前用从jar中生成的字典压缩类\n" +
+                "  # compressPayload: true\n" +
+                "  # 加密算法：gcm(默认,带认证),ctr(可从任意位置解密),ecb(旧版本)\n" +
+                "  # cipher: gcm\n\n" +
+                "# 压缩模板和静态资源（去掉注释和空白），默认 html/htm/ftl/css/js，不含 .min.js/.min.css\n" +
+                "# minify:\n" +
+                "#   enabled: true\n" +
+                "#   include:\n" +
+                "#     - templates/**\n" +
+                "#   exclude:\n" +
+                "#     - .min.js\n";
         
         Files.write(Paths.get(outputPath), template.getBytes(StandardCharsets.UTF_8));
     }
@@ -0,0 +1,452 @@
+package net.roseboy.classfinal.util;
+
+import net.roseboy.classfinal.EncryptDaemon;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 加密时释放和打包jar/war
+ * <p>
+ * 释放时记录原jar的entry顺序和中央目录，打包时按原顺序并行压缩，没有修改过的文件直接复制原压缩数据。
+ * 依赖 {@link JarWriter}、{@link ZipIndex} 等只在加密时使用的类，不加入加密后的jar（运行时需要的部分见 {@link JarUtils}）。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class ArchiveUtils {
+    //记录原JAR的entry顺序，key=targetDir路径, value=entry名称->顺序索引
+    private static final Map<String, LinkedHashMap<String, Integer>> JAR_ENTRY_ORDER = new ConcurrentHashMap<>();
+    //记录原JAR的中央目录，key=targetDir路径，打包时未修改的文件直接复制原压缩数据
+    private static final Map<String, ZipIndex> JAR_INDEX = new ConcurrentHashMap<>();
+    //释放出的文件统一设置的修改时间，打包时修改时间和大小都没变的文件视为未修改
+    public static final long UNTOUCHED_TIME = 315532800000L;
+    //可重现模式下未指定时间时使用的固定时间 1980-01-01T00:00:02Z
+    public static final long REPRODUCIBLE_TIME = 315532802000L;
+
+    /**
+     * 把目录压缩成jar
+     *
+     * @param jarDir    需要打包的目录
+     * @param targetJar 打包出的jar/war文件路径
+     * @return 打包出的jar/war文件路径
+     */
+    public static String doJar(String jarDir, String targetJar) {
+        return doJar(jarDir, targetJar, null);
+    }
+
+    /**
+     * 把目录压缩成jar，使用线程池并行压缩
+     *
+     * @param jarDir    需要打包的目录
+     * @param targetJar 打包出的jar/war文件路径
+     * @param pool      线程池，为null时单线程压缩
+     * @return 打包出的jar/war文件路径
+     */
+    public static String doJar(String jarDir, String targetJar, ForkJoinPool pool) {
+        return doJar(jarDir, targetJar, pool, new CompressionPolicy());
+    }
+
+    /**
+     * 把目录压缩成jar，使用线程池并行压缩
+     * 从jar释放后没有修改过的文件，直接复制原jar中压缩后的数据
+     *
+     * @param jarDir    需要打包的目录
+     * @param targetJar 打包出的jar/war文件路径
+     * @param pool      线程池，为null时单线程压缩
+     * @param policy    压缩策略
+     * @return 打包出的jar/war文件路径
+     */
+    public static String doJar(String jarDir, String targetJar, ForkJoinPool pool, CompressionPolicy policy) {
+        return doJar(jarDir, targetJar, pool, policy, 0);
+    }
+
+    /**
+     * 把目录压缩成jar，使用线程池并行压缩，限制内存中待写入的数据量
+     *
+     * @param jarDir      需要打包的目录
+     * @param targetJar   打包出的jar/war文件路径
+     * @param pool        线程池，为null时单线程压缩
+     * @param policy      压缩策略
+     * @param memoryLimit 内存中待写入数据的上限(字节)，0为默认值
+     * @return 打包出的jar/war文件路径
+     */
+    public static String doJar(String jarDir, String targetJar, ForkJoinPool pool, CompressionPolicy policy,
+                               long memoryLimit) {
+        return doJar(jarDir, targetJar, pool, policy, memoryLimit, -1);
+    }
+
+    /**
+     * 把目录压缩成jar，所有entry使用固定的修改时间，相同的输入得到相同的输出
+     *
+     * @param jarDir      需要打包的目录
+     * @param targetJar   打包出的jar/war文件路径
+     * @param pool        线程池，为null时单线程压缩
+     * @param policy      压缩策略
+     * @param memoryLimit 内存中待写入数据的上限(字节)，0为默认值
+     * @param fixedTime   所有entry的修改时间(毫秒)，小于0时使用当前时间
+     * @return 打包出的jar/war文件路径
+     */
+    public static String doJar(String jarDir, String targetJar, ForkJoinPool pool, CompressionPolicy policy,
+                               long memoryLimit, long fixedTime) {
+        return doJar(jarDir, targetJar, pool, policy, new MemoryBudget(memoryLimit), fixedTime);
+    }
+
+    /**
+     * 把目录压缩成jar，和同时打包的其他jar共用内存额度
+     *
+     * @param jarDir    需要打包的目录
+     * @param targetJar 打包出的jar/war文件路径
+     * @param pool      线程池，为null时单线程压缩
+     * @param policy    压缩策略
+     * @param budget    内存中待写入数据的额度
+     * @param fixedTime 所有entry的修改时间(毫秒)，小于0时使用当前时间
+     * @return 打包出的jar/war文件路径
+     */
+    public static String doJar(String jarDir, String targetJar, ForkJoinPool pool, CompressionPolicy policy,
+                               MemoryBudget budget, long fixedTime) {
+        File jarDirFile = new File(jarDir);
+        List<File> files = listJarFiles(jarDir);
+        JAR_ENTRY_ORDER.remove(jarDir);
+        ZipIndex source = JAR_INDEX.remove(jarDir);
+        try {
+            doJar(jarDirFile, files, new File(targetJar), pool, policy, budget, fixedTime, source);
+        } finally {
+            IoUtils.close(source);
+        }
+        return targetJar;
+    }
+
+    /**
+     * 丢弃目录及其子目录释放时记录的entry顺序和中央目录
+     * 加密失败时没有执行打包，记录不会被取走，需要调用此方法，否则常驻进程中会一直占用内存
+     *
+     * @param dir 释放文件夹
+     */
+    public static void release(String dir) {
+        String prefix = dir.endsWith(File.separator) ? dir : dir + File.separator;
+        JAR_ENTRY_ORDER.keySet().removeIf(key -> key.equals(dir) || key.startsWith(prefix));
+        JAR_INDEX.entrySet().removeIf(e -> {
+            boolean match = e.getKey().equals(dir) || e.getKey().startsWith(prefix);
+            if (match) {
+                IoUtils.close(e.getValue());
+            }
+            return match;
+        });
+    }
+
+    /**
+     * 已记录的释放目录数量，测试用
+     */
+    static int recorded() {
+        return JAR_ENTRY_ORDER.size() + JAR_INDEX.size();
+    }
+
+    /**
+     * 解析可重现构建的时间：纪元秒数或ISO-8601时间（与Maven的project.build.outputTimestamp相同）
+     * 为空时依次使用环境变量SOURCE_DATE_EPOCH和固定时间 REPRODUCIBLE_TIME
+     *
+     * @param value 时间，可为空
+     * @return 毫秒
+     */
+    public static long parseTimestamp(String value) {
+        if (StrUtils.isEmpty(value) || value.trim().length() < 2) {
+            value = EncryptDaemon.getenv("SOURCE_DATE_EPOCH");
+            if (StrUtils.isEmpty(value)) {
+                return REPRODUCIBLE_TIME;
+            }
+        }
+        value = value.trim();
+        try {
+            if (value.chars().allMatch(Character::isDigit)) {
+                return Long.parseLong(value) * 1000;
+            }
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("时间格式有误(纪元秒数或ISO-8601): " + value);
+        }
+    }
+
+    /**
+     * 把文件写入jar，超过4G或65535个entry时JarWriter自动使用zip64格式
+     *
+     * @param jarDirFile  需要打包的目录
+     * @param files       排好序的文件
+     * @param jar         打包出的jar/war文件
+     * @param pool        线程池
+     * @param policy      压缩策略
+     * @param budget      内存中待写入数据的额度
+     * @param fixedTime   所有entry的修改时间，小于0时使用当前时间
+     * @param source      原jar的索引，可以为null
+     */
+    private static void doJar(File jarDirFile, List<File> files, File jar, ForkJoinPool pool,
+                              CompressionPolicy policy, MemoryBudget budget, long fixedTime, ZipIndex source) {
+        //原jar可能就是打包的目标(内部jar)，先写临时文件
+        File temp = new File(jar.getAbsolutePath() + ".tmp");
+        long time = System.currentTimeMillis();
+        try (JarWriter writer = new JarWriter(temp, pool)) {
+            writer.setMemoryBudget(budget);
+            if (fixedTime >= 0) {
+                writer.setFixedTime(fixedTime);
+            }
+            for (File file : files) {
+                if (JarUtils.isDel(file)) {
+                    continue;
+                }
+                String fileName = entryName(jarDirFile, file);
+                //目录，添加一个目录entry
+                if (file.isDirectory()) {
+                    writer.addDirectory(fileName + "/", time);
+                    continue;
+                }
+                //没有修改过的文件，直接复制原压缩数据
+                ZipIndex.Entry raw = source == null ? null : source.getEntry(fileName);
+                if (raw != null && file.lastModified() == UNTOUCHED_TIME && file.length() == raw.getSize()) {
+                    writer.addRaw(source, raw);
+                    continue;
+                }
+                int level = policy.getLevel(fileName);
+                if (level == CompressionPolicy.STORED) {
+                    writer.addFile(fileName, file, ZipEntry.STORED, time);
+                } else {
+                    writer.addFile(fileName, file, ZipEntry.DEFLATED, level, time);
+                }
+            }
+        } catch (Exception e) {
+            temp.delete();
+            throw new RuntimeException("打包失败: " + jar.getAbsolutePath(), e);
+        }
+        try {
+            Files.move(temp.toPath(), jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("打包失败: " + jar.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * 列出目录下要打包的文件，按原JAR的entry顺序排序
+     *
+     * @param jarDir 需要打包的目录
+     * @return 文件和目录
+     */
+    private static List<File> listJarFiles(String jarDir) {
+        File jarDirFile = new File(jarDir);
+        //枚举jarDir下的所有文件以及目录
+        List<File> files = new ArrayList<>();
+        IoUtils.listFile(files, jarDirFile);
+
+        // 按原JAR的entry顺序排序，如果有记录的话
+        LinkedHashMap<String, Integer> entryOrder = JAR_ENTRY_ORDER.get(jarDir);
+        if (entryOrder != null && !entryOrder.isEmpty()) {
+            files.sort((f1, f2) -> {
+                String path1 = entryName(jarDirFile, f1);
+                String path2 = entryName(jarDirFile, f2);
+                Integer order1 = entryOrder.getOrDefault(path1, Integer.MAX_VALUE);
+                Integer order2 = entryOrder.getOrDefault(path2, Integer.MAX_VALUE);
+                int cmp = order1.compareTo(order2);
+                // 如果顺序相同或都没有记录，则按路径字母序
+                return cmp != 0 ? cmp : path1.compareTo(path2);
+            });
+        } else {
+            // 如果没有记录原始顺序，按entry名称排序，与平台的路径分隔符无关
+            files.sort((f1, f2) -> entryName(jarDirFile, f1).compareTo(entryName(jarDirFile, f2)));
+        }
+        return files;
+    }
+
+    /**
+     * 文件在jar中的entry名称
+     *
+     * @param jarDir 打包的目录
+     * @param file   文件
+     * @return entry名称
+     */
+    private static String entryName(File jarDir, File file) {
+        return file.getAbsolutePath().substring(jarDir.getAbsolutePath().length() + 1).replace(File.separator, "/");
+    }
+
+    /**
+     * 使用ZipOutputStream单线程打包，每个文件整体读入内存，只作为性能对比的基准
+     *
+     * @param jarDirFile 需要打包的目录
+     * @param files      排好序的文件
+     * @param jar        打包出的jar/war文件
+     */
+    static void doJarWithZipStream(File jarDirFile, List<File> files, File jar) {
+        ZipOutputStream zos = null;
+        OutputStream out = null;
+
+        try {
+            out = new FileOutputStream(jar);
+            zos = new ZipOutputStream(out);
+
+            for (File file : files) {
+                if (JarUtils.isDel(file)) {
+                    continue;
+                }
+                String fileName = entryName(jarDirFile, file);
+                //目录，添加一个目录entry
+                if (file.isDirectory()) {
+                    ZipEntry ze = new ZipEntry(fileName + "/");
+                    ze.setTime(System.currentTimeMillis());
+                    zos.putNextEntry(ze);
+                    zos.closeEntry();
+                }
+                //jar文件，需要写crc信息
+                else if (fileName.endsWith(".jar")) {
+                    byte[] bytes = IoUtils.readFileToByte(file);
+                    ZipEntry ze = new ZipEntry(fileName);
+                    ze.setMethod(ZipEntry.STORED);
+                    ze.setSize(bytes.length);
+                    ze.setTime(System.currentTimeMillis());
+                    ze.setCrc(IoUtils.crc32(bytes));
+                    zos.putNextEntry(ze);
+                    zos.write(bytes);
+                    zos.closeEntry();
+                }
+                //其他文件直接写入
+                else {
+                    ZipEntry ze = new ZipEntry(fileName);
+                    ze.setTime(System.currentTimeMillis());
+                    zos.putNextEntry(ze);
+                    byte[] bytes = IoUtils.readFileToByte(file);
+                    zos.write(bytes);
+                    zos.closeEntry();
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            IoUtils.close(zos, out);
+        }
+    }
+
+
+    /**
+     * 释放jar内以及子jar的所有文件
+     *
+     * @param jarPath   jar文件
+     * @param targetDir 释放文件夹
+     * @return 所有文件的完整路径，包含目录
+     */
+    public static List<String> unJar(String jarPath, String targetDir) {
+        return unJar(jarPath, targetDir, null);
+    }
+
+    /**
+     * 释放jar内以及子jar的所有文件
+     *
+     * @param jarPath   jar文件
+     * @param targetDir 释放文件夹
+     * @return 所有文件的完整路径，包含目录
+     * @throws UncheckedIOException 读取jar或写入文件失败
+     */
+    public static List<String> unJar(String jarPath, String targetDir, List<String> includeFiles) {
+        List<String> list = new ArrayList<>();
+        File target = new File(targetDir);
+        if (!target.exists()) {
+            target.mkdirs();
+        }
+        
+        //释放全部文件时才记录原JAR的信息，只释放部分文件时不能覆盖
+        boolean all = includeFiles == null || includeFiles.isEmpty();
+        // 记录原JAR的entry顺序
+        LinkedHashMap<String, Integer> entryOrder = new LinkedHashMap<>();
+        // 已创建的目录，避免重复检查
+        Set<String> createdDirs = new HashSet<>();
+
+        FileInputStream fin = null;
+        ZipFile zipFile = null;
+        try {
+            zipFile = new ZipFile(new File(jarPath));
+            ZipEntry entry;
+            File targetFile;
+
+            //只遍历一次：记录顺序、创建目录、释放文件
+            Enumeration<?> entries = zipFile.entries();
+            int orderIndex = 0;
+            while (entries.hasMoreElements()) {
+                entry = (ZipEntry) entries.nextElement();
+                entryOrder.put(entry.getName(), orderIndex++);
+
+                if (entry.isDirectory()) {
+                    mkdirs(target, entry.getName(), createdDirs);
+                    continue;
+                }
+                //有时候entries没有目录,根据文件路径创建目录
+                int lastSeparatorIndex = entry.getName().lastIndexOf("/");
+                if (lastSeparatorIndex > 0) {
+                    mkdirs(target, entry.getName().substring(0, lastSeparatorIndex), createdDirs);
+                }
+
+                targetFile = new File(target, entry.getName());
+                //跳过未包含的文件
+                if (includeFiles != null && includeFiles.size() > 0 && !includeFiles.contains(targetFile.getName())) {
+                    continue;
+                }
+                //流式写入，不把整个文件读进内存
+                IoUtils.writeFile(targetFile, zipFile.getInputStream(entry));
+                if (all) {
+                    targetFile.setLastModified(UNTOUCHED_TIME);
+                }
+                list.add(targetFile.getAbsolutePath());
+            }
+
+            if (all) {
+                // 保存entry顺序记录
+                JAR_ENTRY_ORDER.put(targetDir, entryOrder);
+                // 保存中央目录，打包时复制未修改文件的原始数据
+                recordIndex(targetDir, new File(jarPath));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("释放jar失败: " + jarPath, e);
+        } finally {
+            IoUtils.close(zipFile, fin);
+        }
+        return list;
+    }
+
+    /**
+     * 读取并记录原JAR的中央目录，读取失败时打包会重新压缩所有文件
+     *
+     * @param targetDir 释放文件夹
+     * @param jar       原JAR
+     */
+    private static void recordIndex(String targetDir, File jar) {
+        ZipIndex index = null;
+        try {
+            index = ZipIndex.read(jar);
+        } catch (IOException e) {
+            //忽略
+        }
+        ZipIndex old = index == null ? JAR_INDEX.remove(targetDir) : JAR_INDEX.put(targetDir, index);
+        IoUtils.close(old);
+    }
+
+    /**
+     * 创建目录
+     *
+     * @param target      释放文件夹
+     * @param dir         jar内的目录
+     * @param createdDirs 已创建的目录
+     */
+    private static void mkdirs(File target, String dir, Set<String> createdDirs) {
+        if (dir.endsWith("/")) {
+            dir = dir.substring(0, dir.length() - 1);
+        }
+        if (createdDirs.add(dir)) {
+            File targetFile = new File(target, dir);
+            if (!targetFile.exists()) {
+                targetFile.mkdirs();
+            }
+        }
+    }
+}
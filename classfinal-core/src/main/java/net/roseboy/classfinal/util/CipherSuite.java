@@ -0,0 +1,231 @@
+package net.roseboy.classfinal.util;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * 加密数据的算法套件
+ * <p>
+ * 加密后的格式：魔数 CFE + 版本(1字节) + 套件(1字节) + IV + 密文（GCM 末尾带16字节认证标签）。
+ * 没有魔数的数据是旧版本的 AES/ECB，和以前加密的jar兼容。
+ * <ul>
+ * <li>{@link #CTR}：AES/CTR，没有填充，可以从任意位置开始解密（{@link #decrypt(byte[], char[], int, int)}）</li>
+ * <li>{@link #GCM}：AES/GCM，带认证标签，数据被修改或密码错误时解密失败；JDK 9+ 使用 AES-NI/CLMUL 指令加速</li>
+ * </ul>
+ * 密钥为 sha256(密码+盐) 的前16字节（AES-128，不依赖无限制强度的JCE策略）；IV 由密钥和明文计算，
+ * 相同的输入加密结果相同（可重现构建），不同明文的 IV 不会重复。
+ * <p>
+ * 运行时由 {@link EncryptUtils#de} 调用，会打包到加密后的jar中，只能依赖JDK。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class CipherSuite {
+    //旧版本：AES/ECB/PKCS5Padding，没有头部
+    public static final int ECB = 1;
+    //AES/CTR/NoPadding
+    public static final int CTR = 2;
+    //AES/GCM/NoPadding
+    public static final int GCM = 3;
+
+    //魔数和版本
+    private static final byte[] MAGIC = {'C', 'F', 'E', 1};
+    //魔数和套件
+    private static final int HEADER = MAGIC.length + 1;
+    private static final int CTR_IV = 16;
+    private static final int GCM_IV = 12;
+    private static final int GCM_TAG = 128;
+    private static final int BLOCK = 16;
+    //Cipher不是线程安全的，每个线程复用一个
+    private static final ThreadLocal<Cipher> CTR_CIPHER = ThreadLocal.withInitial(() -> cipher("AES/CTR/NoPadding"));
+    private static final ThreadLocal<Cipher> GCM_CIPHER = ThreadLocal.withInitial(() -> cipher("AES/GCM/NoPadding"));
+
+    /**
+     * 按名称取套件
+     *
+     * @param name ecb/ctr/gcm，为空时为默认
+     * @param def  默认套件
+     * @return 套件
+     */
+    public static int parse(String name, int def) {
+        if (StrUtils.isEmpty(name)) {
+            return def;
+        }
+        switch (name.trim().toLowerCase()) {
+            case "ecb":
+                return ECB;
+            case "ctr":
+                return CTR;
+            case "gcm":
+                return GCM;
+            default:
+                throw new IllegalArgumentException("不支持的加密算法: " + name + "（可选 gcm、ctr、ecb）");
+        }
+    }
+
+    /**
+     * 套件名称
+     *
+     * @param suite 套件
+     * @return 名称
+     */
+    public static String name(int suite) {
+        return suite == CTR ? "ctr" : suite == GCM ? "gcm" : "ecb";
+    }
+
+    /**
+     * 数据使用的套件
+     *
+     * @param msg 加密后的数据
+     * @return 套件，没有头部时为 {@link #ECB}
+     */
+    public static int of(byte[] msg) {
+        if (msg == null || msg.length < HEADER) {
+            return ECB;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (msg[i] != MAGIC[i]) {
+                return ECB;
+            }
+        }
+        int suite = msg[MAGIC.length];
+        return suite == CTR || suite == GCM ? suite : ECB;
+    }
+
+    /**
+     * 加密
+     *
+     * @param msg   明文
+     * @param key   密码
+     * @param suite {@link #CTR} 或 {@link #GCM}
+     * @return 带头部的密文
+     */
+    public static byte[] encrypt(byte[] msg, char[] key, int suite) {
+        byte[] raw = key(key);
+        int ivLength = suite == GCM ? GCM_IV : CTR_IV;
+        byte[] iv = syntheticIv(raw, msg, ivLength);
+        try {
+            //GCM 不允许同一个Cipher用相同的密钥和IV再次加密，相同的输入会得到相同的IV，每次新建
+            Cipher cipher = suite == GCM ? cipher("AES/GCM/NoPadding") : CTR_CIPHER.get();
+            init(cipher, suite, Cipher.ENCRYPT_MODE, raw, iv);
+            byte[] out = new byte[HEADER + ivLength + cipher.getOutputSize(msg.length)];
+            System.arraycopy(MAGIC, 0, out, 0, MAGIC.length);
+            out[MAGIC.length] = (byte) suite;
+            System.arraycopy(iv, 0, out, HEADER, ivLength);
+            if (suite == GCM) {
+                //头部也参与认证
+                cipher.updateAAD(out, 0, HEADER);
+            }
+            cipher.doFinal(msg, 0, msg.length, out, HEADER + ivLength);
+            return out;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("加密失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 解密带头部的数据
+     *
+     * @param msg 加密后的数据
+     * @param key 密码
+     * @return 明文，认证失败时为null
+     */
+    public static byte[] decrypt(byte[] msg, char[] key) {
+        int suite = of(msg);
+        if (suite == ECB) {
+            return null;
+        }
+        int ivLength = suite == GCM ? GCM_IV : CTR_IV;
+        if (msg.length < HEADER + ivLength) {
+            return null;
+        }
+        try {
+            Cipher cipher = (suite == GCM ? GCM_CIPHER : CTR_CIPHER).get();
+            init(cipher, suite, Cipher.DECRYPT_MODE, key(key), Arrays.copyOfRange(msg, HEADER, HEADER + ivLength));
+            if (suite == GCM) {
+                cipher.updateAAD(msg, 0, HEADER);
+            }
+            return cipher.doFinal(msg, HEADER + ivLength, msg.length - HEADER - ivLength);
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * CTR 从任意位置开始解密一段，大文件可以分段并行解密
+     *
+     * @param msg    {@link #CTR} 加密后的数据
+     * @param key    密码
+     * @param offset 明文中的起始位置
+     * @param length 长度
+     * @return 明文中的这一段
+     */
+    public static byte[] decrypt(byte[] msg, char[] key, int offset, int length) {
+        if (of(msg) != CTR) {
+            throw new IllegalArgumentException("只有 CTR 可以从任意位置解密");
+        }
+        int start = HEADER + CTR_IV;
+        if (offset < 0 || length < 0 || offset > msg.length - start || length > msg.length - start - offset) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length);
+        }
+        //计数器加上起始位置所在的块
+        byte[] iv = Arrays.copyOfRange(msg, HEADER, start);
+        long block = offset / BLOCK;
+        for (int i = iv.length - 1; i >= 0 && block != 0; i--) {
+            long sum = (iv[i] & 0xFF) + (block & 0xFF);
+            iv[i] = (byte) sum;
+            block = (block >>> 8) + (sum >>> 8);
+        }
+        int skip = offset % BLOCK;
+        try {
+            Cipher cipher = CTR_CIPHER.get();
+            init(cipher, CTR, Cipher.DECRYPT_MODE, key(key), iv);
+            byte[] out = cipher.doFinal(msg, start + offset - skip, length + skip);
+            return skip == 0 ? out : Arrays.copyOfRange(out, skip, out.length);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("解密失败: " + e.getMessage(), e);
+        }
+    }
+
+    private static void init(Cipher cipher, int suite, int mode, byte[] key, byte[] iv) throws GeneralSecurityException {
+        SecretKeySpec spec = new SecretKeySpec(key, "AES");
+        cipher.init(mode, spec, suite == GCM ? new GCMParameterSpec(GCM_TAG, iv) : new IvParameterSpec(iv));
+    }
+
+    /**
+     * 密钥：sha256(密码+盐)的前16字节
+     */
+    private static byte[] key(char[] key) {
+        return Arrays.copyOf(EncryptUtils.sha256(StrUtils.toBytes(StrUtils.merger(key, EncryptUtils.SALT))), 16);
+    }
+
+    /**
+     * IV：sha256(密钥+明文)，只有明文相同时IV才相同
+     */
+    private static byte[] syntheticIv(byte[] key, byte[] msg, int length) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(key);
+            md.update("iv".getBytes(StandardCharsets.UTF_8));
+            md.update(msg);
+            return Arrays.copyOf(md.digest(), length);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Cipher cipher(String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(transformation, e);
+        }
+    }
+}
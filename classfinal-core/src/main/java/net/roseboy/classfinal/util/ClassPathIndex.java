@@ -0,0 +1,334 @@
+package net.roseboy.classfinal.util;
+
+import javassist.ClassPath;
+import javassist.NotFoundException;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * 按包名索引的javassist classpath
+ * <p>
+ * 把很多jar和class目录合成一个ClassPath：建立 包名 -> jar/目录 的索引，查找类时只看包含该包的条目，
+ * 不用像javassist那样逐个jar查找。建索引只读取jar的中央目录，jar在第一次从中加载类时才打开。
+ * 使用 {@link Cache} 时，jar的包列表可以在多个索引间共用，并保存到文件供下次运行使用。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class ClassPathIndex implements ClassPath, Closeable {
+    //包名 -> 包含该包的条目，按加入顺序
+    private final Map<String, List<Entry>> packages = new HashMap<>();
+    //所有条目
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * 建立索引，不缓存
+     *
+     * @param paths jar文件或class目录，排在前面的优先
+     */
+    public ClassPathIndex(List<File> paths) {
+        this(paths, null);
+    }
+
+    /**
+     * 建立索引
+     *
+     * @param paths jar文件或class目录，排在前面的优先
+     * @param cache jar包列表的缓存，为null时不缓存
+     */
+    public ClassPathIndex(List<File> paths, Cache cache) {
+        for (File path : paths) {
+            if (path == null || !path.exists()) {
+                continue;
+            }
+            Entry entry = new Entry(path);
+            Set<String> pkgs;
+            if (path.isDirectory()) {
+                pkgs = new HashSet<>();
+                listDirPackages(path, "", pkgs);
+            } else if (cache != null) {
+                pkgs = cache.get(path);
+            } else {
+                pkgs = listJarPackages(path);
+            }
+            entries.add(entry);
+            for (String pkg : pkgs) {
+                packages.computeIfAbsent(pkg, k -> new ArrayList<>(1)).add(entry);
+            }
+        }
+    }
+
+    /**
+     * 索引中的包数量
+     *
+     * @return 数量
+     */
+    public int getPackageCount() {
+        return packages.size();
+    }
+
+    /**
+     * 已打开的jar数量
+     *
+     * @return 数量
+     */
+    public int getOpenedCount() {
+        int n = 0;
+        for (Entry entry : entries) {
+            n += entry.jar != null ? 1 : 0;
+        }
+        return n;
+    }
+
+    @Override
+    public InputStream openClassfile(String classname) throws NotFoundException {
+        String name = resourceName(classname);
+        for (Entry entry : candidates(classname)) {
+            try {
+                InputStream in = entry.open(name);
+                if (in != null) {
+                    return in;
+                }
+            } catch (IOException e) {
+                throw new NotFoundException(classname, e);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public URL find(String classname) {
+        String name = resourceName(classname);
+        for (Entry entry : candidates(classname)) {
+            try {
+                URL url = entry.find(name);
+                if (url != null) {
+                    return url;
+                }
+            } catch (IOException e) {
+                //ignore
+            }
+        }
+        return null;
+    }
+
+    private List<Entry> candidates(String classname) {
+        int dot = classname.lastIndexOf('.');
+        List<Entry> list = packages.get(dot < 0 ? "" : classname.substring(0, dot));
+        return list == null ? Collections.<Entry>emptyList() : list;
+    }
+
+    private static String resourceName(String classname) {
+        return classname.replace('.', '/') + ".class";
+    }
+
+    @Override
+    public void close() {
+        for (Entry entry : entries) {
+            entry.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ClassPathIndex[" + entries.size() + " entries, " + packages.size() + " packages]";
+    }
+
+    /**
+     * 读取jar中央目录中class所在的包
+     */
+    private static Set<String> listJarPackages(File jar) {
+        Set<String> pkgs = new HashSet<>();
+        try (ZipIndex index = ZipIndex.read(jar)) {
+            for (ZipIndex.Entry e : index.getEntries()) {
+                String name = e.getName();
+                if (name.endsWith(".class")) {
+                    int slash = name.lastIndexOf('/');
+                    pkgs.add(slash < 0 ? "" : name.substring(0, slash).replace('/', '.'));
+                }
+            }
+        } catch (IOException e) {
+            Log.debug("读取jar失败: " + jar + " " + e.getMessage());
+        }
+        return pkgs;
+    }
+
+    /**
+     * 列出目录中有class文件的包
+     */
+    private static void listDirPackages(File dir, String pkg, Set<String> pkgs) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                listDirPackages(file, pkg.isEmpty() ? file.getName() : pkg + "." + file.getName(), pkgs);
+            } else if (file.getName().endsWith(".class")) {
+                pkgs.add(pkg);
+            }
+        }
+    }
+
+    /**
+     * jar包列表的缓存，可以在多个索引（如批量加密的多个任务）之间共用，也可以保存到文件下次使用
+     * <p>
+     * 按 文件名+大小+文件末尾（中央目录，含每个entry的CRC）的CRC 识别jar，
+     * 不同任务释放到不同临时目录的同一个依赖jar也能命中。
+     */
+    public static class Cache {
+        //文件末尾参与计算的字节数
+        private static final int TAIL_SIZE = 64 * 1024;
+        //jar标识 -> 包名，逗号分隔
+        private final Map<String, String> packages = new ConcurrentHashMap<>();
+        //本次用到的jar标识
+        private final Set<String> used = ConcurrentHashMap.newKeySet();
+        private volatile boolean changed = false;
+
+        /**
+         * 读取缓存，每行：jar标识 TAB 包名,包名
+         *
+         * @param file 缓存文件，不存在时返回空缓存
+         * @return 缓存
+         */
+        public static Cache load(File file) {
+            Cache cache = new Cache();
+            if (file == null || !file.exists()) {
+                return cache;
+            }
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab > 0) {
+                        cache.packages.put(line.substring(0, tab), line.substring(tab + 1));
+                    }
+                }
+            } catch (IOException e) {
+                Log.debug("读取classpath索引缓存失败: " + e.getMessage());
+            }
+            return cache;
+        }
+
+        /**
+         * 保存本次用到的jar，没有变化时不写文件
+         *
+         * @param file 缓存文件
+         */
+        public synchronized void save(File file) {
+            if (file == null || (!changed && used.size() == packages.size())) {
+                return;
+            }
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists()) {
+                parent.mkdirs();
+            }
+            StringBuilder sb = new StringBuilder();
+            for (String key : new TreeSet<>(used)) {
+                sb.append(key).append('\t').append(packages.get(key)).append('\n');
+            }
+            IoUtils.writeFile(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+            changed = false;
+        }
+
+        /**
+         * 缓存的jar数量
+         *
+         * @return 数量
+         */
+        public int size() {
+            return packages.size();
+        }
+
+        /**
+         * jar中class所在的包，没有缓存时读取jar
+         */
+        Set<String> get(File jar) {
+            String key;
+            try {
+                key = key(jar);
+            } catch (IOException e) {
+                return listJarPackages(jar);
+            }
+            used.add(key);
+            String cached = packages.get(key);
+            if (cached != null) {
+                return cached.isEmpty() ? new HashSet<>() : new HashSet<>(Arrays.asList(cached.split(",", -1)));
+            }
+            Set<String> pkgs = listJarPackages(jar);
+            packages.put(key, String.join(",", pkgs));
+            changed = true;
+            return pkgs;
+        }
+
+        private static String key(File jar) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(jar, "r")) {
+                long length = raf.length();
+                byte[] tail = new byte[(int) Math.min(length, TAIL_SIZE)];
+                raf.seek(length - tail.length);
+                raf.readFully(tail);
+                CRC32 crc = new CRC32();
+                crc.update(tail, 0, tail.length);
+                return jar.getName() + "|" + length + "|" + Long.toHexString(crc.getValue());
+            }
+        }
+    }
+
+    /**
+     * 一个jar或class目录
+     */
+    private static class Entry {
+        private final File path;
+        //用到时才打开
+        private JarFile jar;
+
+        Entry(File path) {
+            this.path = path;
+        }
+
+        synchronized InputStream open(String name) throws IOException {
+            if (path.isDirectory()) {
+                File file = new File(path, name);
+                return file.isFile() ? new FileInputStream(file) : null;
+            }
+            ZipEntry entry = jar().getEntry(name);
+            return entry == null ? null : jar.getInputStream(entry);
+        }
+
+        synchronized URL find(String name) throws IOException {
+            if (path.isDirectory()) {
+                File file = new File(path, name);
+                return file.isFile() ? file.toURI().toURL() : null;
+            }
+            if (jar().getEntry(name) == null) {
+                return null;
+            }
+            try {
+                return new URL("jar:" + path.toURI().toURL() + "!/" + name);
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        }
+
+        private JarFile jar() throws IOException {
+            if (jar == null) {
+                jar = new JarFile(path);
+            }
+            return jar;
+        }
+
+        synchronized void close() {
+            IoUtils.close(jar);
+            jar = null;
+        }
+    }
+}
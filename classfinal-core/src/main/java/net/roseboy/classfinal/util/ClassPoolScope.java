@@ -0,0 +1,186 @@
+package net.roseboy.classfinal.util;
+
+import javassist.ClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.NotFoundException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一次加密任务专用的ClassPool
+ * <p>
+ * 不使用全局的 ClassPool.getDefault()：加入的classpath和加载过的CtClass都只属于本次任务。
+ * 每处理完一批类调用 {@link #release()} 丢弃池中缓存的所有CtClass（包括javassist顺带加载的父类、依赖类），
+ * classpath保留继续使用；任务结束 {@link #close()} 关闭所有jar。
+ * 加入的jar和目录不直接挂到ClassPool上，而是在第一次取类时合成一个 {@link ClassPathIndex}，
+ * 按包名直接找到所在的jar，不用逐个jar查找，也不会一开始就打开所有jar。
+ * 内存占用只和一批的类数量有关，长期运行的进程（如classfinal-web）也不会越用越大。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class ClassPoolScope implements Closeable {
+    //默认每批处理的类数量
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    //当前的池，release后换成新的
+    private ClassPool pool;
+    //加入的classpath，按加入顺序
+    private final List<ClassPath> classPaths = new ArrayList<>();
+    //还没有建索引的jar和目录
+    private final List<File> pendingPaths = new ArrayList<>();
+    //jar包列表的缓存，为null时不缓存
+    private final ClassPathIndex.Cache indexCache;
+    //本批加载的类数量
+    private int loadedCount = 0;
+
+    public ClassPoolScope() {
+        this(null);
+    }
+
+    /**
+     * @param indexCache jar包列表的缓存，为null时不缓存
+     */
+    public ClassPoolScope(ClassPathIndex.Cache indexCache) {
+        this.pool = new ClassPool(true);
+        this.indexCache = indexCache;
+    }
+
+    /**
+     * javassist的ClassPool，release之后会变成新的对象
+     *
+     * @return ClassPool
+     */
+    public synchronized ClassPool getPool() {
+        flushPending();
+        return pool;
+    }
+
+    /**
+     * 加入classpath：目录下所有的jar，或单个jar
+     *
+     * @param path lib目录或jar文件
+     */
+    public synchronized void insertClassPath(File path) {
+        if (path == null || !path.exists()) {
+            return;
+        }
+        List<File> jars = new ArrayList<>();
+        if (path.isDirectory()) {
+            IoUtils.listFile(jars, path, ".jar");
+        } else if (path.getName().endsWith(".jar")) {
+            jars.add(path);
+        }
+        for (File jar : jars) {
+            pendingPaths.add(jar.getAbsoluteFile());
+        }
+    }
+
+    /**
+     * 加入多个classpath
+     *
+     * @param paths lib目录或jar文件
+     */
+    public void insertClassPath(List<String> paths) {
+        if (paths == null) {
+            return;
+        }
+        for (String path : paths) {
+            insertClassPath(new File(path));
+        }
+    }
+
+    /**
+     * 加入class目录
+     *
+     * @param dir class根目录
+     */
+    public synchronized void insertClassDir(File dir) {
+        if (dir != null && dir.isDirectory()) {
+            pendingPaths.add(dir.getAbsoluteFile());
+        }
+    }
+
+    /**
+     * 把新加入的jar和目录建成索引挂到ClassPool上
+     */
+    private void flushPending() {
+        if (pendingPaths.isEmpty()) {
+            return;
+        }
+        //后加入的classpath优先，与javassist的insertClassPath一致
+        List<File> paths = new ArrayList<>(pendingPaths);
+        Collections.reverse(paths);
+        pendingPaths.clear();
+        ClassPathIndex index = new ClassPathIndex(paths, indexCache);
+        classPaths.add(pool.insertClassPath(index));
+    }
+
+    /**
+     * 获取类
+     *
+     * @param className 类全名
+     * @return CtClass
+     * @throws NotFoundException 找不到类
+     */
+    public synchronized CtClass get(String className) throws NotFoundException {
+        flushPending();
+        CtClass cc = pool.get(className);
+        loadedCount++;
+        return cc;
+    }
+
+    /**
+     * 本批加载的类数量
+     *
+     * @return 数量
+     */
+    public synchronized int getLoadedCount() {
+        return loadedCount;
+    }
+
+    /**
+     * 丢弃池中缓存的所有类，classpath保留
+     */
+    public synchronized void release() {
+        ClassPool fresh = new ClassPool(true);
+        //insertClassPath插在最前面，按原顺序重新插入保持优先级
+        for (ClassPath cp : classPaths) {
+            fresh.insertClassPath(cp);
+        }
+        this.pool = fresh;
+        this.loadedCount = 0;
+    }
+
+    /**
+     * 本批加载的类达到数量时丢弃缓存
+     *
+     * @param batchSize 每批的类数量
+     */
+    public synchronized void releaseIfFull(int batchSize) {
+        if (loadedCount >= batchSize) {
+            release();
+        }
+    }
+
+    /**
+     * 丢弃所有类并关闭classpath
+     */
+    @Override
+    public synchronized void close() {
+        for (ClassPath cp : classPaths) {
+            pool.removeClassPath(cp);
+            if (cp instanceof Closeable) {
+                IoUtils.close((Closeable) cp);
+            }
+        }
+        classPaths.clear();
+        pendingPaths.clear();
+        this.loadedCount = 0;
+    }
+}
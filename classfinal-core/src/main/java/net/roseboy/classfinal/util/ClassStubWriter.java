@@ -0,0 +1,238 @@
+package net.roseboy.classfinal.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 直接改写class文件，把方法体替换成固定的桩代码
+ * <p>
+ * 不需要javassist和classpath，也不编译源码：常量池、字段、类属性原样复制，
+ * 每个方法的Code属性按返回类型替换为 默认值+return 两条指令（void只有return）。
+ * 桩代码没有分支，不需要StackMapTable，所以包含Lambda/invokedynamic的类也能处理。
+ * 方法参数的LocalVariableTable保留（框架依赖参数名），LineNumberTable等调试信息丢弃。
+ * 构造方法、静态初始化、main方法和只有一条指令的方法不修改。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class ClassStubWriter {
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+
+    private static final byte[] CODE = "Code".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LOCAL_VARIABLE_TABLE = "LocalVariableTable".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LOCAL_VARIABLE_TYPE_TABLE = "LocalVariableTypeTable".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MAIN = "main".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MAIN_DESC = "([Ljava/lang/String;)V".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INIT_PREFIX = {'<'};
+
+    //每种返回类型的桩代码
+    private static final byte[] RETURN_VOID = {(byte) 0xb1};
+    private static final byte[] RETURN_INT = {0x03, (byte) 0xac};
+    private static final byte[] RETURN_LONG = {0x09, (byte) 0xad};
+    private static final byte[] RETURN_FLOAT = {0x0b, (byte) 0xae};
+    private static final byte[] RETURN_DOUBLE = {0x0e, (byte) 0xaf};
+    private static final byte[] RETURN_NULL = {0x01, (byte) 0xb0};
+
+    /**
+     * 清空class中所有方法的方法体
+     *
+     * @param classBytes class字节码
+     * @return 修改后的字节码
+     * @throws IllegalArgumentException 不是完整的class文件
+     */
+    public static byte[] rewrite(byte[] classBytes) {
+        ConstantPoolScanner cp = ConstantPoolScanner.get();
+        try {
+            if (!cp.reset(classBytes) || cp.getAttributesOffset() < 0) {
+                throw new IllegalArgumentException("invalid class file");
+            }
+            return rewrite(cp, classBytes);
+        } finally {
+            cp.clear();
+        }
+    }
+
+    private static byte[] rewrite(ConstantPoolScanner cp, byte[] classBytes) {
+        byte[] b = classBytes;
+        int methods = cp.getMethodsOffset();
+        int attributes = cp.getAttributesOffset();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(b.length);
+
+        //常量池、类信息、字段原样复制
+        out.write(b, 0, methods + 2);
+        int count = ConstantPoolScanner.u2(b, methods);
+        int pos = methods + 2;
+        for (int i = 0; i < count; i++) {
+            int access = ConstantPoolScanner.u2(b, pos);
+            int name = ConstantPoolScanner.u2(b, pos + 2);
+            int desc = ConstantPoolScanner.u2(b, pos + 4);
+            int attrCount = ConstantPoolScanner.u2(b, pos + 6);
+            out.write(b, pos, 8);
+            pos += 8;
+
+            boolean keep = isKept(cp, access, name, desc);
+            for (int j = 0; j < attrCount; j++) {
+                int attrName = ConstantPoolScanner.u2(b, pos);
+                int attrLen = ConstantPoolScanner.u4(b, pos + 2);
+                if (!keep && cp.utf8Equals(attrName, CODE) && ConstantPoolScanner.u4(b, pos + 10) > 1) {
+                    writeStubCode(out, cp, b, pos, access, desc);
+                } else {
+                    out.write(b, pos, 6 + attrLen);
+                }
+                pos += 6 + attrLen;
+            }
+        }
+
+        //类属性原样复制
+        out.write(b, attributes, b.length - attributes);
+        return out.toByteArray();
+    }
+
+    /**
+     * 是否保留原方法体：构造方法、静态初始化、main方法
+     */
+    private static boolean isKept(ConstantPoolScanner cp, int access, int name, int desc) {
+        if (cp.utf8StartsWith(name, INIT_PREFIX)) {
+            return true;
+        }
+        return (access & ACC_PUBLIC) != 0 && (access & ACC_STATIC) != 0
+                && cp.utf8Equals(name, MAIN) && cp.utf8Equals(desc, MAIN_DESC);
+    }
+
+    /**
+     * 写入桩代码的Code属性
+     *
+     * @param out    输出
+     * @param cp     常量池
+     * @param b      class字节码
+     * @param pos    原Code属性的位置
+     * @param access 方法的access_flags
+     * @param desc   方法描述符的常量池索引
+     */
+    private static void writeStubCode(ByteArrayOutputStream out, ConstantPoolScanner cp, byte[] b, int pos,
+                                      int access, int desc) {
+        String descriptor = cp.getUtf8(desc);
+        byte[] code = stubCode(descriptor);
+        int maxStack = code == RETURN_VOID ? 0 : (code == RETURN_LONG || code == RETURN_DOUBLE ? 2 : 1);
+        int maxLocals = ConstantPoolScanner.u2(b, pos + 8);
+        int paramSlots = paramSlots(descriptor, (access & ACC_STATIC) != 0);
+
+        //跳过原代码和异常表，找到Code的子属性
+        int codeLength = ConstantPoolScanner.u4(b, pos + 10);
+        int p = pos + 14 + codeLength;
+        p += 2 + 8 * ConstantPoolScanner.u2(b, p);
+
+        ByteArrayOutputStream attrs = new ByteArrayOutputStream();
+        int attrCount = 0;
+        int n = ConstantPoolScanner.u2(b, p);
+        p += 2;
+        for (int i = 0; i < n; i++) {
+            int attrName = ConstantPoolScanner.u2(b, p);
+            int attrLen = ConstantPoolScanner.u4(b, p + 2);
+            //只保留参数的局部变量信息
+            if (cp.utf8Equals(attrName, LOCAL_VARIABLE_TABLE) || cp.utf8Equals(attrName, LOCAL_VARIABLE_TYPE_TABLE)) {
+                ByteArrayOutputStream entries = new ByteArrayOutputStream();
+                int entryCount = 0;
+                int total = ConstantPoolScanner.u2(b, p + 6);
+                for (int e = 0; e < total; e++) {
+                    int ep = p + 8 + e * 10;
+                    int startPc = ConstantPoolScanner.u2(b, ep);
+                    int index = ConstantPoolScanner.u2(b, ep + 8);
+                    if (startPc == 0 && index < paramSlots) {
+                        writeU2(entries, 0);
+                        writeU2(entries, code.length);
+                        entries.write(b, ep + 4, 6);
+                        entryCount++;
+                    }
+                }
+                writeU2(attrs, attrName);
+                writeU4(attrs, 2 + entries.size());
+                writeU2(attrs, entryCount);
+                attrs.write(entries.toByteArray(), 0, entries.size());
+                attrCount++;
+            }
+            p += 6 + attrLen;
+        }
+
+        //attribute_name_index
+        out.write(b, pos, 2);
+        writeU4(out, 2 + 2 + 4 + code.length + 2 + 2 + attrs.size());
+        writeU2(out, maxStack);
+        writeU2(out, Math.max(maxLocals, paramSlots));
+        writeU4(out, code.length);
+        out.write(code, 0, code.length);
+        //exception_table_length
+        writeU2(out, 0);
+        writeU2(out, attrCount);
+        out.write(attrs.toByteArray(), 0, attrs.size());
+    }
+
+    /**
+     * 根据方法描述符的返回类型选择桩代码
+     *
+     * @param descriptor 方法描述符
+     * @return 字节码
+     */
+    static byte[] stubCode(String descriptor) {
+        switch (descriptor.charAt(descriptor.indexOf(')') + 1)) {
+            case 'V':
+                return RETURN_VOID;
+            case 'Z':
+            case 'B':
+            case 'C':
+            case 'S':
+            case 'I':
+                return RETURN_INT;
+            case 'J':
+                return RETURN_LONG;
+            case 'F':
+                return RETURN_FLOAT;
+            case 'D':
+                return RETURN_DOUBLE;
+            default:
+                return RETURN_NULL;
+        }
+    }
+
+    /**
+     * 参数占用的局部变量槽位数，包括this
+     *
+     * @param descriptor 方法描述符
+     * @param isStatic   是否静态方法
+     * @return 槽位数
+     */
+    static int paramSlots(String descriptor, boolean isStatic) {
+        int slots = isStatic ? 0 : 1;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char c = descriptor.charAt(i);
+            if (c == 'J' || c == 'D') {
+                slots += 2;
+                i++;
+                continue;
+            }
+            slots++;
+            while (descriptor.charAt(i) == '[') {
+                i++;
+            }
+            if (descriptor.charAt(i) == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+            i++;
+        }
+        return slots;
+    }
+
+    private static void writeU2(ByteArrayOutputStream out, int v) {
+        out.write(v >>> 8);
+        out.write(v);
+    }
+
+    private static void writeU4(ByteArrayOutputStream out, int v) {
+        out.write(v >>> 24);
+        out.write(v >>> 16);
+        out.write(v >>> 8);
+        out.write(v);
+    }
+}
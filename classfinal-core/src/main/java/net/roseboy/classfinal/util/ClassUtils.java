@@ -15,32 +15,9 @@ import java.util.List;
  * @author roseboy
  */
 public class ClassUtils {
-
-    /**
-     * 清空方法体：用简单的 return/throw 替换
-     */
-    private static void clearMethodBodyDirect(CtMethod m) throws Exception {
-        CtClass returnType = m.getReturnType();
-        String returnTypeName = returnType.getName();
-        
-        // 根据返回类型生成简单的return语句
-        String newBody;
-        if ("void".equals(returnTypeName)) {
-            newBody = "{ return; }";
-        } else if ("boolean".equals(returnTypeName)) {
-            newBody = "{ return false; }";
-        } else if ("byte".equals(returnTypeName) || "short".equals(returnTypeName) 
-                || "int".equals(returnTypeName) || "long".equals(returnTypeName)
-                || "float".equals(returnTypeName) || "double".equals(returnTypeName)
-                || "char".equals(returnTypeName)) {
-            newBody = "{ return 0; }";
-        } else {
-            newBody = "{ return null; }";
-        }
-        
-        // 使用Javassist的setBody，但不重建StackMapTable
-        m.setBody(newBody);
-    }
+    //class的access_flags
+    private static final int ACC_ANNOTATION = 0x2000;
+    private static final int ACC_ENUM = 0x4000;
 
     /**
      * 判断类是否安全可清空方法体
@@ -48,17 +25,20 @@ public class ClassUtils {
      * 1. 常量类（类名包含Const/Constant）
      * 2. 简单POJO（类名包含DTO/VO/Entity/Model/Bean/Info/Data）
      * 注意：枚举类不能清空（Jackson/框架依赖values()方法）
+     *
+     * @param className    类的简单名称
+     * @param isEnum       是否枚举
+     * @param isAnnotation 是否注解
+     * @return 是否安全
      */
-    private static boolean isSafeToClean(CtClass cc) throws Exception {
-        String className = cc.getSimpleName();
-        
+    private static boolean isSafeToClean(String className, boolean isEnum, boolean isAnnotation) {
         // 枚举类不安全（依赖values()/valueOf()等方法）
-        if (cc.isEnum()) {
+        if (isEnum) {
             return false;
         }
         
         // 注解类安全
-        if (cc.isAnnotation()) {
+        if (isAnnotation) {
             return true;
         }
         
@@ -79,48 +59,29 @@ public class ClassUtils {
     }
 
     /**
-     * 清空方法
+     * 清空方法，直接改写class字节码，不需要ClassPool和classpath
      *
-     * @param pool      javassist的ClassPool
-     * @param classname 要修改的class全名
-     * @return 返回方法体的字节
+     * @param classBytes class字节码
+     * @return 修改后的字节码，不安全清空的类返回原字节码
+     * @see ClassStubWriter
      */
-    public static byte[] rewriteAllMethods(ClassPool pool, String classname) {
-        String name = null;
+    public static byte[] rewriteAllMethods(byte[] classBytes) {
+        ConstantPoolScanner cp = ConstantPoolScanner.get();
+        boolean safe;
         try {
-            CtClass cc = pool.getCtClass(classname);
-            
-            // 只清空安全的类（常量/枚举/POJO等）
-            if (!isSafeToClean(cc)) {
-                return cc.toBytecode();
-            }
-            
-            CtMethod[] methods = cc.getDeclaredMethods();
-
-            for (CtMethod m : methods) {
-                name = m.getName();
-                //不是构造方法，在当前类
-                if (!m.getName().contains("<") && m.getLongName().startsWith(cc.getName())) {
-                    CodeAttribute ca = m.getMethodInfo().getCodeAttribute();
-                    if (ca != null && ca.getCodeLength() > 1) {
-                        int modifiers = m.getModifiers();
-                        
-                        // 跳过main方法和abstract/native方法
-                        boolean isMainMethod = m.getLongName().endsWith(".main(java.lang.String[])")
-                                && Modifier.isStatic(modifiers) && Modifier.isPublic(modifiers);
-                        boolean isAbstract = Modifier.isAbstract(modifiers);
-                        boolean isNative = Modifier.isNative(modifiers);
-                        
-                        if (!isMainMethod && !isAbstract && !isNative) {
-                            clearMethodBodyDirect(m);
-                        }
-                    }
-                }
+            if (!cp.reset(classBytes)) {
+                throw new IllegalArgumentException("invalid class file");
             }
-            return cc.toBytecode();
-        } catch (Exception e) {
-            throw new RuntimeException("[" + classname + "(" + name + ")]" + e.getMessage(), e);
+            int end = cp.getEndOffset();
+            int access = ConstantPoolScanner.u2(classBytes, end);
+            int thisClass = ConstantPoolScanner.u2(classBytes, end + 2);
+            String name = cp.getUtf8(ConstantPoolScanner.u2(classBytes, cp.offset(thisClass) + 1));
+            safe = isSafeToClean(name.substring(name.lastIndexOf('/') + 1),
+                    (access & ACC_ENUM) != 0, (access & ACC_ANNOTATION) != 0);
+        } finally {
+            cp.clear();
         }
+        return safe ? ClassStubWriter.rewrite(classBytes) : classBytes;
     }
 
     /**
@@ -198,22 +159,15 @@ public class ClassUtils {
             return;
         }
 
+        List<File> jars = new ArrayList<>();
         if (dir.isDirectory()) {
-            List<File> jars = new ArrayList<>();
             IoUtils.listFile(jars, dir, ".jar");
-            for (File jar : jars) {
-                try {
-                    pool.insertClassPath(jar.getAbsolutePath());
-                } catch (NotFoundException e) {
-                    //ignore
-                }
-            }
         } else if (dir.getName().endsWith(".jar")) {
-            try {
-                pool.insertClassPath(dir.getAbsolutePath());
-            } catch (NotFoundException e) {
-                //ignore
-            }
+            jars.add(dir);
+        }
+        if (!jars.isEmpty()) {
+            //所有jar合成一个按包名索引的classpath
+            pool.insertClassPath(new ClassPathIndex(jars));
         }
     }
 
@@ -229,29 +183,44 @@ public class ClassUtils {
      * @throws Exception Exception
      */
     public static byte[] insertCode(String classMethod, String javaCode, int line, File libDir, File thisJar) throws Exception {
+        try (ClassPoolScope scope = new ClassPoolScope()) {
+            scope.insertClassPath(libDir);
+            scope.insertClassPath(thisJar);
+            return insertCode(scope, classMethod, javaCode, line);
+        }
+    }
+
+    /**
+     * 给方法插入代码并返回bytecode的字节数组，使用加密任务的ClassPool
+     *
+     * @param scope       加密任务的ClassPool
+     * @param classMethod 类名#方法名
+     * @param javaCode    代码
+     * @param line        行数
+     * @return 修改后的字节数组
+     * @throws Exception Exception
+     */
+    public static byte[] insertCode(ClassPoolScope scope, String classMethod, String javaCode, int line) throws Exception {
         String className = classMethod.split("#")[0];
         String methodName = classMethod.split("#")[1];
-        ClassPool pool = ClassPool.getDefault();
-        loadClassPath(pool, libDir);
-        if (thisJar != null && thisJar.exists()) {
-            loadClassPath(pool, thisJar);
-        }
-        byte[] bytes;
-        CtClass cc = pool.getCtClass(className);
-        if (methodName.startsWith("<") && methodName.contains(">")) {
-            methodName = methodName.replace("<", "").replace(">", "");
-            CtConstructor[] ms = cc.getConstructors();
-            for (CtConstructor mt : ms) {
-                if (mt.getLongName().endsWith(methodName)) {
-                    mt.insertAt(line, javaCode);
+        CtClass cc = scope.get(className);
+        try {
+            if (methodName.startsWith("<") && methodName.contains(">")) {
+                methodName = methodName.replace("<", "").replace(">", "");
+                CtConstructor[] ms = cc.getConstructors();
+                for (CtConstructor mt : ms) {
+                    if (mt.getLongName().endsWith(methodName)) {
+                        mt.insertAt(line, javaCode);
+                    }
                 }
+            } else {
+                CtMethod mt = cc.getDeclaredMethod(methodName);
+                mt.insertAt(line, javaCode);
             }
-        } else {
-            CtMethod mt = cc.getDeclaredMethod(methodName);
-            mt.insertAt(line, javaCode);
+            return cc.toBytecode();
+        } finally {
+            cc.detach();
         }
-        bytes = cc.toBytecode();
-        return bytes;
     }
 
 }
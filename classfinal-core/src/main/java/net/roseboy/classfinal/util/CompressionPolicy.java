@@ -0,0 +1,103 @@
+package net.roseboy.classfinal.util;
+
+import net.roseboy.classfinal.Const;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * 打包时每个entry的压缩策略
+ * <p>
+ * 压缩级别 0 表示不压缩(STORED)，1-9 为DEFLATE级别。
+ * 加密后的class（META-INF/.classes）无法再压缩，内部jar必须不压缩，已经压缩过的图片、音视频、压缩包默认也不压缩。
+ * 配置格式：扩展名=级别，多个用逗号分隔，如 "default=6,class=9,png=0"
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class CompressionPolicy {
+    //不压缩
+    public static final int STORED = 0;
+
+    //默认不压缩的扩展名
+    private static final String[] STORED_TYPES = {"jar", "war", "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "zst",
+            "png", "jpg", "jpeg", "gif", "webp", "ico", "mp3", "mp4", "ogg", "avi", "mov", "flv", "woff", "woff2"};
+
+    //加密后的文件存放的目录
+    private static final String ENCRYPT_PATH = "META-INF/" + Const.FILE_NAME + "/";
+
+    //默认级别
+    private int defaultLevel = Deflater.DEFAULT_COMPRESSION;
+    //扩展名->级别
+    private final Map<String, Integer> levels = new HashMap<>();
+
+    /**
+     * 默认策略
+     */
+    public CompressionPolicy() {
+        for (String type : STORED_TYPES) {
+            levels.put(type, STORED);
+        }
+    }
+
+    /**
+     * 解析压缩策略配置
+     *
+     * @param spec 配置，如 "default=6,class=9,png=0"，为空时使用默认策略
+     * @return 压缩策略
+     */
+    public static CompressionPolicy parse(String spec) {
+        CompressionPolicy policy = new CompressionPolicy();
+        for (String item : StrUtils.toList(spec)) {
+            String[] kv = item.split("=");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("压缩策略格式有误: " + item);
+            }
+            String type = kv[0].trim().toLowerCase();
+            if (type.startsWith(".")) {
+                type = type.substring(1);
+            }
+            int level;
+            try {
+                level = Integer.parseInt(kv[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("压缩级别必须是0-9: " + item);
+            }
+            if (level < 0 || level > 9) {
+                throw new IllegalArgumentException("压缩级别必须是0-9: " + item);
+            }
+            if ("default".equals(type) || "*".equals(type)) {
+                policy.defaultLevel = level;
+            } else {
+                policy.levels.put(type, level);
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * 获取entry的压缩级别
+     *
+     * @param entryName entry名称
+     * @return 0表示不压缩，否则为DEFLATE级别
+     */
+    public int getLevel(String entryName) {
+        //加密后的数据无法压缩
+        if (entryName.startsWith(ENCRYPT_PATH)) {
+            return STORED;
+        }
+        String name = entryName.substring(entryName.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) {
+            return defaultLevel;
+        }
+        String type = name.substring(dot + 1).toLowerCase();
+        //内部jar必须不压缩，否则spring boot无法加载
+        if ("jar".equals(type)) {
+            return STORED;
+        }
+        Integer level = levels.get(type);
+        return level == null ? defaultLevel : level;
+    }
+}
@@ -0,0 +1,388 @@
+package net.roseboy.classfinal.util;
+
+/**
+ * class文件常量池扫描器
+ * <p>
+ * 直接在byte[]上按偏移读取，只记录每个常量的位置，不创建String，不复制数据。
+ * 同一个扫描器可以反复 {@link #reset(byte[])} 扫描不同的class，通过 {@link #get()} 获取当前线程的实例。
+ * 支持JVM规范中的全部常量类型（包括Module、Package、Dynamic），扫描完常量池后可以跳过字段和方法直接定位到类的属性表。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class ConstantPoolScanner {
+    // 常量池标签（基于JVM规范）
+    public static final int CONSTANT_Utf8 = 1;
+    public static final int CONSTANT_Integer = 3;
+    public static final int CONSTANT_Float = 4;
+    public static final int CONSTANT_Long = 5;
+    public static final int CONSTANT_Double = 6;
+    public static final int CONSTANT_Class = 7;
+    public static final int CONSTANT_String = 8;
+    public static final int CONSTANT_Fieldref = 9;
+    public static final int CONSTANT_Methodref = 10;
+    public static final int CONSTANT_InterfaceMethodref = 11;
+    public static final int CONSTANT_NameAndType = 12;
+    public static final int CONSTANT_MethodHandle = 15;
+    public static final int CONSTANT_MethodType = 16;
+    public static final int CONSTANT_Dynamic = 17;
+    public static final int CONSTANT_InvokeDynamic = 18;
+    public static final int CONSTANT_Module = 19;
+    public static final int CONSTANT_Package = 20;
+
+    //每个线程一个扫描器，复用内部数组
+    private static final ThreadLocal<ConstantPoolScanner> LOCAL = ThreadLocal.withInitial(ConstantPoolScanner::new);
+
+    //class字节码
+    private byte[] bytes;
+    //常量池大小(constant_pool_count)
+    private int count;
+    //已解析的常量数量，常量池不完整时小于count
+    private int parsed;
+    //每个常量tag所在的位置，下标为常量池索引，Long/Double的第二个槽位为0
+    private int[] offsets = new int[256];
+    //常量池之后(access_flags)的位置，常量池不完整时为-1
+    private int end;
+    //字段表、方法表、属性表的位置，用到时才计算
+    private int fieldsOffset;
+    private int methodsOffset;
+    private int attributesOffset;
+
+    /**
+     * 获取当前线程的扫描器
+     *
+     * @return 扫描器
+     */
+    public static ConstantPoolScanner get() {
+        return LOCAL.get();
+    }
+
+    /**
+     * 扫描class的常量池
+     *
+     * @param classBytes class字节码
+     * @return 是否是完整的常量池，不是class或数据不完整时返回false，已解析的部分仍然可以读取
+     */
+    public boolean reset(byte[] classBytes) {
+        this.bytes = classBytes;
+        this.count = 0;
+        this.parsed = 0;
+        this.end = -1;
+        this.fieldsOffset = -1;
+        this.methodsOffset = -1;
+        this.attributesOffset = -1;
+        if (classBytes == null || classBytes.length < 10 || u4(classBytes, 0) != 0xCAFEBABE) {
+            return false;
+        }
+
+        int cpCount = u2(classBytes, 8);
+        if (offsets.length < cpCount) {
+            offsets = new int[Math.max(cpCount, offsets.length * 2)];
+        }
+        this.count = cpCount;
+        int pos = 10;
+        int len = classBytes.length;
+        for (int i = 1; i < cpCount; i++) {
+            if (pos >= len) {
+                return false;
+            }
+            int size;
+            switch (classBytes[pos] & 0xFF) {
+                case CONSTANT_Utf8:
+                    if (pos + 3 > len) {
+                        return false;
+                    }
+                    size = 3 + u2(classBytes, pos + 1);
+                    break;
+                case CONSTANT_Class:
+                case CONSTANT_String:
+                case CONSTANT_MethodType:
+                case CONSTANT_Module:
+                case CONSTANT_Package:
+                    size = 3;
+                    break;
+                case CONSTANT_MethodHandle:
+                    size = 4;
+                    break;
+                case CONSTANT_Integer:
+                case CONSTANT_Float:
+                case CONSTANT_Fieldref:
+                case CONSTANT_Methodref:
+                case CONSTANT_InterfaceMethodref:
+                case CONSTANT_NameAndType:
+                case CONSTANT_Dynamic:
+                case CONSTANT_InvokeDynamic:
+                    size = 5;
+                    break;
+                case CONSTANT_Long:
+                case CONSTANT_Double:
+                    size = 9;
+                    break;
+                default:
+                    //未知标签，无法继续解析
+                    return false;
+            }
+            if (pos + size > len) {
+                return false;
+            }
+            offsets[i] = pos;
+            parsed = i;
+            pos += size;
+            int tag = classBytes[offsets[i]] & 0xFF;
+            // Long和Double占用两个常量池槽位
+            if (tag == CONSTANT_Long || tag == CONSTANT_Double) {
+                i++;
+                if (i < cpCount) {
+                    offsets[i] = 0;
+                    parsed = i;
+                }
+            }
+        }
+        this.end = pos;
+        return true;
+    }
+
+    /**
+     * 释放对字节码的引用
+     */
+    public void clear() {
+        this.bytes = null;
+    }
+
+    /**
+     * 常量池大小(constant_pool_count)，有效索引为 1 到 count-1
+     *
+     * @return 大小
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * 已解析的最大常量池索引
+     *
+     * @return 索引
+     */
+    public int getParsed() {
+        return parsed;
+    }
+
+    /**
+     * 常量的标签
+     *
+     * @param index 常量池索引
+     * @return 标签，未解析或Long/Double的第二个槽位返回0
+     */
+    public int tag(int index) {
+        if (index < 1 || index > parsed || offsets[index] == 0) {
+            return 0;
+        }
+        return bytes[offsets[index]] & 0xFF;
+    }
+
+    /**
+     * 常量tag所在的位置
+     *
+     * @param index 常量池索引
+     * @return 位置
+     */
+    public int offset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * 常量池中是否有某种标签的常量
+     *
+     * @param tag 标签
+     * @return 是否有
+     */
+    public boolean hasTag(int tag) {
+        for (int i = 1; i <= parsed; i++) {
+            if (offsets[i] != 0 && (bytes[offsets[i]] & 0xFF) == tag) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Utf8常量是否等于给定的字节（只比较原始字节，不解码）
+     *
+     * @param index 常量池索引
+     * @param value 字节，ASCII字符串可以直接用getBytes()
+     * @return 是否相等
+     */
+    public boolean utf8Equals(int index, byte[] value) {
+        if (tag(index) != CONSTANT_Utf8) {
+            return false;
+        }
+        int pos = offsets[index];
+        return u2(bytes, pos + 1) == value.length && regionMatches(pos + 3, value);
+    }
+
+    /**
+     * Utf8常量是否以给定的字节开头（只比较原始字节，不解码）
+     *
+     * @param index  常量池索引
+     * @param prefix 前缀字节
+     * @return 是否以前缀开头
+     */
+    public boolean utf8StartsWith(int index, byte[] prefix) {
+        if (tag(index) != CONSTANT_Utf8) {
+            return false;
+        }
+        int pos = offsets[index];
+        return u2(bytes, pos + 1) >= prefix.length && regionMatches(pos + 3, prefix);
+    }
+
+    private boolean regionMatches(int pos, byte[] value) {
+        for (int i = 0; i < value.length; i++) {
+            if (bytes[pos + i] != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读取Utf8常量（会创建String，只在确实需要时使用）
+     *
+     * @param index 常量池索引
+     * @return 字符串，不是Utf8常量返回null
+     */
+    public String getUtf8(int index) {
+        if (tag(index) != CONSTANT_Utf8) {
+            return null;
+        }
+        int pos = offsets[index];
+        return decodeModifiedUtf8(bytes, pos + 3, u2(bytes, pos + 1));
+    }
+
+    /**
+     * 常量池之后(access_flags)的位置
+     *
+     * @return 位置，常量池不完整时为-1
+     */
+    public int getEndOffset() {
+        return end;
+    }
+
+    /**
+     * 字段表(fields_count)的位置
+     *
+     * @return 位置，数据不完整时为-1
+     */
+    public int getFieldsOffset() {
+        if (fieldsOffset < 0 && end > 0 && end + 8 <= bytes.length) {
+            fieldsOffset = end + 8 + 2 * u2(bytes, end + 6);
+        }
+        return fieldsOffset;
+    }
+
+    /**
+     * 方法表(methods_count)的位置
+     *
+     * @return 位置，数据不完整时为-1
+     */
+    public int getMethodsOffset() {
+        if (methodsOffset < 0 && getFieldsOffset() > 0) {
+            methodsOffset = skipMembers(fieldsOffset);
+        }
+        return methodsOffset;
+    }
+
+    /**
+     * 类属性表(attributes_count)的位置
+     *
+     * @return 位置，数据不完整时为-1
+     */
+    public int getAttributesOffset() {
+        if (attributesOffset < 0 && getMethodsOffset() > 0) {
+            attributesOffset = skipMembers(methodsOffset);
+        }
+        return attributesOffset;
+    }
+
+    /**
+     * 跳过字段表或方法表
+     *
+     * @param pos 表开始的位置(count)
+     * @return 表之后的位置，数据不完整时为-1
+     */
+    private int skipMembers(int pos) {
+        if (pos + 2 > bytes.length) {
+            return -1;
+        }
+        int n = u2(bytes, pos);
+        pos += 2;
+        for (int i = 0; i < n; i++) {
+            //access_flags, name_index, descriptor_index
+            pos += 6;
+            pos = skipAttributes(pos);
+            if (pos < 0) {
+                return -1;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * 跳过属性表
+     *
+     * @param pos 属性表开始的位置(attributes_count)
+     * @return 属性表之后的位置，数据不完整时为-1
+     */
+    public int skipAttributes(int pos) {
+        if (pos + 2 > bytes.length) {
+            return -1;
+        }
+        int n = u2(bytes, pos);
+        pos += 2;
+        for (int i = 0; i < n; i++) {
+            if (pos + 6 > bytes.length) {
+                return -1;
+            }
+            pos += 6 + u4(bytes, pos + 2);
+            if (pos < 0 || pos > bytes.length) {
+                return -1;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * 读取无符号2字节
+     */
+    public static int u2(byte[] b, int pos) {
+        return ((b[pos] & 0xFF) << 8) | (b[pos + 1] & 0xFF);
+    }
+
+    /**
+     * 读取4字节
+     */
+    public static int u4(byte[] b, int pos) {
+        return ((b[pos] & 0xFF) << 24) | ((b[pos + 1] & 0xFF) << 16) | ((b[pos + 2] & 0xFF) << 8) | (b[pos + 3] & 0xFF);
+    }
+
+    /**
+     * 解码class文件中的modified UTF-8
+     */
+    private static String decodeModifiedUtf8(byte[] b, int pos, int len) {
+        char[] chars = new char[len];
+        int n = 0;
+        int limit = pos + len;
+        while (pos < limit) {
+            int c = b[pos++] & 0xFF;
+            if (c < 0x80) {
+                chars[n++] = (char) c;
+            } else if ((c & 0xE0) == 0xC0 && pos < limit) {
+                chars[n++] = (char) (((c & 0x1F) << 6) | (b[pos++] & 0x3F));
+            } else if (pos + 1 < limit) {
+                chars[n++] = (char) (((c & 0x0F) << 12) | ((b[pos++] & 0x3F) << 6) | (b[pos++] & 0x3F));
+            } else {
+                break;
+            }
+        }
+        return new String(chars, 0, n);
+    }
+}
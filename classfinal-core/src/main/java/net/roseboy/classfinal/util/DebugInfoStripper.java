@@ -0,0 +1,207 @@
+package net.roseboy.classfinal.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 去掉class文件中的调试信息
+ * <p>
+ * 和 {@link ClassStubWriter} 一样直接改写字节码，常量池、字段和其他属性原样复制，只删除选中的属性：
+ * <ul>
+ * <li>lines：方法的 LineNumberTable（异常堆栈中不再有行号）</li>
+ * <li>vars：方法的 LocalVariableTable、LocalVariableTypeTable（依赖参数名的框架会受影响）</li>
+ * <li>source：类的 SourceFile、SourceDebugExtension</li>
+ * </ul>
+ * 配置格式：多个用逗号分隔，如 "lines,source"，all 表示全部，none 或空表示不处理。
+ * 常量池不压缩，属性名等常量保留。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class DebugInfoStripper {
+    public static final String LINES = "lines";
+    public static final String VARS = "vars";
+    public static final String SOURCE = "source";
+
+    private static final byte[] CODE = "Code".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LINE_NUMBER_TABLE = "LineNumberTable".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LOCAL_VARIABLE_TABLE = "LocalVariableTable".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LOCAL_VARIABLE_TYPE_TABLE = "LocalVariableTypeTable".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SOURCE_FILE = "SourceFile".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SOURCE_DEBUG_EXTENSION = "SourceDebugExtension".getBytes(StandardCharsets.US_ASCII);
+
+    private boolean lines;
+    private boolean vars;
+    private boolean source;
+
+    /**
+     * 解析要删除的调试信息
+     *
+     * @param spec 配置，如 "lines,vars,source"、"all"，为空时不删除
+     * @return 调试信息处理器
+     */
+    public static DebugInfoStripper parse(String spec) {
+        DebugInfoStripper stripper = new DebugInfoStripper();
+        for (String item : StrUtils.toList(spec)) {
+            switch (item.trim().toLowerCase()) {
+                case LINES:
+                    stripper.lines = true;
+                    break;
+                case VARS:
+                    stripper.vars = true;
+                    break;
+                case SOURCE:
+                    stripper.source = true;
+                    break;
+                case "all":
+                    stripper.lines = stripper.vars = stripper.source = true;
+                    break;
+                case "none":
+                    break;
+                default:
+                    throw new IllegalArgumentException("调试信息格式有误: " + item + "，可选 lines,vars,source,all,none");
+            }
+        }
+        return stripper;
+    }
+
+    /**
+     * 是否不删除任何调试信息
+     *
+     * @return 是否为空
+     */
+    public boolean isEmpty() {
+        return !lines && !vars && !source;
+    }
+
+    /**
+     * 删除调试信息
+     *
+     * @param classBytes class字节码
+     * @return 修改后的字节码，没有可删除的内容时返回原数组
+     * @throws IllegalArgumentException 不是完整的class文件
+     */
+    public byte[] strip(byte[] classBytes) {
+        if (isEmpty()) {
+            return classBytes;
+        }
+        ConstantPoolScanner cp = ConstantPoolScanner.get();
+        try {
+            if (!cp.reset(classBytes) || cp.getAttributesOffset() < 0) {
+                throw new IllegalArgumentException("invalid class file");
+            }
+            byte[] result = strip(cp, classBytes);
+            return result.length == classBytes.length ? classBytes : result;
+        } finally {
+            cp.clear();
+        }
+    }
+
+    private byte[] strip(ConstantPoolScanner cp, byte[] b) {
+        int methods = cp.getMethodsOffset();
+        int attributes = cp.getAttributesOffset();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(b.length);
+
+        //常量池、类信息、字段原样复制
+        out.write(b, 0, methods + 2);
+        int count = ConstantPoolScanner.u2(b, methods);
+        int pos = methods + 2;
+        for (int i = 0; i < count; i++) {
+            out.write(b, pos, 6);
+            int attrCount = ConstantPoolScanner.u2(b, pos + 6);
+            pos += 8;
+            writeU2(out, attrCount);
+            for (int j = 0; j < attrCount; j++) {
+                int attrLen = ConstantPoolScanner.u4(b, pos + 2);
+                if (cp.utf8Equals(ConstantPoolScanner.u2(b, pos), CODE)) {
+                    writeCode(out, cp, b, pos);
+                } else {
+                    out.write(b, pos, 6 + attrLen);
+                }
+                pos += 6 + attrLen;
+            }
+        }
+
+        //类属性
+        int attrCount = ConstantPoolScanner.u2(b, attributes);
+        pos = attributes + 2;
+        ByteArrayOutputStream attrs = new ByteArrayOutputStream();
+        int kept = 0;
+        for (int i = 0; i < attrCount; i++) {
+            int attrName = ConstantPoolScanner.u2(b, pos);
+            int attrLen = ConstantPoolScanner.u4(b, pos + 2);
+            if (!(source && (cp.utf8Equals(attrName, SOURCE_FILE) || cp.utf8Equals(attrName, SOURCE_DEBUG_EXTENSION)))) {
+                attrs.write(b, pos, 6 + attrLen);
+                kept++;
+            }
+            pos += 6 + attrLen;
+        }
+        writeU2(out, kept);
+        out.write(attrs.toByteArray(), 0, attrs.size());
+        return out.toByteArray();
+    }
+
+    /**
+     * 写入去掉调试信息的Code属性
+     */
+    private void writeCode(ByteArrayOutputStream out, ConstantPoolScanner cp, byte[] b, int pos) {
+        //max_stack、max_locals、代码和异常表原样复制
+        int codeLength = ConstantPoolScanner.u4(b, pos + 10);
+        int p = pos + 14 + codeLength;
+        p += 2 + 8 * ConstantPoolScanner.u2(b, p);
+        int header = p - pos - 6;
+
+        ByteArrayOutputStream attrs = new ByteArrayOutputStream();
+        int kept = 0;
+        int n = ConstantPoolScanner.u2(b, p);
+        p += 2;
+        for (int i = 0; i < n; i++) {
+            int attrName = ConstantPoolScanner.u2(b, p);
+            int attrLen = ConstantPoolScanner.u4(b, p + 2);
+            boolean drop = (lines && cp.utf8Equals(attrName, LINE_NUMBER_TABLE))
+                    || (vars && (cp.utf8Equals(attrName, LOCAL_VARIABLE_TABLE)
+                    || cp.utf8Equals(attrName, LOCAL_VARIABLE_TYPE_TABLE)));
+            if (!drop) {
+                attrs.write(b, p, 6 + attrLen);
+                kept++;
+            }
+            p += 6 + attrLen;
+        }
+
+        out.write(b, pos, 2);
+        writeU4(out, header + 2 + attrs.size());
+        out.write(b, pos + 6, header);
+        writeU2(out, kept);
+        out.write(attrs.toByteArray(), 0, attrs.size());
+    }
+
+    @Override
+    public String toString() {
+        if (isEmpty()) {
+            return "none";
+        }
+        StringBuilder sb = new StringBuilder();
+        if (lines) {
+            sb.append(LINES);
+        }
+        if (vars) {
+            sb.append(sb.length() > 0 ? "," : "").append(VARS);
+        }
+        if (source) {
+            sb.append(sb.length() > 0 ? "," : "").append(SOURCE);
+        }
+        return sb.toString();
+    }
+
+    private static void writeU2(ByteArrayOutputStream out, int v) {
+        out.write(v >>> 8);
+        out.write(v);
+    }
+
+    private static void writeU4(ByteArrayOutputStream out, int v) {
+        out.write(v >>> 24);
+        out.write(v >>> 16);
+        out.write(v >>> 8);
+        out.write(v);
+    }
+}
@@ -0,0 +1,98 @@
+package net.roseboy.classfinal.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 从jar中的类生成 {@link PayloadCompressor} 使用的预置字典
+ * <p>
+ * 统计每个 Utf8 常量（连同 tag 和长度，和class文件中的字节相同）出现在多少个类中，
+ * 按 (类数-1)*长度 估算能省下的字节，取收益最大的常量拼成字典，收益大的放在最后（DEFLATE 距离越近编码越短）。
+ * 结果只和加入的内容有关，与加入顺序无关，可重现构建时得到相同的字典。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class DictionaryTrainer {
+    //DEFLATE 窗口大小，更大的字典用不上
+    public static final int MAX_SIZE = 32 * 1024;
+    //统计的常量数超过后丢弃只出现一次的
+    private static final int PRUNE_SIZE = 200_000;
+
+    //常量字节(ISO-8859-1) -> 出现的类数
+    private final Map<String, Integer> counts = new HashMap<>();
+    private int classes;
+
+    /**
+     * 加入一个类
+     *
+     * @param classBytes class字节码，不是完整的class文件时忽略
+     */
+    public void add(byte[] classBytes) {
+        ConstantPoolScanner cp = ConstantPoolScanner.get();
+        try {
+            if (!cp.reset(classBytes)) {
+                return;
+            }
+            for (int i = 1; i <= cp.getParsed(); i++) {
+                if (cp.tag(i) != ConstantPoolScanner.CONSTANT_Utf8) {
+                    continue;
+                }
+                int pos = cp.offset(i);
+                int len = 3 + ConstantPoolScanner.u2(classBytes, pos + 1);
+                //太短的常量没有收益
+                if (len < 6) {
+                    continue;
+                }
+                counts.merge(new String(classBytes, pos, len, StandardCharsets.ISO_8859_1), 1, Integer::sum);
+            }
+            classes++;
+        } finally {
+            cp.clear();
+        }
+        if (counts.size() > PRUNE_SIZE) {
+            counts.values().removeIf(count -> count < 2);
+        }
+    }
+
+    /**
+     * 已加入的类数
+     *
+     * @return 类数
+     */
+    public int getClasses() {
+        return classes;
+    }
+
+    /**
+     * 生成字典
+     *
+     * @param maxSize 字典最大字节数
+     * @return 字典，没有重复的常量时为空数组
+     */
+    public byte[] build(int maxSize) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>();
+        counts.entrySet().stream().filter(e -> e.getValue() > 1).forEach(entries::add);
+        entries.sort(Comparator.<Map.Entry<String, Integer>>comparingLong(e -> (long) (e.getValue() - 1) * e.getKey().length())
+                .reversed().thenComparing(Map.Entry::getKey));
+
+        List<String> selected = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> entry : entries) {
+            int len = entry.getKey().length();
+            if (size + len > maxSize) {
+                continue;
+            }
+            selected.add(entry.getKey());
+            size += len;
+        }
+        Collections.reverse(selected);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        for (String s : selected) {
+            byte[] b = s.getBytes(StandardCharsets.ISO_8859_1);
+            out.write(b, 0, b.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -2,8 +2,11 @@ package net.roseboy.classfinal.util;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.math.BigInteger;
 import java.security.*;
+import java.security.interfaces.RSAKey;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.PKCS8EncodedKeySpec;
@@ -26,10 +29,13 @@ public class EncryptUtils {
      *
      * @param msg  内容
      * @param key  密钥
-     * @param type 类型
+     * @param type 类型，见 {@link CipherSuite}：1 AES/ECB（旧版本），2 AES/CTR，3 AES/GCM；其他为简单加密
      * @return 密文
      */
     public static byte[] en(byte[] msg, char[] key, int type) {
+        if (type == CipherSuite.CTR || type == CipherSuite.GCM) {
+            return CipherSuite.encrypt(msg, key, type);
+        }
         if (type == 1) {
             return enAES(msg, md5(StrUtils.merger(key, SALT), true));
         }
@@ -37,15 +43,22 @@ public class EncryptUtils {
     }
 
     /**
-     * 解密
+     * 解密，按数据的头部选择算法，没有头部的是旧版本的 AES/ECB
      *
      * @param msg  密文
      * @param key  密钥
-     * @param type 类型
+     * @param type 类型，见 {@link #en}
      * @return 明文
      */
     public static byte[] de(byte[] msg, char[] key, int type) {
-        if (type == 1) {
+        if (CipherSuite.of(msg) != CipherSuite.ECB) {
+            byte[] bytes = CipherSuite.decrypt(msg, key);
+            //极少数旧版本的密文恰好以魔数开头，认证失败时再按旧版本解密
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+        if (type >= 1 && type <= CipherSuite.GCM) {
             return deAES(msg, md5(StrUtils.merger(key, SALT), true));
         }
         return deSimple(msg, key);
@@ -190,14 +203,7 @@ public class EncryptUtils {
      */
     public static byte[] enRSA(byte[] msg, String publicKey) {
         try {
-            //base64编码的公钥
-            byte[] decoded = Base64.getDecoder().decode(publicKey.getBytes("UTF-8"));
-            RSAPublicKey pubKey = (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(decoded));
-            //RSA加密
-            Cipher cipher = Cipher.getInstance("RSA");
-            cipher.init(Cipher.ENCRYPT_MODE, pubKey);
-            return cipherDoFinal(cipher, msg, Cipher.ENCRYPT_MODE);
-
+            return rsa(msg, publicKey(publicKey), Cipher.ENCRYPT_MODE);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -233,14 +239,7 @@ public class EncryptUtils {
      */
     public static byte[] deRSA(byte[] msg, String privateKey) {
         try {
-            //base64编码的私钥
-            byte[] decoded = Base64.getDecoder().decode(privateKey.getBytes("UTF-8"));
-            RSAPrivateKey priKey = (RSAPrivateKey) KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(decoded));
-            //RSA解密
-            Cipher cipher = Cipher.getInstance("RSA");
-            cipher.init(Cipher.DECRYPT_MODE, priKey);
-            return cipherDoFinal(cipher, msg, Cipher.DECRYPT_MODE);
-
+            return rsa(msg, privateKey(privateKey), Cipher.DECRYPT_MODE);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -248,35 +247,111 @@ public class EncryptUtils {
     }
 
     /**
-     * 调用加密解密
+     * RSA加密解密，按密钥长度分块
+     *
+     * @param msg  内容
+     * @param key  公钥加密，私钥解密
+     * @param mode Cipher.ENCRYPT_MODE/Cipher.DECRYPT_MODE
+     * @return 结果
+     * @throws GeneralSecurityException 密钥和内容不匹配
+     */
+    public static byte[] rsa(byte[] msg, Key key, int mode) throws GeneralSecurityException {
+        return rsa(msg, key, mode, null);
+    }
+
+    /**
+     * RSA加密解密，按密钥长度分块，PKCS1的随机填充由种子确定性地生成（可重现构建时使用）
      *
-     * @param cipher Cipher
-     * @param msg    要加密的字节
-     * @param mode   解密/解密
+     * @param msg  内容
+     * @param key  公钥加密，私钥解密
+     * @param mode Cipher.ENCRYPT_MODE/Cipher.DECRYPT_MODE
+     * @param seed 填充的种子，为null时使用安全的随机数
      * @return 结果
-     * @throws Exception Exception
+     * @throws GeneralSecurityException 密钥和内容不匹配
      */
-    private static byte[] cipherDoFinal(Cipher cipher, byte[] msg, int mode) throws Exception {
-        int in_length = 0;
-        if (mode == Cipher.ENCRYPT_MODE) {
-            in_length = KEY_LENGTH / 8 - 11;
-        } else if (mode == Cipher.DECRYPT_MODE) {
-            in_length = KEY_LENGTH / 8;
+    public static byte[] rsa(byte[] msg, Key key, int mode, byte[] seed) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("RSA");
+        if (seed == null) {
+            cipher.init(mode, key);
+        } else {
+            cipher.init(mode, key, new SeededRandom(seed));
         }
+        int keyLength = ((RSAKey) key).getModulus().bitLength();
+        //PKCS1填充占11个字节
+        return cipherDoFinal(cipher, msg, mode == Cipher.ENCRYPT_MODE ? keyLength / 8 - 11 : keyLength / 8);
+    }
 
-        byte[] in = new byte[in_length];
-        byte[] out = new byte[0];
+    /**
+     * 解析公钥，支持base64和PEM格式（X.509）
+     *
+     * @param publicKey 公钥
+     * @return 公钥
+     */
+    public static RSAPublicKey publicKey(String publicKey) {
+        try {
+            return (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(decodeKey(publicKey)));
+        } catch (GeneralSecurityException | IllegalArgumentException | ClassCastException e) {
+            throw new IllegalArgumentException("公钥格式有误", e);
+        }
+    }
 
-        for (int i = 0; i < msg.length; i++) {
-            if (msg.length - i < in_length && i % in_length == 0) {
-                in = new byte[msg.length - i];
-            }
-            in[i % in_length] = msg[i];
-            if (i == (msg.length - 1) || (i % in_length + 1 == in_length)) {
-                out = IoUtils.merger(out, cipher.doFinal(in));
+    /**
+     * 解析私钥，支持base64和PEM格式（PKCS#8）
+     *
+     * @param privateKey 私钥
+     * @return 私钥
+     */
+    public static RSAPrivateKey privateKey(String privateKey) {
+        try {
+            return (RSAPrivateKey) KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(decodeKey(privateKey)));
+        } catch (GeneralSecurityException | IllegalArgumentException | ClassCastException e) {
+            throw new IllegalArgumentException("私钥格式有误", e);
+        }
+    }
+
+    /**
+     * 读取密钥文件（base64或PEM）
+     *
+     * @param file 文件
+     * @return 文件内容
+     */
+    public static String readKey(File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("密钥文件不存在: " + file);
+        }
+        return IoUtils.readTxtFile(file);
+    }
+
+    /**
+     * 去掉PEM的首尾行和空白后base64解码
+     */
+    private static byte[] decodeKey(String key) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : key.split("\\r?\\n")) {
+            if (!line.startsWith("-----")) {
+                sb.append(line.trim());
             }
         }
-        return out;
+        return Base64.getDecoder().decode(sb.toString());
+    }
+
+    /**
+     * 调用加密解密，每块的结果直接写入输出
+     *
+     * @param cipher    Cipher
+     * @param msg       要加密的字节
+     * @param blockSize 每次加密/解密的最大长度
+     * @return 结果
+     * @throws GeneralSecurityException GeneralSecurityException
+     */
+    private static byte[] cipherDoFinal(Cipher cipher, byte[] msg, int blockSize) throws GeneralSecurityException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(cipher.getOutputSize(blockSize)
+                * ((msg.length + blockSize - 1) / blockSize));
+        for (int offset = 0; offset < msg.length; offset += blockSize) {
+            byte[] block = cipher.doFinal(msg, offset, Math.min(blockSize, msg.length - offset));
+            out.write(block, 0, block.length);
+        }
+        return out.toByteArray();
     }
 
     /**
@@ -406,4 +481,99 @@ public class EncryptUtils {
         }
         return result;
     }
+
+    /**
+     * sha256摘要
+     *
+     * @param bytes 字节
+     * @return 摘要
+     */
+    public static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 用安全的随机数生成字串（可重复字符）
+     *
+     * @param length 长度
+     * @return 字符数组
+     */
+    public static char[] secureChar(int length) {
+        byte[] seed = new byte[32];
+        new SecureRandom().nextBytes(seed);
+        return deriveChar(seed, length);
+    }
+
+    /**
+     * 由种子确定性地生成字串，相同的种子得到相同的结果（可重现构建时代替randChar）
+     *
+     * @param seed   种子
+     * @param length 长度
+     * @return 字符数组
+     */
+    public static char[] deriveChar(byte[] seed, int length) {
+        char[] chars = ("0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz!@#$%^&*()-=_+.").toCharArray();
+        char[] result = new char[length];
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] block = null;
+            for (int i = 0; i < length; i++) {
+                //每32个字符用种子和序号重新计算一次摘要
+                if (i % 32 == 0) {
+                    md.update(seed);
+                    md.update((byte) (i / 32));
+                    block = md.digest();
+                }
+                result[i] = chars[(block[i % 32] & 0xff) % chars.length];
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return result;
+    }
+
+    /**
+     * 由种子确定性生成的随机数：SHA-256(种子+序号)依次输出，只用于可重现构建时的RSA填充
+     */
+    private static class SeededRandom extends SecureRandom {
+        private static final long serialVersionUID = 1L;
+        private final byte[] seed;
+        private long counter;
+        private byte[] block = new byte[0];
+        private int position;
+
+        SeededRandom(byte[] seed) {
+            this.seed = seed.clone();
+        }
+
+        @Override
+        public synchronized void nextBytes(byte[] bytes) {
+            for (int i = 0; i < bytes.length; i++) {
+                if (position == block.length) {
+                    byte[] input = Arrays.copyOf(seed, seed.length + 8);
+                    for (int j = 0; j < 8; j++) {
+                        input[seed.length + j] = (byte) (counter >>> (j * 8));
+                    }
+                    counter++;
+                    block = sha256(input);
+                    position = 0;
+                }
+                bytes[i] = block[position++];
+            }
+        }
+
+        @Override
+        public void setSeed(long seed) {
+            //忽略，输出只由构造时的种子决定
+        }
+
+        @Override
+        public synchronized void setSeed(byte[] seed) {
+            //忽略，输出只由构造时的种子决定
+        }
+    }
 }
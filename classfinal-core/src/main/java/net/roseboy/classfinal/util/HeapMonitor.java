@@ -0,0 +1,57 @@
+package net.roseboy.classfinal.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+
+/**
+ * 堆内存峰值统计
+ * <p>
+ * 开始时重置各堆内存区的峰值，结束时把各区的峰值相加。
+ * 各区峰值不一定出现在同一时刻，结果是实际峰值的上限；多个任务同时运行时统计的是整个进程。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class HeapMonitor {
+
+    /**
+     * 重置堆内存峰值，开始统计
+     */
+    public static void start() {
+        for (MemoryPoolMXBean bean : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (bean.getType() == MemoryType.HEAP && bean.isValid()) {
+                bean.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * 从上次start到现在的堆内存峰值
+     *
+     * @return 字节数
+     */
+    public static long getPeakUsed() {
+        long peak = 0;
+        for (MemoryPoolMXBean bean : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (bean.getType() == MemoryType.HEAP && bean.isValid()) {
+                MemoryUsage usage = bean.getPeakUsage();
+                if (usage != null) {
+                    peak += usage.getUsed();
+                }
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * 格式化成MB
+     *
+     * @param bytes 字节数
+     * @return 如 "123.4 MB"
+     */
+    public static String format(long bytes) {
+        return String.format("%.1f MB", bytes / 1048576d);
+    }
+}
@@ -1,6 +1,7 @@
 package net.roseboy.classfinal.util;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.util.List;
 import java.util.zip.CRC32;
 
@@ -30,6 +31,45 @@ public class IoUtils {
         }
     }
 
+    /**
+     * 写文件，从输入流中读取并写入，写完后关闭输入流
+     *
+     * @param file 文件
+     * @param in   输入流
+     * @throws UncheckedIOException 读取或写入失败（如磁盘已满），文件内容不完整
+     */
+    public static void writeFile(File file, InputStream in) {
+        OutputStream os = null;
+        try {
+            os = new FileOutputStream(file);
+            copy(in, os);
+            os.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入文件失败: " + file.getAbsolutePath(), e);
+        } finally {
+            close(os, in);
+        }
+    }
+
+    /**
+     * 复制文件，使用FileChannel.transferTo，不经过堆内存
+     *
+     * @param src    源文件
+     * @param target 目标文件
+     */
+    public static void copyFile(File src, File target) {
+        try (FileInputStream in = new FileInputStream(src); FileOutputStream out = new FileOutputStream(target)) {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, out.getChannel());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * 读取文件
      *
@@ -37,6 +77,10 @@ public class IoUtils {
      * @return 字节
      */
     public static byte[] readFileToByte(File file) {
+        //byte[]最大2G，大文件应该使用copyFile或流式处理
+        if (file.length() > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("文件过大，无法读入内存: " + file.getAbsolutePath());
+        }
         try {
             FileInputStream inputStream = new FileInputStream(file);
             return toBytes(inputStream);
@@ -159,6 +203,19 @@ public class IoUtils {
         return crc.getValue();
     }
 
+    /**
+     * 计算文件大小之和
+     *
+     * @param paths 文件路径
+     * @return 字节数
+     */
+    public static long length(List<String> paths) {
+        long total = 0;
+        for (String path : paths) {
+            total += new File(path).length();
+        }
+        return total;
+    }
 
     /**
      * 关闭流
@@ -0,0 +1,669 @@
+package net.roseboy.classfinal.util;
+
+import net.roseboy.classfinal.EncryptDaemon;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * 并行压缩的jar/zip写入工具
+ * <p>
+ * 每个entry在线程池中各自压缩，写入时按添加的顺序依次追加，输出结果和单线程一致。
+ * 小文件在内存中压缩；大文件压缩到临时文件，写入时再流式复制，不会整体读入内存。
+ * 超过4G的entry、文件或超过65535个entry时自动写入zip64格式；内存中待写入的数据不超过指定的上限，
+ * 多个writer同时打包时可以共用一个 {@link MemoryBudget}，上限是所有writer的总和。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class JarWriter implements Closeable {
+    //超过这个大小的文件不在内存中压缩
+    public static final long MEMORY_THRESHOLD = 1024 * 1024;
+    //复制缓冲区大小
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    //文件名为utf-8编码
+    private static final int FLAG_UTF8 = 0x0800;
+
+    //输出文件
+    private final File target;
+    private final FileOutputStream fileOut;
+    private final OutputStream out;
+    //已写入的字节数
+    private long written = 0;
+    //中央目录记录
+    private final List<Entry> central = new ArrayList<>();
+    //线程池，为null时在当前线程压缩
+    private final ForkJoinPool pool;
+    //正在压缩的entry，按添加顺序排列
+    private final Deque<Future<Entry>> pending = new ArrayDeque<>();
+    //最多同时压缩的entry数量，控制内存占用
+    private final int window;
+    //内存中待写入数据的额度，默认每个writer单独一份最大堆内存的1/4
+    private MemoryBudget budget = new MemoryBudget(0);
+    //本writer占用的额度
+    private long heldMemory = 0;
+    //固定的dos时间，-1时使用各entry自己的时间
+    private int fixedDosTime = -1;
+
+    /**
+     * 构造方法
+     *
+     * @param target 输出的jar文件
+     * @param pool   线程池，为null时单线程压缩
+     * @throws IOException IOException
+     */
+    public JarWriter(File target, ForkJoinPool pool) throws IOException {
+        this.target = target;
+        this.pool = pool;
+        this.window = pool == null ? 1 : pool.getParallelism() * 4;
+        this.fileOut = new FileOutputStream(target);
+        this.out = new BufferedOutputStream(this.fileOut, BUFFER_SIZE);
+    }
+
+    /**
+     * 设置内存中待写入数据的上限，超过时先写出已压缩的entry再继续提交
+     *
+     * @param memoryLimit 字节数
+     */
+    public void setMemoryLimit(long memoryLimit) {
+        this.budget = new MemoryBudget(memoryLimit);
+    }
+
+    /**
+     * 和其他writer共用内存额度，额度不够时先写出自己已压缩的entry，没有可写的再等待其他writer释放
+     *
+     * @param budget 共用的额度
+     */
+    public void setMemoryBudget(MemoryBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * 所有entry使用固定的修改时间（包括原样复制的entry），按UTC转换，输出与时区无关
+     *
+     * @param time 毫秒
+     */
+    public void setFixedTime(long time) {
+        this.fixedDosTime = javaToDosTime(time, ZoneOffset.UTC);
+    }
+
+    /**
+     * 添加目录
+     *
+     * @param name 目录名，以/结尾
+     * @param time 修改时间
+     * @throws IOException IOException
+     */
+    public void addDirectory(String name, long time) throws IOException {
+        Entry entry = new Entry(name, ZipEntry.STORED, dosTime(time));
+        submit(entry, () -> entry);
+    }
+
+    /**
+     * 添加文件
+     *
+     * @param name   entry名称
+     * @param file   文件
+     * @param method 压缩方式 ZipEntry.STORED | ZipEntry.DEFLATED
+     * @param time   修改时间
+     * @throws IOException IOException
+     */
+    public void addFile(String name, File file, int method, long time) throws IOException {
+        addFile(name, file, method, Deflater.DEFAULT_COMPRESSION, time);
+    }
+
+    /**
+     * 添加文件，指定压缩级别
+     *
+     * @param name   entry名称
+     * @param file   文件
+     * @param method 压缩方式 ZipEntry.STORED | ZipEntry.DEFLATED
+     * @param level  DEFLATE压缩级别
+     * @param time   修改时间
+     * @throws IOException IOException
+     */
+    public void addFile(String name, File file, int method, int level, long time) throws IOException {
+        Entry entry = new Entry(name, method, dosTime(time));
+        entry.level = level;
+        long size = file.length();
+        //小文件压缩前后的数据都在内存中
+        entry.memory = size <= MEMORY_THRESHOLD ? size * 2 : 0;
+        submit(entry, () -> prepare(entry, file));
+    }
+
+    /**
+     * 添加内存中的数据
+     *
+     * @param name   entry名称
+     * @param data   数据
+     * @param method 压缩方式 ZipEntry.STORED | ZipEntry.DEFLATED
+     * @param level  DEFLATE压缩级别
+     * @param time   修改时间
+     * @throws IOException IOException
+     */
+    public void addBytes(String name, byte[] data, int method, int level, long time) throws IOException {
+        Entry entry = new Entry(name, method, dosTime(time));
+        entry.level = level;
+        entry.memory = (long) data.length * 2;
+        submit(entry, () -> prepare(entry, data));
+    }
+
+    /**
+     * 添加在线程池中生成的数据（如重新加密），压缩方式和修改时间与另一个zip中的entry相同
+     *
+     * @param name entry名称
+     * @param raw  源zip中的entry，按原大小估算内存
+     * @param data 生成新的数据
+     * @throws IOException IOException
+     */
+    public void addBytes(String name, ZipIndex.Entry raw, Supplier<byte[]> data) throws IOException {
+        Entry entry = new Entry(name, raw.getMethod(), fixedDosTime != -1 ? fixedDosTime : raw.getDosTime());
+        entry.memory = raw.getSize() * 2;
+        submit(entry, () -> prepare(entry, data.get()));
+    }
+
+    /**
+     * 添加在线程池中生成的临时文件（如重新打包的jar），压缩方式和修改时间与另一个zip中的entry相同，
+     * 文件写入后删除，大文件不读入内存
+     *
+     * @param name entry名称
+     * @param raw  源zip中的entry，按原大小估算内存
+     * @param file 生成临时文件
+     * @throws IOException IOException
+     */
+    public void addTempFile(String name, ZipIndex.Entry raw, Supplier<File> file) throws IOException {
+        Entry entry = new Entry(name, raw.getMethod(), fixedDosTime != -1 ? fixedDosTime : raw.getDosTime());
+        entry.memory = raw.getSize() <= MEMORY_THRESHOLD ? raw.getSize() * 2 : 0;
+        submit(entry, () -> {
+            File temp = file.get();
+            try {
+                prepare(entry, temp);
+            } finally {
+                //不压缩的大文件写入时直接复制，写完再删除
+                if (entry.dataFile == temp) {
+                    entry.tempFile = true;
+                } else {
+                    temp.delete();
+                }
+            }
+            return entry;
+        });
+    }
+
+    /**
+     * 从另一个zip原样复制entry，不解压也不重新压缩
+     *
+     * @param source 源zip
+     * @param raw    源zip中的entry
+     * @throws IOException IOException
+     */
+    public void addRaw(ZipIndex source, ZipIndex.Entry raw) throws IOException {
+        addRaw(source, raw, raw.getDosTime());
+    }
+
+    /**
+     * 从另一个zip原样复制entry，使用指定的修改时间
+     *
+     * @param source  源zip
+     * @param raw     源zip中的entry
+     * @param dosTime dos格式的修改时间
+     * @throws IOException IOException
+     */
+    public void addRaw(ZipIndex source, ZipIndex.Entry raw, int dosTime) throws IOException {
+        Entry entry = new Entry(raw.getName(), raw.getMethod(), fixedDosTime != -1 ? fixedDosTime : dosTime);
+        entry.crc = raw.getCrc();
+        entry.size = raw.getSize();
+        entry.compressedSize = raw.getCompressedSize();
+        entry.rawSource = source;
+        entry.rawEntry = raw;
+        submit(entry, () -> entry);
+    }
+
+    /**
+     * 写入剩余的entry和中央目录，并关闭文件
+     *
+     * @throws IOException IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            while (!pending.isEmpty()) {
+                writeEntry(next());
+            }
+            writeCentral();
+            out.flush();
+        } finally {
+            //出错时清理还没写入的临时文件
+            for (Future<Entry> future : pending) {
+                try {
+                    future.get().deleteDataFile();
+                } catch (Exception e) {
+                    //ignore
+                }
+            }
+            IoUtils.close(out, fileOut);
+            budget.release(heldMemory);
+            heldMemory = 0;
+        }
+    }
+
+    /**
+     * 提交压缩任务，超过窗口大小时先写入最早的entry，占用内存额度后再提交
+     */
+    private void submit(Entry entry, EntryTask task) throws IOException {
+        while (pending.size() >= window) {
+            writeEntry(next());
+        }
+        reserve(entry);
+        if (pool == null) {
+            writeEntry(task.call());
+            return;
+        }
+        pending.addLast(pool.submit(EncryptDaemon.inherit(task::call)));
+    }
+
+    /**
+     * 占用entry压缩时需要的内存额度，超过上限的按上限计算
+     * 额度不够时先写出自己待写入的entry；没有待写入的entry时不占额度，可以放心等待其他writer释放
+     */
+    private void reserve(Entry entry) throws IOException {
+        entry.memory = Math.min(entry.memory, budget.getLimit());
+        if (entry.memory <= 0) {
+            return;
+        }
+        while (!budget.tryAcquire(entry.memory)) {
+            if (pending.isEmpty()) {
+                budget.acquire(entry.memory);
+                break;
+            }
+            writeEntry(next());
+        }
+        heldMemory += entry.memory;
+    }
+
+    /**
+     * 取出最早提交的entry，等待压缩完成
+     */
+    private Entry next() throws IOException {
+        Future<Entry> future = pending.removeFirst();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * 压缩文件，计算crc和大小
+     */
+    private Entry prepare(Entry entry, File file) {
+        try {
+            entry.size = file.length();
+            if (entry.method == ZipEntry.STORED) {
+                //不压缩的文件只计算crc，写入时直接复制原文件
+                if (entry.size <= MEMORY_THRESHOLD) {
+                    entry.data = IoUtils.readFileToByte(file);
+                    entry.crc = IoUtils.crc32(entry.data);
+                } else {
+                    entry.dataFile = file;
+                    entry.crc = crc32(file);
+                }
+                entry.compressedSize = entry.size;
+            } else if (entry.size <= MEMORY_THRESHOLD) {
+                byte[] bytes = IoUtils.readFileToByte(file);
+                entry.crc = IoUtils.crc32(bytes);
+                entry.data = deflate(bytes, entry.level);
+                entry.compressedSize = entry.data.length;
+            } else {
+                deflateToTempFile(entry, file, entry.level);
+            }
+            return entry;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 压缩内存中的数据，计算crc和大小
+     */
+    private static Entry prepare(Entry entry, byte[] data) {
+        entry.size = data.length;
+        entry.crc = IoUtils.crc32(data);
+        entry.data = entry.method == ZipEntry.STORED ? data : deflate(data, entry.level);
+        entry.compressedSize = entry.data.length;
+        return entry;
+    }
+
+    /**
+     * 在内存中压缩
+     */
+    private static byte[] deflate(byte[] bytes, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(64, bytes.length / 2));
+            byte[] buffer = new byte[Math.min(BUFFER_SIZE, Math.max(64, bytes.length))];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                bos.write(buffer, 0, n);
+            }
+            return bos.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 大文件压缩到临时文件
+     */
+    private void deflateToTempFile(Entry entry, File file, int level) throws IOException {
+        File temp = File.createTempFile("classfinal", ".deflate", target.getAbsoluteFile().getParentFile());
+        Deflater deflater = new Deflater(level, true);
+        CRC32 crc = new CRC32();
+        byte[] input = new byte[BUFFER_SIZE];
+        byte[] output = new byte[BUFFER_SIZE];
+        long compressed = 0;
+        try (InputStream in = new FileInputStream(file); OutputStream os = new FileOutputStream(temp)) {
+            int n;
+            while ((n = in.read(input)) != -1) {
+                crc.update(input, 0, n);
+                deflater.setInput(input, 0, n);
+                while (!deflater.needsInput()) {
+                    int len = deflater.deflate(output);
+                    os.write(output, 0, len);
+                    compressed += len;
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                int len = deflater.deflate(output);
+                os.write(output, 0, len);
+                compressed += len;
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        } finally {
+            deflater.end();
+        }
+        entry.crc = crc.getValue();
+        entry.compressedSize = compressed;
+        entry.dataFile = temp;
+        entry.tempFile = true;
+    }
+
+    /**
+     * 流式计算文件的crc
+     */
+    private static long crc32(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * 写入本地文件头和数据
+     */
+    private void writeEntry(Entry entry) throws IOException {
+        heldMemory -= entry.memory;
+        budget.release(entry.memory);
+        try {
+            entry.offset = written;
+            //本地文件头的大小超出4G时，两个大小都写在zip64扩展字段中
+            boolean zip64 = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+            writeInt(LOCAL_HEADER);
+            writeShort(zip64 ? 45 : 20);
+            writeShort(entry.flag);
+            writeShort(entry.method);
+            writeInt(entry.dosTime);
+            writeInt((int) entry.crc);
+            writeInt(zip64 ? (int) ZIP64_MAGIC : (int) entry.compressedSize);
+            writeInt(zip64 ? (int) ZIP64_MAGIC : (int) entry.size);
+            writeShort(entry.name.length);
+            writeShort(zip64 ? 20 : 0);
+            writeBytes(entry.name, 0, entry.name.length);
+            if (zip64) {
+                writeShort(ZIP64_EXTRA);
+                writeShort(16);
+                writeLong(entry.size);
+                writeLong(entry.compressedSize);
+            }
+
+            if (entry.data != null) {
+                writeBytes(entry.data, 0, entry.data.length);
+            } else if (entry.rawSource != null) {
+                out.flush();
+                entry.rawSource.transferRaw(entry.rawEntry, fileOut.getChannel());
+                written += entry.compressedSize;
+            } else if (entry.dataFile != null) {
+                out.flush();
+                try (FileInputStream in = new FileInputStream(entry.dataFile)) {
+                    FileChannel channel = in.getChannel();
+                    long position = 0;
+                    while (position < entry.compressedSize) {
+                        position += channel.transferTo(position, entry.compressedSize - position, fileOut.getChannel());
+                    }
+                }
+                written += entry.compressedSize;
+            }
+            //数据已写出，释放内存
+            entry.data = null;
+            central.add(entry);
+        } finally {
+            entry.deleteDataFile();
+        }
+    }
+
+    /**
+     * 写入中央目录，超出普通zip格式的限制时写入zip64结束记录
+     */
+    private void writeCentral() throws IOException {
+        long start = written;
+        for (Entry entry : central) {
+            //中央目录中只有超出4G的字段写在zip64扩展字段中
+            boolean bigSize = entry.size >= ZIP64_MAGIC;
+            boolean bigCompressed = entry.compressedSize >= ZIP64_MAGIC;
+            boolean bigOffset = entry.offset >= ZIP64_MAGIC;
+            int extra = (bigSize ? 8 : 0) + (bigCompressed ? 8 : 0) + (bigOffset ? 8 : 0);
+            int version = extra > 0 ? 45 : 20;
+            writeInt(CENTRAL_HEADER);
+            writeShort(version);
+            writeShort(version);
+            writeShort(entry.flag);
+            writeShort(entry.method);
+            writeInt(entry.dosTime);
+            writeInt((int) entry.crc);
+            writeInt(bigCompressed ? (int) ZIP64_MAGIC : (int) entry.compressedSize);
+            writeInt(bigSize ? (int) ZIP64_MAGIC : (int) entry.size);
+            writeShort(entry.name.length);
+            writeShort(extra > 0 ? 4 + extra : 0);
+            writeShort(0);
+            writeShort(0);
+            writeShort(0);
+            writeInt(0);
+            writeInt(bigOffset ? (int) ZIP64_MAGIC : (int) entry.offset);
+            writeBytes(entry.name, 0, entry.name.length);
+            if (extra > 0) {
+                writeShort(ZIP64_EXTRA);
+                writeShort(extra);
+                if (bigSize) {
+                    writeLong(entry.size);
+                }
+                if (bigCompressed) {
+                    writeLong(entry.compressedSize);
+                }
+                if (bigOffset) {
+                    writeLong(entry.offset);
+                }
+            }
+        }
+        long size = written - start;
+        int count = central.size();
+        boolean zip64 = count >= 0xFFFF || size >= ZIP64_MAGIC || start >= ZIP64_MAGIC;
+        if (zip64) {
+            long zip64End = written;
+            writeInt(ZIP64_END_OF_CENTRAL);
+            writeLong(44);
+            writeShort(45);
+            writeShort(45);
+            writeInt(0);
+            writeInt(0);
+            writeLong(count);
+            writeLong(count);
+            writeLong(size);
+            writeLong(start);
+            writeInt(ZIP64_LOCATOR);
+            writeInt(0);
+            writeLong(zip64End);
+            writeInt(1);
+        }
+        writeInt(END_OF_CENTRAL);
+        writeShort(0);
+        writeShort(0);
+        writeShort(zip64 ? 0xFFFF : count);
+        writeShort(zip64 ? 0xFFFF : count);
+        writeInt(zip64 ? (int) ZIP64_MAGIC : (int) size);
+        writeInt(zip64 ? (int) ZIP64_MAGIC : (int) start);
+        writeShort(0);
+    }
+
+    private void writeShort(int v) throws IOException {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+        written += 2;
+    }
+
+    private void writeInt(int v) throws IOException {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+        out.write((v >>> 16) & 0xff);
+        out.write((v >>> 24) & 0xff);
+        written += 4;
+    }
+
+    private void writeLong(long v) throws IOException {
+        writeInt((int) v);
+        writeInt((int) (v >>> 32));
+    }
+
+    private void writeBytes(byte[] bytes, int off, int len) throws IOException {
+        out.write(bytes, off, len);
+        written += len;
+    }
+
+    private int dosTime(long time) {
+        return fixedDosTime != -1 ? fixedDosTime : javaToDosTime(time);
+    }
+
+    /**
+     * java时间转dos时间
+     *
+     * @param time 毫秒
+     * @return dos时间
+     */
+    static int javaToDosTime(long time) {
+        return javaToDosTime(time, ZoneId.systemDefault());
+    }
+
+    /**
+     * java时间按指定时区转dos时间
+     *
+     * @param time 毫秒
+     * @param zone 时区
+     * @return dos时间
+     */
+    static int javaToDosTime(long time, ZoneId zone) {
+        LocalDateTime ldt = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), zone);
+        int year = ldt.getYear();
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25 | ldt.getMonthValue() << 21 | ldt.getDayOfMonth() << 16
+                | ldt.getHour() << 11 | ldt.getMinute() << 5 | ldt.getSecond() >> 1;
+    }
+
+    /**
+     * 压缩任务
+     */
+    private interface EntryTask {
+        Entry call();
+    }
+
+    /**
+     * 一个entry的信息
+     */
+    private static class Entry {
+        final byte[] name;
+        final int flag;
+        final int method;
+        final int dosTime;
+        int level = Deflater.DEFAULT_COMPRESSION;
+        //压缩时占用的内存预估
+        long memory;
+        long crc;
+        long size;
+        long compressedSize;
+        long offset;
+        //内存中的数据
+        byte[] data;
+        //磁盘上的数据
+        File dataFile;
+        //dataFile是否是临时文件
+        boolean tempFile;
+        //原样复制的源zip
+        ZipIndex rawSource;
+        ZipIndex.Entry rawEntry;
+
+        Entry(String name, int method, int dosTime) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.flag = this.name.length == name.length() ? 0 : FLAG_UTF8;
+            this.method = method;
+            this.dosTime = dosTime;
+        }
+
+        void deleteDataFile() {
+            if (tempFile && dataFile != null) {
+                dataFile.delete();
+                dataFile = null;
+            }
+        }
+    }
+}
@@ -57,10 +57,19 @@ public class Log {
      */
     private static LogLevel currentLevel = null;
     
+    /**
+     * 当前线程的日志级别，加密服务中同时执行的任务各自设置
+     */
+    private static final ThreadLocal<LogLevel> threadLevel = new ThreadLocal<>();
+    
     /**
      * 获取当前日志级别
      */
     public static LogLevel getCurrentLevel() {
+        LogLevel level = threadLevel.get();
+        if (level != null) {
+            return level;
+        }
         if (currentLevel == null) {
             currentLevel = LogLevel.INFO;
         }
@@ -87,6 +96,28 @@ public class Log {
         }
     }
     
+    /**
+     * 获取当前线程的日志级别
+     *
+     * @return 日志级别，没有设置时为null
+     */
+    public static LogLevel getThreadLogLevel() {
+        return threadLevel.get();
+    }
+    
+    /**
+     * 设置当前线程的日志级别，优先于全局的日志级别
+     *
+     * @param level 日志级别，为null时清除
+     */
+    public static void setThreadLogLevel(LogLevel level) {
+        if (level == null) {
+            threadLevel.remove();
+        } else {
+            threadLevel.set(level);
+        }
+    }
+    
     /**
      * 输出debug信息
      *
@@ -94,7 +125,12 @@ public class Log {
      */
     public static void debug(Object msg) {
         if (Const.DEBUG && getCurrentLevel().getLevel() <= LogLevel.DEBUG.getLevel()) {
-            String log = datetimeFormat.format(new Date()) + " [DEBUG] " + msg;
+            String time;
+            //SimpleDateFormat不是线程安全的，批量加密时多个任务同时输出
+            synchronized (datetimeFormat) {
+                time = datetimeFormat.format(new Date());
+            }
+            String log = time + " [DEBUG] " + msg;
             System.out.println(log);
         }
     }
@@ -0,0 +1,107 @@
+package net.roseboy.classfinal.util;
+
+import net.roseboy.classfinal.Const;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 绑定机器码的密钥表
+ * <p>
+ * 类只用密码和一个内容密钥加密一遍，内容密钥再用每个机器码分别加密后存放在密钥表中，
+ * 加密耗时和加密后的类与机器数量无关，增加机器只需要重写密钥表。
+ * 每行一台机器：机器码的md5 + 空格 + base64(用机器码加密的内容密钥)。
+ * <p>
+ * 运行时由 {@link net.roseboy.classfinal.JarDecryptor} 调用，会打包到加密后的jar中，只能依赖JDK。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class MachineKeyTable {
+    //用机器码加密内容密钥时混入的名称
+    private static final char[] WRAP_NAME = Const.CONFIG_KEYS.toCharArray();
+
+    /**
+     * 生成密钥表，重复的机器码只保留一个
+     *
+     * @param contentKey 内容密钥
+     * @param codes      机器码
+     * @return 密钥表
+     */
+    public static byte[] wrap(char[] contentKey, List<char[]> codes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(codes.size() * 80);
+        Set<String> hashes = new LinkedHashSet<>();
+        for (char[] code : codes) {
+            String hash = new String(EncryptUtils.md5(code));
+            if (!hashes.add(hash)) {
+                continue;
+            }
+            byte[] wrapped = EncryptUtils.en(StrUtils.toBytes(contentKey), StrUtils.merger(WRAP_NAME, code),
+                    Const.ENCRYPT_TYPE);
+            String line = hash + " " + Base64.getEncoder().encodeToString(wrapped) + "\n";
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, bytes.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 用机器码解开内容密钥
+     *
+     * @param table 密钥表
+     * @param code  机器码
+     * @return 内容密钥，机器码不在表中时为null
+     */
+    public static char[] unwrap(byte[] table, char[] code) {
+        String hash = new String(EncryptUtils.md5(code));
+        for (String line : new String(table, StandardCharsets.UTF_8).split("\n")) {
+            if (line.startsWith(hash + " ")) {
+                byte[] wrapped = Base64.getDecoder().decode(line.substring(hash.length() + 1).trim());
+                byte[] contentKey = EncryptUtils.de(wrapped, StrUtils.merger(WRAP_NAME, code), Const.ENCRYPT_TYPE);
+                return contentKey == null ? null : StrUtils.toChars(contentKey);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 表中机器码的md5
+     *
+     * @param table 密钥表
+     * @return md5，和表中顺序相同
+     */
+    public static Set<String> hashes(byte[] table) {
+        Set<String> hashes = new LinkedHashSet<>();
+        for (String line : new String(table, StandardCharsets.UTF_8).split("\n")) {
+            int space = line.indexOf(' ');
+            if (space > 0) {
+                hashes.add(line.substring(0, space));
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * 拆分多个机器码，用逗号或空白分隔
+     *
+     * @param codes 机器码
+     * @return 机器码列表，为空时没有绑定
+     */
+    public static List<char[]> parse(char[] codes) {
+        List<char[]> list = new ArrayList<>();
+        if (StrUtils.isEmpty(codes)) {
+            return list;
+        }
+        for (String code : new String(codes).split("[,\\s]+")) {
+            if (code.length() > 0) {
+                list.add(code.toCharArray());
+            }
+        }
+        return list;
+    }
+}
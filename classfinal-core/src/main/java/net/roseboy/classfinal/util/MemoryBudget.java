@@ -0,0 +1,113 @@
+package net.roseboy.classfinal.util;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 内存额度（按字节计数的信号量）
+ * <p>
+ * 一次加密中所有 {@link JarWriter} 共用一个额度：lib 下的 jar 并行打包时，
+ * 内存中待写入的数据总量不超过上限，而不是每个 writer 各自一份上限。
+ * 在 ForkJoinPool 的工作线程中等待时使用 {@link ForkJoinPool#managedBlock}，线程池会补充线程，不会卡住压缩任务。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class MemoryBudget {
+    //上限
+    private final long limit;
+    //剩余额度
+    private long available;
+    //剩余额度的最小值
+    private long minAvailable;
+
+    /**
+     * 构造方法
+     *
+     * @param limit 上限(字节)，小于等于0时为最大堆内存的1/4
+     */
+    public MemoryBudget(long limit) {
+        this.limit = limit > 0 ? limit : Runtime.getRuntime().maxMemory() / 4;
+        this.available = this.limit;
+        this.minAvailable = this.limit;
+    }
+
+    /**
+     * 尝试占用额度，不等待
+     *
+     * @param bytes 字节数，不能超过上限
+     * @return 是否成功
+     */
+    public synchronized boolean tryAcquire(long bytes) {
+        if (bytes > available) {
+            return false;
+        }
+        available -= bytes;
+        minAvailable = Math.min(minAvailable, available);
+        return true;
+    }
+
+    /**
+     * 占用额度，不够时等待其他 writer 释放
+     *
+     * @param bytes 字节数，不能超过上限
+     * @throws InterruptedIOException 等待时被中断
+     */
+    public void acquire(long bytes) throws InterruptedIOException {
+        if (tryAcquire(bytes)) {
+            return;
+        }
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() throws InterruptedException {
+                    synchronized (MemoryBudget.this) {
+                        while (bytes > available) {
+                            MemoryBudget.this.wait();
+                        }
+                        available -= bytes;
+                        minAvailable = Math.min(minAvailable, available);
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return false;
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+    }
+
+    /**
+     * 释放额度
+     *
+     * @param bytes 字节数
+     */
+    public synchronized void release(long bytes) {
+        if (bytes > 0) {
+            available += bytes;
+            notifyAll();
+        }
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public synchronized long getAvailable() {
+        return available;
+    }
+
+    /**
+     * 同时占用的最大额度
+     *
+     * @return 字节数
+     */
+    public synchronized long getPeakUsed() {
+        return limit - minAvailable;
+    }
+}
@@ -0,0 +1,99 @@
+package net.roseboy.classfinal.util;
+
+import net.roseboy.classfinal.EncryptDaemon;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * 并行处理工具
+ * 使用ForkJoinPool，任务内部再提交子任务时等待的线程会参与执行，不会互相等死
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class ParallelUtils {
+
+    /**
+     * 创建线程池
+     *
+     * @param threads 线程数，小于等于1时返回null，表示串行执行
+     * @return 线程池
+     */
+    public static ForkJoinPool newPool(int threads) {
+        if (threads <= 1) {
+            return null;
+        }
+        return new ForkJoinPool(threads);
+    }
+
+    /**
+     * 关闭线程池
+     *
+     * @param pool 线程池
+     */
+    public static void shutdown(ForkJoinPool pool) {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * 并行处理每一个元素，全部完成后返回
+     * 同时提交的任务数不超过线程数的4倍，元素再多也不会一次创建全部任务
+     *
+     * @param pool  线程池，为null时在当前线程串行执行
+     * @param items 元素
+     * @param task  处理方法
+     * @param <T>   元素类型
+     */
+    public static <T> void forEach(ForkJoinPool pool, Collection<T> items, Consumer<T> task) {
+        if (pool == null || items.size() <= 1) {
+            items.forEach(task);
+            return;
+        }
+
+        int window = pool.getParallelism() * 4;
+        Deque<Future<?>> futures = new ArrayDeque<>(window);
+        RuntimeException error = null;
+        for (T item : items) {
+            if (futures.size() >= window) {
+                error = await(futures.poll(), error);
+            }
+            futures.add(pool.submit(EncryptDaemon.inherit(() -> task.accept(item))));
+        }
+        while (!futures.isEmpty()) {
+            error = await(futures.poll(), error);
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * 等待任务完成，记录第一个异常
+     *
+     * @param future 任务
+     * @param error  已有的异常
+     * @return 第一个异常
+     */
+    private static RuntimeException await(Future<?> future, RuntimeException error) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (error == null) {
+                Throwable cause = e.getCause();
+                error = cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+            }
+        }
+        return error;
+    }
+}
@@ -1,5 +1,7 @@
 package net.roseboy.classfinal.util;
 
+import net.roseboy.classfinal.EncryptDaemon;
+
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -58,7 +60,7 @@ public class PasswordUtil {
      * @return 密码，如果环境变量不存在返回 null
      */
     public static String readPasswordFromEnv(String envName) {
-        return System.getenv(envName);
+        return EncryptDaemon.getenv(envName);
     }
     
     /**
@@ -0,0 +1,338 @@
+package net.roseboy.classfinal.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 预编译的名称匹配器，用于包名、排除类名、lib下的jar和配置文件的匹配
+ * <p>
+ * 一个名称满足任意一个规则即匹配，规则的含义和 {@link StrUtils#isMatchs(List, String)} 一致：
+ * <ul>
+ * <li>名称以规则开头或结尾，如 com.demo 匹配 com.demo.Hello，Hello 匹配 com.demo.Hello</li>
+ * <li>通配符完整匹配，* 和 ** 匹配任意个字符，? 匹配0或1个字符，如 com.**.service.*</li>
+ * <li>regex: 开头的为正则表达式，完整匹配，如 regex:com\.demo\.(a|b)\..*</li>
+ * </ul>
+ * 规则只编译一次：前缀和后缀分别放入字典树，所有通配符规则合并成一个自动机，匹配时按需构造DFA状态并缓存，
+ * 每个名称只沿字典树和DFA各走一遍，耗时和名称长度成正比，不随规则数量增长（正则规则除外）。
+ * 和旧实现不同，规则中的 . 等字符不再当作正则元字符。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class PatternMatcher {
+    //正则规则的前缀
+    public static final String REGEX_PREFIX = "regex:";
+
+    //前缀字典树
+    private final Node prefixTrie = new Node();
+    //后缀字典树，按字符倒序存放
+    private final Node suffixTrie = new Node();
+    //通配符规则合并成的自动机
+    private final Automaton globs = new Automaton();
+    //正则规则
+    private final List<Pattern> regexes = new ArrayList<>();
+    //规则数量
+    private int size = 0;
+
+    private PatternMatcher() {
+    }
+
+    /**
+     * 编译规则
+     *
+     * @param patterns 规则列表，可以为null
+     * @return 匹配器
+     */
+    public static PatternMatcher compile(List<String> patterns) {
+        PatternMatcher matcher = new PatternMatcher();
+        if (patterns == null) {
+            return matcher;
+        }
+        for (String pattern : patterns) {
+            if (pattern == null || pattern.isEmpty()) {
+                continue;
+            }
+            matcher.add(pattern);
+        }
+        return matcher;
+    }
+
+    private void add(String pattern) {
+        size++;
+        if (pattern.startsWith(REGEX_PREFIX)) {
+            regexes.add(Pattern.compile(pattern.substring(REGEX_PREFIX.length())));
+            return;
+        }
+
+        //开头、结尾匹配
+        Node node = prefixTrie;
+        for (int i = 0; i < pattern.length(); i++) {
+            node = node.child(pattern.charAt(i));
+        }
+        node.terminal = true;
+        node = suffixTrie;
+        for (int i = pattern.length() - 1; i >= 0; i--) {
+            node = node.child(pattern.charAt(i));
+        }
+        node.terminal = true;
+
+        //通配符规则加入自动机
+        if (pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0) {
+            globs.add(pattern);
+        }
+    }
+
+    /**
+     * 是否没有规则
+     *
+     * @return 是否为空
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 判断名称是否匹配
+     *
+     * @param name 名称
+     * @return 是否匹配
+     */
+    public boolean matches(String name) {
+        return matches(name, false);
+    }
+
+    /**
+     * 判断名称是否匹配
+     *
+     * @param name 名称
+     * @param dv   没有规则时的默认值
+     * @return 是否匹配
+     */
+    public boolean matches(String name, boolean dv) {
+        if (size == 0) {
+            return dv;
+        }
+
+        //沿前缀树走：遇到规则结尾即前缀匹配
+        Node node = prefixTrie;
+        for (int i = 0; ; i++) {
+            if (node.terminal) {
+                return true;
+            }
+            if (i == name.length() || (node = node.next(name.charAt(i))) == null) {
+                break;
+            }
+        }
+
+        //后缀匹配
+        node = suffixTrie;
+        for (int i = name.length() - 1; i >= 0; i--) {
+            node = node.next(name.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.terminal) {
+                return true;
+            }
+        }
+
+        if (globs.matches(name)) {
+            return true;
+        }
+        for (Pattern regex : regexes) {
+            if (regex.matcher(name).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 字典树节点
+     */
+    private static class Node {
+        //子节点少时用数组，避免每个节点一个HashMap
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private Map<Character, Node> map;
+        //有规则在这里结束
+        private boolean terminal;
+
+        Node next(char c) {
+            if (map != null) {
+                return map.get(c);
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node child(char c) {
+            Node node = next(c);
+            if (node != null) {
+                return node;
+            }
+            node = new Node();
+            if (map == null && keys.length < 8) {
+                int n = keys.length;
+                keys = Arrays.copyOf(keys, n + 1);
+                children = Arrays.copyOf(children, n + 1);
+                keys[n] = c;
+                children[n] = node;
+                return node;
+            }
+            if (map == null) {
+                map = new HashMap<>();
+                for (int i = 0; i < keys.length; i++) {
+                    map.put(keys[i], children[i]);
+                }
+            }
+            map.put(c, node);
+            return node;
+        }
+    }
+
+    /**
+     * 所有通配符规则合并成的NFA，状态为(规则, 位置)，全部规则的状态连续编号
+     * <p>
+     * 匹配时按需做子集构造：每个DFA状态是一组NFA状态，转移在第一次用到时计算并缓存，
+     * 之后每个字符只查一次表。缓存的DFA状态超过上限后不再缓存新状态，结果不变，只是变慢。
+     * 多个线程可以同时匹配。
+     */
+    private static class Automaton {
+        //缓存的DFA状态上限
+        private static final int MAX_STATES = 10000;
+
+        //所有规则的token，* 和 ** 合并为一个 *，每条规则末尾的位置是接受状态
+        private final StringBuilder tokens = new StringBuilder();
+        //接受状态
+        private final BitSet accepts = new BitSet();
+        //每条规则的开始状态
+        private final BitSet starts = new BitSet();
+        //已构造的DFA状态
+        private final Map<BitSet, State> states = new ConcurrentHashMap<>();
+        //开始状态，第一次匹配时构造
+        private volatile State start;
+
+        void add(String pattern) {
+            starts.set(tokens.length());
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                //连续的*合并成一个
+                if (c == '*' && i > 0 && pattern.charAt(i - 1) == '*') {
+                    continue;
+                }
+                tokens.append(c);
+            }
+            accepts.set(tokens.length());
+            //接受状态占一个位置，不会有转移
+            tokens.append('\0');
+            start = null;
+        }
+
+        boolean matches(String name) {
+            State state = start;
+            if (state == null) {
+                if (starts.isEmpty()) {
+                    return false;
+                }
+                state = start = state(closure(starts));
+            }
+            for (int i = 0; i < name.length(); i++) {
+                state = state.next(name.charAt(i));
+                if (state.dead) {
+                    return false;
+                }
+            }
+            return state.accept;
+        }
+
+        /**
+         * NFA状态集合读入一个字符后的状态集合
+         */
+        private BitSet step(BitSet from, char c) {
+            BitSet to = new BitSet();
+            for (int s = from.nextSetBit(0); s >= 0; s = from.nextSetBit(s + 1)) {
+                if (accepts.get(s)) {
+                    continue;
+                }
+                char t = tokens.charAt(s);
+                if (t == '*') {
+                    to.set(s);
+                } else if (t == '?' || t == c) {
+                    to.set(s + 1);
+                }
+            }
+            return closure(to);
+        }
+
+        /**
+         * * 和 ? 都可以不匹配字符，直接跳到下一个状态
+         */
+        private BitSet closure(BitSet set) {
+            BitSet result = (BitSet) set.clone();
+            for (int s = result.nextSetBit(0); s >= 0; s = result.nextSetBit(s + 1)) {
+                if (!accepts.get(s) && (tokens.charAt(s) == '*' || tokens.charAt(s) == '?')) {
+                    result.set(s + 1);
+                }
+            }
+            return result;
+        }
+
+        private State state(BitSet set) {
+            State state = states.get(set);
+            if (state != null) {
+                return state;
+            }
+            state = new State(this, set);
+            if (states.size() >= MAX_STATES) {
+                return state;
+            }
+            State old = states.putIfAbsent(set, state);
+            return old != null ? old : state;
+        }
+
+        /**
+         * DFA状态
+         */
+        private static class State {
+            private final Automaton automaton;
+            private final BitSet set;
+            private final boolean accept;
+            private final boolean dead;
+            //ASCII字符的转移，其他字符放在map中
+            private final State[] ascii = new State[128];
+            private final Map<Character, State> others = new ConcurrentHashMap<>();
+
+            State(Automaton automaton, BitSet set) {
+                this.automaton = automaton;
+                this.set = set;
+                this.accept = set.intersects(automaton.accepts);
+                this.dead = set.isEmpty();
+            }
+
+            State next(char c) {
+                State next = c < 128 ? ascii[c] : others.get(c);
+                if (next == null) {
+                    //并发时可能重复计算，结果相同
+                    next = automaton.state(automaton.step(set, c));
+                    if (c < 128) {
+                        ascii[c] = next;
+                    } else {
+                        others.put(c, next);
+                    }
+                }
+                return next;
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package net.roseboy.classfinal.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 加密前用预置字典压缩class
+ * <p>
+ * 单个class很小，单独压缩效果差；同一个jar中的类有大量相同的常量（包名、类名、方法签名），
+ * 用从jar中提取的字典（{@link DictionaryTrainer}）作为 DEFLATE 的预置字典后压缩率高很多。
+ * 压缩后的格式：魔数 CFZ + 版本(1字节) + 原长度(4字节) + 不带zlib头的DEFLATE数据。
+ * 没有魔数的数据按未压缩处理，和以前加密的jar兼容。
+ * <p>
+ * 运行时由 {@link net.roseboy.classfinal.JarDecryptor} 调用，会打包到加密后的jar中，只能依赖JDK。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class PayloadCompressor {
+    //魔数和版本
+    private static final byte[] MAGIC = {'C', 'F', 'Z', 1};
+    //头部长度
+    private static final int HEADER = MAGIC.length + 4;
+
+    /**
+     * 压缩
+     *
+     * @param bytes      原数据
+     * @param dictionary 预置字典
+     * @return 压缩后的数据，没有变小时返回原数组
+     */
+    public static byte[] compress(byte[] bytes, byte[] dictionary) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setDictionary(dictionary);
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + HEADER);
+            out.write(MAGIC, 0, MAGIC.length);
+            out.write(bytes.length >>> 24);
+            out.write(bytes.length >>> 16);
+            out.write(bytes.length >>> 8);
+            out.write(bytes.length);
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+                if (out.size() >= bytes.length) {
+                    return bytes;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 是否是压缩后的数据
+     *
+     * @param bytes 数据
+     * @return 是否有魔数
+     */
+    public static boolean isCompressed(byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 解压
+     *
+     * @param bytes      压缩后的数据
+     * @param dictionary 预置字典，和压缩时相同
+     * @return 原数据，不是压缩后的数据时原样返回
+     */
+    public static byte[] decompress(byte[] bytes, byte[] dictionary) {
+        if (!isCompressed(bytes)) {
+            return bytes;
+        }
+        int length = ((bytes[4] & 0xFF) << 24) | ((bytes[5] & 0xFF) << 16) | ((bytes[6] & 0xFF) << 8) | (bytes[7] & 0xFF);
+        byte[] result = new byte[length];
+        Inflater inflater = new Inflater(true);
+        try {
+            //不带zlib头的数据中没有字典标识，先设置字典
+            if (dictionary != null) {
+                inflater.setDictionary(dictionary);
+            }
+            inflater.setInput(bytes, HEADER, bytes.length - HEADER);
+            int n = 0;
+            while (n < length) {
+                int read = inflater.inflate(result, n, length - n);
+                if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("压缩数据不完整");
+                }
+                n += read;
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("压缩数据有误: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package net.roseboy.classfinal.util;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 模板和静态资源压缩：HTML/FreeMarker/Thymeleaf 模板、CSS、JS
+ * <p>
+ * 只做不改变语义的处理：去掉注释、行首行尾空白和空行，CSS/JS 中连续的空白合并为一个；
+ * 字符串、正则表达式、pre/textarea/script/style 中的内容原样保留，换行保留（JS 自动插入分号不受影响）。
+ * 条件注释、Thymeleaf 的解析级注释和原型注释、CSS/JS 中的版权声明和 Thymeleaf 内联表达式注释保留。
+ * 不是 UTF-8 的文件、压缩后没有变小的文件不处理。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class ResourceMinifier {
+    //默认压缩的文件
+    public static final List<String> DEFAULT_INCLUDE = Arrays.asList(
+            ".html", ".htm", ".xhtml", ".ftl", ".ftlh", ".css", ".js", ".mjs");
+    //默认不压缩的文件，已经压缩过的
+    public static final List<String> DEFAULT_EXCLUDE = Arrays.asList(".min.js", ".min.css");
+
+    //HTML中原样保留内容的标签
+    private static final String[] RAW_ELEMENTS = {"pre", "textarea", "script", "style"};
+    //保留的HTML注释：条件注释、Thymeleaf解析级注释和原型注释、SSI
+    private static final String[] KEEP_COMMENTS = {"[if", "<!", "/*", "*/", "!", "#"};
+    //JS中这些关键字之后的 / 是正则表达式
+    private static final String[] REGEX_KEYWORDS = {"return", "typeof", "case", "do", "else", "in", "of", "void",
+            "delete", "throw", "new", "instanceof", "yield", "await"};
+
+    private final PatternMatcher includeMatcher;
+    private final PatternMatcher excludeMatcher;
+
+    /**
+     * 构造方法
+     *
+     * @param include 压缩的文件，规则同 -cfgfiles，按 entry 路径匹配，为空时使用默认值
+     * @param exclude 不压缩的文件，为空时使用默认值
+     */
+    public ResourceMinifier(List<String> include, List<String> exclude) {
+        this.includeMatcher = PatternMatcher.compile(include == null || include.isEmpty() ? DEFAULT_INCLUDE : include);
+        this.excludeMatcher = PatternMatcher.compile(exclude == null || exclude.isEmpty() ? DEFAULT_EXCLUDE : exclude);
+    }
+
+    /**
+     * 是否需要压缩
+     *
+     * @param name entry 名称，以 / 分隔
+     * @return 是否压缩
+     */
+    public boolean accept(String name) {
+        return !name.endsWith("/") && this.includeMatcher.matches(name) && !this.excludeMatcher.matches(name);
+    }
+
+    /**
+     * 压缩一个文件
+     *
+     * @param name  entry 名称，按扩展名确定类型
+     * @param bytes 文件内容
+     * @return 压缩后的内容，无法处理或没有变小时返回null
+     */
+    public byte[] minify(String name, byte[] bytes) {
+        String lower = name.toLowerCase();
+        String ext = lower.substring(lower.lastIndexOf('.') + 1);
+        String code = decode(bytes);
+        if (code == null) {
+            return null;
+        }
+        String result;
+        try {
+            switch (ext) {
+                case "html":
+                case "htm":
+                case "xhtml":
+                    result = minifyHtml(code, false);
+                    break;
+                case "ftl":
+                case "ftlh":
+                    result = minifyHtml(code, true);
+                    break;
+                case "css":
+                    result = minifyCss(code);
+                    break;
+                case "js":
+                case "mjs":
+                    result = minifyJs(code);
+                    break;
+                default:
+                    return null;
+            }
+        } catch (RuntimeException e) {
+            Log.debug("压缩失败：" + name + " " + e);
+            return null;
+        }
+        byte[] minified = result.getBytes(StandardCharsets.UTF_8);
+        return minified.length < bytes.length ? minified : null;
+    }
+
+    private static String decode(byte[] bytes) {
+        try {
+            CharBuffer chars = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes));
+            return chars.toString();
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 压缩 HTML 模板：去掉注释、行首行尾空白和空行
+     *
+     * @param code 代码
+     * @param ftl  是否 FreeMarker 模板，同时去掉 {@code <#-- -->} 注释
+     * @return 代码
+     */
+    public static String minifyHtml(String code, boolean ftl) {
+        String s = code.replace("\r\n", "\n");
+        int len = s.length();
+        StringBuilder out = new StringBuilder(len);
+        boolean lineStart = true;
+        int i = 0;
+        while (i < len) {
+            char c = s.charAt(i);
+            if (c == '<') {
+                String raw = rawElement(s, i);
+                if (raw != null) {
+                    int end = indexOfIgnoreCase(s, "</" + raw, i + raw.length() + 1);
+                    end = end < 0 ? len : end;
+                    out.append(s, i, end);
+                    i = end;
+                    lineStart = false;
+                    continue;
+                }
+                if ((s.startsWith("<!--", i) && !isKeptComment(s, i + 4)) || (ftl && s.startsWith("<#--", i))) {
+                    int end = s.indexOf("-->", i + 4);
+                    if (end < 0) {
+                        out.append(s, i, len);
+                        break;
+                    }
+                    i = end + 3;
+                    continue;
+                }
+            }
+            if (c == '\n') {
+                newLine(out);
+                lineStart = true;
+                i++;
+                continue;
+            }
+            if (lineStart && (c == ' ' || c == '\t')) {
+                i++;
+                continue;
+            }
+            lineStart = false;
+            out.append(c);
+            i++;
+        }
+        trimTrailing(out);
+        return out.toString();
+    }
+
+    private static String rawElement(String s, int i) {
+        for (String name : RAW_ELEMENTS) {
+            int after = i + 1 + name.length();
+            if (after < s.length() && s.regionMatches(true, i + 1, name, 0, name.length())) {
+                char c = s.charAt(after);
+                if (c == '>' || c == '/' || Character.isWhitespace(c)) {
+                    return name;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isKeptComment(String s, int i) {
+        for (String prefix : KEEP_COMMENTS) {
+            if (s.startsWith(prefix, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOfIgnoreCase(String s, String target, int from) {
+        for (int i = from; i <= s.length() - target.length(); i++) {
+            if (s.regionMatches(true, i, target, 0, target.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 压缩 CSS：去掉注释，合并空白，去掉 { } ; , > 等符号两侧的空白
+     *
+     * @param code 代码
+     * @return 代码
+     */
+    public static String minifyCss(String code) {
+        String s = code.replace("\r\n", "\n");
+        int len = s.length();
+        StringBuilder out = new StringBuilder(len);
+        int i = 0;
+        while (i < len) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\'') {
+                int end = stringEnd(s, i, c);
+                out.append(s, i, end);
+                i = end;
+                continue;
+            }
+            boolean comment = c == '/' && i + 1 < len && s.charAt(i + 1) == '*';
+            if (!comment && !Character.isWhitespace(c)) {
+                out.append(c);
+                i++;
+                continue;
+            }
+            //连续的空白和注释
+            while (i < len) {
+                c = s.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '/' && i + 1 < len && s.charAt(i + 1) == '*' && !isKeptBlockComment(s, i)) {
+                    int end = s.indexOf("*/", i + 2);
+                    i = end < 0 ? len : end + 2;
+                } else {
+                    break;
+                }
+            }
+            char prev = out.length() == 0 ? 0 : out.charAt(out.length() - 1);
+            char next = i < len ? s.charAt(i) : 0;
+            if (prev != 0 && next != 0 && "{};,>:(".indexOf(prev) < 0 && "{};,>)".indexOf(next) < 0) {
+                out.append(' ');
+            }
+            if (s.startsWith("/*", i)) {
+                int end = s.indexOf("*/", i + 2);
+                end = end < 0 ? len : end + 2;
+                out.append(s, i, end);
+                i = end;
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * 保留的块注释：版权声明 /*! 和 Thymeleaf 内联表达式 /*[
+     */
+    private static boolean isKeptBlockComment(String s, int i) {
+        return i + 2 < s.length() && (s.charAt(i + 2) == '!' || s.charAt(i + 2) == '[');
+    }
+
+    /**
+     * 压缩 JS：去掉注释、行首行尾空白和空行，合并行内连续的空白，保留换行
+     *
+     * @param code 代码
+     * @return 代码
+     */
+    public static String minifyJs(String code) {
+        String s = code.replace("\r\n", "\n");
+        int len = s.length();
+        StringBuilder out = new StringBuilder(len);
+        //模板字符串 ${ } 外层的大括号层数
+        Deque<Integer> templates = new ArrayDeque<>();
+        int braces = 0;
+        boolean lineStart = true;
+        int i = 0;
+        while (i < len) {
+            char c = s.charAt(i);
+            if (c == '\n') {
+                newLine(out);
+                lineStart = true;
+                i++;
+                continue;
+            }
+            if (c == ' ' || c == '\t' || c == '\f' || c == '\u000b') {
+                int j = i;
+                while (j < len && (s.charAt(j) == ' ' || s.charAt(j) == '\t' || s.charAt(j) == '\f'
+                        || s.charAt(j) == '\u000b')) {
+                    j++;
+                }
+                if (!lineStart && j < len && s.charAt(j) != '\n') {
+                    out.append(' ');
+                }
+                i = j;
+                continue;
+            }
+            lineStart = false;
+            if (c == '"' || c == '\'') {
+                int end = stringEnd(s, i, c);
+                out.append(s, i, end);
+                i = end;
+            } else if (c == '`' || (c == '}' && braces == 0 && !templates.isEmpty())) {
+                //模板字符串，遇到 ${ 时回到代码
+                if (c == '}') {
+                    braces = templates.pop();
+                }
+                int j = i + 1;
+                while (j < len && s.charAt(j) != '`' && !s.startsWith("${", j)) {
+                    j += s.charAt(j) == '\\' ? 2 : 1;
+                }
+                if (j < len && s.charAt(j) != '`') {
+                    templates.push(braces);
+                    braces = 0;
+                    j += 2;
+                } else {
+                    j = Math.min(j + 1, len);
+                }
+                out.append(s, i, j);
+                i = j;
+            } else if (c == '/' && i + 1 < len && s.charAt(i + 1) == '/') {
+                while (i < len && s.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < len && s.charAt(i + 1) == '*') {
+                int end = s.indexOf("*/", i + 2);
+                end = end < 0 ? len : end + 2;
+                if (isKeptBlockComment(s, i)) {
+                    out.append(s, i, end);
+                } else if (s.substring(i, end).indexOf('\n') >= 0) {
+                    //跨行的注释换成换行，不影响自动插入分号
+                    newLine(out);
+                    lineStart = true;
+                }
+                i = end;
+            } else if (c == '/' && isRegexAllowed(out)) {
+                int end = regexEnd(s, i);
+                out.append(s, i, end);
+                i = end;
+            } else {
+                if (c == '{') {
+                    braces++;
+                } else if (c == '}') {
+                    braces--;
+                }
+                out.append(c);
+                i++;
+            }
+        }
+        trimTrailing(out);
+        return out.toString();
+    }
+
+    /**
+     * 根据前一个字符判断 / 是否为正则表达式的开始
+     */
+    private static boolean isRegexAllowed(StringBuilder out) {
+        int end = out.length() - 1;
+        while (end >= 0 && Character.isWhitespace(out.charAt(end))) {
+            end--;
+        }
+        if (end < 0) {
+            return true;
+        }
+        char prev = out.charAt(end);
+        if ("(,=:[!&|?{};+-*%<>~^}".indexOf(prev) >= 0) {
+            return true;
+        }
+        if (!Character.isJavaIdentifierPart(prev)) {
+            return false;
+        }
+        int start = end;
+        while (start > 0 && Character.isJavaIdentifierPart(out.charAt(start - 1))) {
+            start--;
+        }
+        String word = out.substring(start, end + 1);
+        for (String keyword : REGEX_KEYWORDS) {
+            if (keyword.equals(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int regexEnd(String s, int start) {
+        boolean inClass = false;
+        int i = start + 1;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '\n') {
+                return i;
+            }
+            if (c == '[') {
+                inClass = true;
+            } else if (c == ']') {
+                inClass = false;
+            } else if (c == '/' && !inClass) {
+                i++;
+                while (i < s.length() && Character.isJavaIdentifierPart(s.charAt(i))) {
+                    i++;
+                }
+                return i;
+            }
+            i++;
+        }
+        return s.length();
+    }
+
+    /**
+     * 字符串结束的位置（不含），未结束的字符串到行尾为止
+     */
+    private static int stringEnd(String s, int start, char quote) {
+        int i = start + 1;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == quote) {
+                return i + 1;
+            }
+            if (c == '\n') {
+                return i;
+            }
+            i++;
+        }
+        return s.length();
+    }
+
+    /**
+     * 换行：去掉行尾空白，连续的换行只保留一个
+     */
+    private static void newLine(StringBuilder out) {
+        trimTrailing(out);
+        if (out.length() > 0 && out.charAt(out.length() - 1) != '\n') {
+            out.append('\n');
+        }
+    }
+
+    private static void trimTrailing(StringBuilder out) {
+        int end = out.length();
+        while (end > 0 && (out.charAt(end - 1) == ' ' || out.charAt(end - 1) == '\t')) {
+            end--;
+        }
+        out.setLength(end);
+    }
+}
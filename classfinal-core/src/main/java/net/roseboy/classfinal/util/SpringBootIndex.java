@@ -0,0 +1,326 @@
+package net.roseboy.classfinal.util;
+
+import net.roseboy.classfinal.Const;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 更新 Spring Boot 的 layers.idx 和 classpath.idx
+ * <p>
+ * layers.idx 按层列出 entry（以 / 结尾的为目录前缀），layertools 解压时按层的顺序取第一个匹配的层，没有匹配的层时报错。
+ * 加密后新增的内容按下面的方式归入单独的层，原有的层和其中的依赖不变：
+ * <ul>
+ * <li>{@value #AGENT_LAYER}：classfinal 的代码（原索引中没有），同一版本的 classfinal 内容不变，放在 spring-boot-loader 之后</li>
+ * <li>{@value #ENCRYPTED_LAYER}：加密后的类（META-INF/.classes）和重新打包的 lib 下的 jar，放在原来匹配 META-INF/ 的层之前。
+ * 重新打包的jar从原来的层中移除，原来按目录匹配的（如 BOOT-INF/lib/）展开成其中其他文件的列表</li>
+ * </ul>
+ * classpath.idx 中的顺序不变，新增的 lib 下的 jar（war 中的 classfinal）追加到最后，还原时再去掉。
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class SpringBootIndex {
+    //classfinal代码所在的层
+    public static final String AGENT_LAYER = "classfinal-agent";
+    //加密后的类所在的层
+    public static final String ENCRYPTED_LAYER = "encrypted-application";
+
+    public static final String LAYERS_IDX = "layers.idx";
+    public static final String CLASSPATH_IDX = "classpath.idx";
+
+    //classfinal代码的目录
+    private static final String AGENT_DIR = "net/roseboy/classfinal/";
+    //加密后的类的目录
+    private static final String ENCRYPT_DIR = "META-INF/" + Const.FILE_NAME + "/";
+
+    /**
+     * 更新释放目录中的 layers.idx 和 classpath.idx
+     *
+     * @param root        jar/war 释放的目录
+     * @param infDir      BOOT-INF 或 WEB-INF
+     * @param rebuiltJars 重新打包的 lib 下的 jar 的 entry 名称
+     * @return 是否有 layers.idx
+     */
+    public static boolean update(File root, String infDir, Collection<String> rebuiltJars) {
+        List<String> names = listEntries(root);
+        File classpathIdx = new File(root, infDir + "/" + CLASSPATH_IDX);
+        if (classpathIdx.exists()) {
+            String libDir = infDir + "/lib/";
+            List<String> libJars = names.stream()
+                    .filter(n -> n.startsWith(libDir) && n.endsWith(".jar") && n.indexOf('/', libDir.length()) < 0)
+                    .collect(Collectors.toList());
+            String text = read(classpathIdx);
+            String updated = updateClassPath(text, libJars);
+            if (!updated.equals(text)) {
+                write(classpathIdx, updated);
+            }
+        }
+
+        File layersIdx = new File(root, infDir + "/" + LAYERS_IDX);
+        if (!layersIdx.exists()) {
+            return false;
+        }
+        Map<String, List<String>> layers = parseLayers(read(layersIdx));
+        write(layersIdx, formatLayers(updateLayers(layers, names, rebuiltJars)));
+        return true;
+    }
+
+    /**
+     * 把加密后的类、重新打包的jar和classfinal的代码放到单独的层
+     *
+     * @param layers      原来的层
+     * @param names       所有 entry 名称
+     * @param rebuiltJars 重新打包的 lib 下的 jar
+     * @return 新的层
+     */
+    static Map<String, List<String>> updateLayers(Map<String, List<String>> layers, Collection<String> names,
+                                                  Collection<String> rebuiltJars) {
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        layers.forEach((layer, entries) -> result.put(layer, new ArrayList<>(entries)));
+        result.remove(AGENT_LAYER);
+        result.remove(ENCRYPTED_LAYER);
+
+        //重新打包的jar从原来的层中移除，匹配到的目录展开成其中的文件
+        List<String> encrypted = new ArrayList<>();
+        encrypted.add(ENCRYPT_DIR);
+        for (String jar : rebuiltJars) {
+            for (List<String> entries : result.values()) {
+                entries.remove(jar);
+                for (int i = 0; i < entries.size(); i++) {
+                    String dir = entries.get(i);
+                    if (!dir.endsWith("/") || !jar.startsWith(dir)) {
+                        continue;
+                    }
+                    List<String> files = names.stream()
+                            .filter(n -> n.startsWith(dir) && !rebuiltJars.contains(n) && !entries.contains(n))
+                            .collect(Collectors.toList());
+                    entries.remove(i);
+                    entries.addAll(i, files);
+                    i += files.size() - 1;
+                }
+            }
+            encrypted.add(jar);
+        }
+        //原索引中没有的entry
+        Set<String> agent = new LinkedHashSet<>();
+        for (String name : names) {
+            if (name.startsWith(ENCRYPT_DIR) || rebuiltJars.contains(name) || layerOf(result, name) != null) {
+                continue;
+            }
+            agent.add(name.startsWith(AGENT_DIR) ? AGENT_DIR : name);
+        }
+
+        String encryptedBefore = layerOf(result, ENCRYPT_DIR + "x");
+        String agentAfter = result.containsKey("spring-boot-loader") ? "spring-boot-loader"
+                : result.containsKey("dependencies") ? "dependencies" : null;
+        Map<String, List<String>> ordered = new LinkedHashMap<>();
+        if (agentAfter == null && !agent.isEmpty()) {
+            ordered.put(AGENT_LAYER, new ArrayList<>(agent));
+        }
+        for (Map.Entry<String, List<String>> entry : result.entrySet()) {
+            if (entry.getKey().equals(encryptedBefore)) {
+                ordered.put(ENCRYPTED_LAYER, encrypted);
+            }
+            ordered.put(entry.getKey(), entry.getValue());
+            if (entry.getKey().equals(agentAfter) && !agent.isEmpty()) {
+                ordered.put(AGENT_LAYER, new ArrayList<>(agent));
+            }
+        }
+        if (encryptedBefore == null) {
+            ordered.put(ENCRYPTED_LAYER, encrypted);
+        }
+        return ordered;
+    }
+
+    /**
+     * 还原加密前的 layers.idx：去掉 classfinal 代码和加密后的类所在的层，重新打包的jar放回依赖所在的层
+     *
+     * @param text 加密后的 layers.idx
+     * @return 内容，不是加密后的索引时原样返回
+     */
+    public static String restoreLayers(String text) {
+        Map<String, List<String>> layers = parseLayers(text);
+        if (!layers.containsKey(AGENT_LAYER) && !layers.containsKey(ENCRYPTED_LAYER)) {
+            return text;
+        }
+        return formatLayers(restoreLayers(layers));
+    }
+
+    /**
+     * 去掉加密时增加的层，重新打包的jar放到匹配的层，没有匹配时放到 dependencies 层（没有时为第一个层）
+     *
+     * @param layers 加密后的层
+     * @return 新的层
+     */
+    static Map<String, List<String>> restoreLayers(Map<String, List<String>> layers) {
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        layers.forEach((layer, entries) -> result.put(layer, new ArrayList<>(entries)));
+        result.remove(AGENT_LAYER);
+        List<String> encrypted = result.remove(ENCRYPTED_LAYER);
+        if (encrypted == null || result.isEmpty()) {
+            return result;
+        }
+        for (String name : encrypted) {
+            if (name.startsWith(ENCRYPT_DIR)) {
+                continue;
+            }
+            String layer = layerOf(result, name);
+            if (layer == null) {
+                layer = result.containsKey("dependencies") ? "dependencies" : result.keySet().iterator().next();
+                result.get(layer).add(name);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * entry 所在的层，和 layertools 一样取第一个匹配的层
+     *
+     * @param layers 层
+     * @param name   entry 名称
+     * @return 层名，没有匹配时为null
+     */
+    static String layerOf(Map<String, List<String>> layers, String name) {
+        for (Map.Entry<String, List<String>> entry : layers.entrySet()) {
+            for (String candidate : entry.getValue()) {
+                if (candidate.equals(name) || (candidate.endsWith("/") && name.startsWith(candidate))) {
+                    return entry.getKey();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 解析 layers.idx
+     *
+     * @param text 内容
+     * @return 层名 -> entry 列表，按原顺序
+     */
+    static Map<String, List<String>> parseLayers(String text) {
+        Map<String, List<String>> layers = new LinkedHashMap<>();
+        List<String> current = null;
+        for (String line : text.split("\r?\n")) {
+            if (line.startsWith("- ") && line.endsWith(":")) {
+                current = new ArrayList<>();
+                layers.put(unquote(line.substring(2, line.length() - 1)), current);
+            } else if (line.startsWith("  - ") && current != null) {
+                current.add(unquote(line.substring(4)));
+            } else if (!line.trim().isEmpty()) {
+                throw new IllegalArgumentException("layers.idx 格式有误: " + line);
+            }
+        }
+        return layers;
+    }
+
+    /**
+     * 生成 layers.idx
+     *
+     * @param layers 层名 -> entry 列表
+     * @return 内容
+     */
+    static String formatLayers(Map<String, List<String>> layers) {
+        StringBuilder sb = new StringBuilder();
+        layers.forEach((layer, entries) -> {
+            sb.append("- \"").append(layer).append("\":\n");
+            entries.forEach(entry -> sb.append("  - \"").append(entry).append("\"\n"));
+        });
+        return sb.toString();
+    }
+
+    /**
+     * 把 classpath.idx 中没有的 jar 追加到最后，原有的顺序不变
+     *
+     * @param text    classpath.idx 的内容
+     * @param libJars lib 下的 jar 的 entry 名称
+     * @return 新的内容
+     */
+    static String updateClassPath(String text, List<String> libJars) {
+        List<String> lines = new ArrayList<>();
+        Set<String> listed = new HashSet<>();
+        boolean fullPath = false;
+        for (String line : text.split("\r?\n")) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            lines.add(line);
+            String name = line.startsWith("- ") ? unquote(line.substring(2)) : line.trim();
+            listed.add(name);
+            fullPath |= name.contains("/");
+        }
+        boolean changed = false;
+        for (String jar : libJars) {
+            String name = fullPath ? jar : jar.substring(jar.lastIndexOf('/') + 1);
+            if (listed.add(name)) {
+                lines.add("- \"" + name + "\"");
+                changed = true;
+            }
+        }
+        return changed ? String.join("\n", lines) + "\n" : text;
+    }
+
+    /**
+     * 去掉 classpath.idx 中加密时追加的 jar（war 中的 classfinal），其他行不变
+     *
+     * @param text    加密后的 classpath.idx
+     * @param libJars 要去掉的 lib 下的 jar 的 entry 名称
+     * @return 新的内容，没有要去掉的jar时原样返回
+     */
+    public static String restoreClassPath(String text, Collection<String> libJars) {
+        Set<String> names = new HashSet<>();
+        for (String jar : libJars) {
+            names.add(jar);
+            names.add(jar.substring(jar.lastIndexOf('/') + 1));
+        }
+        List<String> lines = new ArrayList<>();
+        boolean changed = false;
+        for (String line : text.split("\r?\n")) {
+            String name = line.startsWith("- ") ? unquote(line.substring(2)) : line.trim();
+            if (!line.trim().isEmpty() && names.contains(name)) {
+                changed = true;
+            } else {
+                lines.add(line);
+            }
+        }
+        return changed ? String.join("\n", lines) + "\n" : text;
+    }
+
+    private static String unquote(String value) {
+        value = value.trim();
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private static List<String> listEntries(File root) {
+        Path base = root.toPath();
+        try (Stream<Path> stream = Files.walk(base)) {
+            return stream.filter(Files::isRegularFile)
+                    .map(p -> base.relativize(p).toString().replace(File.separatorChar, '/'))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException("读取目录失败: " + root, e);
+        }
+    }
+
+    private static String read(File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("读取文件失败: " + file, e);
+        }
+    }
+
+    private static void write(File file, String text) {
+        IoUtils.writeFile(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,275 @@
+package net.roseboy.classfinal.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * zip中央目录索引
+ * <p>
+ * 读取每个entry压缩后的原始数据位置，打包时可以不解压、不重新压缩，直接复制原始字节和crc
+ *
+ * @author ygqygq2
+ * @since 2.1.0
+ */
+public class ZipIndex implements Closeable {
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    //zip文件
+    private final File file;
+    //按中央目录顺序排列的entry
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Entry> entryMap = new HashMap<>();
+    //读取原始数据的通道，用到时才打开
+    private FileChannel channel;
+
+    private ZipIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * 读取zip的中央目录
+     *
+     * @param file zip文件
+     * @return 索引
+     * @throws IOException 不是有效的zip文件
+     */
+    public static ZipIndex read(File file) throws IOException {
+        ZipIndex index = new ZipIndex(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel ch = raf.getChannel();
+            long length = ch.size();
+
+            //从文件末尾查找中央目录结束标记，最多有65535字节的注释
+            int tailSize = (int) Math.min(length, 22 + 0xFFFF);
+            ByteBuffer tail = read(ch, length - tailSize, tailSize);
+            int eocd = -1;
+            for (int i = tailSize - 22; i >= 0; i--) {
+                if (tail.getInt(i) == END_OF_CENTRAL) {
+                    eocd = i;
+                    break;
+                }
+            }
+            if (eocd < 0) {
+                throw new IOException("zip END header not found: " + file);
+            }
+            long count = tail.getShort(eocd + 10) & 0xFFFF;
+            long cdSize = tail.getInt(eocd + 12) & ZIP64_MAGIC;
+            long cdOffset = tail.getInt(eocd + 16) & ZIP64_MAGIC;
+
+            //zip64
+            if (eocd >= 20 && tail.getInt(eocd - 20) == ZIP64_LOCATOR) {
+                long zip64Eocd = tail.getLong(eocd - 20 + 8);
+                ByteBuffer z = read(ch, zip64Eocd, 56);
+                if (z.getInt(0) == ZIP64_END_OF_CENTRAL) {
+                    count = z.getLong(32);
+                    cdSize = z.getLong(40);
+                    cdOffset = z.getLong(48);
+                }
+            }
+
+            ByteBuffer cd = read(ch, cdOffset, (int) cdSize);
+            int pos = 0;
+            for (long i = 0; i < count; i++) {
+                if (cd.getInt(pos) != CENTRAL_HEADER) {
+                    throw new IOException("invalid zip central directory: " + file);
+                }
+                Entry entry = new Entry();
+                entry.flag = cd.getShort(pos + 8) & 0xFFFF;
+                entry.method = cd.getShort(pos + 10) & 0xFFFF;
+                entry.dosTime = cd.getInt(pos + 12);
+                entry.crc = cd.getInt(pos + 16) & ZIP64_MAGIC;
+                entry.compressedSize = cd.getInt(pos + 20) & ZIP64_MAGIC;
+                entry.size = cd.getInt(pos + 24) & ZIP64_MAGIC;
+                int nameLen = cd.getShort(pos + 28) & 0xFFFF;
+                int extraLen = cd.getShort(pos + 30) & 0xFFFF;
+                int commentLen = cd.getShort(pos + 32) & 0xFFFF;
+                entry.offset = cd.getInt(pos + 42) & ZIP64_MAGIC;
+
+                byte[] name = new byte[nameLen];
+                cd.position(pos + 46);
+                cd.get(name);
+                entry.name = new String(name, StandardCharsets.UTF_8);
+                readZip64Extra(cd, pos + 46 + nameLen, extraLen, entry);
+
+                index.entries.add(entry);
+                index.entryMap.put(entry.name, entry);
+                pos += 46 + nameLen + extraLen + commentLen;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 读取zip64扩展字段中的大小和偏移
+     */
+    private static void readZip64Extra(ByteBuffer cd, int start, int len, Entry entry) {
+        int pos = start;
+        while (pos + 4 <= start + len) {
+            int id = cd.getShort(pos) & 0xFFFF;
+            int size = cd.getShort(pos + 2) & 0xFFFF;
+            if (id == ZIP64_EXTRA) {
+                int p = pos + 4;
+                if (entry.size == ZIP64_MAGIC) {
+                    entry.size = cd.getLong(p);
+                    p += 8;
+                }
+                if (entry.compressedSize == ZIP64_MAGIC) {
+                    entry.compressedSize = cd.getLong(p);
+                    p += 8;
+                }
+                if (entry.offset == ZIP64_MAGIC) {
+                    entry.offset = cd.getLong(p);
+                }
+                return;
+            }
+            pos += 4 + size;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel ch, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (ch.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of zip file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 所有entry，按中央目录顺序
+     *
+     * @return entry列表
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * 根据名称查找entry
+     *
+     * @param name entry名称
+     * @return entry，不存在返回null
+     */
+    public Entry getEntry(String name) {
+        return entryMap.get(name);
+    }
+
+    /**
+     * zip文件
+     *
+     * @return 文件
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 把entry压缩后的原始数据复制到输出通道
+     *
+     * @param entry  entry
+     * @param target 输出通道
+     * @throws IOException IOException
+     */
+    public void transferRaw(Entry entry, WritableByteChannel target) throws IOException {
+        FileChannel ch = channel();
+        long start = dataOffset(entry);
+        long position = 0;
+        while (position < entry.compressedSize) {
+            position += ch.transferTo(start + position, entry.compressedSize - position, target);
+        }
+    }
+
+    /**
+     * 计算entry数据开始的位置（本地文件头的扩展字段长度可能和中央目录不同）
+     */
+    private long dataOffset(Entry entry) throws IOException {
+        if (entry.dataOffset < 0) {
+            ByteBuffer header = read(channel(), entry.offset, 30);
+            if (header.getInt(0) != LOCAL_HEADER) {
+                throw new IOException("invalid zip local header: " + entry.name);
+            }
+            int nameLen = header.getShort(26) & 0xFFFF;
+            int extraLen = header.getShort(28) & 0xFFFF;
+            entry.dataOffset = entry.offset + 30 + nameLen + extraLen;
+        }
+        return entry.dataOffset;
+    }
+
+    private synchronized FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = new RandomAccessFile(file, "r").getChannel();
+        }
+        return channel;
+    }
+
+    @Override
+    public synchronized void close() {
+        IoUtils.close(channel);
+        channel = null;
+    }
+
+    /**
+     * zip中的一个entry
+     */
+    public static class Entry {
+        String name;
+        int flag;
+        int method;
+        int dosTime;
+        long crc;
+        long size;
+        long compressedSize;
+        //本地文件头位置
+        long offset;
+        //数据开始位置
+        volatile long dataOffset = -1;
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public int getDosTime() {
+            return dosTime;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+}
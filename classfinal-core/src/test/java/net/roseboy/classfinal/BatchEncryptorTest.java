@@ -0,0 +1,109 @@
+package net.roseboy.classfinal;
+
+import net.roseboy.classfinal.config.BatchConfig;
+import net.roseboy.classfinal.config.ClassFinalConfig;
+import net.roseboy.classfinal.util.StrUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BatchEncryptor 单元测试
+ */
+class BatchEncryptorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRunJobsAndRetry() throws Exception {
+        File a = jar("a.jar");
+        File b = jar("b.jar");
+        File output = tempDir.resolve("out/b-enc.jar").toFile();
+
+        List<BatchConfig.Job> jobs = new ArrayList<>();
+        jobs.add(new BatchConfig.Job("a", job(a.getAbsolutePath(), null)));
+        jobs.add(new BatchConfig.Job("missing", job(tempDir.resolve("missing.jar").toString(), null)));
+        jobs.add(new BatchConfig.Job("b", job(b.getAbsolutePath(), output.getAbsolutePath())));
+        BatchConfig batch = new BatchConfig();
+        batch.setParallel(2);
+        batch.setThreads(2);
+        batch.setRetries(1);
+        batch.setJobs(jobs);
+        batch.validate();
+
+        BatchEncryptor.BatchResult result = new BatchEncryptor(batch).run();
+        assertEquals(3, result.getJobs().size());
+        assertEquals(1, result.getFailedCount());
+
+        BatchEncryptor.JobResult ra = result.getJobs().get(0);
+        assertEquals("a", ra.getName());
+        assertTrue(ra.isSuccess(), ra.getError());
+        assertEquals(1, ra.getAttempts());
+        assertEquals(1, ra.getClassCount());
+        assertEncrypted(new File(ra.getOutput()));
+
+        //失败的任务重试一次
+        BatchEncryptor.JobResult missing = result.getJobs().get(1);
+        assertFalse(missing.isSuccess());
+        assertEquals(2, missing.getAttempts());
+        assertTrue(missing.getError().contains("文件不存在"));
+
+        //结果移动到指定的输出文件
+        BatchEncryptor.JobResult rb = result.getJobs().get(2);
+        assertTrue(rb.isSuccess(), rb.getError());
+        assertEquals(output.getAbsolutePath(), rb.getOutput());
+        assertEncrypted(output);
+        assertFalse(new File(b.getAbsolutePath().replace(".jar", "-encrypted.jar")).exists());
+    }
+
+    private static void assertEncrypted(File jar) throws Exception {
+        assertTrue(jar.exists());
+        try (JarFile jf = new JarFile(jar)) {
+            String name = StrUtils.class.getName();
+            assertNotNull(jf.getEntry("META-INF/" + Const.FILE_NAME + "/" + name));
+        }
+    }
+
+    private static ClassFinalConfig job(String file, String output) {
+        ClassFinalConfig config = new ClassFinalConfig();
+        ClassFinalConfig.InputConfig input = new ClassFinalConfig.InputConfig();
+        input.setFile(file);
+        input.setPackages(new String[]{StrUtils.class.getName()});
+        config.setInput(input);
+        ClassFinalConfig.EncryptionConfig encryption = new ClassFinalConfig.EncryptionConfig();
+        encryption.setPassword("123456");
+        config.setEncryption(encryption);
+        ClassFinalConfig.OutputConfig out = new ClassFinalConfig.OutputConfig();
+        out.setFile(output);
+        config.setOutput(out);
+        return config;
+    }
+
+    private File jar(String name) throws Exception {
+        File file = tempDir.resolve(name).toFile();
+        String entry = StrUtils.class.getName().replace('.', '/') + ".class";
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+             InputStream in = StrUtils.class.getClassLoader().getResourceAsStream(entry)) {
+            out.putNextEntry(new ZipEntry(entry));
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+            out.closeEntry();
+        }
+        return file;
+    }
+}
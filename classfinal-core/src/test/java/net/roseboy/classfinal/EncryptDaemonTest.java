@@ -0,0 +1,136 @@
+package net.roseboy.classfinal;
+
+import net.roseboy.classfinal.util.Log;
+import net.roseboy.classfinal.util.ParallelUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EncryptDaemon 单元测试
+ */
+class EncryptDaemonTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRunStatusStop() throws Exception {
+        File stateFile = tempDir.resolve("daemon.properties").toFile();
+        EncryptDaemon daemon = new EncryptDaemon(args -> {
+            System.out.println("job " + String.join(" ", args) + " " + EncryptDaemon.isJob());
+            System.err.println("warn");
+            return args.length;
+        });
+        daemon.setStateFile(stateFile);
+        daemon.setParallel(2);
+        daemon.start();
+        Thread server = new Thread(daemon::serve);
+        server.start();
+        try {
+            assertTrue(stateFile.exists());
+            assertFalse(EncryptDaemon.isJob());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            int code = DaemonClient.run(stateFile, EncryptDaemon.CMD_RUN, new String[]{"a", "b"}, out, err);
+            assertEquals(2, code);
+            assertEquals("job a b true", out.toString("UTF-8").trim());
+            assertEquals("warn", err.toString("UTF-8").trim());
+
+            out.reset();
+            assertEquals(0, DaemonClient.run(stateFile, EncryptDaemon.CMD_STATUS, new String[0], out, err));
+            assertTrue(out.toString("UTF-8").contains("completed: 1"));
+
+            //令牌不对
+            File wrong = tempDir.resolve("wrong.properties").toFile();
+            Properties state = new Properties();
+            state.setProperty("port", String.valueOf(daemon.getPort()));
+            state.setProperty("token", "0");
+            try (FileOutputStream fos = new FileOutputStream(wrong)) {
+                state.store(fos, null);
+            }
+            out.reset();
+            assertEquals(2, DaemonClient.run(wrong, EncryptDaemon.CMD_RUN, new String[]{"a"}, out, err));
+            assertEquals("", out.toString("UTF-8"));
+
+            assertEquals(0, DaemonClient.run(stateFile, EncryptDaemon.CMD_STOP, new String[0], out, err));
+            server.join(10000);
+            assertFalse(server.isAlive());
+            assertFalse(stateFile.exists());
+            assertThrows(IOException.class,
+                    () -> DaemonClient.run(stateFile, EncryptDaemon.CMD_RUN, new String[0], out, err));
+        } finally {
+            daemon.close();
+        }
+    }
+
+    @Test
+    void testJobContext() throws Exception {
+        File stateFile = tempDir.resolve("daemon.properties").toFile();
+        File dir = tempDir.resolve("client").toFile();
+        ForkJoinPool pool = ParallelUtils.newPool(2);
+        EncryptDaemon daemon = new EncryptDaemon(args -> {
+            Log.setThreadLogLevel(Log.LogLevel.ERROR);
+            //线程池中的子任务也输出给客户端，使用客户端的环境变量和工作目录
+            ParallelUtils.forEach(pool, Arrays.asList(1, 2, 3, 4), i -> System.out.println(i + " "
+                    + EncryptDaemon.getenv("CF_TEST") + " " + EncryptDaemon.resolve("app.jar") + " "
+                    + Log.getCurrentLevel()));
+            return 0;
+        });
+        daemon.setStateFile(stateFile);
+        daemon.start();
+        Thread server = new Thread(daemon::serve);
+        server.start();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            int code = DaemonClient.run(stateFile, EncryptDaemon.CMD_RUN, new String[]{"-Y"}, dir,
+                    Collections.singletonMap("CF_TEST", "v"), out, err);
+            assertEquals(0, code);
+            String expected = " v " + new File(dir, "app.jar").getAbsolutePath() + " ERROR";
+            String[] lines = out.toString("UTF-8").trim().split("\\R");
+            Arrays.sort(lines);
+            assertArrayEquals(new String[]{"1" + expected, "2" + expected, "3" + expected, "4" + expected}, lines);
+
+            //不在服务中执行时不变
+            assertNull(EncryptDaemon.getenv("CF_TEST"));
+            assertEquals("app.jar", EncryptDaemon.resolve("app.jar"));
+            String abs = new File("/opt/app.jar").getAbsolutePath();
+            assertEquals(abs, EncryptDaemon.resolve(abs));
+        } finally {
+            daemon.close();
+            ParallelUtils.shutdown(pool);
+        }
+    }
+
+    @Test
+    void testLeaseOutsideDaemon() throws Exception {
+        JarEncryptor encryptor = new JarEncryptor("a.jar", "123456".toCharArray());
+        try (EncryptDaemon.Lease lease = EncryptDaemon.lease(encryptor, new File("a.jar"))) {
+            assertNotNull(lease);
+        }
+    }
+
+    @Test
+    void testAbsolutize() {
+        String[] args = DaemonClient.absolutize(new String[]{
+                "-file", "app.jar", "-packages", "com.a", "--config=cf.yml", "-classpath", "lib,/opt/lib", "-Y"});
+        assertEquals(new File("app.jar").getAbsolutePath(), args[1]);
+        assertEquals("com.a", args[3]);
+        assertEquals("--config=" + new File("cf.yml").getAbsolutePath(), args[4]);
+        assertEquals(new File("lib").getAbsolutePath() + "," + new File("/opt/lib").getAbsolutePath(), args[6]);
+        assertEquals("-Y", args[7]);
+    }
+}
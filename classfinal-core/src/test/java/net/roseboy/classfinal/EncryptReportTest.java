@@ -0,0 +1,119 @@
+package net.roseboy.classfinal;
+
+import net.roseboy.classfinal.util.IoUtils;
+import net.roseboy.classfinal.util.StrUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EncryptReport 单元测试
+ */
+class EncryptReportTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testReportAndTrace() throws Exception {
+        File jar = jar("app.jar", StrUtils.class, IoUtils.class, Const.class);
+        File reportFile = tempDir.resolve("out/report.json").toFile();
+        File traceFile = tempDir.resolve("out/trace.json").toFile();
+
+        JarEncryptor encryptor = new JarEncryptor(jar.getAbsolutePath(), "123456".toCharArray());
+        encryptor.setPackages(Arrays.asList(StrUtils.class.getName(), IoUtils.class.getName()));
+        encryptor.setIncludeJars(new ArrayList<>());
+        encryptor.setExcludeClass(Collections.singletonList(IoUtils.class.getName()));
+        encryptor.setClassPath(new ArrayList<>());
+        encryptor.setCfgfiles(new ArrayList<>());
+        encryptor.setReportFile(reportFile);
+        encryptor.setTraceFile(traceFile);
+        String result = encryptor.doEncryptJar();
+
+        EncryptReport report = encryptor.getReport();
+        assertTrue(report.isSuccess());
+        for (String name : new String[]{"unJar", "unJarLib", "filter", "agent", "encrypt", "stub", "config", "package"}) {
+            assertNotNull(report.getPhase(name), name);
+        }
+        assertEquals(3, report.getPhase("unJar").getFiles());
+        assertEquals(jar.length(), report.getPhase("unJar").getBytesRead());
+        assertTrue(report.getPhase("agent").getFiles() >= Const.CLASSFINAL_FILES.length);
+        assertTrue(report.getPhase("agent").getBytesWritten() > 0);
+        assertEquals(1, report.getPhase("encrypt").getFiles());
+        assertTrue(report.getPhase("encrypt").getBytesWritten() > 0);
+        assertEquals(new File(result).length(), report.getBytesWritten());
+        assertEquals(new File(result).length(), report.getPhase("package").getBytesWritten());
+        assertEquals(1, report.getSkippedCount(EncryptReport.SKIP_NOT_IN_PACKAGES));
+        assertEquals(1, report.getSkippedCount(EncryptReport.SKIP_EXCLUDED));
+        assertEquals(Collections.singletonList(StrUtils.class.getName()), report.getSlowestClasses());
+        assertTrue(report.getPeakHeapUsed() > 0);
+        assertEquals(9, report.summary().size());
+
+        String json = new String(Files.readAllBytes(reportFile.toPath()), "UTF-8");
+        assertTrue(json.contains("\"success\": true"));
+        assertTrue(json.contains("\"name\": \"encrypt\""));
+        assertTrue(json.contains("\"excluded\": 1"));
+        assertTrue(json.contains("{\"class\": \"" + IoUtils.class.getName() + "\", \"reason\": \"excluded\""));
+        assertTrue(json.contains("\"slowestClasses\": [\n    {\"class\": \"" + StrUtils.class.getName() + "\""));
+
+        String trace = new String(Files.readAllBytes(traceFile.toPath()), "UTF-8");
+        assertTrue(trace.contains("\"traceEvents\""));
+        assertTrue(trace.contains("\"name\": \"package\", \"cat\": \"phase\", \"ph\": \"X\""));
+        assertTrue(trace.contains("\"name\": \"" + StrUtils.class.getName() + "\", \"cat\": \"encrypt\""));
+    }
+
+    @Test
+    void testReportWrittenOnFailure() throws Exception {
+        File jar = jar("app.jar", StrUtils.class);
+        //输出文件的位置是一个非空目录，打包失败
+        assertTrue(tempDir.resolve("app-encrypted.jar").toFile().mkdirs());
+        Files.write(tempDir.resolve("app-encrypted.jar/a.txt"), new byte[1]);
+        File reportFile = tempDir.resolve("report.json").toFile();
+
+        JarEncryptor encryptor = new JarEncryptor(jar.getAbsolutePath(), "123456".toCharArray());
+        encryptor.setPackages(Collections.singletonList(StrUtils.class.getName()));
+        encryptor.setIncludeJars(new ArrayList<>());
+        encryptor.setExcludeClass(new ArrayList<>());
+        encryptor.setClassPath(new ArrayList<>());
+        encryptor.setCfgfiles(new ArrayList<>());
+        encryptor.setReportFile(reportFile);
+        assertThrows(RuntimeException.class, encryptor::doEncryptJar);
+
+        assertFalse(encryptor.getReport().isSuccess());
+        assertNotNull(encryptor.getReport().getPhase("package"));
+        String json = new String(Files.readAllBytes(reportFile.toPath()), "UTF-8");
+        assertTrue(json.contains("\"success\": false"));
+        assertTrue(json.contains("\"error\": \"打包失败"));
+    }
+
+    private File jar(String name, Class<?>... classes) throws Exception {
+        File file = tempDir.resolve(name).toFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (Class<?> c : classes) {
+                String entry = c.getName().replace('.', '/') + ".class";
+                out.putNextEntry(new ZipEntry(entry));
+                try (InputStream in = c.getClassLoader().getResourceAsStream(entry)) {
+                    byte[] buf = new byte[8192];
+                    int n;
+                    while ((n = in.read(buf)) > 0) {
+                        out.write(buf, 0, n);
+                    }
+                }
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+}
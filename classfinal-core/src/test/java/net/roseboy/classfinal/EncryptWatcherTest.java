@@ -0,0 +1,138 @@
+package net.roseboy.classfinal;
+
+import net.roseboy.classfinal.util.IoUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opentest4j.AssertionFailedError;
+import org.opentest4j.ValueWrapper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EncryptWatcher 单元测试
+ */
+class EncryptWatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testIncrementalUpdateMatchesFullBuild() throws Exception {
+        File input = tempDir.resolve("app.jar").toFile();
+        jar(input, classes(Assertions.class, Assumptions.class, AssertionFailedError.class));
+        EncryptWatcher watcher = new EncryptWatcher(encryptor(input));
+        String result = watcher.build();
+        assertEquals(0, watcher.update());
+
+        //修改一个加密的类，删除一个不加密的类，新增一个类和一个资源
+        Map<String, byte[]> entries = classes(Assumptions.class, ValueWrapper.class);
+        entries.put(entry(Assertions.class), bytes(ValueWrapper.class));
+        entries.put("a.txt", "a".getBytes("UTF-8"));
+        jar(input, entries);
+        assertEquals(4, watcher.update());
+        assertEquals(result, watcher.getOutput().getAbsolutePath());
+
+        //与完整加密的结果相同
+        File full = tempDir.resolve("full/app.jar").toFile();
+        full.getParentFile().mkdirs();
+        Files.copy(input.toPath(), full.toPath());
+        String fullResult = encryptor(full).doEncryptJar();
+        Map<String, byte[]> expected = read(new File(fullResult));
+        Map<String, byte[]> actual = read(new File(result));
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((name, bytes) -> assertArrayEquals(bytes, actual.get(name), name));
+        assertFalse(actual.containsKey(entry(AssertionFailedError.class)));
+        assertTrue(actual.containsKey("META-INF/" + Const.FILE_NAME + "/" + Assertions.class.getName()));
+        assertFalse(actual.containsKey("META-INF/" + Const.FILE_NAME + "/" + ValueWrapper.class.getName()));
+    }
+
+    @Test
+    void testClassesDirAndRebuild() throws Exception {
+        File input = tempDir.resolve("app.jar").toFile();
+        jar(input, classes(Assertions.class, Assumptions.class));
+        EncryptWatcher watcher = new EncryptWatcher(encryptor(input));
+        String result = watcher.build();
+        byte[] before = read(new File(result)).get("META-INF/" + Const.FILE_NAME + "/" + Assertions.class.getName());
+
+        //classes目录中编译后的class
+        File classesDir = tempDir.resolve("classes").toFile();
+        File classFile = new File(classesDir, entry(Assertions.class));
+        classFile.getParentFile().mkdirs();
+        Files.write(classFile.toPath(), bytes(ValueWrapper.class));
+        watcher.setClassesDir(classesDir);
+        assertEquals(1, watcher.updateClasses(Collections.singletonList(classFile)));
+        byte[] after = read(new File(result)).get("META-INF/" + Const.FILE_NAME + "/" + Assertions.class.getName());
+        assertFalse(Arrays.equals(before, after));
+
+        //依赖jar变化时完整加密
+        Map<String, byte[]> entries = classes(Assertions.class, Assumptions.class);
+        entries.put("lib/a.jar", new byte[]{1});
+        jar(input, entries);
+        assertEquals(-1, watcher.update());
+        assertTrue(read(new File(result)).containsKey("lib/a.jar"));
+    }
+
+    private static JarEncryptor encryptor(File jar) {
+        JarEncryptor encryptor = new JarEncryptor(jar.getAbsolutePath(), "123456".toCharArray());
+        encryptor.setPackages(Arrays.asList(Assertions.class.getName(), Assumptions.class.getName()));
+        encryptor.setIncludeJars(new ArrayList<>());
+        encryptor.setExcludeClass(new ArrayList<>());
+        encryptor.setClassPath(new ArrayList<>());
+        encryptor.setCfgfiles(new ArrayList<>());
+        return encryptor;
+    }
+
+    private static String entry(Class<?> c) {
+        return c.getName().replace('.', '/') + ".class";
+    }
+
+    private static byte[] bytes(Class<?> c) throws Exception {
+        try (InputStream in = c.getClassLoader().getResourceAsStream(entry(c))) {
+            return IoUtils.toBytes(in);
+        }
+    }
+
+    private static Map<String, byte[]> classes(Class<?>... classes) throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (Class<?> c : classes) {
+            entries.put(entry(c), bytes(c));
+        }
+        return entries;
+    }
+
+    private static void jar(File file, Map<String, byte[]> entries) throws Exception {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static Map<String, byte[]> read(File jar) throws Exception {
+        Map<String, byte[]> entries = new TreeMap<>();
+        try (ZipFile zip = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> e = zip.entries();
+            while (e.hasMoreElements()) {
+                ZipEntry entry = e.nextElement();
+                if (!entry.isDirectory()) {
+                    entries.put(entry.getName(), IoUtils.toBytes(zip.getInputStream(entry)));
+                }
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,321 @@
+package net.roseboy.classfinal;
+
+import net.roseboy.classfinal.util.CipherSuite;
+import net.roseboy.classfinal.util.ConstantPoolScanner;
+import net.roseboy.classfinal.util.DebugInfoStripper;
+import net.roseboy.classfinal.util.IoUtils;
+import net.roseboy.classfinal.util.MachineKeyTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.*;
+import java.util.zip.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JarEncryptor 单元测试
+ */
+class JarEncryptorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testDuplicateClassesEncryptedOnce() throws Exception {
+        String entry = Const.class.getName().replace('.', '/') + ".class";
+        byte[] bytes;
+        try (InputStream in = Const.class.getClassLoader().getResourceAsStream(entry)) {
+            bytes = IoUtils.toBytes(in);
+        }
+        //同一个类在classes和两个lib jar中各有一份
+        Map<String, byte[]> lib = Collections.singletonMap(entry, bytes);
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("BOOT-INF/classes/" + entry, bytes);
+        entries.put("BOOT-INF/lib/a.jar", zip(lib, ZipEntry.DEFLATED));
+        entries.put("BOOT-INF/lib/b.jar", zip(lib, ZipEntry.DEFLATED));
+        File jar = tempDir.resolve("app.jar").toFile();
+        try (FileOutputStream out = new FileOutputStream(jar)) {
+            out.write(zip(entries, ZipEntry.STORED));
+        }
+
+        JarEncryptor encryptor = new JarEncryptor(jar.getAbsolutePath(), "123456".toCharArray());
+        encryptor.setPackages(Collections.singletonList(Const.class.getName()));
+        encryptor.setIncludeJars(new ArrayList<>(Arrays.asList("a.jar", "b.jar")));
+        encryptor.setExcludeClass(new ArrayList<>());
+        encryptor.setClassPath(new ArrayList<>());
+        encryptor.setCfgfiles(new ArrayList<>());
+        String result = encryptor.doEncryptJar();
+
+        EncryptReport report = encryptor.getReport();
+        assertEquals(1, report.getPhase("encrypt").getFiles());
+        assertEquals(2, report.getSkippedCount(EncryptReport.SKIP_DUPLICATE));
+        assertEquals(1, report.getPhase("stub").getFiles());
+
+        //三份都已清空，内容相同
+        Map<String, byte[]> output = unzip(IoUtils.readFileToByte(new File(result)));
+        byte[] stub = output.get("BOOT-INF/classes/" + entry);
+        assertFalse(Arrays.equals(bytes, stub));
+        assertArrayEquals(stub, unzip(output.get("BOOT-INF/lib/a.jar")).get(entry));
+        assertArrayEquals(stub, unzip(output.get("BOOT-INF/lib/b.jar")).get(entry));
+        assertTrue(output.containsKey("META-INF/" + Const.FILE_NAME + "/" + Const.class.getName()));
+    }
+
+    @Test
+    void testStripDebugInfo() throws Exception {
+        String entry = Const.class.getName().replace('.', '/') + ".class";
+        byte[] bytes;
+        try (InputStream in = Const.class.getClassLoader().getResourceAsStream(entry)) {
+            bytes = IoUtils.toBytes(in);
+        }
+        File jar = tempDir.resolve("app.jar").toFile();
+        try (FileOutputStream out = new FileOutputStream(jar)) {
+            out.write(zip(Collections.singletonMap(entry, bytes), ZipEntry.DEFLATED));
+        }
+
+        JarEncryptor encryptor = new JarEncryptor(jar.getAbsolutePath(), "123456".toCharArray());
+        encryptor.setPackages(Collections.singletonList(Const.class.getName()));
+        encryptor.setIncludeJars(new ArrayList<>());
+        encryptor.setExcludeClass(new ArrayList<>());
+        encryptor.setClassPath(new ArrayList<>());
+        encryptor.setCfgfiles(new ArrayList<>());
+        encryptor.setStubDebugInfo(DebugInfoStripper.parse("lines,source"));
+        encryptor.setPayloadDebugInfo(DebugInfoStripper.parse("all"));
+        encryptor.doEncryptJar();
+
+        //按包汇总
+        List<EncryptReport.PackageStat> stripped = encryptor.getReport().getStripped();
+        assertEquals(2, stripped.size());
+        assertEquals("payload", stripped.get(0).getType());
+        assertEquals("stub", stripped.get(1).getType());
+        for (EncryptReport.PackageStat stat : stripped) {
+            assertEquals("net.roseboy.classfinal", stat.getName());
+            assertEquals(1, stat.getClasses());
+            assertTrue(stat.getAfter() < stat.getBefore());
+        }
+        assertEquals(bytes.length, stripped.get(0).getBefore());
+    }
+
+    @Test
+    void testCompressPayload() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (Class<?> clazz : new Class<?>[]{Const.class, JarEncryptor.class, JarDecryptor.class, EncryptReport.class}) {
+            String entry = clazz.getName().replace('.', '/') + ".class";
+            try (InputStream in = clazz.getClassLoader().getResourceAsStream(entry)) {
+                entries.put(entry, IoUtils.toBytes(in));
+            }
+        }
+        File jar = tempDir.resolve("app.jar").toFile();
+        try (FileOutputStream out = new FileOutputStream(jar)) {
+            out.write(zip(entries, ZipEntry.DEFLATED));
+        }
+
+        JarEncryptor encryptor = new JarEncryptor(jar.getAbsolutePath(), "123456".toCharArray());
+        encryptor.setPackages(Collections.singletonList("net.roseboy.classfinal"));
+        encryptor.setIncludeJars(new ArrayList<>());
+        encryptor.setExcludeClass(new ArrayList<>());
+        encryptor.setClassPath(new ArrayList<>());
+        encryptor.setCfgfiles(new ArrayList<>());
+        encryptor.setCompressPayload(true);
+        String result = encryptor.doEncryptJar();
+
+        //加密后的数据变小，解密后和原来相同
+        JarDecryptor decryptor = new JarDecryptor();
+        for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+            String className = e.getKey().replace(".class", "").replace('/', '.');
+            byte[] payload = JarDecryptor.readEncryptedFile(new File(result), className);
+            assertTrue(payload.length < e.getValue().length);
+            assertArrayEquals(e.getValue(), decryptor.doDecrypt(result, className, "123456".toCharArray()));
+        }
+        assertNotNull(JarDecryptor.readEncryptedFile(new File(result), Const.CONFIG_DICT));
+    }
+
+    @Test
+    void testPublicKey() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        String publicKey = Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded());
+        String privateKey = Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded());
+
+        String entry = Const.class.getName().replace('.', '/') + ".class";
+        byte[] bytes;
+        try (InputStream in = Const.class.getClassLoader().getResourceAsStream(entry)) {
+            bytes = IoUtils.toBytes(in);
+        }
+        File jar = tempDir.resolve("app.jar").toFile();
+        try (FileOutputStream out = new FileOutputStream(jar)) {
+            out.write(zip(Collections.singletonMap(entry, bytes), ZipEntry.DEFLATED));
+        }
+
+        //只有公钥，不需要密码
+        JarEncryptor encryptor = new JarEncryptor(jar.getAbsolutePath(), new char[0]);
+        encryptor.setPackages(Collections.singletonList("net.roseboy.classfinal"));
+        encryptor.setIncludeJars(new ArrayList<>());
+        encryptor.setExcludeClass(new ArrayList<>());
+        encryptor.setClassPath(new ArrayList<>());
+        encryptor.setCfgfiles(new ArrayList<>());
+        encryptor.setPublicKey(publicKey);
+        File result = new File(encryptor.doEncryptJar());
+
+        //jar中只有公钥加密的内容密钥
+        assertNotNull(JarDecryptor.readEncryptedFile(result, Const.CONFIG_ENVELOPE));
+        assertNull(JarDecryptor.readEncryptedFile(result, Const.CONFIG_PASS));
+
+        //用私钥解开内容密钥后解密
+        char[] contentKey = JarDecryptor.openEnvelope(result, privateKey);
+        assertEquals(32, contentKey.length);
+        assertArrayEquals(bytes, new JarDecryptor().doDecrypt(result.getAbsolutePath(), Const.class.getName(), contentKey));
+
+        //其他私钥不能解开
+        generator.initialize(2048);
+        String otherKey = Base64.getEncoder().encodeToString(generator.generateKeyPair().getPrivate().getEncoded());
+        assertThrows(IllegalArgumentException.class, () -> JarDecryptor.openEnvelope(result, otherKey));
+    }
+
+    @Test
+    void testMachineKeyTable() throws Exception {
+        String entry = Const.class.getName().replace('.', '/') + ".class";
+        byte[] bytes;
+        try (InputStream in = Const.class.getClassLoader().getResourceAsStream(entry)) {
+            bytes = IoUtils.toBytes(in);
+        }
+        File jar = tempDir.resolve("app.jar").toFile();
+        try (FileOutputStream out = new FileOutputStream(jar)) {
+            out.write(zip(Collections.singletonMap(entry, bytes), ZipEntry.DEFLATED));
+        }
+        StringBuilder codes = new StringBuilder("CODE0");
+        for (int i = 1; i < 300; i++) {
+            codes.append(',').append("CODE").append(i);
+        }
+
+        byte[] one = encryptWithCode(jar, "CODE0");
+        byte[] many = encryptWithCode(jar, codes.toString());
+        File result = new File(jar.getAbsolutePath().replace(".jar", "-encrypted.jar"));
+
+        //类只加密一遍，大小和机器数量无关，没有旧版本的机器码文件
+        assertEquals(one.length, many.length);
+        assertNull(JarDecryptor.readEncryptedFile(result, Const.CONFIG_CODE));
+        assertEquals(300, MachineKeyTable.hashes(JarDecryptor.readEncryptedFile(result, Const.CONFIG_KEYS)).size());
+
+        //任意一台机器都能解密
+        for (String code : new String[]{"CODE0", "CODE150", "CODE299"}) {
+            assertArrayEquals(bytes, new JarDecryptor(code.toCharArray())
+                    .doDecrypt(result.getAbsolutePath(), Const.class.getName(), "123456".toCharArray()));
+        }
+        assertNull(MachineKeyTable.unwrap(JarDecryptor.readEncryptedFile(result, Const.CONFIG_KEYS), "CODE300".toCharArray()));
+    }
+
+    @Test
+    void testCipherSuite() throws Exception {
+        String entry = Const.class.getName().replace('.', '/') + ".class";
+        byte[] bytes;
+        try (InputStream in = Const.class.getClassLoader().getResourceAsStream(entry)) {
+            bytes = IoUtils.toBytes(in);
+        }
+        File jar = tempDir.resolve("app.jar").toFile();
+        try (FileOutputStream out = new FileOutputStream(jar)) {
+            out.write(zip(Collections.singletonMap(entry, bytes), ZipEntry.DEFLATED));
+        }
+
+        for (int suite : new int[]{CipherSuite.GCM, CipherSuite.CTR, CipherSuite.ECB}) {
+            JarEncryptor encryptor = new JarEncryptor(jar.getAbsolutePath(), "123456".toCharArray());
+            encryptor.setPackages(Collections.singletonList("net.roseboy.classfinal"));
+            encryptor.setIncludeJars(new ArrayList<>());
+            encryptor.setExcludeClass(new ArrayList<>());
+            encryptor.setClassPath(new ArrayList<>());
+            encryptor.setCfgfiles(new ArrayList<>());
+            encryptor.setCipherSuite(suite);
+            File result = new File(encryptor.doEncryptJar());
+
+            //运行时按头部识别算法，旧版本的ECB也能解密
+            assertEquals(suite, CipherSuite.of(JarDecryptor.readEncryptedFile(result, Const.class.getName())));
+            assertArrayEquals(bytes, new JarDecryptor().doDecrypt(result.getAbsolutePath(), Const.class.getName(),
+                    "123456".toCharArray()), CipherSuite.name(suite));
+        }
+    }
+
+    private static byte[] encryptWithCode(File jar, String code) {
+        JarEncryptor encryptor = new JarEncryptor(jar.getAbsolutePath(), "123456".toCharArray());
+        encryptor.setPackages(Collections.singletonList("net.roseboy.classfinal"));
+        encryptor.setIncludeJars(new ArrayList<>());
+        encryptor.setExcludeClass(new ArrayList<>());
+        encryptor.setClassPath(new ArrayList<>());
+        encryptor.setCfgfiles(new ArrayList<>());
+        encryptor.setCode(code.toCharArray());
+        return JarDecryptor.readEncryptedFile(new File(encryptor.doEncryptJar()), Const.class.getName());
+    }
+
+    @Test
+    void testAgentFilesSelfContained() throws Exception {
+        //从premain入口开始，加密后jar中的classfinal类引用到的classfinal类都必须在CLASSFINAL_FILES中
+        List<String> shipped = Arrays.asList(Const.CLASSFINAL_FILES);
+        Deque<String> queue = new ArrayDeque<>();
+        Set<String> visited = new HashSet<>();
+        queue.add(CoreAgent.class.getName().replace('.', '/'));
+        while (!queue.isEmpty()) {
+            String name = queue.poll();
+            if (!visited.add(name)) {
+                continue;
+            }
+            assertTrue(shipped.contains(name.substring(name.lastIndexOf('/') + 1) + ".class"),
+                    "加密后的jar中缺少 " + name);
+            byte[] bytes;
+            try (InputStream in = Const.class.getClassLoader().getResourceAsStream(name + ".class")) {
+                assertNotNull(in, name);
+                bytes = IoUtils.toBytes(in);
+            }
+            ConstantPoolScanner scanner = ConstantPoolScanner.get();
+            assertTrue(scanner.reset(bytes));
+            for (int i = 1; i <= scanner.getParsed(); i++) {
+                if (scanner.tag(i) != ConstantPoolScanner.CONSTANT_Class) {
+                    continue;
+                }
+                String ref = scanner.getUtf8(ConstantPoolScanner.u2(bytes, scanner.offset(i) + 1));
+                ref = ref.replaceAll("^\\[+L|;$", "");
+                if (ref.startsWith("net/roseboy/classfinal/")) {
+                    queue.add(ref);
+                }
+            }
+        }
+    }
+
+    private static byte[] zip(Map<String, byte[]> entries, int method) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bos)) {
+            for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+                ZipEntry ze = new ZipEntry(e.getKey());
+                ze.setMethod(method);
+                if (method == ZipEntry.STORED) {
+                    ze.setSize(e.getValue().length);
+                    ze.setCrc(IoUtils.crc32(e.getValue()));
+                }
+                out.putNextEntry(ze);
+                out.write(e.getValue());
+                out.closeEntry();
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    private static Map<String, byte[]> unzip(byte[] zip) throws Exception {
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry e;
+            while ((e = in.getNextEntry()) != null) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                IoUtils.copy(in, bos);
+                entries.put(e.getName(), bos.toByteArray());
+            }
+        }
+        return entries;
+    }
+}
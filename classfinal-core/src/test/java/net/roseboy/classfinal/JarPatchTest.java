@@ -0,0 +1,96 @@
+package net.roseboy.classfinal;
+
+import net.roseboy.classfinal.util.IoUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JarPatch 单元测试
+ */
+class JarPatchTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testDiffAndApply() throws Exception {
+        Map<String, byte[]> v1 = new LinkedHashMap<>();
+        v1.put(entry(Assertions.class), bytes(Assertions.class));
+        v1.put(entry(Assumptions.class), bytes(Assumptions.class));
+        v1.put("old.txt", "old".getBytes("UTF-8"));
+        File oldJar = encrypt("v1", v1);
+
+        //修改一个加密的类，删除一个资源，新增一个资源
+        Map<String, byte[]> v2 = new LinkedHashMap<>(v1);
+        v2.put(entry(Assertions.class), bytes(Test.class));
+        v2.remove("old.txt");
+        v2.put("new.txt", "new".getBytes("UTF-8"));
+        File newJar = encrypt("v2", v2);
+
+        File patch = tempDir.resolve("app.patch").toFile();
+        JarPatch.Result result = JarPatch.diff(oldJar, newJar, patch);
+        //加密后的类、清空后的类和新增的资源
+        assertEquals(3, result.getChanged());
+        assertEquals(1, result.getRemoved());
+        assertTrue(result.getCopied() > 0);
+        assertTrue(result.getPatchSize() < newJar.length());
+
+        //补丁中记录的文件名
+        File deploy = tempDir.resolve("deploy").toFile();
+        deploy.mkdirs();
+        File base = new File(deploy, "app-encrypted.jar");
+        Files.copy(oldJar.toPath(), base.toPath());
+        File applied = JarPatch.apply(base, patch, null);
+        assertEquals(base.getAbsolutePath(), applied.getAbsolutePath());
+        assertArrayEquals(Files.readAllBytes(newJar.toPath()), Files.readAllBytes(applied.toPath()));
+
+        //旧版本不匹配
+        assertThrows(IllegalArgumentException.class, () -> JarPatch.apply(newJar, patch, null));
+        assertFalse(new File(newJar.getAbsolutePath() + ".tmp").exists());
+    }
+
+    private File encrypt(String dir, Map<String, byte[]> entries) throws Exception {
+        File jar = tempDir.resolve(dir + "/app.jar").toFile();
+        jar.getParentFile().mkdirs();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        JarEncryptor encryptor = new JarEncryptor(jar.getAbsolutePath(), "123456".toCharArray());
+        encryptor.setPackages(Arrays.asList(Assertions.class.getName(), Assumptions.class.getName()));
+        encryptor.setIncludeJars(new ArrayList<>());
+        encryptor.setExcludeClass(new ArrayList<>());
+        encryptor.setClassPath(new ArrayList<>());
+        encryptor.setCfgfiles(new ArrayList<>());
+        return new File(encryptor.doEncryptJar());
+    }
+
+    private static String entry(Class<?> c) {
+        return c.getName().replace('.', '/') + ".class";
+    }
+
+    private static byte[] bytes(Class<?> c) throws Exception {
+        try (InputStream in = c.getClassLoader().getResourceAsStream(entry(c))) {
+            return IoUtils.toBytes(in);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package net.roseboy.classfinal;
+
+import net.roseboy.classfinal.util.EncryptUtils;
+import net.roseboy.classfinal.util.IoUtils;
+import net.roseboy.classfinal.util.JarUtils;
+import net.roseboy.classfinal.util.MachineKeyTable;
+import net.roseboy.classfinal.util.StrUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JarRekey 单元测试
+ */
+class JarRekeyTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRekey() throws Exception {
+        File jar = encrypt("CODE1".toCharArray());
+        File target = tempDir.resolve("rekey.jar").toFile();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            JarRekey.Result result = JarRekey.rekey(jar, target, new JarRekey.Key("123456".toCharArray(), "CODE1".toCharArray()),
+                    new JarRekey.Key("abc".toCharArray(), "CODE2".toCharArray()), pool);
+            assertEquals(2, result.getEntries());
+            assertTrue(result.isPasswordChanged());
+            assertTrue(result.isCodeChanged());
+        } finally {
+            pool.shutdown();
+        }
+
+        //用新的密码和机器码解密
+        assertArrayEquals(bytes(Assertions.class), decrypt(target, Assertions.class.getName(), "abc", "CODE2"));
+        assertArrayEquals(bytes(Assumptions.class), decrypt(target, Assumptions.class.getName(), "abc", "CODE2"));
+        assertArrayEquals(StrUtils.toBytes(JarEncryptor.passHash("abc".toCharArray())), read(target, Const.CONFIG_PASSHASH));
+        assertNotNull(MachineKeyTable.unwrap(read(target, Const.CONFIG_KEYS), "CODE2".toCharArray()));
+        assertNull(MachineKeyTable.unwrap(read(target, Const.CONFIG_KEYS), "CODE1".toCharArray()));
+
+        //其他entry不变，顺序相同
+        try (ZipFile a = new ZipFile(jar); ZipFile b = new ZipFile(target)) {
+            assertEquals(names(a), names(b));
+            String stub = Assertions.class.getName().replace('.', '/') + ".class";
+            assertEquals(a.getEntry(stub).getCrc(), b.getEntry(stub).getCrc());
+        }
+    }
+
+    @Test
+    void testNoPassword() throws Exception {
+        File jar = encrypt(null);
+        //改为无密码模式，取消绑定
+        JarRekey.rekey(jar, jar, new JarRekey.Key("123456".toCharArray(), null),
+                new JarRekey.Key("#".toCharArray(), null), null);
+        byte[] pass = read(jar, Const.CONFIG_PASS);
+        assertNotNull(pass);
+        String password = new String(EncryptUtils.md5(StrUtils.toChars(pass)));
+        assertArrayEquals(bytes(Assertions.class), decrypt(jar, Assertions.class.getName(), password, null));
+
+        //从无密码模式改回指定密码，原密码从jar中读取
+        JarRekey.Result result = JarRekey.rekey(jar, jar, new JarRekey.Key(null, null),
+                new JarRekey.Key("abc".toCharArray(), null), null);
+        assertFalse(result.isCodeChanged());
+        assertNull(read(jar, Const.CONFIG_PASS));
+        assertArrayEquals(bytes(Assertions.class), decrypt(jar, Assertions.class.getName(), "abc", null));
+    }
+
+    @Test
+    void testAddMachine() throws Exception {
+        File jar = encrypt("CODE1".toCharArray());
+        File target = tempDir.resolve("rekey.jar").toFile();
+        //只增加机器时只重写密钥表
+        JarRekey.Result result = JarRekey.rekey(jar, target, new JarRekey.Key("123456".toCharArray(), "CODE1".toCharArray()),
+                new JarRekey.Key(null, "CODE1,CODE2".toCharArray()), null);
+        assertEquals(0, result.getEntries());
+        assertTrue(result.isCodeChanged());
+        assertArrayEquals(read(jar, Assertions.class.getName()), read(target, Assertions.class.getName()));
+        assertArrayEquals(bytes(Assertions.class), decrypt(target, Assertions.class.getName(), "123456", "CODE1"));
+        assertArrayEquals(bytes(Assertions.class), decrypt(target, Assertions.class.getName(), "123456", "CODE2"));
+
+        //去掉机器时重新生成内容密钥
+        result = JarRekey.rekey(target, target, new JarRekey.Key("123456".toCharArray(), "CODE2".toCharArray()),
+                new JarRekey.Key(null, "CODE2".toCharArray()), null);
+        assertEquals(2, result.getEntries());
+        assertNull(MachineKeyTable.unwrap(read(target, Const.CONFIG_KEYS), "CODE1".toCharArray()));
+        assertArrayEquals(bytes(Assertions.class), decrypt(target, Assertions.class.getName(), "123456", "CODE2"));
+    }
+
+    @Test
+    void testLegacyCode() throws Exception {
+        //旧版本逐个类用机器码加密的jar
+        File jar = tempDir.resolve("legacy.jar").toFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            String name = Assertions.class.getName();
+            byte[] data = EncryptUtils.en(bytes(Assertions.class), StrUtils.merger("123456".toCharArray(), name.toCharArray()),
+                    Const.ENCRYPT_TYPE);
+            data = EncryptUtils.en(data, StrUtils.merger(name.toCharArray(), "CODE1".toCharArray()), Const.ENCRYPT_TYPE);
+            put(out, Const.CONFIG_CODE, StrUtils.toBytes(EncryptUtils.md5("CODE1".toCharArray())));
+            put(out, Const.CONFIG_PASSHASH, StrUtils.toBytes(JarEncryptor.passHash("123456".toCharArray())));
+            put(out, name, data);
+        }
+        JarRekey.Result result = JarRekey.rekey(jar, jar, new JarRekey.Key("123456".toCharArray(), "CODE1".toCharArray()),
+                new JarRekey.Key(null, null), null);
+        assertFalse(result.isPasswordChanged());
+        assertFalse(result.isCodeChanged());
+        assertNull(read(jar, Const.CONFIG_CODE));
+        assertArrayEquals(bytes(Assertions.class), decrypt(jar, Assertions.class.getName(), "123456", "CODE1"));
+    }
+
+    @Test
+    void testWrongKey() throws Exception {
+        File jar = encrypt("CODE1".toCharArray());
+        File target = tempDir.resolve("rekey.jar").toFile();
+        assertThrows(IllegalArgumentException.class, () -> JarRekey.rekey(jar, target,
+                new JarRekey.Key("654321".toCharArray(), "CODE1".toCharArray()), new JarRekey.Key(null, null), null));
+        assertThrows(IllegalArgumentException.class, () -> JarRekey.rekey(jar, target,
+                new JarRekey.Key("123456".toCharArray(), "CODE2".toCharArray()), new JarRekey.Key(null, null), null));
+        assertFalse(target.exists());
+        assertFalse(new File(target.getAbsolutePath() + ".tmp").exists());
+    }
+
+    @Test
+    void testConfigFile() throws Exception {
+        //读取配置文件的 spring 类在 lib 下的 jar 中，加密配置文件时注入了写着密码的解密代码
+        byte[] resource = SpringCoreFixture.compile(tempDir);
+        File jar = tempDir.resolve("boot.jar").toFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry("BOOT-INF/classes/" + entry(Assertions.class)));
+            out.write(bytes(Assertions.class));
+            out.putNextEntry(new ZipEntry("BOOT-INF/classes/application.properties"));
+            out.write("a=1".getBytes(StandardCharsets.UTF_8));
+            out.putNextEntry(new ZipEntry("BOOT-INF/lib/spring-core.jar"));
+            out.write(SpringCoreFixture.jar(resource));
+            out.closeEntry();
+        }
+        JarEncryptor encryptor = new JarEncryptor(jar.getAbsolutePath(), "123456".toCharArray());
+        encryptor.setPackages(Collections.singletonList(Assertions.class.getName()));
+        encryptor.setIncludeJars(new ArrayList<>());
+        encryptor.setExcludeClass(new ArrayList<>());
+        encryptor.setClassPath(new ArrayList<>());
+        encryptor.setCfgfiles(Collections.singletonList("application.properties"));
+        File encrypted = new File(encryptor.doEncryptJar());
+        assertEquals("123456", SpringCoreFixture.injectedPassword(
+                decrypt(encrypted, SpringCoreFixture.CLASS_NAME, "123456", null)));
+
+        File target = tempDir.resolve("rekey.jar").toFile();
+        JarRekey.rekey(encrypted, target, new JarRekey.Key("123456".toCharArray(), null),
+                new JarRekey.Key("abc".toCharArray(), null), null);
+
+        //运行时用注入的密码解密配置文件
+        String injected = SpringCoreFixture.injectedPassword(decrypt(target, SpringCoreFixture.CLASS_NAME, "abc", null));
+        assertEquals("abc", injected);
+        assertEquals("a=1", new String(decrypt(target, "application.properties", injected, null), StandardCharsets.UTF_8));
+        assertArrayEquals(bytes(Assertions.class), decrypt(target, Assertions.class.getName(), "abc", null));
+
+        //jar中没有原来的类时不能更换密码
+        File noLib = tempDir.resolve("nolib.jar").toFile();
+        try (ZipFile zip = new ZipFile(target); ZipOutputStream out = new ZipOutputStream(new FileOutputStream(noLib))) {
+            for (ZipEntry e : Collections.list(zip.entries())) {
+                if (!e.getName().endsWith(".jar")) {
+                    out.putNextEntry(new ZipEntry(e.getName()));
+                    out.write(IoUtils.toBytes(zip.getInputStream(e)));
+                    out.closeEntry();
+                }
+            }
+        }
+        File noLibTarget = tempDir.resolve("nolib-rekey.jar").toFile();
+        assertThrows(IllegalStateException.class, () -> JarRekey.rekey(noLib, noLibTarget,
+                new JarRekey.Key("abc".toCharArray(), null), new JarRekey.Key("xyz".toCharArray(), null), null));
+        assertFalse(noLibTarget.exists());
+    }
+
+    private File encrypt(char[] code) throws Exception {
+        File jar = tempDir.resolve("app.jar").toFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            for (Class<?> c : Arrays.asList(Assertions.class, Assumptions.class)) {
+                out.putNextEntry(new ZipEntry(entry(c)));
+                out.write(bytes(c));
+                out.closeEntry();
+            }
+        }
+        JarEncryptor encryptor = new JarEncryptor(jar.getAbsolutePath(), "123456".toCharArray());
+        encryptor.setPackages(Arrays.asList(Assertions.class.getName(), Assumptions.class.getName()));
+        encryptor.setIncludeJars(new ArrayList<>());
+        encryptor.setExcludeClass(new ArrayList<>());
+        encryptor.setClassPath(new ArrayList<>());
+        encryptor.setCfgfiles(new ArrayList<>());
+        encryptor.setCode(code);
+        return new File(encryptor.doEncryptJar());
+    }
+
+    private static byte[] decrypt(File jar, String name, String password, String code) {
+        char[] pass = password.toCharArray();
+        if (code != null) {
+            pass = StrUtils.merger(pass, MachineKeyTable.unwrap(read(jar, Const.CONFIG_KEYS), code.toCharArray()));
+        }
+        return EncryptUtils.de(read(jar, name), StrUtils.merger(pass, name.toCharArray()), Const.ENCRYPT_TYPE);
+    }
+
+    private static void put(ZipOutputStream out, String name, byte[] bytes) throws Exception {
+        out.putNextEntry(new ZipEntry("META-INF/" + Const.FILE_NAME + "/" + name));
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+    private static byte[] read(File jar, String name) {
+        return JarUtils.getFileFromJar(jar, "META-INF/" + Const.FILE_NAME + "/" + name);
+    }
+
+    private static List<String> names(ZipFile zip) {
+        List<String> names = new ArrayList<>();
+        zip.stream().forEach(e -> names.add(e.getName()));
+        return names;
+    }
+
+    private static String entry(Class<?> c) {
+        return c.getName().replace('.', '/') + ".class";
+    }
+
+    private static byte[] bytes(Class<?> c) throws Exception {
+        try (InputStream in = c.getClassLoader().getResourceAsStream(entry(c))) {
+            return IoUtils.toBytes(in);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package net.roseboy.classfinal;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import net.roseboy.classfinal.util.IoUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.jar.JarInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JarRestore 单元测试
+ */
+class JarRestoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRestore() throws Exception {
+        File jar = tempDir.resolve("app.jar").toFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            put(out, "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\nMain-Class: a.Main\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            put(out, entry(Assertions.class), bytes(Assertions.class));
+            put(out, entry(Assumptions.class), bytes(Assumptions.class));
+        }
+        JarEncryptor encryptor = encryptor(jar, "CODE1".toCharArray());
+        encryptor.setCompressPayload(true);
+        File encrypted = new File(encryptor.doEncryptJar());
+
+        File target = tempDir.resolve("app-decrypted.jar").toFile();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        JarRestore.Result result;
+        try {
+            result = JarRestore.restore(encrypted, target, "123456".toCharArray(), "CODE1".toCharArray(), pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(2, result.getClasses());
+
+        //类和MANIFEST.MF与加密前相同，不包含加密后的数据和classfinal的代码
+        assertArrayEquals(bytes(Assertions.class), read(target, entry(Assertions.class)));
+        assertArrayEquals(bytes(Assumptions.class), read(target, entry(Assumptions.class)));
+        String manifest = new String(read(target, "META-INF/MANIFEST.MF"), StandardCharsets.UTF_8);
+        assertFalse(manifest.contains("Premain-Class"), manifest);
+        assertTrue(manifest.contains("Main-Class: a.Main"), manifest);
+        try (ZipFile zip = new ZipFile(target)) {
+            assertTrue(zip.stream().noneMatch(e -> e.getName().startsWith("META-INF/" + Const.FILE_NAME)
+                    || e.getName().startsWith("net/roseboy/")));
+        }
+    }
+
+    @Test
+    void testLibJar() throws Exception {
+        //能清空方法体的类
+        CtClass cc = ClassPool.getDefault().makeClass("com.demo.UserInfo");
+        cc.addMethod(CtNewMethod.make("public String name() { return \"bob\".toUpperCase(); }", cc));
+        byte[] userInfo = cc.toBytecode();
+        cc.detach();
+        ByteArrayOutputStream lib = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(lib)) {
+            put(out, "com/demo/UserInfo.class", userInfo);
+            put(out, "lib.txt", "lib".getBytes(StandardCharsets.UTF_8));
+        }
+        //-cfgfiles 向其中注入解密代码
+        byte[] resource = SpringCoreFixture.compile(tempDir.resolve("spring"));
+        byte[] springCore = SpringCoreFixture.jar(resource);
+        File jar = tempDir.resolve("boot.jar").toFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            put(out, "BOOT-INF/classes/" + entry(Assumptions.class), bytes(Assumptions.class));
+            put(out, "BOOT-INF/classes/application.properties", "a=1".getBytes(StandardCharsets.UTF_8));
+            put(out, "BOOT-INF/lib/dep.jar", lib.toByteArray());
+            put(out, "BOOT-INF/lib/other.jar", lib.toByteArray());
+            put(out, "BOOT-INF/lib/spring-core.jar", springCore);
+        }
+        JarEncryptor encryptor = encryptor(jar, null);
+        encryptor.setPackages(Arrays.asList("com.demo", Assumptions.class.getName()));
+        encryptor.setIncludeJars(Collections.singletonList("dep.jar"));
+        encryptor.setCfgfiles(Collections.singletonList("application.properties"));
+        File encrypted = new File(encryptor.doEncryptJar());
+
+        //lib中的类清空了方法体，注入解密代码的类加密保存，lib中的原类不变
+        byte[] stub = readNested(read(encrypted, "BOOT-INF/lib/dep.jar"), "com/demo/UserInfo.class");
+        assertFalse(Arrays.equals(userInfo, stub));
+        assertArrayEquals(resource, readNested(read(encrypted, "BOOT-INF/lib/spring-core.jar"), SpringCoreFixture.ENTRY));
+        try (ZipFile zip = new ZipFile(encrypted)) {
+            assertNotNull(zip.getEntry("META-INF/" + Const.FILE_NAME + "/" + SpringCoreFixture.CLASS_NAME));
+        }
+
+        File target = tempDir.resolve("boot-decrypted.jar").toFile();
+        JarRestore.Result result = JarRestore.restore(encrypted, target, "123456".toCharArray(), null, null);
+        assertEquals(1, result.getFiles());
+        assertEquals(1, result.getLibJars());
+        assertEquals(2, result.getClasses());
+
+        assertArrayEquals(bytes(Assumptions.class), read(target, "BOOT-INF/classes/" + entry(Assumptions.class)));
+        assertEquals("a=1", new String(read(target, "BOOT-INF/classes/application.properties"), StandardCharsets.UTF_8));
+        byte[] dep = read(target, "BOOT-INF/lib/dep.jar");
+        assertArrayEquals(userInfo, readNested(dep, "com/demo/UserInfo.class"));
+        assertArrayEquals("lib".getBytes(StandardCharsets.UTF_8), readNested(dep, "lib.txt"));
+        //没有加密的jar不变，注入解密代码的类还原成原类
+        assertArrayEquals(lib.toByteArray(), read(target, "BOOT-INF/lib/other.jar"));
+        assertArrayEquals(springCore, read(target, "BOOT-INF/lib/spring-core.jar"));
+    }
+
+    @Test
+    void testWar() throws Exception {
+        //war中加入lib的classfinal jar，classpath.idx中追加了一行
+        ByteArrayOutputStream agent = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(agent)) {
+            put(out, entry(CoreAgent.class), bytes(CoreAgent.class));
+        }
+        ByteArrayOutputStream lib = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(lib)) {
+            put(out, "lib.txt", "lib".getBytes(StandardCharsets.UTF_8));
+        }
+        String classpath = "- \"WEB-INF/lib/dep.jar\"\n";
+        File war = tempDir.resolve("app.war").toFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(war))) {
+            put(out, "WEB-INF/classes/" + entry(Assumptions.class), bytes(Assumptions.class));
+            put(out, "WEB-INF/lib/dep.jar", lib.toByteArray());
+            put(out, "WEB-INF/lib/classfinal-fatjar.jar", agent.toByteArray());
+            put(out, "WEB-INF/classpath.idx", (classpath + "- \"WEB-INF/lib/classfinal-fatjar.jar\"\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        JarEncryptor encryptor = encryptor(war, null);
+        encryptor.setPackages(Collections.singletonList(Assumptions.class.getName()));
+        File encrypted = new File(encryptor.doEncryptJar());
+
+        File target = tempDir.resolve("app-decrypted.war").toFile();
+        JarRestore.Result result = JarRestore.restore(encrypted, target, "123456".toCharArray(), null, null);
+        assertEquals(1, result.getClasses());
+        assertArrayEquals(bytes(Assumptions.class), read(target, "WEB-INF/classes/" + entry(Assumptions.class)));
+        assertArrayEquals(lib.toByteArray(), read(target, "WEB-INF/lib/dep.jar"));
+        assertEquals(classpath, new String(read(target, "WEB-INF/classpath.idx"), StandardCharsets.UTF_8));
+        //classfinal的jar和复制到classes下的classfinal代码都已删除
+        try (ZipFile zip = new ZipFile(target)) {
+            assertNull(zip.getEntry("WEB-INF/lib/classfinal-fatjar.jar"));
+            assertTrue(zip.stream().noneMatch(e -> e.getName().startsWith("META-INF/" + Const.FILE_NAME)
+                    || e.getName().contains("net/roseboy/")), () -> Collections.list(zip.entries()).toString());
+        }
+    }
+
+    @Test
+    void testWrongPassword() throws Exception {
+        File jar = tempDir.resolve("app.jar").toFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            put(out, entry(Assertions.class), bytes(Assertions.class));
+        }
+        File encrypted = new File(encryptor(jar, "CODE1".toCharArray()).doEncryptJar());
+        File target = tempDir.resolve("app-decrypted.jar").toFile();
+        assertThrows(IllegalArgumentException.class, () -> JarRestore.restore(encrypted, target,
+                "654321".toCharArray(), "CODE1".toCharArray(), null));
+        assertThrows(IllegalArgumentException.class, () -> JarRestore.restore(encrypted, target,
+                "123456".toCharArray(), null, null));
+        assertFalse(target.exists());
+    }
+
+    private static JarEncryptor encryptor(File jar, char[] code) {
+        JarEncryptor encryptor = new JarEncryptor(jar.getAbsolutePath(), "123456".toCharArray());
+        encryptor.setPackages(Arrays.asList(Assertions.class.getName(), Assumptions.class.getName()));
+        encryptor.setIncludeJars(new ArrayList<>());
+        encryptor.setExcludeClass(new ArrayList<>());
+        encryptor.setClassPath(new ArrayList<>());
+        encryptor.setCfgfiles(new ArrayList<>());
+        encryptor.setCode(code);
+        return encryptor;
+    }
+
+    private static void put(ZipOutputStream out, String name, byte[] bytes) throws Exception {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+    private static byte[] read(File jar, String name) throws Exception {
+        try (ZipFile zip = new ZipFile(jar)) {
+            ZipEntry entry = zip.getEntry(name);
+            assertNotNull(entry, name);
+            return IoUtils.toBytes(zip.getInputStream(entry));
+        }
+    }
+
+    private static byte[] readNested(byte[] jar, String name) throws Exception {
+        try (JarInputStream in = new JarInputStream(new ByteArrayInputStream(jar))) {
+            for (ZipEntry entry; (entry = in.getNextEntry()) != null; ) {
+                if (entry.getName().equals(name)) {
+                    return IoUtils.toBytes(in);
+                }
+            }
+        }
+        return fail(name);
+    }
+
+    private static String entry(Class<?> c) {
+        return c.getName().replace('.', '/') + ".class";
+    }
+
+    private static byte[] bytes(Class<?> c) throws Exception {
+        try (InputStream in = c.getClassLoader().getResourceAsStream(entry(c))) {
+            return IoUtils.toBytes(in);
+        }
+    }
+}
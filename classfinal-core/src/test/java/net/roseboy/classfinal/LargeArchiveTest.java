@@ -0,0 +1,145 @@
+package net.roseboy.classfinal;
+
+import net.roseboy.classfinal.util.StrUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 超大jar加密测试：在512M堆内存中加密一个5G的jar（含超过4G的entry）
+ * <p>
+ * 需要约20G磁盘空间，默认跳过，运行方式：
+ * mvn test -Dtest=LargeArchiveTest -Dclassfinal.largeTest=true
+ */
+class LargeArchiveTest {
+    //超过4G的模型文件
+    private static final long MODEL_SIZE = 4500L * 1024 * 1024;
+    //可压缩的数据文件
+    private static final long DATA_SIZE = 600L * 1024 * 1024;
+
+    @Test
+    void testEncryptFiveGigabyteJarIn512mHeap(@TempDir Path tempDir) throws Exception {
+        assumeTrue(Boolean.getBoolean("classfinal.largeTest"));
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> cmd = new ArrayList<>();
+        Collections.addAll(cmd, java, "-Xmx512m", "-cp", System.getProperty("java.class.path"),
+                LargeArchiveTest.class.getName(), tempDir.toAbsolutePath().toString());
+        Process process = new ProcessBuilder(cmd).inheritIO().start();
+        assertEquals(0, process.waitFor());
+    }
+
+    /**
+     * 在子进程中执行，失败时抛出异常，退出码不为0
+     *
+     * @param args 工作目录
+     * @throws Exception Exception
+     */
+    public static void main(String[] args) throws Exception {
+        File dir = new File(args[0]);
+        File jar = new File(dir, "model.jar");
+        long[] crcs = createJar(jar);
+
+        long t1 = System.currentTimeMillis();
+        JarEncryptor encryptor = new JarEncryptor(jar.getAbsolutePath(), "123456".toCharArray());
+        encryptor.setPackages(Collections.singletonList(StrUtils.class.getName()));
+        encryptor.setIncludeJars(new ArrayList<>());
+        encryptor.setExcludeClass(new ArrayList<>());
+        encryptor.setClassPath(new ArrayList<>());
+        encryptor.setCfgfiles(new ArrayList<>());
+        encryptor.setThreads(2);
+        File result = new File(encryptor.doEncryptJar());
+        long t2 = System.currentTimeMillis();
+        System.out.printf("encrypted %.1f GB in %.1f s, max heap %d MB, peak heap %d MB%n",
+                jar.length() / 1073741824d, (t2 - t1) / 1000d, Runtime.getRuntime().maxMemory() >> 20,
+                encryptor.getPeakHeapUsed() >> 20);
+        jar.delete();
+
+        try (ZipFile zip = new ZipFile(result)) {
+            check(zip, "model.bin", MODEL_SIZE, crcs[0]);
+            check(zip, "data/weights.txt", DATA_SIZE, crcs[1]);
+            if (zip.getEntry("META-INF/" + Const.FILE_NAME + "/" + StrUtils.class.getName()) == null) {
+                throw new IllegalStateException("class not encrypted");
+            }
+        }
+    }
+
+    private static void check(ZipFile zip, String name, long size, long crc) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        if (entry == null || entry.getSize() != size) {
+            throw new IllegalStateException("bad entry " + name + ": " + (entry == null ? null : entry.getSize()));
+        }
+        CRC32 actual = new CRC32();
+        byte[] buffer = new byte[1 << 20];
+        try (InputStream in = zip.getInputStream(entry)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                actual.update(buffer, 0, n);
+            }
+        }
+        if (actual.getValue() != crc) {
+            throw new IllegalStateException("bad crc " + name);
+        }
+    }
+
+    /**
+     * 生成jar：一个class、一个不可压缩的大文件(STORED)、一个可压缩的文件
+     */
+    private static long[] createJar(File jar) throws IOException {
+        long[] crcs = new long[2];
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(jar), 1 << 20))) {
+            String cls = StrUtils.class.getName().replace('.', '/') + ".class";
+            out.putNextEntry(new ZipEntry(cls));
+            try (InputStream in = StrUtils.class.getClassLoader().getResourceAsStream(cls)) {
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    out.write(buf, 0, n);
+                }
+            }
+            out.closeEntry();
+
+            //不可压缩的数据用level 0写入，和模型文件一样
+            out.setLevel(Deflater.NO_COMPRESSION);
+            out.putNextEntry(new ZipEntry("model.bin"));
+            crcs[0] = fill(out, MODEL_SIZE, false);
+            out.closeEntry();
+
+            out.setLevel(Deflater.DEFAULT_COMPRESSION);
+            out.putNextEntry(new ZipEntry("data/weights.txt"));
+            crcs[1] = fill(out, DATA_SIZE, true);
+            out.closeEntry();
+        }
+        return crcs;
+    }
+
+    private static long fill(OutputStream out, long size, boolean text) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 20];
+        long seed = 0x9E3779B97F4A7C15L;
+        for (long written = 0; written < size; written += buffer.length) {
+            for (int i = 0; i < buffer.length; i += 8) {
+                seed ^= seed << 13;
+                seed ^= seed >>> 7;
+                seed ^= seed << 17;
+                for (int j = 0; j < 8; j++) {
+                    int b = (int) (seed >>> (j * 8));
+                    buffer[i + j] = text ? (byte) ('a' + (b & 3)) : (byte) b;
+                }
+            }
+            int n = (int) Math.min(buffer.length, size - written);
+            crc.update(buffer, 0, n);
+            out.write(buffer, 0, n);
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,160 @@
+package net.roseboy.classfinal;
+
+import net.roseboy.classfinal.util.ArchiveUtils;
+import net.roseboy.classfinal.util.IoUtils;
+import net.roseboy.classfinal.util.StrUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.TimeZone;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 可重现构建测试
+ */
+class ReproducibleBuildTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testTwoRunsAreBitIdentical() throws Exception {
+        //dos时间精确到2秒
+        long time = ArchiveUtils.parseTimestamp("2024-01-02T03:04:06Z");
+        File input = jar();
+        TimeZone zone = TimeZone.getDefault();
+        File first;
+        File second;
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+            first = encrypt(input, "a", 1, time);
+            //不同的目录、线程数和时区
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Shanghai"));
+            second = encrypt(input, "b", 3, time);
+        } finally {
+            TimeZone.setDefault(zone);
+        }
+        assertArrayEquals(Files.readAllBytes(first.toPath()), Files.readAllBytes(second.toPath()));
+
+        //无密码模式的密码也是确定的
+        try (ZipFile zip = new ZipFile(first)) {
+            assertNotNull(zip.getEntry("META-INF/" + Const.FILE_NAME + "/" + Const.CONFIG_PASS));
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                assertEquals(time, entry.getTime() + zone(entry.getTime()), entry.getName());
+            }
+        }
+
+        //时间不同，输出不同
+        File third = encrypt(input, "c", 1, time + 2000);
+        assertFalse(Arrays.equals(Files.readAllBytes(first.toPath()), Files.readAllBytes(third.toPath())));
+    }
+
+    @Test
+    void testPublicKey() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        String publicKey = Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded());
+        String privateKey = Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded());
+        long time = ArchiveUtils.parseTimestamp("2024-01-02T03:04:06Z");
+        File input = jar();
+
+        //公钥加密的填充也是确定的，Envelope相同
+        File first = encrypt(input, "a", 1, time, publicKey);
+        File second = encrypt(input, "b", 3, time, publicKey);
+        assertArrayEquals(Files.readAllBytes(first.toPath()), Files.readAllBytes(second.toPath()));
+        assertArrayEquals(JarDecryptor.openEnvelope(first, privateKey), JarDecryptor.openEnvelope(second, privateKey));
+        assertArrayEquals(bytes(StrUtils.class), new JarDecryptor().doDecrypt(first.getAbsolutePath(),
+                StrUtils.class.getName(), JarDecryptor.openEnvelope(first, privateKey)));
+
+        //不是可重现构建时每次的内容密钥不同
+        File third = encrypt(input, "c", 1, -1, publicKey);
+        assertFalse(Arrays.equals(JarDecryptor.readEncryptedFile(first, Const.CONFIG_ENVELOPE),
+                JarDecryptor.readEncryptedFile(third, Const.CONFIG_ENVELOPE)));
+    }
+
+    @Test
+    void testParseTimestamp() {
+        assertEquals(1704164645000L, ArchiveUtils.parseTimestamp("1704164645"));
+        assertEquals(1704164645000L, ArchiveUtils.parseTimestamp("2024-01-02T03:04:05Z"));
+        assertEquals(1704164645000L, ArchiveUtils.parseTimestamp("2024-01-02T11:04:05+08:00"));
+        if (System.getenv("SOURCE_DATE_EPOCH") == null) {
+            assertEquals(ArchiveUtils.REPRODUCIBLE_TIME, ArchiveUtils.parseTimestamp(null));
+            assertEquals(ArchiveUtils.REPRODUCIBLE_TIME, ArchiveUtils.parseTimestamp("a"));
+        }
+        assertThrows(IllegalArgumentException.class, () -> ArchiveUtils.parseTimestamp("yesterday"));
+    }
+
+    /**
+     * zip中的dos时间没有时区，按UTC写入，按本地时区读出
+     */
+    private static long zone(long time) {
+        return TimeZone.getDefault().getOffset(time);
+    }
+
+    private static byte[] bytes(Class<?> c) throws Exception {
+        try (InputStream in = c.getClassLoader().getResourceAsStream(c.getName().replace('.', '/') + ".class")) {
+            return IoUtils.toBytes(in);
+        }
+    }
+
+    private File jar() throws Exception {
+        File jar = tempDir.resolve("app.jar").toFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            for (Class<?> c : new Class<?>[]{StrUtils.class, IoUtils.class, Const.class}) {
+                String entry = c.getName().replace('.', '/') + ".class";
+                ZipEntry ze = new ZipEntry(entry);
+                ze.setTime(1500000000000L);
+                out.putNextEntry(ze);
+                try (InputStream in = c.getClassLoader().getResourceAsStream(entry)) {
+                    byte[] buf = new byte[8192];
+                    int n;
+                    while ((n = in.read(buf)) > 0) {
+                        out.write(buf, 0, n);
+                    }
+                }
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private File encrypt(File input, String dir, int threads, long time) throws Exception {
+        return encrypt(input, dir, threads, time, null);
+    }
+
+    private File encrypt(File input, String dir, int threads, long time, String publicKey) throws Exception {
+        File jar = tempDir.resolve(dir + "/app.jar").toFile();
+        jar.getParentFile().mkdirs();
+        Files.copy(input.toPath(), jar.toPath());
+        JarEncryptor encryptor = new JarEncryptor(jar.getAbsolutePath(),
+                publicKey == null ? "#".toCharArray() : new char[0]);
+        encryptor.setPublicKey(publicKey);
+        encryptor.setPackages(Arrays.asList(StrUtils.class.getName(), IoUtils.class.getName()));
+        encryptor.setIncludeJars(new ArrayList<>());
+        encryptor.setExcludeClass(Collections.emptyList());
+        encryptor.setClassPath(new ArrayList<>());
+        encryptor.setCfgfiles(new ArrayList<>());
+        encryptor.setThreads(threads);
+        encryptor.setOutputTimestamp(time);
+        return new File(encryptor.doEncryptJar());
+    }
+}
@@ -0,0 +1,108 @@
+package net.roseboy.classfinal;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.bytecode.CodeIterator;
+import javassist.bytecode.Opcode;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 测试用的 spring-core：只有读取配置文件的 ClassPathResource，带行号，加密 -cfgfiles 时会注入解密代码
+ */
+final class SpringCoreFixture {
+    static final String CLASS_NAME = "org.springframework.core.io.ClassPathResource";
+    static final String ENTRY = CLASS_NAME.replace('.', '/') + ".class";
+
+    private static final String SOURCE = "package org.springframework.core.io;\n"
+            + "public class ClassPathResource {\n"
+            + "    private final String path;\n"
+            + "    public ClassPathResource(String path) {\n"
+            + "        this.path = path;\n"
+            + "    }\n"
+            + "    public java.io.InputStream getInputStream() throws java.io.IOException {\n"
+            + "        java.io.InputStream is = getClass().getClassLoader().getResourceAsStream(path);\n"
+            + "        if (is == null) {\n"
+            + "            throw new java.io.FileNotFoundException(path);\n"
+            + "        }\n"
+            + "        return is;\n"
+            + "    }\n"
+            + "}\n";
+
+    private SpringCoreFixture() {
+    }
+
+    /**
+     * 编译 ClassPathResource
+     *
+     * @param dir 临时目录
+     * @return class字节码
+     */
+    static byte[] compile(Path dir) throws Exception {
+        File src = dir.resolve("src/org/springframework/core/io/ClassPathResource.java").toFile();
+        src.getParentFile().mkdirs();
+        Files.write(src.toPath(), SOURCE.getBytes(StandardCharsets.UTF_8));
+        File out = dir.resolve("out").toFile();
+        out.mkdirs();
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        int code = compiler.run(null, null, null, "-g", "-source", "8", "-target", "8", "-nowarn",
+                "-d", out.getAbsolutePath(), src.getAbsolutePath());
+        assertEquals(0, code);
+        return Files.readAllBytes(new File(out, ENTRY).toPath());
+    }
+
+    /**
+     * 打包成 spring-core.jar
+     *
+     * @param classBytes ClassPathResource的字节码
+     * @return jar的字节
+     */
+    static byte[] jar(byte[] classBytes) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bos)) {
+            out.putNextEntry(new ZipEntry(ENTRY));
+            out.write(classBytes);
+            out.closeEntry();
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * 取出注入的代码中写的密码：char[] c={...}，按 castore 前压入的值还原
+     *
+     * @param classBytes 注入后的字节码
+     * @return 密码
+     */
+    static String injectedPassword(byte[] classBytes) throws Exception {
+        CtClass cc = new ClassPool(true).makeClass(new ByteArrayInputStream(classBytes));
+        CodeIterator it = cc.getDeclaredMethod("getInputStream").getMethodInfo().getCodeAttribute().iterator();
+        StringBuilder password = new StringBuilder();
+        int last = 0;
+        while (it.hasNext()) {
+            int i = it.next();
+            int op = it.byteAt(i);
+            if (op >= Opcode.ICONST_0 && op <= Opcode.ICONST_5) {
+                last = op - Opcode.ICONST_0;
+            } else if (op == Opcode.BIPUSH) {
+                last = it.signedByteAt(i + 1);
+            } else if (op == Opcode.SIPUSH) {
+                last = it.s16bitAt(i + 1);
+            } else if (op == Opcode.CASTORE) {
+                password.append((char) last);
+            }
+        }
+        cc.detach();
+        return password.toString();
+    }
+}
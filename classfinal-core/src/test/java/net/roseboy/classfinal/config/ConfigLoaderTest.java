@@ -167,6 +167,29 @@ public class ConfigLoaderTest {
         assertEquals("com.example.debug", config.getInput().getExclude()[1]);
     }
     
+    @Test
+    public void testLoadYamlWithMinify() throws IOException {
+        String yaml = "input:\n" +
+                "  file: app.jar\n" +
+                "encryption:\n" +
+                "  password: test123\n" +
+                "minify:\n" +
+                "  enabled: true\n" +
+                "  include:\n" +
+                "    - templates/**\n" +
+                "    - .css\n" +
+                "  exclude:\n" +
+                "    - .min.css\n";
+        
+        Files.write(Paths.get(testConfigFile), yaml.getBytes(StandardCharsets.UTF_8));
+        
+        ClassFinalConfig config = ConfigLoader.load(testConfigFile);
+        
+        assertTrue(config.getMinify().isEnabled());
+        assertArrayEquals(new String[]{"templates/**", ".css"}, config.getMinify().getInclude());
+        assertArrayEquals(new String[]{".min.css"}, config.getMinify().getExclude());
+    }
+    
     @Test
     public void testLoadYamlWithAdvancedConfig() throws IOException {
         // 测试高级配置
@@ -182,7 +205,10 @@ public class ConfigLoaderTest {
                 "  skipConfirmation: true\n" +
                 "  threads: 4\n" +
                 "  incremental: true\n" +
-                "  cacheFile: .classfinal-cache\n";
+                "  cacheFile: .classfinal-cache\n" +
+                "  stripStub: lines,source\n" +
+                "  stripPayload: all\n" +
+                "  compressPayload: true\n";
         
         Files.write(Paths.get(testConfigFile), yaml.getBytes(StandardCharsets.UTF_8));
         
@@ -194,6 +220,9 @@ public class ConfigLoaderTest {
         assertEquals(4, config.getAdvanced().getThreads());
         assertTrue(config.getAdvanced().isIncremental());
         assertEquals(".classfinal-cache", config.getAdvanced().getCacheFile());
+        assertEquals("lines,source", config.getAdvanced().getStripStub());
+        assertEquals("all", config.getAdvanced().getStripPayload());
+        assertTrue(config.getAdvanced().isCompressPayload());
         
         assertNotNull(config.getOutput());
         assertTrue(config.getOutput().isOverwrite());
@@ -216,7 +245,50 @@ public class ConfigLoaderTest {
         assertEquals("/tmp/password.txt", config.getEncryption().getPasswordFile());
         assertTrue(config.getEncryption().isDeletePasswordFile());
     }
-    
+
+    @Test
+    public void testLoadYamlWithMachineCodes() throws IOException {
+        // 测试绑定多台机器
+        String yaml = "input:\n" +
+                "  file: app.jar\n" +
+                "encryption:\n" +
+                "  password: test123\n" +
+                "  mode: machine-binding\n" +
+                "  machineCode:\n" +
+                "    - CODE1\n" +
+                "    - CODE2\n";
+
+        Files.write(Paths.get(testConfigFile), yaml.getBytes(StandardCharsets.UTF_8));
+
+        ClassFinalConfig config = ConfigLoader.load(testConfigFile);
+
+        assertEquals("CODE1,CODE2", config.getEncryption().getMachineCode());
+    }
+
+    @Test
+    public void testLoadYamlWithPublicKey() throws IOException {
+        // 测试公钥模式配置
+        String yaml = "input:\n" +
+                "  file: app.jar\n" +
+                "  packages:\n" +
+                "    - com.example\n" +
+                "encryption:\n" +
+                "  mode: public-key\n" +
+                "  publicKeyFile: /tmp/public.pem\n";
+
+        Files.write(Paths.get(testConfigFile), yaml.getBytes(StandardCharsets.UTF_8));
+
+        ClassFinalConfig config = ConfigLoader.load(testConfigFile);
+
+        assertEquals("public-key", config.getEncryption().getMode());
+        assertEquals("/tmp/public.pem", config.getEncryption().getPublicKeyFile());
+        config.validate();
+
+        // 公钥模式必须指定公钥文件
+        config.getEncryption().setPublicKeyFile(null);
+        assertThrows(IllegalArgumentException.class, config::validate);
+    }
+
     @Test
     public void testLoadNonExistentFile() {
         assertThrows(FileNotFoundException.class, () -> {
@@ -310,4 +382,77 @@ public class ConfigLoaderTest {
         assertEquals("INFO", config.getAdvanced().getLogLevel());
         assertEquals(1, config.getAdvanced().getThreads());
     }
+
+    @Test
+    public void testLoadBatch() throws IOException {
+        testConfigFile = "/tmp/test-batch-" + System.currentTimeMillis() + ".yml";
+        String yaml = "batch:\n" +
+                "  parallel: 2\n" +
+                "  threads: 4\n" +
+                "  memory: 512\n" +
+                "  retries: 1\n" +
+                "defaults:\n" +
+                "  input:\n" +
+                "    packages:\n" +
+                "      - com.example\n" +
+                "  encryption:\n" +
+                "    password: secret\n" +
+                "  advanced:\n" +
+                "    compression: default=6\n" +
+                "jobs:\n" +
+                "  web:\n" +
+                "    input:\n" +
+                "      file: web.war\n" +
+                "      classpath:\n" +
+                "        - /opt/tomcat/lib\n" +
+                "  app:\n" +
+                "    input:\n" +
+                "      file: app.jar\n" +
+                "      packages:\n" +
+                "        - com.app\n" +
+                "        - com.common\n" +
+                "    encryption:\n" +
+                "      mode: nopassword\n";
+
+        Files.write(Paths.get(testConfigFile), yaml.getBytes(StandardCharsets.UTF_8));
+
+        BatchConfig batch = ConfigLoader.loadBatch(testConfigFile);
+        batch.validate();
+        assertEquals(2, batch.getParallel());
+        assertEquals(4, batch.getThreads());
+        assertEquals(512, batch.getMemory());
+        assertEquals(1, batch.getRetries());
+
+        // 任务按配置文件中的顺序
+        assertEquals(2, batch.getJobs().size());
+        BatchConfig.Job web = batch.getJobs().get(0);
+        assertEquals("web", web.getName());
+        assertEquals("web.war", web.getConfig().getInput().getFile());
+        assertArrayEquals(new String[]{"com.example"}, web.getConfig().getInput().getPackages());
+        assertArrayEquals(new String[]{"/opt/tomcat/lib"}, web.getConfig().getInput().getClasspath());
+        assertEquals("secret", web.getConfig().getEncryption().getPassword());
+        assertEquals("default=6", web.getConfig().getAdvanced().getCompression());
+
+        // 任务的配置覆盖默认配置
+        BatchConfig.Job app = batch.getJobs().get(1);
+        assertEquals("app", app.getName());
+        assertArrayEquals(new String[]{"com.app", "com.common"}, app.getConfig().getInput().getPackages());
+        assertEquals("nopassword", app.getConfig().getEncryption().getMode());
+        assertEquals("secret", app.getConfig().getEncryption().getPassword());
+    }
+
+    @Test
+    public void testLoadBatchValidate() throws IOException {
+        testConfigFile = "/tmp/test-batch-" + System.currentTimeMillis() + ".yml";
+        String yaml = "jobs:\n" +
+                "  app:\n" +
+                "    input:\n" +
+                "      file: app.jar\n";
+
+        Files.write(Paths.get(testConfigFile), yaml.getBytes(StandardCharsets.UTF_8));
+
+        BatchConfig batch = ConfigLoader.loadBatch(testConfigFile);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, batch::validate);
+        assertTrue(e.getMessage().startsWith("jobs.app:"));
+    }
 }
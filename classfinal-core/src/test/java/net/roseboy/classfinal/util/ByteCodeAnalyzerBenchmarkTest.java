@@ -0,0 +1,146 @@
+package net.roseboy.classfinal.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Lambda检测性能对比：旧的DataInputStream实现 vs ConstantPoolScanner
+ * <p>
+ * 默认跳过，运行方式：
+ * mvn test -Dtest=ByteCodeAnalyzerBenchmarkTest -Dclassfinal.benchmark=true [-Dclassfinal.benchmark.jar=/path/app.jar]
+ */
+class ByteCodeAnalyzerBenchmarkTest {
+    private static final String[] JDK_CLASSES = {"java/lang/String", "java/lang/Object", "java/util/HashMap",
+            "java/util/ArrayList", "java/util/concurrent/ConcurrentHashMap", "java/util/stream/Collectors",
+            "java/util/Optional", "java/lang/Integer", "java/util/regex/Pattern", "java/io/File",
+            "java/util/zip/ZipFile", "java/util/Collections", "java/util/Arrays", "java/lang/Thread"};
+
+    @Test
+    void benchmark() throws Exception {
+        assumeTrue(Boolean.getBoolean("classfinal.benchmark"));
+
+        List<byte[]> classes = loadClasses(System.getProperty("classfinal.benchmark.jar"));
+        long bytes = 0;
+        for (byte[] c : classes) {
+            bytes += c.length;
+        }
+        //结果必须一致
+        for (byte[] c : classes) {
+            assertEquals(legacyContainsLambda(c), ByteCodeAnalyzer.containsLambda(c));
+        }
+
+        int repeat = Math.max(1, 1000000 / classes.size());
+        for (int round = 0; round < 5; round++) {
+            int hits = 0;
+            long t1 = System.nanoTime();
+            for (int r = 0; r < repeat; r++) {
+                for (byte[] c : classes) {
+                    hits += legacyContainsLambda(c) ? 1 : 0;
+                }
+            }
+            long t2 = System.nanoTime();
+            for (int r = 0; r < repeat; r++) {
+                for (byte[] c : classes) {
+                    hits -= ByteCodeAnalyzer.containsLambda(c) ? 1 : 0;
+                }
+            }
+            long t3 = System.nanoTime();
+            long total = (long) repeat * classes.size();
+            System.out.printf("round %d: %d classes, %.1f MB | legacy %.0f ms (%.0f classes/s) | scanner %.0f ms (%.0f classes/s) | diff %d%n",
+                    round, total, bytes * repeat / 1048576d,
+                    (t2 - t1) / 1e6, total / ((t2 - t1) / 1e9),
+                    (t3 - t2) / 1e6, total / ((t3 - t2) / 1e9), hits);
+        }
+    }
+
+    private static List<byte[]> loadClasses(String jarPath) throws IOException {
+        List<byte[]> classes = new ArrayList<>();
+        if (jarPath != null) {
+            try (ZipFile zip = new ZipFile(jarPath)) {
+                for (ZipEntry entry : Collections.list(zip.entries())) {
+                    if (entry.getName().endsWith(".class")) {
+                        classes.add(IoUtils.toBytes(zip.getInputStream(entry)));
+                    }
+                }
+            }
+            return classes;
+        }
+        for (String name : JDK_CLASSES) {
+            try (InputStream in = ClassLoader.getSystemResourceAsStream(name + ".class")) {
+                if (in != null) {
+                    classes.add(IoUtils.toBytes(in));
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * 旧实现：DataInputStream逐项读取，每个Utf8常量创建String，遇到未知标签返回false
+     */
+    private static boolean legacyContainsLambda(byte[] classBytes) {
+        if (classBytes == null || classBytes.length < 10) {
+            return false;
+        }
+        try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(classBytes))) {
+            if (dis.readInt() != 0xCAFEBABE) {
+                return false;
+            }
+            dis.skipBytes(4);
+            int constantPoolCount = dis.readUnsignedShort();
+            for (int i = 1; i < constantPoolCount; i++) {
+                int tag = dis.readUnsignedByte();
+                switch (tag) {
+                    case 1:
+                        byte[] bytes = new byte[dis.readUnsignedShort()];
+                        dis.readFully(bytes);
+                        String str = new String(bytes, "UTF-8");
+                        if (str.startsWith("lambda$") || str.equals("BootstrapMethods")) {
+                            return true;
+                        }
+                        break;
+                    case 3:
+                    case 4:
+                    case 9:
+                    case 10:
+                    case 11:
+                    case 12:
+                        dis.skipBytes(4);
+                        break;
+                    case 5:
+                    case 6:
+                        dis.skipBytes(8);
+                        i++;
+                        break;
+                    case 7:
+                    case 8:
+                    case 16:
+                        dis.skipBytes(2);
+                        break;
+                    case 15:
+                        dis.skipBytes(3);
+                        break;
+                    case 18:
+                        return true;
+                    default:
+                        return false;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
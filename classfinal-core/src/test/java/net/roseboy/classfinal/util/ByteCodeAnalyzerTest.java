@@ -60,6 +60,20 @@ class ByteCodeAnalyzerTest {
         assertTrue(ByteCodeAnalyzer.containsLambda(classWithInvokeDynamic));
     }
 
+    @Test
+    void testContainsLambda_afterDynamicConstant() {
+        // Dynamic(tag=17)之后的BootstrapMethods也能检测到
+        byte[] bytes = new byte[]{
+            (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE,
+            0x00, 0x00,
+            0x00, 0x37,
+            0x00, 0x03,
+            0x11, 0x00, 0x00, 0x00, 0x00,                      // #1 Dynamic
+            0x01, 0x00, 0x10, 'B', 'o', 'o', 't', 's', 't', 'r', 'a', 'p', 'M', 'e', 't', 'h', 'o', 'd', 's',
+        };
+        assertTrue(ByteCodeAnalyzer.containsLambda(bytes));
+    }
+
     @Test
     void testContainsLambda_withFile(@TempDir Path tempDir) throws Exception {
         // 测试从文件读取
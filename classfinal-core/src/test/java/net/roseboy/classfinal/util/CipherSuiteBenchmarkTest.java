@@ -0,0 +1,83 @@
+package net.roseboy.classfinal.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 各加密算法套件加密、解密的耗时：旧版本 AES/ECB、AES/CTR、AES/GCM，按类（小数据）和 1 MB 数据分别统计
+ * <p>
+ * 预热后取多轮结果，默认跳过，运行方式（默认使用 javassist 的jar）：
+ * mvn test -Dtest=CipherSuiteBenchmarkTest -Dclassfinal.benchmark=true [-Dclassfinal.benchmark.jar=/path/app.jar]
+ */
+class CipherSuiteBenchmarkTest {
+    private static final int[] SUITES = {CipherSuite.ECB, CipherSuite.CTR, CipherSuite.GCM};
+
+    @Test
+    void benchmark() throws Exception {
+        assumeTrue(Boolean.getBoolean("classfinal.benchmark"));
+
+        String jar = System.getProperty("classfinal.benchmark.jar",
+                new File(javassist.ClassPool.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath());
+        List<byte[]> classes = loadClasses(jar);
+        long plain = classes.stream().mapToLong(c -> c.length).sum();
+        byte[] large = new byte[1024 * 1024];
+        new Random(1).nextBytes(large);
+        char[] pass = "123456com.example.Main".toCharArray();
+        System.out.printf("%s: %d classes, %d bytes, java %s%n", jar, classes.size(), plain,
+                System.getProperty("java.version"));
+
+        int repeat = Math.max(1, 100000 / classes.size());
+        for (int round = 0; round < 5; round++) {
+            StringBuilder line = new StringBuilder("round " + round + ":");
+            for (int suite : SUITES) {
+                List<byte[]> encrypted = new ArrayList<>(classes.size());
+                long a = System.nanoTime();
+                for (byte[] c : classes) {
+                    encrypted.add(EncryptUtils.en(c, pass, suite));
+                }
+                long b = System.nanoTime();
+                for (int r = 0; r < repeat; r++) {
+                    for (byte[] e : encrypted) {
+                        EncryptUtils.de(e, pass, suite);
+                    }
+                }
+                long c = System.nanoTime();
+                byte[] big = EncryptUtils.en(large, pass, suite);
+                long d = System.nanoTime();
+                for (int r = 0; r < 20; r++) {
+                    EncryptUtils.de(big, pass, suite);
+                }
+                long e = System.nanoTime();
+                assertArrayEquals(classes.get(0), EncryptUtils.de(encrypted.get(0), pass, suite));
+                long total = (long) repeat * classes.size();
+                line.append(String.format(" | %s en %.2f us/class, de %.2f us/class (%.0f MB/s), 1MB en %.1f ms de %.1f ms",
+                        CipherSuite.name(suite), (b - a) / 1e3 / classes.size(), (c - b) / 1e3 / total,
+                        plain * repeat / 1048576d / ((c - b) / 1e9), (d - c) / 1e6, (e - d) / 1e6 / 20));
+            }
+            System.out.println(line);
+        }
+    }
+
+    private static List<byte[]> loadClasses(String jarPath) throws IOException {
+        List<byte[]> classes = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(jarPath)) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                if (entry.getName().endsWith(".class")) {
+                    classes.add(IoUtils.toBytes(zip.getInputStream(entry)));
+                }
+            }
+        }
+        return classes;
+    }
+}
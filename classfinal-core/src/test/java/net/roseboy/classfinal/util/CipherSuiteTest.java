@@ -0,0 +1,99 @@
+package net.roseboy.classfinal.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CipherSuite 单元测试
+ */
+class CipherSuiteTest {
+
+    private static final char[] KEY = "123456com.demo.Hello".toCharArray();
+
+    @Test
+    void testRoundTrip() {
+        byte[] msg = random(10_000);
+        for (int suite : new int[]{CipherSuite.ECB, CipherSuite.CTR, CipherSuite.GCM}) {
+            byte[] encrypted = EncryptUtils.en(msg, KEY, suite);
+            assertEquals(suite, CipherSuite.of(encrypted), CipherSuite.name(suite));
+            assertArrayEquals(msg, EncryptUtils.de(encrypted, KEY, suite), CipherSuite.name(suite));
+            //按头部识别算法，和传入的类型无关
+            assertArrayEquals(msg, EncryptUtils.de(encrypted, KEY, CipherSuite.ECB), CipherSuite.name(suite));
+        }
+        //空数据
+        assertArrayEquals(new byte[0], EncryptUtils.de(EncryptUtils.en(new byte[0], KEY, CipherSuite.GCM),
+                KEY, CipherSuite.GCM));
+    }
+
+    @Test
+    void testDeterministic() {
+        byte[] msg = random(1000);
+        byte[] other = msg.clone();
+        other[999]++;
+        //相同输入结果相同，不同明文IV不同
+        assertArrayEquals(CipherSuite.encrypt(msg, KEY, CipherSuite.GCM), CipherSuite.encrypt(msg, KEY, CipherSuite.GCM));
+        byte[] a = CipherSuite.encrypt(msg, KEY, CipherSuite.CTR);
+        byte[] b = CipherSuite.encrypt(other, KEY, CipherSuite.CTR);
+        assertFalse(Arrays.equals(Arrays.copyOfRange(a, 5, 21), Arrays.copyOfRange(b, 5, 21)));
+    }
+
+    @Test
+    void testGcmAuthentication() {
+        byte[] msg = random(500);
+        byte[] encrypted = CipherSuite.encrypt(msg, KEY, CipherSuite.GCM);
+        assertNull(CipherSuite.decrypt(encrypted, "wrong".toCharArray()));
+
+        byte[] tampered = encrypted.clone();
+        tampered[tampered.length / 2] ^= 1;
+        assertNull(CipherSuite.decrypt(tampered, KEY));
+        //改了头部的套件也不能解密
+        byte[] header = encrypted.clone();
+        header[4] = CipherSuite.CTR;
+        assertFalse(Arrays.equals(msg, CipherSuite.decrypt(header, KEY)));
+    }
+
+    @Test
+    void testLegacy() {
+        byte[] msg = random(300);
+        //旧版本的数据没有头部
+        byte[] legacy = EncryptUtils.enAES(msg, EncryptUtils.md5(StrUtils.merger(KEY, EncryptUtils.SALT), true));
+        assertEquals(CipherSuite.ECB, CipherSuite.of(legacy));
+        assertNull(CipherSuite.decrypt(legacy, KEY));
+        assertArrayEquals(msg, EncryptUtils.de(legacy, KEY, CipherSuite.GCM));
+    }
+
+    @Test
+    void testCtrRange() {
+        byte[] msg = random(5000);
+        byte[] encrypted = CipherSuite.encrypt(msg, KEY, CipherSuite.CTR);
+        int[][] ranges = {{0, 0}, {0, 16}, {3, 29}, {16, 100}, {1234, 777}, {4999, 1}, {0, 5000}};
+        for (int[] range : ranges) {
+            assertArrayEquals(Arrays.copyOfRange(msg, range[0], range[0] + range[1]),
+                    CipherSuite.decrypt(encrypted, KEY, range[0], range[1]), range[0] + "+" + range[1]);
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> CipherSuite.decrypt(encrypted, KEY, 4990, 11));
+        //offset + length 溢出
+        assertThrows(IndexOutOfBoundsException.class, () -> CipherSuite.decrypt(encrypted, KEY, 100, Integer.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class,
+                () -> CipherSuite.decrypt(CipherSuite.encrypt(msg, KEY, CipherSuite.GCM), KEY, 0, 10));
+    }
+
+    @Test
+    void testParse() {
+        assertEquals(CipherSuite.GCM, CipherSuite.parse(null, CipherSuite.GCM));
+        assertEquals(CipherSuite.CTR, CipherSuite.parse(" CTR ", CipherSuite.GCM));
+        assertEquals(CipherSuite.ECB, CipherSuite.parse("ecb", CipherSuite.GCM));
+        assertEquals("gcm", CipherSuite.name(CipherSuite.parse("gcm", CipherSuite.ECB)));
+        assertThrows(IllegalArgumentException.class, () -> CipherSuite.parse("des", CipherSuite.GCM));
+    }
+
+    private static byte[] random(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
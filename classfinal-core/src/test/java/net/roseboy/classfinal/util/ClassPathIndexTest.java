@@ -0,0 +1,122 @@
+package net.roseboy.classfinal.util;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import net.roseboy.classfinal.Const;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ClassPathIndex 单元测试
+ */
+class ClassPathIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testOpensOnlyMatchingJar() throws Exception {
+        File a = jar("a.jar", Const.class);
+        File b = jar("b.jar", ClassPathIndexTest.class, org.junit.jupiter.api.Assertions.class);
+
+        try (ClassPathIndex index = new ClassPathIndex(Arrays.asList(a, b))) {
+            assertEquals(3, index.getPackageCount());
+            assertEquals(0, index.getOpenedCount());
+
+            assertNull(index.openClassfile("com.example.Missing"));
+            assertNull(index.find("java.lang.String"));
+            assertEquals(0, index.getOpenedCount());
+
+            try (InputStream in = index.openClassfile(Const.class.getName())) {
+                assertNotNull(in);
+            }
+            assertEquals(1, index.getOpenedCount());
+            assertTrue(index.find(Const.class.getName()).toString().startsWith("jar:file:"));
+            //同一个包中没有的类
+            assertNull(index.openClassfile(Const.class.getPackage().getName() + ".Missing"));
+            assertEquals(1, index.getOpenedCount());
+        }
+    }
+
+    @Test
+    void testCacheReusedWhenJarUnchanged() throws Exception {
+        File a = jar("a.jar", Const.class);
+        File cacheFile = tempDir.resolve("cache/classpath.idx").toFile();
+
+        ClassPathIndex.Cache cache = ClassPathIndex.Cache.load(cacheFile);
+        new ClassPathIndex(Collections.singletonList(a), cache).close();
+        cache.save(cacheFile);
+        assertTrue(cacheFile.exists());
+        String content = new String(Files.readAllBytes(cacheFile.toPath()), "UTF-8");
+        assertTrue(content.startsWith("a.jar|"));
+        assertTrue(content.contains(Const.class.getPackage().getName()));
+
+        //jar未变化，不重写缓存；复制到其他目录的同一个jar也能命中
+        assertTrue(cacheFile.setLastModified(1000L));
+        File copy = tempDir.resolve("copy/a.jar").toFile();
+        copy.getParentFile().mkdirs();
+        Files.copy(a.toPath(), copy.toPath());
+        cache = ClassPathIndex.Cache.load(cacheFile);
+        try (ClassPathIndex index = new ClassPathIndex(Collections.singletonList(copy), cache)) {
+            assertEquals(1, index.getPackageCount());
+        }
+        cache.save(cacheFile);
+        assertEquals(1000L, cacheFile.lastModified());
+        assertEquals(1, cache.size());
+
+        //jar变化后重新读取
+        File b = jar("a.jar", ClassPathIndexTest.class, org.junit.jupiter.api.Assertions.class);
+        try (ClassPathIndex index = new ClassPathIndex(Collections.singletonList(b), cache)) {
+            assertEquals(2, index.getPackageCount());
+            assertNull(index.openClassfile(Const.class.getName()));
+        }
+        assertEquals(2, cache.size());
+        cache.save(cacheFile);
+        assertNotEquals(1000L, cacheFile.lastModified());
+    }
+
+    @Test
+    void testClassPoolLookup() throws Exception {
+        File a = jar("a.jar", Const.class);
+        ClassPool pool = new ClassPool(true);
+        try (ClassPathIndex index = new ClassPathIndex(Collections.singletonList(a))) {
+            pool.insertClassPath(index);
+            CtClass cc = pool.get(Const.class.getName());
+            assertEquals(Const.class.getName(), cc.getName());
+            //JDK的类仍然从系统classpath加载
+            assertNotNull(pool.get("java.lang.String"));
+            assertEquals(1, index.getOpenedCount());
+        }
+    }
+
+    private File jar(String name, Class<?>... classes) throws Exception {
+        File file = tempDir.resolve(name).toFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (Class<?> c : classes) {
+                String entry = c.getName().replace('.', '/') + ".class";
+                out.putNextEntry(new ZipEntry(entry));
+                try (InputStream in = c.getClassLoader().getResourceAsStream(entry)) {
+                    byte[] buf = new byte[8192];
+                    int n;
+                    while ((n = in.read(buf)) > 0) {
+                        out.write(buf, 0, n);
+                    }
+                }
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,80 @@
+package net.roseboy.classfinal.util;
+
+import javassist.CtClass;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ClassPoolScope 单元测试
+ */
+class ClassPoolScopeTest {
+
+    public static class Target {
+        public String hello() {
+            return "hello";
+        }
+    }
+
+    @Test
+    void testReleaseDropsCachedClasses() throws Exception {
+        try (ClassPoolScope scope = new ClassPoolScope()) {
+            scope.insertClassDir(classDir());
+            CtClass first = scope.get(Target.class.getName());
+            assertSame(first, scope.get(Target.class.getName()));
+            assertEquals(2, scope.getLoadedCount());
+
+            scope.releaseIfFull(3);
+            assertSame(first, scope.get(Target.class.getName()));
+            scope.releaseIfFull(3);
+            assertEquals(0, scope.getLoadedCount());
+
+            //classpath保留，重新加载得到新的对象
+            CtClass second = scope.get(Target.class.getName());
+            assertNotSame(first, second);
+        }
+    }
+
+    @Test
+    void testInsertCode() throws Exception {
+        try (ClassPoolScope scope = new ClassPoolScope()) {
+            scope.insertClassDir(classDir());
+            byte[] bytes = ClassUtils.insertCode(scope, Target.class.getName() + "#hello",
+                    "System.out.println(\"inserted\");", 20);
+            assertTrue(bytes.length > 0);
+            //插入后从池中移除，可以再次插入
+            assertNotNull(ClassUtils.insertCode(scope, Target.class.getName() + "#hello",
+                    "System.out.println(\"again\");", 21));
+        }
+    }
+
+    @Test
+    void testParallelForEachWindow() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            AtomicInteger sum = new AtomicInteger();
+            Integer[] items = new Integer[1000];
+            for (int i = 0; i < items.length; i++) {
+                items[i] = i;
+            }
+            ParallelUtils.forEach(pool, Arrays.asList(items), sum::addAndGet);
+            assertEquals(999 * 1000 / 2, sum.get());
+            assertThrows(IllegalStateException.class, () -> ParallelUtils.forEach(pool, Arrays.asList(items), i -> {
+                if (i == 500) {
+                    throw new IllegalStateException();
+                }
+            }));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static File classDir() throws Exception {
+        return new File(Target.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+}
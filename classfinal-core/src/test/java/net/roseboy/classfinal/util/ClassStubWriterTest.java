@@ -0,0 +1,129 @@
+package net.roseboy.classfinal.util;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.LocalVariableAttribute;
+import javassist.bytecode.MethodInfo;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ClassStubWriter 单元测试
+ */
+class ClassStubWriterTest {
+
+    //被改写的样例类，包含Lambda和各种返回类型
+    public static class SampleData {
+        private final String name;
+
+        public SampleData(String name) {
+            this.name = name;
+        }
+
+        public String greet(String prefix, long times) {
+            Supplier<String> s = () -> prefix + name + times;
+            return s.get();
+        }
+
+        public int count(int a, int b) {
+            return a + b;
+        }
+
+        public long big() {
+            return 42L;
+        }
+
+        public double ratio(double d) {
+            return d * 2;
+        }
+
+        public boolean ok() {
+            return name != null;
+        }
+
+        public static float half(float f) {
+            return f / 2;
+        }
+
+        public void noop() {
+            System.out.println(name);
+        }
+    }
+
+    @Test
+    void testRewriteAndLoad() throws Exception {
+        byte[] bytes = readClass(SampleData.class);
+        byte[] stub = ClassStubWriter.rewrite(bytes);
+
+        Class<?> clazz = new ClassLoader(null) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                if (name.equals(SampleData.class.getName())) {
+                    return defineClass(name, stub, 0, stub.length);
+                }
+                throw new ClassNotFoundException(name);
+            }
+        }.loadClass(SampleData.class.getName());
+
+        Object obj = clazz.getConstructor(String.class).newInstance("bob");
+        assertNull(clazz.getMethod("greet", String.class, long.class).invoke(obj, "hi", 3L));
+        assertEquals(0, clazz.getMethod("count", int.class, int.class).invoke(obj, 1, 2));
+        assertEquals(0L, clazz.getMethod("big").invoke(obj));
+        assertEquals(0.0d, clazz.getMethod("ratio", double.class).invoke(obj, 1.5d));
+        assertEquals(false, clazz.getMethod("ok").invoke(obj));
+        assertEquals(0.0f, clazz.getMethod("half", float.class).invoke(null, 3f));
+        clazz.getMethod("noop").invoke(obj);
+    }
+
+    @Test
+    void testKeepParamNames() throws Exception {
+        byte[] stub = ClassStubWriter.rewrite(readClass(SampleData.class));
+        CtClass cc = new ClassPool(true).makeClass(new ByteArrayInputStream(stub));
+        MethodInfo greet = cc.getDeclaredMethod("greet").getMethodInfo();
+        CodeAttribute ca = greet.getCodeAttribute();
+        assertEquals(2, ca.getCodeLength());
+        assertEquals(0, ca.getExceptionTable().size());
+        LocalVariableAttribute lva = (LocalVariableAttribute) ca.getAttribute(LocalVariableAttribute.tag);
+        if (lva != null) {
+            //只剩参数：this, prefix, times
+            assertEquals(3, lva.tableLength());
+            assertEquals("prefix", lva.variableName(1));
+            assertEquals("times", lva.variableName(2));
+        }
+        //lambda的合成方法也被清空
+        for (CtMethod m : cc.getDeclaredMethods()) {
+            if (m.getName().startsWith("lambda$")) {
+                assertEquals(2, m.getMethodInfo().getCodeAttribute().getCodeLength());
+            }
+        }
+        //构造方法不修改
+        assertTrue(cc.getConstructors()[0].getMethodInfo().getCodeAttribute().getCodeLength() > 1);
+    }
+
+    @Test
+    void testParamSlots() {
+        assertEquals(1, ClassStubWriter.paramSlots("()V", false));
+        assertEquals(0, ClassStubWriter.paramSlots("()V", true));
+        assertEquals(7, ClassStubWriter.paramSlots("(IJ[JLjava/lang/String;D)V", true));
+        assertEquals(3, ClassStubWriter.paramSlots("([[Ljava/lang/Object;Z)I", false));
+    }
+
+    @Test
+    void testInvalidClass() {
+        assertThrows(IllegalArgumentException.class, () -> ClassStubWriter.rewrite(new byte[]{1, 2, 3}));
+    }
+
+    private static byte[] readClass(Class<?> clazz) throws Exception {
+        String name = clazz.getName().substring(clazz.getName().lastIndexOf('.') + 1) + ".class";
+        try (InputStream in = clazz.getResourceAsStream(name)) {
+            return IoUtils.toBytes(in);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package net.roseboy.classfinal.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CompressionPolicy 单元测试
+ */
+class CompressionPolicyTest {
+
+    @Test
+    void testDefaultPolicy() {
+        CompressionPolicy policy = new CompressionPolicy();
+        assertEquals(Deflater.DEFAULT_COMPRESSION, policy.getLevel("com/demo/Hello.class"));
+        assertEquals(CompressionPolicy.STORED, policy.getLevel("BOOT-INF/lib/a.jar"));
+        assertEquals(CompressionPolicy.STORED, policy.getLevel("static/logo.PNG"));
+        assertEquals(CompressionPolicy.STORED, policy.getLevel("META-INF/.classes/com.demo.Hello"));
+        assertEquals(Deflater.DEFAULT_COMPRESSION, policy.getLevel("LICENSE"));
+    }
+
+    @Test
+    void testParse() {
+        CompressionPolicy policy = CompressionPolicy.parse("default=6, .class=9, png=3, jar=9");
+        assertEquals(6, policy.getLevel("LICENSE"));
+        assertEquals(9, policy.getLevel("com/demo/Hello.class"));
+        assertEquals(3, policy.getLevel("logo.png"));
+        assertEquals(CompressionPolicy.STORED, policy.getLevel("lib/a.jar"));
+        assertEquals(CompressionPolicy.STORED, policy.getLevel("zip.zip"));
+    }
+
+    @Test
+    void testParseInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> CompressionPolicy.parse("class"));
+        assertThrows(IllegalArgumentException.class, () -> CompressionPolicy.parse("class=10"));
+        assertThrows(IllegalArgumentException.class, () -> CompressionPolicy.parse("class=x"));
+    }
+}
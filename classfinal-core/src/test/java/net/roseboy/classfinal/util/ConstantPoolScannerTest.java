@@ -0,0 +1,97 @@
+package net.roseboy.classfinal.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ConstantPoolScanner 单元测试
+ */
+class ConstantPoolScannerTest {
+
+    //用于测试Long/Double常量和SourceFile属性
+    static class Sample {
+        static final long L = System.nanoTime() | 0x1234567890L;
+        static final double D = Math.random() + 1.5;
+        String name = "sample";
+    }
+
+    @Test
+    void testScanRealClass() throws Exception {
+        byte[] bytes = readClass(Sample.class);
+        ConstantPoolScanner scanner = new ConstantPoolScanner();
+        assertTrue(scanner.reset(bytes));
+        assertEquals(scanner.getCount() - 1, scanner.getParsed());
+        assertTrue(scanner.hasTag(ConstantPoolScanner.CONSTANT_Long));
+        assertTrue(scanner.hasTag(ConstantPoolScanner.CONSTANT_Double));
+
+        //this_class 指向的类名
+        int thisClass = ConstantPoolScanner.u2(bytes, scanner.getEndOffset() + 2);
+        int nameIndex = ConstantPoolScanner.u2(bytes, scanner.offset(thisClass) + 1);
+        assertEquals(Sample.class.getName().replace('.', '/'), scanner.getUtf8(nameIndex));
+
+        //类属性表中有SourceFile，且属性表之后正好是文件末尾
+        int attributes = scanner.getAttributesOffset();
+        assertTrue(attributes > 0);
+        assertEquals(bytes.length, scanner.skipAttributes(attributes));
+        boolean sourceFile = false;
+        int n = ConstantPoolScanner.u2(bytes, attributes);
+        int pos = attributes + 2;
+        for (int i = 0; i < n; i++) {
+            int name = ConstantPoolScanner.u2(bytes, pos);
+            sourceFile |= scanner.utf8Equals(name, "SourceFile".getBytes(StandardCharsets.US_ASCII));
+            pos += 6 + ConstantPoolScanner.u4(bytes, pos + 2);
+        }
+        assertTrue(sourceFile);
+    }
+
+    @Test
+    void testModuleAndDynamicTags() {
+        byte[] bytes = {
+                (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE,
+                0x00, 0x00, 0x00, 0x37,
+                0x00, 0x06,
+                0x01, 0x00, 0x01, 'm',                         // #1 Utf8 "m"
+                0x13, 0x00, 0x01,                              // #2 Module #1
+                0x14, 0x00, 0x01,                              // #3 Package #1
+                0x11, 0x00, 0x00, 0x00, 0x05,                  // #4 Dynamic
+                0x0C, 0x00, 0x01, 0x00, 0x01,                  // #5 NameAndType
+        };
+        ConstantPoolScanner scanner = new ConstantPoolScanner();
+        assertTrue(scanner.reset(bytes));
+        assertEquals(ConstantPoolScanner.CONSTANT_Module, scanner.tag(2));
+        assertEquals(ConstantPoolScanner.CONSTANT_Package, scanner.tag(3));
+        assertEquals(ConstantPoolScanner.CONSTANT_Dynamic, scanner.tag(4));
+        assertEquals(bytes.length, scanner.getEndOffset());
+        //后面没有数据
+        assertEquals(-1, scanner.getAttributesOffset());
+    }
+
+    @Test
+    void testTruncated() {
+        byte[] bytes = {
+                (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE,
+                0x00, 0x00, 0x00, 0x34,
+                0x00, 0x05,
+                0x01, 0x00, 0x01, 'a',                         // #1 Utf8 "a"
+                0x01, 0x00, 0x09, 'b',                         // #2 不完整
+        };
+        ConstantPoolScanner scanner = new ConstantPoolScanner();
+        assertFalse(scanner.reset(bytes));
+        assertEquals(1, scanner.getParsed());
+        assertTrue(scanner.utf8Equals(1, new byte[]{'a'}));
+        assertEquals(0, scanner.tag(2));
+        assertFalse(scanner.reset(new byte[]{1, 2, 3}));
+        assertFalse(scanner.reset(null));
+    }
+
+    private static byte[] readClass(Class<?> clazz) throws Exception {
+        String name = clazz.getName().substring(clazz.getName().lastIndexOf('.') + 1) + ".class";
+        try (InputStream in = clazz.getResourceAsStream(name)) {
+            return IoUtils.toBytes(in);
+        }
+    }
+}
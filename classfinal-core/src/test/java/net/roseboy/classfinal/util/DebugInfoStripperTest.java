@@ -0,0 +1,120 @@
+package net.roseboy.classfinal.util;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.LineNumberAttribute;
+import javassist.bytecode.LocalVariableAttribute;
+import javassist.bytecode.SourceFileAttribute;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DebugInfoStripper 单元测试
+ */
+class DebugInfoStripperTest {
+
+    //带调试信息的样例类
+    public static class Sample {
+        public int sum(int a, int b) {
+            int c = a + b;
+            return c * 2;
+        }
+
+        public String fail() {
+            throw new IllegalStateException("x");
+        }
+    }
+
+    @Test
+    void testParse() {
+        assertTrue(DebugInfoStripper.parse(null).isEmpty());
+        assertTrue(DebugInfoStripper.parse("none").isEmpty());
+        assertEquals("lines,source", DebugInfoStripper.parse("source, LINES").toString());
+        assertEquals("lines,vars,source", DebugInfoStripper.parse("all").toString());
+        assertThrows(IllegalArgumentException.class, () -> DebugInfoStripper.parse("lines,code"));
+    }
+
+    @Test
+    void testStripAll() throws Exception {
+        byte[] bytes = readClass(Sample.class);
+        byte[] stripped = DebugInfoStripper.parse("all").strip(bytes);
+        assertTrue(stripped.length < bytes.length);
+
+        ClassFile cf = classFile(stripped);
+        assertNull(cf.getAttribute(SourceFileAttribute.tag));
+        CodeAttribute ca = cf.getMethod("sum").getCodeAttribute();
+        assertNull(ca.getAttribute(LineNumberAttribute.tag));
+        assertNull(ca.getAttribute(LocalVariableAttribute.tag));
+        assertEquals(classFile(bytes).getMethod("sum").getCodeAttribute().getCodeLength(), ca.getCodeLength());
+
+        //去掉后仍能加载执行，异常堆栈中没有行号
+        Class<?> clazz = define(Sample.class.getName(), stripped);
+        Object obj = clazz.getConstructor().newInstance();
+        assertEquals(10, clazz.getMethod("sum", int.class, int.class).invoke(obj, 2, 3));
+        try {
+            clazz.getMethod("fail").invoke(obj);
+            fail();
+        } catch (InvocationTargetException e) {
+            assertEquals(-1, e.getCause().getStackTrace()[0].getLineNumber());
+        }
+    }
+
+    @Test
+    void testStripSelected() throws Exception {
+        byte[] bytes = readClass(Sample.class);
+        ClassFile cf = classFile(DebugInfoStripper.parse("lines").strip(bytes));
+        CodeAttribute ca = cf.getMethod("sum").getCodeAttribute();
+        assertNull(ca.getAttribute(LineNumberAttribute.tag));
+        assertNotNull(cf.getAttribute(SourceFileAttribute.tag));
+        LocalVariableAttribute lva = (LocalVariableAttribute) ca.getAttribute(LocalVariableAttribute.tag);
+        if (lva != null) {
+            assertEquals("a", lva.variableName(1));
+        }
+        //没有可去掉的内容时返回原数组
+        byte[] once = DebugInfoStripper.parse("lines").strip(bytes);
+        assertSame(once, DebugInfoStripper.parse("lines").strip(once));
+        assertSame(bytes, DebugInfoStripper.parse("none").strip(bytes));
+    }
+
+    @Test
+    void testStripStub() throws Exception {
+        byte[] stub = ClassStubWriter.rewrite(readClass(Sample.class));
+        byte[] stripped = DebugInfoStripper.parse("lines,source").strip(stub);
+        CtClass cc = new ClassPool(true).makeClass(new ByteArrayInputStream(stripped));
+        //构造方法保留的行号也去掉
+        CodeAttribute init = cc.getConstructors()[0].getMethodInfo().getCodeAttribute();
+        assertNull(init.getAttribute(LineNumberAttribute.tag));
+        assertEquals(2, cc.getDeclaredMethod("sum").getMethodInfo().getCodeAttribute().getCodeLength());
+    }
+
+    private static ClassFile classFile(byte[] bytes) throws Exception {
+        return new ClassFile(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private static Class<?> define(String className, byte[] bytes) throws Exception {
+        return new ClassLoader(null) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                if (name.equals(className)) {
+                    return defineClass(name, bytes, 0, bytes.length);
+                }
+                throw new ClassNotFoundException(name);
+            }
+        }.loadClass(className);
+    }
+
+    private static byte[] readClass(Class<?> clazz) throws Exception {
+        String name = clazz.getName().substring(clazz.getName().lastIndexOf('.') + 1) + ".class";
+        try (InputStream in = clazz.getResourceAsStream(name)) {
+            return IoUtils.toBytes(in);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package net.roseboy.classfinal.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EncryptUtils RSA 单元测试
+ */
+class EncryptUtilsTest {
+
+    @Test
+    void testRsaBlocks() throws Exception {
+        KeyPair keyPair = keyPair();
+        //多个块，最后一块不满
+        byte[] msg = new byte[245 * 40 + 17];
+        new Random(1).nextBytes(msg);
+        byte[] encrypted = EncryptUtils.rsa(msg, keyPair.getPublic(), Cipher.ENCRYPT_MODE);
+        assertEquals(256 * 41, encrypted.length);
+        assertArrayEquals(msg, EncryptUtils.rsa(encrypted, keyPair.getPrivate(), Cipher.DECRYPT_MODE));
+
+        //原来的字符串接口
+        String publicKey = Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded());
+        String privateKey = Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded());
+        assertEquals("hello", EncryptUtils.deRSA(EncryptUtils.enRSA("hello", publicKey), privateKey));
+    }
+
+    @Test
+    void testPem() throws Exception {
+        KeyPair keyPair = keyPair();
+        String publicPem = pem("PUBLIC KEY", keyPair.getPublic().getEncoded());
+        String privatePem = pem("PRIVATE KEY", keyPair.getPrivate().getEncoded());
+        assertEquals(keyPair.getPublic(), EncryptUtils.publicKey(publicPem));
+        assertEquals(keyPair.getPrivate(), EncryptUtils.privateKey(privatePem));
+
+        assertThrows(IllegalArgumentException.class, () -> EncryptUtils.publicKey("abc"));
+        //公钥不能作为私钥
+        assertThrows(IllegalArgumentException.class, () -> EncryptUtils.privateKey(publicPem));
+    }
+
+    @Test
+    void testWrongKey() throws Exception {
+        byte[] encrypted = EncryptUtils.rsa("key".getBytes(), keyPair().getPublic(), Cipher.ENCRYPT_MODE);
+        assertThrows(GeneralSecurityException.class,
+                () -> EncryptUtils.rsa(encrypted, keyPair().getPrivate(), Cipher.DECRYPT_MODE));
+    }
+
+    private static KeyPair keyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    private static String pem(String type, byte[] key) {
+        return "-----BEGIN " + type + "-----\n" + Base64.getMimeEncoder(64, "\n".getBytes()).encodeToString(key)
+                + "\n-----END " + type + "-----\n";
+    }
+}
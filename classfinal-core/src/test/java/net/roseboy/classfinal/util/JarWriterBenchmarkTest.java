@@ -0,0 +1,75 @@
+package net.roseboy.classfinal.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 打包性能对比：ZipOutputStream单线程 vs JarWriter并行压缩
+ * <p>
+ * 默认跳过，运行方式：
+ * mvn test -Dtest=JarWriterBenchmarkTest -Dclassfinal.benchmark=true [-Dclassfinal.benchmark.jar=/path/app.war]
+ */
+class JarWriterBenchmarkTest {
+
+    @Test
+    void benchmark(@TempDir Path tempDir) throws Exception {
+        assumeTrue(Boolean.getBoolean("classfinal.benchmark"));
+
+        File src = tempDir.resolve("src").toFile();
+        String jarPath = System.getProperty("classfinal.benchmark.jar");
+        if (jarPath != null) {
+            ArchiveUtils.unJar(jarPath, src.getAbsolutePath());
+        } else {
+            createFiles(src, 20000);
+        }
+        List<File> files = new ArrayList<>();
+        IoUtils.listFile(files, src);
+        long bytes = 0;
+        for (File f : files) {
+            bytes += f.isFile() ? f.length() : 0;
+        }
+
+        int threads = Integer.getInteger("classfinal.benchmark.threads", Runtime.getRuntime().availableProcessors());
+        for (int round = 0; round < 3; round++) {
+            File legacy = tempDir.resolve("legacy.jar").toFile();
+            long t1 = System.nanoTime();
+            ArchiveUtils.doJarWithZipStream(src, files, legacy);
+            long t2 = System.nanoTime();
+
+            File parallel = tempDir.resolve("parallel.jar").toFile();
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long t3 = System.nanoTime();
+            ArchiveUtils.doJar(src.getAbsolutePath(), parallel.getAbsolutePath(), pool);
+            long t4 = System.nanoTime();
+            pool.shutdown();
+
+            System.out.printf("round %d: %d files, %.1f MB | ZipOutputStream %.0f ms (%.1f MB/s, %d bytes) | JarWriter x%d %.0f ms (%.1f MB/s, %d bytes)%n",
+                    round, files.size(), bytes / 1048576d,
+                    (t2 - t1) / 1e6, bytes / 1048576d / ((t2 - t1) / 1e9), legacy.length(),
+                    threads, (t4 - t3) / 1e6, bytes / 1048576d / ((t4 - t3) / 1e9), parallel.length());
+        }
+    }
+
+    private static void createFiles(File src, int count) throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < count; i++) {
+            File f = new File(src, "com/example/p" + (i % 100) + "/C" + i + ".class");
+            f.getParentFile().mkdirs();
+            byte[] bytes = new byte[1000 + random.nextInt(8000)];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = (byte) ('A' + random.nextInt(20));
+            }
+            Files.write(f.toPath(), bytes);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package net.roseboy.classfinal.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JarWriter 单元测试
+ */
+class JarWriterTest {
+
+    @Test
+    void testParallelOutputEqualsSerial(@TempDir Path tempDir) throws Exception {
+        List<File> files = createFiles(tempDir.resolve("src").toFile());
+        File serial = tempDir.resolve("serial.jar").toFile();
+        File parallel = tempDir.resolve("parallel.jar").toFile();
+
+        write(serial, files, tempDir.resolve("src").toFile(), null);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            write(parallel, files, tempDir.resolve("src").toFile(), pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertArrayEquals(Files.readAllBytes(serial.toPath()), Files.readAllBytes(parallel.toPath()));
+    }
+
+    @Test
+    void testReadBack(@TempDir Path tempDir) throws Exception {
+        File src = tempDir.resolve("src").toFile();
+        List<File> files = createFiles(src);
+        File jar = tempDir.resolve("out.jar").toFile();
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            write(jar, files, src, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        try (ZipFile zip = new ZipFile(jar)) {
+            List<String> names = new ArrayList<>();
+            Collections.list(zip.entries()).forEach(e -> names.add(e.getName()));
+            List<String> expected = new ArrayList<>();
+            files.forEach(f -> expected.add(name(src, f)));
+            assertEquals(expected, names);
+
+            for (File file : files) {
+                ZipEntry entry = zip.getEntry(name(src, file));
+                assertEquals(file.length(), entry.getSize());
+                assertArrayEquals(Files.readAllBytes(file.toPath()), IoUtils.toBytes(zip.getInputStream(entry)));
+            }
+            assertEquals(ZipEntry.STORED, zip.getEntry("lib/a.jar").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("big.txt").getMethod());
+        }
+        //临时文件已删除
+        File[] left = tempDir.toFile().listFiles((dir, name) -> name.endsWith(".deflate"));
+        assertEquals(0, left.length);
+    }
+
+    @Test
+    void testDoJar(@TempDir Path tempDir) throws Exception {
+        File src = tempDir.resolve("src").toFile();
+        List<File> files = createFiles(src);
+        File jar = tempDir.resolve("doJar.jar").toFile();
+        ArchiveUtils.doJar(src.getAbsolutePath(), jar.getAbsolutePath(), new ForkJoinPool(2));
+        try (ZipFile zip = new ZipFile(jar)) {
+            assertEquals(files.size() + 3, zip.size());
+            assertNotNull(zip.getEntry("lib/"));
+            assertNotNull(zip.getEntry("com/demo/Hello.class"));
+        }
+    }
+
+    @Test
+    void testUnJarThenDoJarCopiesRawData(@TempDir Path tempDir) throws Exception {
+        File src = tempDir.resolve("src").toFile();
+        List<File> files = createFiles(src);
+        File jar = tempDir.resolve("app.jar").toFile();
+        write(jar, files, src, null);
+
+        //释放后修改一个文件，再打包回原jar，txt策略改为不压缩
+        File dir = tempDir.resolve("dir").toFile();
+        ArchiveUtils.unJar(jar.getAbsolutePath(), dir.getAbsolutePath());
+        Files.write(new File(dir, "com/demo/C1.txt").toPath(), "changed".getBytes("UTF-8"));
+        ArchiveUtils.doJar(dir.getAbsolutePath(), jar.getAbsolutePath(), null, CompressionPolicy.parse("txt=0"));
+
+        try (ZipFile zip = new ZipFile(jar)) {
+            //修改过的文件按新策略写入
+            ZipEntry changed = zip.getEntry("com/demo/C1.txt");
+            assertEquals(ZipEntry.STORED, changed.getMethod());
+            assertEquals("changed", new String(IoUtils.toBytes(zip.getInputStream(changed)), "UTF-8"));
+            //未修改的文件直接复制原压缩数据
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("com/demo/C2.txt").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("big.txt").getMethod());
+            for (File file : files) {
+                String name = name(src, file);
+                if (!"com/demo/C1.txt".equals(name)) {
+                    assertArrayEquals(Files.readAllBytes(file.toPath()), IoUtils.toBytes(zip.getInputStream(zip.getEntry(name))));
+                }
+            }
+        }
+        assertFalse(new File(jar.getAbsolutePath() + ".tmp").exists());
+    }
+
+    @Test
+    void testReleaseAfterFailure(@TempDir Path tempDir) throws Exception {
+        File src = tempDir.resolve("src").toFile();
+        List<File> files = createFiles(src);
+        File jar = tempDir.resolve("app.jar").toFile();
+        write(jar, files, src, null);
+
+        //释放了外层和lib下的jar，中途失败没有打包
+        int before = ArchiveUtils.recorded();
+        File dir = tempDir.resolve("dir").toFile();
+        ArchiveUtils.unJar(jar.getAbsolutePath(), dir.getAbsolutePath());
+        ArchiveUtils.unJar(jar.getAbsolutePath(), new File(dir, "lib/a.jar__temp__").getAbsolutePath());
+        assertEquals(before + 4, ArchiveUtils.recorded());
+
+        ArchiveUtils.release(dir.getAbsolutePath());
+        assertEquals(before, ArchiveUtils.recorded());
+    }
+
+    @Test
+    void testUnJarFailure(@TempDir Path tempDir) throws Exception {
+        File src = tempDir.resolve("src").toFile();
+        List<File> files = createFiles(src);
+        File jar = tempDir.resolve("app.jar").toFile();
+        write(jar, files, src, null);
+
+        //big.txt的压缩数据损坏（第一个块的类型无效），释放时失败而不是返回不完整的文件列表
+        byte[] bytes = Files.readAllBytes(jar.toPath());
+        byte[] name = "big.txt".getBytes("UTF-8");
+        int offset = indexOf(bytes, name) + name.length;
+        bytes[offset] = (byte) 0xFF;
+        Files.write(jar.toPath(), bytes);
+        File dir = tempDir.resolve("dir").toFile();
+        assertThrows(UncheckedIOException.class, () -> ArchiveUtils.unJar(jar.getAbsolutePath(), dir.getAbsolutePath()));
+        ArchiveUtils.release(dir.getAbsolutePath());
+
+        //不是zip
+        File text = tempDir.resolve("a.txt").toFile();
+        Files.write(text.toPath(), "hello".getBytes("UTF-8"));
+        assertThrows(UncheckedIOException.class,
+                () -> ArchiveUtils.unJar(text.getAbsolutePath(), tempDir.resolve("dir2").toString()));
+    }
+
+    @Test
+    void testMemoryLimitKeepsOutput(@TempDir Path tempDir) throws Exception {
+        File src = tempDir.resolve("src").toFile();
+        List<File> files = createFiles(src);
+        File serial = tempDir.resolve("serial.jar").toFile();
+        File limited = tempDir.resolve("limited.jar").toFile();
+        write(serial, files, src, null);
+
+        //上限很小时每次只保留一个待写入的entry，结果不变
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try (JarWriter writer = new JarWriter(limited, pool)) {
+            writer.setMemoryLimit(1);
+            for (File file : files) {
+                String name = name(src, file);
+                writer.addFile(name, file, name.endsWith(".jar") ? ZipEntry.STORED : ZipEntry.DEFLATED, 1700000000000L);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertArrayEquals(Files.readAllBytes(serial.toPath()), Files.readAllBytes(limited.toPath()));
+    }
+
+    @Test
+    void testSharedMemoryBudget(@TempDir Path tempDir) throws Exception {
+        //6个writer在同一个线程池中并行打包（同 lib 下的jar），每个entry压缩时占用约1MB，共用4MB的额度
+        MemoryBudget budget = new MemoryBudget(4 * 1024 * 1024);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<File> jars = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            jars.add(tempDir.resolve("lib" + i + ".jar").toFile());
+        }
+        byte[] data = new byte[512 * 1024];
+        new Random(7).nextBytes(data);
+        try {
+            pool.submit(() -> jars.parallelStream().forEach(jar -> {
+                try (JarWriter writer = new JarWriter(jar, pool)) {
+                    writer.setMemoryBudget(budget);
+                    for (int i = 0; i < 20; i++) {
+                        writer.addBytes("e" + i + ".bin", data, ZipEntry.DEFLATED, 1, 1700000000000L);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            })).get();
+        } finally {
+            pool.shutdown();
+        }
+
+        //总占用不超过上限，结束后全部释放
+        assertTrue(budget.getPeakUsed() <= budget.getLimit(), String.valueOf(budget.getPeakUsed()));
+        assertTrue(budget.getPeakUsed() > 0);
+        assertEquals(budget.getLimit(), budget.getAvailable());
+        for (File jar : jars) {
+            try (ZipFile zip = new ZipFile(jar)) {
+                assertEquals(20, zip.size());
+                assertArrayEquals(data, IoUtils.toBytes(zip.getInputStream(zip.getEntry("e19.bin"))));
+            }
+        }
+    }
+
+    @Test
+    void testAddTempFile(@TempDir Path tempDir) throws Exception {
+        File src = tempDir.resolve("src").toFile();
+        List<File> files = createFiles(src);
+        File source = tempDir.resolve("source.jar").toFile();
+        write(source, files, src, null);
+
+        //每个entry复制到临时文件后添加，写入后删除临时文件
+        File tmp = tempDir.resolve("tmp").toFile();
+        tmp.mkdirs();
+        File jar = tempDir.resolve("out.jar").toFile();
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try (ZipIndex index = ZipIndex.read(source); JarWriter writer = new JarWriter(jar, pool)) {
+            for (ZipIndex.Entry entry : index.getEntries()) {
+                File file = new File(src, entry.getName());
+                writer.addTempFile(entry.getName(), entry, () -> {
+                    try {
+                        File temp = File.createTempFile("copy", ".tmp", tmp);
+                        Files.copy(file.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                        return temp;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        try (ZipFile zip = new ZipFile(jar)) {
+            assertEquals(files.size(), zip.size());
+            for (File file : files) {
+                ZipEntry entry = zip.getEntry(name(src, file));
+                assertArrayEquals(Files.readAllBytes(file.toPath()), IoUtils.toBytes(zip.getInputStream(entry)));
+            }
+            assertEquals(ZipEntry.STORED, zip.getEntry("lib/a.jar").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("big.txt").getMethod());
+        }
+        assertEquals(0, tmp.listFiles().length);
+    }
+
+    @Test
+    void testZip64EntryCount(@TempDir Path tempDir) throws Exception {
+        File jar = tempDir.resolve("many.jar").toFile();
+        File file = tempDir.resolve("a.txt").toFile();
+        Files.write(file.toPath(), "hello".getBytes("UTF-8"));
+        int count = 70000;
+        try (JarWriter writer = new JarWriter(jar, null)) {
+            for (int i = 0; i < count; i++) {
+                writer.addDirectory("d" + i + "/", 1700000000000L);
+            }
+            writer.addFile("a.txt", file, ZipEntry.DEFLATED, 1700000000000L);
+        }
+
+        //超过65535个entry时写入zip64结束记录
+        try (ZipFile zip = new ZipFile(jar)) {
+            assertEquals(count + 1, zip.size());
+            assertEquals("hello", new String(IoUtils.toBytes(zip.getInputStream(zip.getEntry("a.txt"))), "UTF-8"));
+        }
+        try (ZipIndex index = ZipIndex.read(jar)) {
+            assertEquals(count + 1, index.getEntries().size());
+            assertEquals(5, index.getEntry("a.txt").getSize());
+        }
+    }
+
+    private static void write(File jar, List<File> files, File src, ForkJoinPool pool) throws Exception {
+        try (JarWriter writer = new JarWriter(jar, pool)) {
+            for (File file : files) {
+                String name = name(src, file);
+                writer.addFile(name, file, name.endsWith(".jar") ? ZipEntry.STORED : ZipEntry.DEFLATED, 1700000000000L);
+            }
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target) {
+        for (int i = 0; i + target.length <= bytes.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + target.length), target)) {
+                return i;
+            }
+        }
+        return fail(new String(target));
+    }
+
+    private static String name(File src, File file) {
+        return src.toPath().relativize(file.toPath()).toString().replace(File.separator, "/");
+    }
+
+    private static List<File> createFiles(File src) throws Exception {
+        List<File> files = new ArrayList<>();
+        Random random = new Random(42);
+        new File(src, "com/demo").mkdirs();
+        new File(src, "lib").mkdirs();
+        for (int i = 0; i < 50; i++) {
+            File f = new File(src, "com/demo/C" + i + ".txt");
+            byte[] bytes = new byte[random.nextInt(5000)];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = (byte) ('a' + random.nextInt(4));
+            }
+            Files.write(f.toPath(), bytes);
+            files.add(f);
+        }
+        File hello = new File(src, "com/demo/Hello.class");
+        Files.write(hello.toPath(), new byte[0]);
+        files.add(hello);
+
+        byte[] jarBytes = new byte[(int) JarWriter.MEMORY_THRESHOLD + 100];
+        random.nextBytes(jarBytes);
+        File jar = new File(src, "lib/a.jar");
+        Files.write(jar.toPath(), jarBytes);
+        files.add(jar);
+
+        StringBuilder big = new StringBuilder();
+        while (big.length() < JarWriter.MEMORY_THRESHOLD * 3) {
+            big.append("line ").append(random.nextInt()).append('\n');
+        }
+        File bigFile = new File(src, "big.txt");
+        Files.write(bigFile.toPath(), big.toString().getBytes("UTF-8"));
+        files.add(bigFile);
+        return files;
+    }
+}
@@ -0,0 +1,48 @@
+package net.roseboy.classfinal.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MachineKeyTable 单元测试
+ */
+class MachineKeyTableTest {
+
+    @Test
+    void testWrap() {
+        char[] contentKey = EncryptUtils.secureChar(32);
+        List<char[]> codes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            codes.add(("CODE" + i).toCharArray());
+        }
+        byte[] table = MachineKeyTable.wrap(contentKey, codes);
+        //每台机器一行，GCM加密的内容密钥带头部、IV和认证标签，不到128字节
+        assertEquals(500, MachineKeyTable.hashes(table).size());
+        assertTrue(table.length < 500 * 128, String.valueOf(table.length));
+
+        assertArrayEquals(contentKey, MachineKeyTable.unwrap(table, "CODE0".toCharArray()));
+        assertArrayEquals(contentKey, MachineKeyTable.unwrap(table, "CODE499".toCharArray()));
+        assertNull(MachineKeyTable.unwrap(table, "CODE500".toCharArray()));
+    }
+
+    @Test
+    void testDuplicate() {
+        byte[] table = MachineKeyTable.wrap("key".toCharArray(),
+                Arrays.asList("A".toCharArray(), "B".toCharArray(), "A".toCharArray()));
+        assertEquals(2, MachineKeyTable.hashes(table).size());
+    }
+
+    @Test
+    void testParse() {
+        List<char[]> codes = MachineKeyTable.parse("A, B\r\nC\n\n,D".toCharArray());
+        assertEquals(4, codes.size());
+        assertArrayEquals("C".toCharArray(), codes.get(2));
+        assertTrue(MachineKeyTable.parse(null).isEmpty());
+        assertTrue(MachineKeyTable.parse(new char[0]).isEmpty());
+    }
+}
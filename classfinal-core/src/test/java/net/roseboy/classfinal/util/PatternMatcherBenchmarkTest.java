@@ -0,0 +1,53 @@
+package net.roseboy.classfinal.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 通配符规则数量对匹配耗时的影响
+ * <p>
+ * 默认跳过，运行方式：
+ * mvn test -Dtest=PatternMatcherBenchmarkTest -Dclassfinal.benchmark=true
+ */
+class PatternMatcherBenchmarkTest {
+
+    @Test
+    void benchmark() {
+        assumeTrue(Boolean.getBoolean("classfinal.benchmark"));
+
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            names.add("com.example.module" + (i % 97) + ".service.impl.UserServiceImpl" + i);
+        }
+        double first = 0;
+        for (int rules : new int[]{10, 100, 1000, 5000}) {
+            //以通配符开头的规则，旧实现中每条都要对每个名称执行一次
+            List<String> patterns = new ArrayList<>();
+            for (int i = 0; i < rules; i++) {
+                patterns.add(i % 2 == 0 ? "*Test" + i : "**.dto" + i + ".*");
+            }
+            PatternMatcher matcher = PatternMatcher.compile(patterns);
+            double nanos = Double.MAX_VALUE;
+            for (int round = 0; round < 5; round++) {
+                int hits = 0;
+                long start = System.nanoTime();
+                for (int r = 0; r < 10; r++) {
+                    for (String name : names) {
+                        hits += matcher.matches(name) ? 1 : 0;
+                    }
+                }
+                nanos = Math.min(nanos, (System.nanoTime() - start) / (10.0 * names.size()));
+                assertTrue(hits >= 0);
+            }
+            if (first == 0) {
+                first = nanos;
+            }
+            System.out.printf("%5d 条通配符规则: %8.1f ns/名称 (%.1fx)%n", rules, nanos, nanos / first);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package net.roseboy.classfinal.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PatternMatcher 单元测试
+ */
+class PatternMatcherTest {
+
+    @Test
+    void testPrefixAndSuffix() {
+        PatternMatcher matcher = PatternMatcher.compile(Arrays.asList("com.demo", "Controller"));
+        assertTrue(matcher.matches("com.demo.Hello"));
+        assertTrue(matcher.matches("com.demo"));
+        assertTrue(matcher.matches("org.web.UserController"));
+        assertFalse(matcher.matches("com.dem"));
+        assertFalse(matcher.matches("org.web.ControllerAdvice"));
+    }
+
+    @Test
+    void testWildcard() {
+        PatternMatcher matcher = PatternMatcher.compile(Arrays.asList("com.**.service.*", "dep?.jar", "*-api.jar"));
+        assertTrue(matcher.matches("com.demo.user.service.UserService"));
+        assertFalse(matcher.matches("com.demo.user.dao.UserDao"));
+        assertTrue(matcher.matches("dep1.jar"));
+        assertTrue(matcher.matches("dep.jar"));
+        assertFalse(matcher.matches("dep12.jar"));
+        assertTrue(matcher.matches("user-api.jar"));
+        assertFalse(matcher.matches("user-api.jar.bak"));
+        //. 不是正则元字符
+        assertFalse(PatternMatcher.compile(Collections.singletonList("a.c*")).matches("abcd"));
+    }
+
+    @Test
+    void testRegex() {
+        PatternMatcher matcher = PatternMatcher.compile(Collections.singletonList("regex:com\\.demo\\.(a|b)\\..*"));
+        assertTrue(matcher.matches("com.demo.a.Hello"));
+        assertFalse(matcher.matches("com.demo.c.Hello"));
+    }
+
+    @Test
+    void testEmpty() {
+        PatternMatcher matcher = PatternMatcher.compile(null);
+        assertTrue(matcher.isEmpty());
+        assertFalse(matcher.matches("com.demo.Hello"));
+        assertTrue(matcher.matches("com.demo.Hello", true));
+        assertTrue(PatternMatcher.compile(Arrays.asList("", null)).isEmpty());
+    }
+
+    @Test
+    void testManyWildcards() throws Exception {
+        //通配符规则合并在一个自动机中，以通配符开头的规则很多时结果不变
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            patterns.add("*Test" + i);
+            patterns.add("**.dto" + i + ".*");
+            patterns.add("com.demo" + i + ".?x*");
+        }
+        PatternMatcher matcher = PatternMatcher.compile(patterns);
+        String[] names = {"com.demo.UserTest499", "com.demo.UserTest500", "org.a.dto7.User", "org.a.dto7",
+                "com.demo3.xService", "com.demo3.axService", "com.demo3.abService", "中文.dto1.类", "Test1"};
+        boolean[] expected = {true, false, true, false, true, true, false, true, true};
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(expected[i], matcher.matches(names[i]), names[i]);
+            assertEquals(StrUtils.isMatchs(patterns, names[i], false), matcher.matches(names[i]), names[i]);
+        }
+
+        //多个线程同时匹配
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                PatternMatcher shared = matcher;
+                for (int r = 0; r < 2000; r++) {
+                    for (int i = 0; i < names.length; i++) {
+                        if (shared.matches(names[i]) != expected[i]) {
+                            errors.add(new AssertionError(names[i]));
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(errors.isEmpty(), errors.toString());
+    }
+
+    @Test
+    void testSameAsStrUtils() {
+        Random random = new Random(7);
+        String[] parts = {"com", "demo", "user", "service", "Hello", "a", "b"};
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            StringBuilder sb = new StringBuilder();
+            int n = 1 + random.nextInt(3);
+            for (int j = 0; j < n; j++) {
+                sb.append(j == 0 ? "" : ".").append(parts[random.nextInt(parts.length)]);
+            }
+            if (random.nextInt(3) == 0) {
+                sb.insert(random.nextInt(sb.length() + 1), random.nextBoolean() ? "*" : "?");
+            }
+            patterns.add(sb.toString());
+        }
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder name = new StringBuilder();
+            int n = 1 + random.nextInt(5);
+            for (int j = 0; j < n; j++) {
+                name.append(j == 0 ? "" : ".").append(parts[random.nextInt(parts.length)]);
+            }
+            List<String> some = patterns.subList(0, 1 + random.nextInt(patterns.size()));
+            assertEquals(StrUtils.isMatchs(some, name.toString(), false),
+                    PatternMatcher.compile(some).matches(name.toString()), name + " " + some);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package net.roseboy.classfinal.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 字典压缩的大小和解压耗时：不压缩 / 无字典 DEFLATE / 字典 DEFLATE，以及每个类解压和解密的耗时对比
+ * <p>
+ * 默认跳过，运行方式（默认使用 javassist 的jar）：
+ * mvn test -Dtest=PayloadCompressorBenchmarkTest -Dclassfinal.benchmark=true [-Dclassfinal.benchmark.jar=/path/app.jar]
+ */
+class PayloadCompressorBenchmarkTest {
+
+    @Test
+    void benchmark() throws Exception {
+        assumeTrue(Boolean.getBoolean("classfinal.benchmark"));
+
+        String jar = System.getProperty("classfinal.benchmark.jar",
+                new File(javassist.ClassPool.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath());
+        List<byte[]> classes = loadClasses(jar);
+
+        long t0 = System.nanoTime();
+        DictionaryTrainer trainer = new DictionaryTrainer();
+        classes.forEach(trainer::add);
+        byte[] dictionary = trainer.build(DictionaryTrainer.MAX_SIZE);
+        long t1 = System.nanoTime();
+
+        long plain = 0;
+        long deflated = 0;
+        List<byte[]> compressed = new ArrayList<>();
+        for (byte[] c : classes) {
+            plain += c.length;
+            deflated += PayloadCompressor.compress(c, new byte[0]).length;
+            byte[] z = PayloadCompressor.compress(c, dictionary);
+            assertArrayEquals(c, PayloadCompressor.decompress(z, dictionary));
+            compressed.add(z);
+        }
+        long withDictionary = compressed.stream().mapToLong(z -> z.length).sum();
+        System.out.printf("%s: %d classes, dictionary %d bytes (%.0f ms)%n", jar, classes.size(), dictionary.length,
+                (t1 - t0) / 1e6);
+        System.out.printf("size: plain %d | deflate %d (%.1f%%) | dictionary %d (%.1f%%)%n", plain,
+                deflated, deflated * 100d / plain, withDictionary, withDictionary * 100d / plain);
+
+        char[] pass = "123456".toCharArray();
+        List<byte[]> encrypted = new ArrayList<>();
+        classes.forEach(c -> encrypted.add(EncryptUtils.en(c, pass, 1)));
+        int repeat = Math.max(1, 200000 / classes.size());
+        for (int round = 0; round < 5; round++) {
+            long a = System.nanoTime();
+            for (int r = 0; r < repeat; r++) {
+                for (byte[] z : compressed) {
+                    PayloadCompressor.decompress(z, dictionary);
+                }
+            }
+            long b = System.nanoTime();
+            for (int r = 0; r < repeat; r++) {
+                for (byte[] e : encrypted) {
+                    EncryptUtils.de(e, pass, 1);
+                }
+            }
+            long c = System.nanoTime();
+            long total = (long) repeat * classes.size();
+            System.out.printf("round %d: inflate %.2f us/class (%.0f MB/s) | decrypt %.2f us/class%n", round,
+                    (b - a) / 1e3 / total, plain * repeat / 1048576d / ((b - a) / 1e9), (c - b) / 1e3 / total);
+        }
+    }
+
+    private static List<byte[]> loadClasses(String jarPath) throws IOException {
+        List<byte[]> classes = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(jarPath)) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                if (entry.getName().endsWith(".class")) {
+                    classes.add(IoUtils.toBytes(zip.getInputStream(entry)));
+                }
+            }
+        }
+        return classes;
+    }
+}
@@ -0,0 +1,90 @@
+package net.roseboy.classfinal.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PayloadCompressor、DictionaryTrainer 单元测试
+ */
+class PayloadCompressorTest {
+
+    @Test
+    void testTrain() throws Exception {
+        List<byte[]> classes = classes();
+        DictionaryTrainer trainer = new DictionaryTrainer();
+        classes.forEach(trainer::add);
+        trainer.add(new byte[]{1, 2, 3});
+        assertEquals(classes.size(), trainer.getClasses());
+
+        byte[] dictionary = trainer.build(DictionaryTrainer.MAX_SIZE);
+        assertTrue(dictionary.length > 0 && dictionary.length <= DictionaryTrainer.MAX_SIZE);
+        assertTrue(trainer.build(100).length <= 100);
+
+        //与加入顺序无关
+        DictionaryTrainer reversed = new DictionaryTrainer();
+        List<byte[]> copy = new ArrayList<>(classes);
+        Collections.reverse(copy);
+        copy.forEach(reversed::add);
+        assertArrayEquals(dictionary, reversed.build(DictionaryTrainer.MAX_SIZE));
+    }
+
+    @Test
+    void testCompress() throws Exception {
+        List<byte[]> classes = classes();
+        DictionaryTrainer trainer = new DictionaryTrainer();
+        classes.forEach(trainer::add);
+        byte[] dictionary = trainer.build(DictionaryTrainer.MAX_SIZE);
+
+        long plain = 0;
+        long withDictionary = 0;
+        long withoutDictionary = 0;
+        for (byte[] bytes : classes) {
+            byte[] compressed = PayloadCompressor.compress(bytes, dictionary);
+            assertTrue(PayloadCompressor.isCompressed(compressed));
+            assertArrayEquals(bytes, PayloadCompressor.decompress(compressed, dictionary));
+            plain += bytes.length;
+            withDictionary += compressed.length;
+            withoutDictionary += PayloadCompressor.compress(bytes, new byte[0]).length;
+        }
+        //有字典时更小
+        assertTrue(withDictionary < withoutDictionary, withDictionary + " >= " + withoutDictionary);
+        assertTrue(withoutDictionary < plain);
+    }
+
+    @Test
+    void testUncompressed() {
+        //未压缩的数据原样返回
+        byte[] raw = {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 52};
+        assertFalse(PayloadCompressor.isCompressed(raw));
+        assertSame(raw, PayloadCompressor.decompress(raw, null));
+        //没有变小
+        assertSame(raw, PayloadCompressor.compress(raw, new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    void testWrongDictionary() throws Exception {
+        byte[] bytes = classes().get(0);
+        DictionaryTrainer trainer = new DictionaryTrainer();
+        classes().forEach(trainer::add);
+        byte[] compressed = PayloadCompressor.compress(bytes, trainer.build(DictionaryTrainer.MAX_SIZE));
+        assertThrows(IllegalStateException.class, () -> PayloadCompressor.decompress(compressed, null));
+    }
+
+    private static List<byte[]> classes() throws Exception {
+        List<byte[]> classes = new ArrayList<>();
+        for (Class<?> clazz : new Class<?>[]{PayloadCompressor.class, DictionaryTrainer.class, ConstantPoolScanner.class,
+                DebugInfoStripper.class, ResourceMinifier.class, SpringBootIndex.class, JarUtils.class, IoUtils.class}) {
+            String name = clazz.getName().substring(clazz.getName().lastIndexOf('.') + 1) + ".class";
+            try (InputStream in = clazz.getResourceAsStream(name)) {
+                classes.add(IoUtils.toBytes(in));
+            }
+        }
+        return classes;
+    }
+}
@@ -0,0 +1,109 @@
+package net.roseboy.classfinal.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ResourceMinifier 单元测试
+ */
+class ResourceMinifierTest {
+
+    @Test
+    void testAccept() {
+        ResourceMinifier minifier = new ResourceMinifier(null, null);
+        assertTrue(minifier.accept("BOOT-INF/classes/templates/index.html"));
+        assertTrue(minifier.accept("BOOT-INF/classes/static/app.js"));
+        assertFalse(minifier.accept("BOOT-INF/classes/static/jquery.min.js"));
+        assertFalse(minifier.accept("BOOT-INF/classes/application.yml"));
+
+        minifier = new ResourceMinifier(Collections.singletonList("**/templates/**"), null);
+        assertTrue(minifier.accept("BOOT-INF/classes/templates/mail.ftl"));
+        assertFalse(minifier.accept("BOOT-INF/classes/static/app.css"));
+    }
+
+    @Test
+    void testHtml() {
+        String html = "<html>\r\n"
+                + "  <!-- 注释 -->\n"
+                + "  <!--[if IE]><p>ie</p><![endif]-->\n"
+                + "  <!--/*/ <div th:text=\"${x}\"></div> /*/-->\n"
+                + "\n"
+                + "  <body>   \n"
+                + "    <pre>\n  a\n\n  b</pre>\n"
+                + "    <script>\n  var a = 1;\n\n  // c\n</script>\n"
+                + "  </body>\n"
+                + "</html>\n";
+        String expected = "<html>\n"
+                + "<!--[if IE]><p>ie</p><![endif]-->\n"
+                + "<!--/*/ <div th:text=\"${x}\"></div> /*/-->\n"
+                + "<body>\n"
+                + "<pre>\n  a\n\n  b</pre>\n"
+                + "<script>\n  var a = 1;\n\n  // c\n</script>\n"
+                + "</body>\n"
+                + "</html>\n";
+        assertEquals(expected, ResourceMinifier.minifyHtml(html, false));
+    }
+
+    @Test
+    void testFtl() {
+        String ftl = "<#-- 注释 -->\n  <#if user??>\n    ${user.name}\n  </#if>\n";
+        assertEquals("<#if user??>\n${user.name}\n</#if>\n", ResourceMinifier.minifyHtml(ftl, true));
+        //普通HTML中不处理
+        assertTrue(ResourceMinifier.minifyHtml(ftl, false).startsWith("<#-- 注释 -->"));
+    }
+
+    @Test
+    void testCss() {
+        String css = "/*! license */\n"
+                + "/* 注释 */\n"
+                + "a:hover ,  .b > .c {\n"
+                + "  color : red;\n"
+                + "  margin: 0  auto;\n"
+                + "  content: \"a  /* b */\";\n"
+                + "  width: calc(100% - 10px);\n"
+                + "}\n"
+                + "@media screen and (max-width: 600px) {\n"
+                + "  .d :first-child { color: /*[[${color}]]*/ blue; }\n"
+                + "}\n";
+        String expected = "/*! license */ "
+                + "a:hover,.b>.c{color :red;margin:0 auto;content:\"a  /* b */\";width:calc(100% - 10px);}"
+                + "@media screen and (max-width:600px){.d :first-child{color:/*[[${color}]]*/ blue;}}";
+        assertEquals(expected, ResourceMinifier.minifyCss(css));
+    }
+
+    @Test
+    void testJs() {
+        String js = "/**\n * 注释\n */\n"
+                + "function a(x) {\n"
+                + "    // 单行注释\n"
+                + "    var s = 'http://a.com  /* x */';\n"
+                + "    var r = /\\/\\/[a-z]+/g;   // 正则\n"
+                + "    var t = `line1\n    line2 ${x + `  ${s}  `} // 不是注释`;\n"
+                + "    return x   /   2\n"
+                + "}\n";
+        String expected = "function a(x) {\n"
+                + "var s = 'http://a.com  /* x */';\n"
+                + "var r = /\\/\\/[a-z]+/g;\n"
+                + "var t = `line1\n    line2 ${x + `  ${s}  `} // 不是注释`;\n"
+                + "return x / 2\n"
+                + "}\n";
+        assertEquals(expected, ResourceMinifier.minifyJs(js));
+    }
+
+    @Test
+    void testMinify() {
+        ResourceMinifier minifier = new ResourceMinifier(null, null);
+        byte[] html = "<div>\n    <p>x</p>\n</div>\n".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals("<div>\n<p>x</p>\n</div>\n".getBytes(StandardCharsets.UTF_8), minifier.minify("a.html", html));
+        //没有变小、不是UTF-8、未知类型
+        assertNull(minifier.minify("a.css", "a{}".getBytes(StandardCharsets.UTF_8)));
+        assertNull(minifier.minify("a.html", new byte[]{'<', ' ', ' ', (byte) 0xC3, '\n', ' '}));
+        byte[] txt = "a  \n\n  b".getBytes(StandardCharsets.UTF_8);
+        assertNull(new ResourceMinifier(Arrays.asList(".txt"), null).minify("a.txt", txt));
+    }
+}
@@ -0,0 +1,152 @@
+package net.roseboy.classfinal.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SpringBootIndex 单元测试
+ */
+class SpringBootIndexTest {
+
+    @TempDir
+    File root;
+
+    //Spring Boot 默认生成的 layers.idx
+    private static final String LAYERS = "- \"dependencies\":\n"
+            + "  - \"BOOT-INF/lib/a.jar\"\n"
+            + "  - \"BOOT-INF/lib/b.jar\"\n"
+            + "- \"spring-boot-loader\":\n"
+            + "  - \"org/\"\n"
+            + "- \"snapshot-dependencies\":\n"
+            + "- \"application\":\n"
+            + "  - \"BOOT-INF/classes/\"\n"
+            + "  - \"BOOT-INF/classpath.idx\"\n"
+            + "  - \"BOOT-INF/layers.idx\"\n"
+            + "  - \"META-INF/\"\n";
+
+    @Test
+    void testParseAndFormat() {
+        Map<String, List<String>> layers = SpringBootIndex.parseLayers(LAYERS);
+        assertEquals(Arrays.asList("dependencies", "spring-boot-loader", "snapshot-dependencies", "application"),
+                Arrays.asList(layers.keySet().toArray()));
+        assertTrue(layers.get("snapshot-dependencies").isEmpty());
+        assertEquals(LAYERS, SpringBootIndex.formatLayers(layers));
+        assertEquals("application", SpringBootIndex.layerOf(layers, "META-INF/MANIFEST.MF"));
+        assertNull(SpringBootIndex.layerOf(layers, "net/roseboy/classfinal/Main.class"));
+        assertThrows(IllegalArgumentException.class, () -> SpringBootIndex.parseLayers("dependencies\n"));
+    }
+
+    @Test
+    void testUpdateLayers() {
+        Map<String, List<String>> layers = SpringBootIndex.parseLayers(LAYERS);
+        List<String> names = Arrays.asList("BOOT-INF/lib/a.jar", "BOOT-INF/lib/b.jar", "META-INF/MANIFEST.MF",
+                "META-INF/.classes/com.a.A", "net/roseboy/classfinal/Main.class", "org/x/Loader.class");
+        Map<String, List<String>> updated = SpringBootIndex.updateLayers(layers, names,
+                Collections.singletonList("BOOT-INF/lib/b.jar"));
+
+        assertEquals(Arrays.asList("dependencies", "spring-boot-loader", SpringBootIndex.AGENT_LAYER,
+                "snapshot-dependencies", SpringBootIndex.ENCRYPTED_LAYER, "application"),
+                Arrays.asList(updated.keySet().toArray()));
+        assertEquals(Collections.singletonList("BOOT-INF/lib/a.jar"), updated.get("dependencies"));
+        assertEquals(Collections.singletonList("net/roseboy/classfinal/"), updated.get(SpringBootIndex.AGENT_LAYER));
+        assertEquals(SpringBootIndex.ENCRYPTED_LAYER, SpringBootIndex.layerOf(updated, "META-INF/.classes/com.a.A"));
+        assertEquals(SpringBootIndex.ENCRYPTED_LAYER, SpringBootIndex.layerOf(updated, "BOOT-INF/lib/b.jar"));
+        assertEquals("application", SpringBootIndex.layerOf(updated, "META-INF/MANIFEST.MF"));
+
+        //再次更新结果不变
+        assertEquals(updated, SpringBootIndex.updateLayers(updated, names, Collections.singletonList("BOOT-INF/lib/b.jar")));
+    }
+
+    @Test
+    void testExpandDirectory() {
+        Map<String, List<String>> layers = SpringBootIndex.parseLayers(LAYERS.replace(
+                "  - \"BOOT-INF/lib/a.jar\"\n  - \"BOOT-INF/lib/b.jar\"\n", "  - \"BOOT-INF/lib/\"\n"));
+        List<String> names = Arrays.asList("BOOT-INF/lib/a.jar", "BOOT-INF/lib/b.jar", "BOOT-INF/lib/c.jar");
+        Map<String, List<String>> updated = SpringBootIndex.updateLayers(layers, names,
+                Collections.singletonList("BOOT-INF/lib/b.jar"));
+        assertEquals(Arrays.asList("BOOT-INF/lib/a.jar", "BOOT-INF/lib/c.jar"), updated.get("dependencies"));
+        assertEquals(SpringBootIndex.ENCRYPTED_LAYER, SpringBootIndex.layerOf(updated, "BOOT-INF/lib/b.jar"));
+    }
+
+    @Test
+    void testRestoreLayers() {
+        Map<String, List<String>> layers = SpringBootIndex.parseLayers(LAYERS);
+        List<String> names = Arrays.asList("BOOT-INF/lib/a.jar", "BOOT-INF/lib/b.jar", "META-INF/MANIFEST.MF",
+                "META-INF/.classes/com.a.A", "net/roseboy/classfinal/Main.class");
+        String updated = SpringBootIndex.formatLayers(SpringBootIndex.updateLayers(layers, names,
+                Collections.singletonList("BOOT-INF/lib/b.jar")));
+        assertEquals(LAYERS, SpringBootIndex.restoreLayers(updated));
+        //不是加密后的索引时原样返回
+        assertSame(LAYERS, SpringBootIndex.restoreLayers(LAYERS));
+
+        //原来按目录匹配的已展开，放到 dependencies 层
+        String dir = LAYERS.replace("  - \"BOOT-INF/lib/a.jar\"\n  - \"BOOT-INF/lib/b.jar\"\n", "");
+        dir = dir.replace("- \"snapshot-dependencies\":\n", "- \"snapshot-dependencies\":\n  - \"BOOT-INF/lib/\"\n");
+        Map<String, List<String>> restored = SpringBootIndex.restoreLayers(SpringBootIndex.updateLayers(
+                SpringBootIndex.parseLayers(dir), names, Collections.singletonList("BOOT-INF/lib/b.jar")));
+        assertEquals("dependencies", SpringBootIndex.layerOf(restored, "BOOT-INF/lib/b.jar"));
+        assertEquals("snapshot-dependencies", SpringBootIndex.layerOf(restored, "BOOT-INF/lib/a.jar"));
+        assertFalse(restored.containsKey(SpringBootIndex.AGENT_LAYER));
+        assertFalse(restored.containsKey(SpringBootIndex.ENCRYPTED_LAYER));
+    }
+
+    @Test
+    void testUpdateClassPath() {
+        String text = "- \"BOOT-INF/lib/b.jar\"\n- \"BOOT-INF/lib/a.jar\"\n";
+        assertSame(text, SpringBootIndex.updateClassPath(text, Arrays.asList("BOOT-INF/lib/a.jar", "BOOT-INF/lib/b.jar")));
+        assertEquals(text + "- \"BOOT-INF/lib/classfinal.jar\"\n", SpringBootIndex.updateClassPath(text,
+                Arrays.asList("BOOT-INF/lib/a.jar", "BOOT-INF/lib/b.jar", "BOOT-INF/lib/classfinal.jar")));
+        //只有文件名的旧格式
+        assertEquals("- \"a.jar\"\n- \"c.jar\"\n",
+                SpringBootIndex.updateClassPath("- \"a.jar\"\n", Arrays.asList("WEB-INF/lib/a.jar", "WEB-INF/lib/c.jar")));
+    }
+
+    @Test
+    void testRestoreClassPath() {
+        String text = "- \"WEB-INF/lib/a.jar\"\n- \"WEB-INF/lib/b.jar\"\n";
+        List<String> agent = Collections.singletonList("WEB-INF/lib/classfinal.jar");
+        assertSame(text, SpringBootIndex.restoreClassPath(text, agent));
+        List<String> libJars = Arrays.asList("WEB-INF/lib/a.jar", "WEB-INF/lib/b.jar", "WEB-INF/lib/classfinal.jar");
+        assertEquals(text, SpringBootIndex.restoreClassPath(SpringBootIndex.updateClassPath(text, libJars), agent));
+        //只有文件名的旧格式
+        assertEquals("- \"a.jar\"\n", SpringBootIndex.restoreClassPath("- \"a.jar\"\n- \"classfinal.jar\"\n", agent));
+    }
+
+    @Test
+    void testUpdate() throws Exception {
+        write(root, "BOOT-INF/layers.idx", LAYERS);
+        write(root, "BOOT-INF/classpath.idx", "- \"BOOT-INF/lib/a.jar\"\n- \"BOOT-INF/lib/b.jar\"\n");
+        write(root, "BOOT-INF/lib/a.jar", "a");
+        write(root, "BOOT-INF/lib/b.jar", "b");
+        write(root, "META-INF/.classes/com.a.A", "x");
+        write(root, "net/roseboy/classfinal/Main.class", "m");
+
+        assertTrue(SpringBootIndex.update(root, "BOOT-INF", Collections.singletonList("BOOT-INF/lib/b.jar")));
+        Map<String, List<String>> layers = SpringBootIndex.parseLayers(read(root, "BOOT-INF/layers.idx"));
+        assertEquals(Arrays.asList("META-INF/.classes/", "BOOT-INF/lib/b.jar"), layers.get(SpringBootIndex.ENCRYPTED_LAYER));
+        assertEquals("- \"BOOT-INF/lib/a.jar\"\n- \"BOOT-INF/lib/b.jar\"\n", read(root, "BOOT-INF/classpath.idx"));
+
+        //没有 layers.idx
+        assertFalse(SpringBootIndex.update(root, "WEB-INF", Collections.emptyList()));
+    }
+
+    private static void write(File root, String name, String text) throws Exception {
+        File file = new File(root, name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File root, String name) throws Exception {
+        return new String(Files.readAllBytes(new File(root, name).toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -1,14 +1,18 @@
 package net.roseboy.classfinal;
 
 
+import net.roseboy.classfinal.config.BatchConfig;
 import net.roseboy.classfinal.config.ClassFinalConfig;
 import net.roseboy.classfinal.config.ConfigLoader;
 import net.roseboy.classfinal.util.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 
 /**
@@ -25,12 +29,24 @@ public class Main {
      * @param args 参数
      */
     public static void main(String[] args) {
+        int code;
+        if (Arrays.asList(args).contains("-remote") || Arrays.asList(args).contains("--remote")) {
+            code = remote(args);
+        } else {
+            code = run(args);
+        }
+        if (code != 0) {
+            System.exit(code);
+        }
+    }
 
-
-
-
-
-
+    /**
+     * 执行一次命令，也是加密服务中每个任务的入口
+     *
+     * @param args 参数
+     * @return 退出码，0为成功
+     */
+    public static int run(String[] args) {
         Const.pringInfo();
         Scanner scanner = new Scanner(System.in);
 
@@ -41,32 +57,77 @@ public class Main {
         cmd.addOption("password", true, "加密密码(同 -pwd)");
         cmd.addOption("password-file", true, "从文件读取密码");
         cmd.addOption("nopwd", false, "无密码模式");
-        cmd.addOption("code", true, "机器码");
+        cmd.addOption("code", true, "机器码(多台机器用\",\"分割)");
+        cmd.addOption("code-file", true, "机器码文件(每行一个,绑定多台机器)");
+        cmd.addOption("pubkey", true, "RSA公钥文件,公钥模式加密(不需要密码,运行时用私钥解密)");
+        cmd.addOption("key", true, "公钥模式加密的jar的RSA私钥文件(配合 -rekey/-decrypt 代替 -pwd)");
         cmd.addOption("exclude", true, "排除的类名(可为空,多个用\",\"分割)");
         cmd.addOption("file", true, "加密的jar/war路径");
         cmd.addOption("libjars", true, "jar/war lib下的jar(可为空,多个用\",\"分割)");
         cmd.addOption("classpath", true, "依赖jar包目录(可为空,多个用\",\"分割)");
         cmd.addOption("cfgfiles", true, "需要加密的配置文件(可为空,多个用\",\"分割)");
         cmd.addOption("config", true, "配置文件路径(YAML/JSON)");
+        cmd.addOption("batch", true, "批量加密配置文件路径(YAML)");
         cmd.addOption("init-config", true, "生成配置文件模板");
         cmd.addOption("verify", true, "验证JAR是否已加密");
+        cmd.addOption("diff", true, "旧版本加密后的jar,与 -file 比较生成增量补丁");
+        cmd.addOption("apply", true, "在 -file 指定的旧版本上应用增量补丁");
+        cmd.addOption("patch", true, "补丁文件的输出路径(配合 -diff,默认为新jar路径加.patch)");
+        cmd.addOption("out", true, "输出路径(配合 -apply 默认为补丁中记录的文件名,配合 -decrypt 默认为加-decrypted的文件名)");
+        cmd.addOption("rekey", true, "更换已加密jar的密码/机器码(多个用\",\"分割,默认覆盖原文件),-pwd/-code 为原密码和机器码");
+        cmd.addOption("newpwd", true, "更换后的密码(配合 -rekey,#为无密码模式,默认不变)");
+        cmd.addOption("newcode", true, "更换后的机器码(配合 -rekey,多台机器用\",\"分割,#为取消绑定,默认不变)");
+        cmd.addOption("decrypt", true, "用密码把已加密的jar还原成未加密的jar(授权场景),-pwd/-code 为加密时的密码和机器码");
         cmd.addOption("log-level", true, "日志级别(DEBUG|INFO|WARN|ERROR)");
+        cmd.addOption("threads", true, "并行线程数(默认1)");
+        cmd.addOption("compression", true, "压缩策略,如default=6,class=9,png=0");
+        cmd.addOption("cpcache", true, "依赖jar包索引缓存文件(可为空)");
+        cmd.addOption("heap-limit", true, "打包时内存中待写入数据的上限(MB,默认为最大堆内存的1/4)");
+        cmd.addOption("report", true, "各阶段耗时和资源报告的输出文件(JSON)");
+        cmd.addOption("trace", true, "Chrome trace-event文件的输出路径");
+        cmd.addOption("reproducible", false, "可重现构建,相同的输入得到完全相同的输出");
+        cmd.addOption("timestamp", true, "可重现构建的entry时间(纪元秒数或ISO-8601,默认SOURCE_DATE_EPOCH)");
+        cmd.addOption("strip-stub", true, "清空方法体后的类去掉的调试信息(lines,vars,source,all)");
+        cmd.addOption("strip-payload", true, "加密前的类去掉的调试信息(lines,vars,source,all)");
+        cmd.addOption("compress-payload", false, "加密前用从jar中生成的字典压缩类");
+        cmd.addOption("cipher", true, "加密算法(gcm|ctr|ecb,默认gcm)");
+        cmd.addOption("minify", false, "压缩模板和静态资源(html/ftl/css/js),去掉注释和空白");
+        cmd.addOption("minify-include", true, "压缩的文件,按entry路径匹配(多个用\",\"分割,默认html/htm/ftl/css/js)");
+        cmd.addOption("minify-exclude", true, "不压缩的文件(多个用\",\"分割,默认.min.js,.min.css)");
+        cmd.addOption("watch", false, "加密后监视输入jar,变化时增量更新加密后的jar");
+        cmd.addOption("watch-dir", true, "同时监视的classes目录,编译后直接更新(配合 -watch)");
         cmd.addOption("Y", false, "无需确认");
         cmd.addOption("y", false, "无需确认(同 -Y)");
         cmd.addOption("debug", false, "调试模式");
         cmd.addOption("C", false, "生成机器码");
+        cmd.addOption("daemon", false, "启动加密服务,通过 -remote 提交任务");
+        cmd.addOption("port", true, "加密服务的端口(默认随机,只监听本机)");
+        cmd.addOption("memory", true, "加密服务同时执行任务的内存预算(MB,默认为最大堆内存的3/4)");
+        cmd.addOption("parallel", true, "加密服务同时执行的任务数(默认CPU核数)");
+        cmd.addOption("idle", true, "加密服务空闲多少分钟后退出(默认180,0为不退出)");
+        cmd.addOption("daemon-status", false, "查看加密服务状态(配合 -remote)");
+        cmd.addOption("daemon-stop", false, "停止加密服务(配合 -remote)");
         cmd.parse(args);
 
         // 设置日志级别
         if (cmd.hasOption("log-level")) {
             String logLevel = cmd.getOptionValue("log-level");
-            Log.setLogLevel(logLevel);
+            setLogLevel(logLevel);
             Log.debug("日志级别已设置为: " + logLevel);
         }
 
         if (cmd.hasOption("C")) {
             makeCode();
-            return;
+            return 0;
+        }
+
+        // 启动加密服务
+        if (cmd.hasOption("daemon")) {
+            if (EncryptDaemon.isJob()) {
+                Log.println("ERROR: 不能在加密服务中启动加密服务");
+                return 1;
+            }
+            return daemon(cmd);
         }
 
         // 生成配置文件模板
@@ -76,10 +137,10 @@ public class Main {
                 ConfigLoader.generateTemplate(configPath);
                 Log.println("配置文件模板已生成: " + configPath);
                 Log.println("请编辑此文件后使用 --config 参数加载");
-                return;
+                return 0;
             } catch (IOException e) {
                 Log.println("ERROR: 生成配置文件失败 - " + e.getMessage());
-                return;
+                return 1;
             }
         }
 
@@ -89,16 +150,90 @@ public class Main {
             try {
                 EncryptionVerifier.VerifyResult result = EncryptionVerifier.verify(jarPath);
                 EncryptionVerifier.printResult(result);
-                return;
+                return 0;
             } catch (IOException e) {
                 Log.println("ERROR: 验证失败 - " + e.getMessage());
-                return;
+                return 1;
+            }
+        }
+
+        // 生成增量补丁
+        if (cmd.hasOption("diff")) {
+            File newJar = new File(cmd.getOptionValue("file", ""));
+            File patch = new File(cmd.getOptionValue("patch", newJar.getPath() + ".patch"));
+            try {
+                JarPatch.Result result = JarPatch.diff(new File(cmd.getOptionValue("diff")), newJar, patch);
+                Log.println(result.summary());
+                Log.println("==>" + patch.getAbsolutePath());
+                return 0;
+            } catch (IOException | RuntimeException e) {
+                Log.println("ERROR: 生成补丁失败 - " + e.getMessage());
+                return 1;
+            }
+        }
+
+        // 应用增量补丁
+        if (cmd.hasOption("apply")) {
+            String out = cmd.getOptionValue("out", "");
+            try {
+                File result = JarPatch.apply(new File(cmd.getOptionValue("file", "")),
+                        new File(cmd.getOptionValue("apply")), StrUtils.isEmpty(out) ? null : new File(out));
+                Log.println("补丁已应用，校验通过");
+                Log.println("==>" + result.getAbsolutePath());
+                return 0;
+            } catch (IOException | RuntimeException e) {
+                Log.println("ERROR: 应用补丁失败 - " + e.getMessage());
+                return 1;
             }
         }
 
+        // 更换密码和机器码
+        if (cmd.hasOption("rekey")) {
+            return rekey(cmd);
+        }
+
+        // 还原已加密的jar
+        if (cmd.hasOption("decrypt")) {
+            return decrypt(cmd);
+        }
+
+        // 批量加密
+        if (cmd.hasOption("batch")) {
+            String batchPath = cmd.getOptionValue("batch");
+            try {
+                BatchConfig batch = ConfigLoader.loadBatch(batchPath);
+                batch.validate();
+                Log.println("已从批量配置文件加载 " + batch.getJobs().size() + " 个任务: " + batchPath);
+                BatchEncryptor.BatchResult result = new BatchEncryptor(batch).run();
+                result.print();
+                return result.getFailedCount() > 0 ? 1 : 0;
+            } catch (IOException e) {
+                Log.println("ERROR: 读取批量配置文件失败 - " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                Log.println("ERROR: 配置验证失败 - " + e.getMessage());
+            }
+            return 1;
+        }
+
         //全部参数(需要加密的class路径,lib下的jar,包名,排除的class,依赖jar包路径,密码,机器码,需要加密的配置文件)
         String path=null,libjars,packages,excludeClass,classpath,password=null,code,cfgfiles;
         boolean skipConfirmation = false;
+        int threads = Integer.parseInt(cmd.getOptionValue("threads", "1"));
+        String compression = cmd.getOptionValue("compression", "");
+        String cpcache = cmd.getOptionValue("cpcache", "");
+        long heapLimit = Long.parseLong(cmd.getOptionValue("heap-limit", "0"));
+        String report = cmd.getOptionValue("report", "");
+        String trace = cmd.getOptionValue("trace", "");
+        boolean reproducible = cmd.hasOption("reproducible") || cmd.hasOption("timestamp");
+        String timestamp = cmd.getOptionValue("timestamp", "");
+        String stripStub = cmd.getOptionValue("strip-stub", "");
+        String stripPayload = cmd.getOptionValue("strip-payload", "");
+        boolean compressPayload = cmd.hasOption("compress-payload");
+        String cipher = cmd.getOptionValue("cipher", CipherSuite.name(Const.ENCRYPT_TYPE));
+        boolean minify = cmd.hasOption("minify") || cmd.hasOption("minify-include");
+        String minifyInclude = cmd.getOptionValue("minify-include", "");
+        String minifyExclude = cmd.getOptionValue("minify-exclude", "");
+        String pubkey = cmd.getOptionValue("pubkey", "");
 
         // 从配置文件加载(优先级最高)
         if (cmd.hasOption("config")) {
@@ -115,12 +250,13 @@ public class Main {
                     String.join(",", config.getInput().getExclude()) : "";
                 libjars = config.getInput().getLibjars() != null ? 
                     String.join(",", config.getInput().getLibjars()) : "";
-                classpath = "";
+                classpath = config.getInput().getClasspath() != null ?
+                    String.join(",", config.getInput().getClasspath()) : "";
 
                 // 密码处理(优先密码文件)
                 if (!StrUtils.isEmpty(config.getEncryption().getPasswordFile())) {
                     password = PasswordUtil.readPasswordFromFile(
-                        config.getEncryption().getPasswordFile(),
+                        EncryptDaemon.resolve(config.getEncryption().getPasswordFile()),
                         config.getEncryption().isDeletePasswordFile()
                     );
                     // 检查密码强度
@@ -134,38 +270,82 @@ public class Main {
 
                 code = config.getEncryption().getMachineCode();
                 cfgfiles = "";
+                if ("public-key".equals(config.getEncryption().getMode()) && StrUtils.isEmpty(pubkey)) {
+                    pubkey = config.getEncryption().getPublicKeyFile();
+                }
 
                 // 从配置文件读取 skipConfirmation 设置
                 if (config.getAdvanced() != null) {
                     skipConfirmation = config.getAdvanced().isSkipConfirmation();
+                    if (!cmd.hasOption("threads")) {
+                        threads = config.getAdvanced().getThreads();
+                    }
+                    if (!cmd.hasOption("compression") && config.getAdvanced().getCompression() != null) {
+                        compression = config.getAdvanced().getCompression();
+                    }
+                    if (!cmd.hasOption("cpcache") && config.getAdvanced().getClasspathCache() != null) {
+                        cpcache = config.getAdvanced().getClasspathCache();
+                    }
+                    if (!cmd.hasOption("heap-limit")) {
+                        heapLimit = config.getAdvanced().getHeapLimit();
+                    }
+                    if (!cmd.hasOption("report") && config.getAdvanced().getReport() != null) {
+                        report = config.getAdvanced().getReport();
+                    }
+                    if (!cmd.hasOption("trace") && config.getAdvanced().getTrace() != null) {
+                        trace = config.getAdvanced().getTrace();
+                    }
+                    if (!cmd.hasOption("strip-stub") && config.getAdvanced().getStripStub() != null) {
+                        stripStub = config.getAdvanced().getStripStub();
+                    }
+                    if (!cmd.hasOption("strip-payload") && config.getAdvanced().getStripPayload() != null) {
+                        stripPayload = config.getAdvanced().getStripPayload();
+                    }
+                    if (!compressPayload && config.getAdvanced().isCompressPayload()) {
+                        compressPayload = true;
+                    }
+                    if (!cmd.hasOption("cipher") && config.getAdvanced().getCipher() != null) {
+                        cipher = config.getAdvanced().getCipher();
+                    }
+                    if (!reproducible && config.getAdvanced().isReproducible()) {
+                        reproducible = true;
+                        timestamp = config.getAdvanced().getOutputTimestamp();
+                    }
                     // 设置日志级别
                     if (config.getAdvanced().getLogLevel() != null) {
-                        Log.setLogLevel(config.getAdvanced().getLogLevel());
+                        setLogLevel(config.getAdvanced().getLogLevel());
                     }
                 }
 
+                ClassFinalConfig.MinifyConfig minifyConfig = config.getMinify();
+                if (!minify && minifyConfig != null && minifyConfig.isEnabled()) {
+                    minify = true;
+                    minifyInclude = minifyConfig.getInclude() != null ? String.join(",", minifyConfig.getInclude()) : "";
+                    minifyExclude = minifyConfig.getExclude() != null ? String.join(",", minifyConfig.getExclude()) : "";
+                }
+
                 Log.println("已从配置文件加载参数: " + configPath);
                 Log.println();
 
                 // 跳过后续的参数读取逻辑
             } catch (IOException e) {
                 Log.println("ERROR: 读取配置文件失败 - " + e.getMessage());
-                return;
+                return 1;
             } catch (IllegalArgumentException e) {
                 Log.println("ERROR: 配置验证失败 - " + e.getMessage());
-                return;
+                return 1;
             }
         } else {
 
-        //优先从环境变量读取
-        String envFile = System.getenv("INPUT_FILE");
-        String envPackages = System.getenv("PACKAGES");
-        String envPassword = System.getenv("PASSWORD");
-        String envCode = System.getenv("CODE");
-        String envLibjars = System.getenv("LIBJARS");
-        String envExclude = System.getenv("EXCLUDE");
-        String envClasspath = System.getenv("CLASSPATH");
-        String envCfgfiles = System.getenv("CFGFILES");
+        //优先从环境变量读取，加密服务中读取客户端的环境变量
+        String envFile = EncryptDaemon.getenv("INPUT_FILE");
+        String envPackages = EncryptDaemon.getenv("PACKAGES");
+        String envPassword = EncryptDaemon.getenv("PASSWORD");
+        String envCode = EncryptDaemon.getenv("CODE");
+        String envLibjars = EncryptDaemon.getenv("LIBJARS");
+        String envExclude = EncryptDaemon.getenv("EXCLUDE");
+        String envClasspath = EncryptDaemon.getenv("CLASSPATH");
+        String envCfgfiles = EncryptDaemon.getenv("CFGFILES");
 
         //没有参数且没有环境变量时手动输入
         if ((args == null || args.length == 0) && StrUtils.isEmpty(envFile)) {
@@ -215,7 +395,10 @@ public class Main {
             classpath = cmd.getOptionValue("classpath", "");
             
             // 密码处理
-            if (cmd.hasOption("nopwd")) {
+            if (StrUtils.isNotEmpty(pubkey)) {
+                // 公钥模式，使用生成的内容密钥
+                password = "";
+            } else if (cmd.hasOption("nopwd")) {
                 // 无密码模式
                 password = Const.NO_PASSWORD_MARKER;
             } else if (cmd.hasOption("password-file")) {
@@ -227,7 +410,7 @@ public class Main {
                     );
                 } catch (IOException e) {
                     Log.println("ERROR: 读取密码文件失败 - " + e.getMessage());
-                    return;
+                    return 1;
                 }
             } else {
                 // 从参数读取
@@ -235,6 +418,15 @@ public class Main {
             }
             
             code = cmd.getOptionValue("code", "");
+            if (cmd.hasOption("code-file")) {
+                File codeFile = new File(cmd.getOptionValue("code-file"));
+                if (!codeFile.isFile()) {
+                    Log.println("ERROR: 机器码文件不存在 - " + codeFile);
+                    return 1;
+                }
+                String codes = IoUtils.readTxtFile(codeFile);
+                code = StrUtils.isEmpty(code) ? codes : code + "," + codes;
+            }
             cfgfiles = cmd.getOptionValue("cfgfiles", "");
         }
         }
@@ -263,6 +455,13 @@ public class Main {
             Const.DEBUG = true;
         }
 
+        //配置文件和环境变量中的相对路径在加密服务中相对于客户端的工作目录，命令行参数已由客户端转为绝对路径
+        path = EncryptDaemon.resolve(path);
+        cpcache = EncryptDaemon.resolve(cpcache);
+        report = EncryptDaemon.resolve(report);
+        trace = EncryptDaemon.resolve(trace);
+        pubkey = EncryptDaemon.resolve(pubkey);
+
         Log.println();
         Log.println("加密信息如下:");
         Log.println("-------------------------");
@@ -272,8 +471,12 @@ public class Main {
         Log.println("4. 排除的类名:        " + excludeClass);
         Log.println("5. 加密配置文件:      " + cfgfiles);
         Log.println("6. ClassPath:       " + classpath);
-        Log.println("7. 密码:             " + password);
-        Log.println("8. 机器码:           " + code);
+        Log.println("7. 密码:             " + (StrUtils.isEmpty(pubkey) ? password : "(公钥模式) " + pubkey));
+        int machines = MachineKeyTable.parse(code == null ? null : code.toCharArray()).size();
+        Log.println("8. 机器码:           " + (machines > 1 ? machines + " 台机器" : code == null ? null : code.trim()));
+        Log.println("9. 线程数:           " + threads);
+        Log.println("10. 压缩策略:        " + compression);
+        Log.println("11. 加密算法:        " + cipher);
         Log.println("-------------------------");
         Log.println();
 
@@ -292,30 +495,245 @@ public class Main {
 
         if (!"Y".equalsIgnoreCase(yes)) {
             Log.println("已取消！");
-            return;
+            return 0;
         }
         Log.println("处理中...");
         List<String> includeJarList = StrUtils.toList(libjars);
         List<String> packageList = StrUtils.toList(packages);
         List<String> excludeClassList = StrUtils.toList(excludeClass);
         List<String> classPathList = StrUtils.toList(classpath);
+        classPathList.replaceAll(EncryptDaemon::resolve);
         List<String> cfgFileList = StrUtils.toList(cfgfiles);
         includeJarList.add("-");
 
-        JarEncryptor encryptor = new JarEncryptor(path, password.trim().toCharArray());
+        JarEncryptor encryptor = new JarEncryptor(path, (StrUtils.isEmpty(pubkey) ? password : "").trim().toCharArray());
         encryptor.setCode(StrUtils.isEmpty(code) ? null : code.trim().toCharArray());
         encryptor.setPackages(packageList);
         encryptor.setIncludeJars(includeJarList);
         encryptor.setExcludeClass(excludeClassList);
         encryptor.setClassPath(classPathList);
         encryptor.setCfgfiles(cfgFileList);
+        encryptor.setThreads(threads);
+        encryptor.setClassPathCache(StrUtils.isEmpty(cpcache) ? null : new File(cpcache));
+        encryptor.setMemoryLimit(heapLimit * 1024 * 1024);
+        encryptor.setReportFile(StrUtils.isEmpty(report) ? null : new File(report));
+        encryptor.setTraceFile(StrUtils.isEmpty(trace) ? null : new File(trace));
+        if (minify) {
+            encryptor.setResourceMinifier(new ResourceMinifier(StrUtils.toList(minifyInclude),
+                    StrUtils.toList(minifyExclude)));
+        }
+        boolean watch = cmd.hasOption("watch") || cmd.hasOption("watch-dir");
+        if (watch && EncryptDaemon.isJob()) {
+            Log.println("ERROR: 加密服务中不支持 -watch");
+            return 1;
+        }
+        EncryptDaemon.Lease lease;
         try {
-            String result = encryptor.doEncryptJar();
+            lease = EncryptDaemon.lease(encryptor, new File(path));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.println("ERROR: 已取消");
+            return 1;
+        }
+        try {
+            if (reproducible) {
+                encryptor.setOutputTimestamp(ArchiveUtils.parseTimestamp(timestamp));
+            }
+            encryptor.setCompressionPolicy(CompressionPolicy.parse(compression));
+            encryptor.setStubDebugInfo(DebugInfoStripper.parse(stripStub));
+            encryptor.setPayloadDebugInfo(DebugInfoStripper.parse(stripPayload));
+            encryptor.setCompressPayload(compressPayload);
+            encryptor.setCipherSuite(CipherSuite.parse(cipher, Const.ENCRYPT_TYPE));
+            if (StrUtils.isNotEmpty(pubkey)) {
+                encryptor.setPublicKey(EncryptUtils.readKey(new File(pubkey)));
+            }
+            EncryptWatcher watcher = watch ? new EncryptWatcher(encryptor) : null;
+            String result = watcher != null ? watcher.build() : encryptor.doEncryptJar();
             Log.println("加密完成，请牢记密码！");
             Log.println("==>" + result);
+            Log.println("堆内存峰值: " + HeapMonitor.format(encryptor.getPeakHeapUsed()));
+            encryptor.getReport().summary().forEach(Log::debug);
+            if (watcher != null) {
+                if (cmd.hasOption("watch-dir")) {
+                    watcher.setClassesDir(new File(cmd.getOptionValue("watch-dir")));
+                }
+                watcher.watch();
+            }
+            return 0;
         } catch (Exception e) {
             //e.printStackTrace();
             Log.println("ERROR: " + e.getMessage());
+            return 1;
+        } finally {
+            lease.close();
+        }
+    }
+
+    /**
+     * 更换已加密jar的密码和机器码，多个jar依次处理，每个jar在线程池中并行重新加密
+     *
+     * @param cmd 命令行参数
+     * @return 退出码
+     */
+    private static int rekey(CmdLineOption cmd) {
+        List<String> jars = StrUtils.toList(cmd.getOptionValue("rekey"));
+        String out = cmd.getOptionValue("out", "");
+        if (StrUtils.isNotEmpty(out) && jars.size() > 1) {
+            Log.println("ERROR: 多个文件时不能指定 -out");
+            return 1;
+        }
+        String newCode = cmd.getOptionValue("newcode", null);
+        JarRekey.Key newKey = new JarRekey.Key(
+                cmd.hasOption("newpwd") ? cmd.getOptionValue("newpwd").toCharArray() : null,
+                newCode == null ? null : "#".equals(newCode) ? new char[0] : newCode.toCharArray());
+        ForkJoinPool pool = ParallelUtils.newPool(Integer.parseInt(cmd.getOptionValue("threads", "1")));
+        int failed = 0;
+        try {
+            for (String jar : jars) {
+                File source = new File(jar);
+                File target = StrUtils.isEmpty(out) ? source : new File(out);
+                try {
+                    JarRekey.Key oldKey = new JarRekey.Key(oldPassword(cmd, source),
+                            cmd.getOptionValue("code", "").toCharArray());
+                    JarRekey.Result result = JarRekey.rekey(source, target, oldKey, newKey, pool);
+                    Log.println(source.getName() + ": " + result.summary());
+                    Log.println("==>" + target.getAbsolutePath());
+                } catch (IOException | RuntimeException e) {
+                    Log.println("ERROR: " + source.getName() + " 更换密码失败 - " + e.getMessage());
+                    failed++;
+                }
+            }
+        } finally {
+            ParallelUtils.shutdown(pool);
+        }
+        return failed > 0 ? 1 : 0;
+    }
+
+    /**
+     * 用密码把已加密的jar还原成未加密的jar，在线程池中并行解密
+     *
+     * @param cmd 命令行参数
+     * @return 退出码
+     */
+    private static int decrypt(CmdLineOption cmd) {
+        File source = new File(cmd.getOptionValue("decrypt"));
+        String out = cmd.getOptionValue("out", "");
+        File target;
+        if (StrUtils.isNotEmpty(out)) {
+            target = new File(out);
+        } else {
+            String path = source.getAbsolutePath();
+            int dot = path.lastIndexOf('.');
+            target = new File(path.contains("-encrypted.") ? path.replace("-encrypted.", "-decrypted.")
+                    : path.substring(0, dot) + "-decrypted" + path.substring(dot));
+        }
+        ForkJoinPool pool = ParallelUtils.newPool(Integer.parseInt(cmd.getOptionValue("threads", "1")));
+        try {
+            JarRestore.Result result = JarRestore.restore(source, target, oldPassword(cmd, source),
+                    cmd.getOptionValue("code", "").toCharArray(), pool);
+            Log.println(source.getName() + ": " + result.summary());
+            Log.println("==>" + target.getAbsolutePath());
+            return 0;
+        } catch (IOException | RuntimeException e) {
+            Log.println("ERROR: " + source.getName() + " 还原失败 - " + e.getMessage());
+            return 1;
+        } finally {
+            ParallelUtils.shutdown(pool);
+        }
+    }
+
+    /**
+     * 加密时的密码，公钥模式用 -key 指定的私钥解开jar中的内容密钥
+     *
+     * @param cmd 命令行参数
+     * @param jar 已加密的jar
+     * @return 密码
+     */
+    private static char[] oldPassword(CmdLineOption cmd, File jar) {
+        if (!cmd.hasOption("key")) {
+            return cmd.getOptionValue("pwd", "").toCharArray();
+        }
+        char[] contentKey = JarDecryptor.openEnvelope(jar, EncryptUtils.readKey(new File(cmd.getOptionValue("key"))));
+        if (contentKey == null) {
+            throw new IllegalArgumentException("不是公钥模式加密的jar");
+        }
+        return contentKey;
+    }
+
+    /**
+     * 启动加密服务，直到停止或空闲超时
+     *
+     * @param cmd 参数
+     * @return 退出码
+     */
+    private static int daemon(CmdLineOption cmd) {
+        EncryptDaemon daemon = new EncryptDaemon(Main::run);
+        daemon.setPort(Integer.parseInt(cmd.getOptionValue("port", "0")));
+        if (cmd.hasOption("threads")) {
+            daemon.setThreads(Integer.parseInt(cmd.getOptionValue("threads")));
+        }
+        if (cmd.hasOption("memory")) {
+            daemon.setMemory(Long.parseLong(cmd.getOptionValue("memory")));
+        }
+        if (cmd.hasOption("parallel")) {
+            daemon.setParallel(Integer.parseInt(cmd.getOptionValue("parallel")));
+        }
+        daemon.setIdleMinutes(Long.parseLong(cmd.getOptionValue("idle", "180")));
+        String cpcache = cmd.getOptionValue("cpcache", "");
+        daemon.setCacheFile(StrUtils.isEmpty(cpcache) ? null : new File(cpcache));
+        try {
+            daemon.start();
+        } catch (IOException e) {
+            Log.println("ERROR: 启动加密服务失败 - " + e.getMessage());
+            return 1;
+        }
+        Log.println("加密服务已启动，端口: " + daemon.getPort());
+        Log.println("==>" + EncryptDaemon.defaultStateFile().getAbsolutePath());
+        Log.println("使用 java -jar classfinal-fatjar.jar -remote [参数] 提交任务");
+        daemon.serve();
+        return 0;
+    }
+
+    /**
+     * 把参数转发给加密服务执行
+     *
+     * @param args 参数，包含 -remote
+     * @return 退出码
+     */
+    private static int remote(String[] args) {
+        List<String> list = new ArrayList<>(Arrays.asList(args));
+        list.removeIf(arg -> "-remote".equals(arg) || "--remote".equals(arg));
+        String command = EncryptDaemon.CMD_RUN;
+        if (list.remove("-daemon-status") || list.remove("--daemon-status")) {
+            command = EncryptDaemon.CMD_STATUS;
+        } else if (list.remove("-daemon-stop") || list.remove("--daemon-stop")) {
+            command = EncryptDaemon.CMD_STOP;
+        } else if (list.isEmpty()) {
+            Log.println("ERROR: 加密服务不支持交互输入，请在命令行中指定参数");
+            return 1;
+        } else if (!list.contains("-Y") && !list.contains("-y") && !list.contains("--Y") && !list.contains("--y")) {
+            //服务端无法读取控制台输入
+            list.add("-Y");
+        }
+        try {
+            return DaemonClient.run(EncryptDaemon.defaultStateFile(), command,
+                    DaemonClient.absolutize(list.toArray(new String[0])), System.out, System.err);
+        } catch (IOException e) {
+            Log.println("ERROR: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * 设置日志级别，加密服务中只作用于当前任务
+     *
+     * @param level 日志级别
+     */
+    private static void setLogLevel(String level) {
+        if (EncryptDaemon.isJob()) {
+            Log.setThreadLogLevel(Log.LogLevel.fromString(level));
+        } else {
+            Log.setLogLevel(level);
         }
     }
 
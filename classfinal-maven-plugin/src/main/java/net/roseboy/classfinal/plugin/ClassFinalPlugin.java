@@ -2,6 +2,13 @@ package net.roseboy.classfinal.plugin;
 
 import net.roseboy.classfinal.Const;
 import net.roseboy.classfinal.JarEncryptor;
+import net.roseboy.classfinal.util.ArchiveUtils;
+import net.roseboy.classfinal.util.CipherSuite;
+import net.roseboy.classfinal.util.CompressionPolicy;
+import net.roseboy.classfinal.util.DebugInfoStripper;
+import net.roseboy.classfinal.util.EncryptUtils;
+import net.roseboy.classfinal.util.HeapMonitor;
+import net.roseboy.classfinal.util.ResourceMinifier;
 import net.roseboy.classfinal.util.StrUtils;
 import org.apache.maven.model.Build;
 import org.apache.maven.plugin.AbstractMojo;
@@ -27,12 +34,15 @@ public class ClassFinalPlugin extends AbstractMojo {
     //MavenProject
     @Parameter(defaultValue = "${project}", readonly = true, required = true)
     private MavenProject project;
-    //密码
-    @Parameter(required = true)
+    //密码，设置 publicKeyFile 时不需要
+    @Parameter
     private String password;
     //机器码
     @Parameter
     private String code;
+    //RSA公钥文件，公钥模式：构建服务器只需要公钥，运行时用私钥解密
+    @Parameter
+    private File publicKeyFile;
     //加密的内部-lib/jar名称
     @Parameter
     private String libjars;
@@ -48,6 +58,48 @@ public class ClassFinalPlugin extends AbstractMojo {
     //外部依赖jarlib
     @Parameter
     private String classpath;
+    //并行线程数
+    @Parameter(defaultValue = "1")
+    private Integer threads;
+    //压缩策略，如 default=6,class=9,png=0
+    @Parameter
+    private String compression;
+    //依赖jar包索引的缓存文件，jar未变化时下次构建直接使用
+    @Parameter(defaultValue = "${project.build.directory}/classfinal-classpath.idx")
+    private File classpathCache;
+    //打包时内存中待写入数据的上限(MB)，0为最大堆内存的1/4
+    @Parameter(defaultValue = "0")
+    private Long heapLimit;
+    //各阶段耗时和资源报告(JSON)，用于分析构建耗时和CI中跟踪性能变化
+    @Parameter(defaultValue = "${project.build.directory}/classfinal-report.json")
+    private File report;
+    //Chrome trace-event文件，为空时不生成
+    @Parameter
+    private File trace;
+    //可重现构建的entry时间，与maven-jar-plugin相同使用project.build.outputTimestamp，为空时不启用
+    @Parameter(defaultValue = "${project.build.outputTimestamp}")
+    private String outputTimestamp;
+    //清空方法体后的类去掉的调试信息，如 lines,source
+    @Parameter
+    private String stripStub;
+    //加密前的类去掉的调试信息，如 lines,vars,source；去掉 lines 后异常堆栈中没有行号
+    @Parameter
+    private String stripPayload;
+    //加密前用从jar中生成的字典压缩类
+    @Parameter(defaultValue = "false")
+    private Boolean compressPayload;
+    //加密算法：gcm(默认)、ctr、ecb
+    @Parameter
+    private String cipher;
+    //压缩模板和静态资源(html/ftl/css/js)
+    @Parameter(defaultValue = "false")
+    private Boolean minify;
+    //压缩的文件，按entry路径匹配，为空时为 html/htm/ftl/css/js 等
+    @Parameter
+    private String minifyIncludes;
+    //不压缩的文件，为空时为 .min.js,.min.css
+    @Parameter
+    private String minifyExcludes;
     //调试
     @Parameter(defaultValue = "false")
     private Boolean debug;
@@ -77,14 +129,39 @@ public class ClassFinalPlugin extends AbstractMojo {
         List<String> classPathList = StrUtils.toList(classpath);
         List<String> cfgFileList = StrUtils.toList(cfgfiles);
         includeJarList.add("-");
+        if (publicKeyFile == null && StrUtils.isEmpty(password)) {
+            throw new MojoExecutionException("password or publicKeyFile is required");
+        }
 
-        JarEncryptor encryptor = new JarEncryptor(targetJar, password.trim().toCharArray());
+        JarEncryptor encryptor = new JarEncryptor(targetJar,
+                (publicKeyFile == null ? password : "").trim().toCharArray());
         encryptor.setCode(StrUtils.isEmpty(code) ? null : code.trim().toCharArray());
+        if (publicKeyFile != null) {
+            encryptor.setPublicKey(EncryptUtils.readKey(publicKeyFile));
+        }
         encryptor.setPackages(packageList);
         encryptor.setIncludeJars(includeJarList);
         encryptor.setExcludeClass(excludeClassList);
         encryptor.setClassPath(classPathList);
         encryptor.setCfgfiles(cfgFileList);
+        encryptor.setThreads(threads);
+        encryptor.setCompressionPolicy(CompressionPolicy.parse(compression));
+        encryptor.setStubDebugInfo(DebugInfoStripper.parse(stripStub));
+        encryptor.setPayloadDebugInfo(DebugInfoStripper.parse(stripPayload));
+        encryptor.setCompressPayload(compressPayload);
+        encryptor.setCipherSuite(CipherSuite.parse(cipher, Const.ENCRYPT_TYPE));
+        encryptor.setClassPathCache(classpathCache);
+        encryptor.setMemoryLimit(heapLimit * 1024 * 1024);
+        encryptor.setReportFile(report);
+        encryptor.setTraceFile(trace);
+        if (minify) {
+            encryptor.setResourceMinifier(new ResourceMinifier(StrUtils.toList(minifyIncludes),
+                    StrUtils.toList(minifyExcludes)));
+        }
+        //与Maven的约定一致，单个字符表示不启用
+        if (outputTimestamp != null && outputTimestamp.trim().length() > 1) {
+            encryptor.setOutputTimestamp(ArchiveUtils.parseTimestamp(outputTimestamp));
+        }
         String result = encryptor.doEncryptJar();
         long t2 = System.currentTimeMillis();
 
@@ -92,6 +169,11 @@ public class ClassFinalPlugin extends AbstractMojo {
         logger.info("Encrypted " + project.getPackaging() + " [" + result + "]");
         logger.info("Encrypt complete");
         logger.info("Time [" + ((t2 - t1) / 1000d) + " s]");
+        logger.info("Peak heap [" + HeapMonitor.format(encryptor.getPeakHeapUsed()) + "]");
+        encryptor.getReport().summary().forEach(logger::info);
+        if (report != null) {
+            logger.info("Report [" + report.getAbsolutePath() + "]");
+        }
         logger.info("");
     }
 
@@ -165,6 +165,7 @@ public class EncryptController {
             result.put("encryptedFileId", fileId);
             result.put("encryptedFilename", outputFilename);
             result.put("size", formatFileSize(destFile.length()));
+            result.put("peakHeap", formatFileSize(encryptor.getPeakHeapUsed()));
             
             // 清理原始文件
             inputFile.delete();
@@ -197,15 +198,11 @@ public class EncryptController {
             
             response.setContentType("application/octet-stream");
             response.setHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
-            response.setContentLength((int) file.length());
-            
-            try (FileInputStream fis = new FileInputStream(file);
-                 OutputStream os = response.getOutputStream()) {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = fis.read(buffer)) != -1) {
-                    os.write(buffer, 0, bytesRead);
-                }
+            // 超过2G的文件长度不能用int
+            response.setContentLengthLong(file.length());
+            
+            try (OutputStream os = response.getOutputStream()) {
+                Files.copy(file.toPath(), os);
                 os.flush();
             }
             